@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.gravitext.xml;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.gravitext.xml.producer.Attribute;
+import com.gravitext.xml.producer.Namespace;
+import com.gravitext.xml.producer.Tag;
+
+/**
+ * A thread safe NamespaceCache which may be shared by any number of
+ * concurrent parsers and producers, such that Tag, Attribute and
+ * Namespace identities are consistent across documents. Lookups of
+ * cached names are lock free.
+ *
+ * <p>The total number of cached entries (namespace IRIs, Namespaces,
+ * Tags and Attributes) is bounded, to protect against documents with
+ * an unbounded variety of names. Once the bound is reached, new names
+ * are returned as new, uncached instances, which are thus only equal
+ * (not identical) to instances returned for the same name. Entries
+ * added via seed() are not subject to the bound.</p>
+ */
+public final class ConcurrentNamespaceCache extends NamespaceCache
+{
+    /**
+     * Construct with the default bound of 10,000 entries.
+     */
+    public ConcurrentNamespaceCache()
+    {
+        this( DEFAULT_MAX_ENTRIES );
+    }
+
+    /**
+     * Construct given maximum number of (non-seeded) entries to cache.
+     */
+    public ConcurrentNamespaceCache( final int maxEntries )
+    {
+        _maxEntries = maxEntries;
+    }
+
+    @Override
+    public Namespace namespace( String prefix, final String iri )
+    {
+        if( ( iri == null ) || ( iri.isEmpty() ) ) return null;
+
+        if( ( prefix == null ) || prefix.isEmpty() ) {
+            prefix = Namespace.DEFAULT;
+        }
+
+        final NameSet nset = nset( iri, false );
+        if( nset == null ) return new Namespace( prefix, iri );
+
+        Namespace ns = find( nset.spaces, prefix );
+        if( ns == null ) {
+            final Namespace created = new Namespace( prefix, iri );
+            ns = add( nset, created, false );
+            if( ns == null ) ns = created;
+        }
+        return ns;
+    }
+
+    @Override
+    public Tag tag( final String name, final Namespace ns )
+    {
+        final NameSet nset = nset( iri( ns ), false );
+        Tag tag = ( nset == null ) ? null : nset.tags.get( name );
+        if( tag == null ) {
+            final Tag created = new Tag( name, ns );
+            if( nset != null && reserve( false ) ) {
+                tag = nset.tags.putIfAbsent( name, created );
+                if( tag != null ) _count.decrementAndGet();
+            }
+            if( tag == null ) tag = created;
+        }
+        return tag;
+    }
+
+    @Override
+    public Attribute attribute( final String name, final Namespace ns )
+    {
+        final NameSet nset = nset( iri( ns ), false );
+        Attribute attr =
+            ( nset == null ) ? null : nset.attributes.get( name );
+        if( attr == null ) {
+            final Attribute created = new Attribute( name, ns );
+            if( nset != null && reserve( false ) ) {
+                attr = nset.attributes.putIfAbsent( name, created );
+                if( attr != null ) _count.decrementAndGet();
+            }
+            if( attr == null ) attr = created;
+        }
+        return attr;
+    }
+
+    @Override
+    public Namespace seed( final Namespace ns )
+    {
+        final NameSet nset = nset( ns.nameIRI(), true );
+        final Namespace cached = find( nset.spaces, ns.prefix() );
+        return ( cached != null ) ? cached : add( nset, ns, true );
+    }
+
+    @Override
+    public Tag seed( final Tag tag )
+    {
+        if( tag.namespace() != null ) seed( tag.namespace() );
+        final NameSet nset = nset( iri( tag.namespace() ), true );
+        final Tag cached = nset.tags.putIfAbsent( tag.name(), tag );
+        return ( cached != null ) ? cached : tag;
+    }
+
+    @Override
+    public Attribute seed( final Attribute attr )
+    {
+        if( attr.namespace() != null ) seed( attr.namespace() );
+        final NameSet nset = nset( iri( attr.namespace() ), true );
+        final Attribute cached =
+            nset.attributes.putIfAbsent( attr.name(), attr );
+        return ( cached != null ) ? cached : attr;
+    }
+
+    /**
+     * Return the current number of bounded (non-seeded) entries.
+     */
+    public int size()
+    {
+        return _count.get();
+    }
+
+    /**
+     * Add Namespace to nset if not already present (by prefix),
+     * returning the canonical instance, or null if the bound has been
+     * reached.
+     */
+    private Namespace add( final NameSet nset,
+                           final Namespace ns,
+                           final boolean seed )
+    {
+        synchronized( nset ) {
+            Namespace cached = find( nset.spaces, ns.prefix() );
+            if( cached == null && reserve( seed ) ) {
+                nset.spaces.add( ns );
+                cached = ns;
+            }
+            return cached;
+        }
+    }
+
+    private NameSet nset( final String iri, final boolean seed )
+    {
+        NameSet nset = _cache.get( iri );
+        if( nset == null && reserve( seed ) ) {
+            final NameSet created = new NameSet();
+            nset = _cache.putIfAbsent( iri, created );
+            if( nset == null ) nset = created;
+            else if( !seed ) _count.decrementAndGet();
+        }
+        return nset;
+    }
+
+    /**
+     * Reserve space for a new entry, returning true if available.
+     * Seeded entries are always available and not counted.
+     */
+    private boolean reserve( final boolean seed )
+    {
+        if( seed ) return true;
+        if( _count.incrementAndGet() <= _maxEntries ) return true;
+        _count.decrementAndGet();
+        return false;
+    }
+
+    private static String iri( final Namespace ns )
+    {
+        // ConcurrentHashMap doesn't support null keys, and an empty
+        // IRI is otherwise invalid.
+        return ( ns == null ) ? "" : ns.nameIRI();
+    }
+
+    private static final class NameSet
+    {
+        final CopyOnWriteArrayList<Namespace> spaces =
+            new CopyOnWriteArrayList<Namespace>();
+        final ConcurrentHashMap<String,Tag> tags =
+            new ConcurrentHashMap<String,Tag>( 16 );
+        final ConcurrentHashMap<String,Attribute> attributes =
+            new ConcurrentHashMap<String,Attribute>( 16 );
+    }
+
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private final int _maxEntries;
+    private final AtomicInteger _count = new AtomicInteger( 0 );
+
+    private final ConcurrentHashMap<String,NameSet> _cache =
+        new ConcurrentHashMap<String,NameSet>( 16 );
+}
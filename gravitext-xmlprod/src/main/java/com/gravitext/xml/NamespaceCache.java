@@ -16,6 +16,8 @@
 
 package com.gravitext.xml;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -24,9 +26,13 @@ import com.gravitext.xml.producer.Namespace;
 import com.gravitext.xml.producer.Tag;
 
 /**
- * Cache of Namespaces and associated Tags and Attributes.
+ * Cache of Namespaces and associated Tags and Attributes. This
+ * implementation is not thread safe and is intended for use by a
+ * single parser or producer.
+ *
+ * @see ConcurrentNamespaceCache
  */
-public final class NamespaceCache
+public class NamespaceCache
 {
     /**
      * Find or create Namespace for the specified prefix and iri.
@@ -46,13 +52,7 @@ public final class NamespaceCache
 
         NameSet nset = nset( iri );
 
-        Namespace ns = null;
-        for( Namespace nc : nset.spaces ) {
-            if( nc.prefix().equals( prefix ) ) {
-                ns = nc;
-                break;
-            }
-        }
+        Namespace ns = find( nset.spaces, prefix );
         if( ns == null ) {
             ns = new Namespace( prefix, iri );
             nset.spaces.add( ns );
@@ -90,6 +90,98 @@ public final class NamespaceCache
         return attribute;
     }
 
+    /**
+     * Seed the cache with the specified Namespace, for example a
+     * constant of a known schema, such that it will be returned from
+     * subsequent namespace() calls with the same prefix and IRI.
+     * @return the canonical Namespace, which will be a previously
+     *         cached instance, if present.
+     */
+    public Namespace seed( final Namespace ns )
+    {
+        NameSet nset = nset( ns.nameIRI() );
+        Namespace cached = find( nset.spaces, ns.prefix() );
+        if( cached == null ) {
+            nset.spaces.add( ns );
+            cached = ns;
+        }
+        return cached;
+    }
+
+    /**
+     * Seed the cache with the specified Tag (and its Namespace), such
+     * that it will be returned from subsequent tag() calls with the
+     * same name and namespace IRI.
+     * @return the canonical Tag, which will be a previously cached
+     *         instance, if present.
+     */
+    public Tag seed( final Tag tag )
+    {
+        if( tag.namespace() != null ) seed( tag.namespace() );
+        NameSet nset = nset( tag.namespace() );
+        Tag cached = nset.tags.get( tag.name() );
+        if( cached == null ) {
+            nset.tags.put( tag.name(), tag );
+            cached = tag;
+        }
+        return cached;
+    }
+
+    /**
+     * Seed the cache with the specified Attribute (and its Namespace),
+     * such that it will be returned from subsequent attribute() calls
+     * with the same name and namespace IRI.
+     * @return the canonical Attribute, which will be a previously
+     *         cached instance, if present.
+     */
+    public Attribute seed( final Attribute attr )
+    {
+        if( attr.namespace() != null ) seed( attr.namespace() );
+        NameSet nset = nset( attr.namespace() );
+        Attribute cached = nset.attributes.get( attr.name() );
+        if( cached == null ) {
+            nset.attributes.put( attr.name(), attr );
+            cached = attr;
+        }
+        return cached;
+    }
+
+    /**
+     * Seed the cache with all public static Namespace, Tag and
+     * Attribute constants (fields) of the specified class, for example
+     * a class declaring the names of a known schema.
+     */
+    public void seedConstants( final Class<?> constants )
+    {
+        for( Field f : constants.getFields() ) {
+            if( !Modifier.isStatic( f.getModifiers() ) ) continue;
+            try {
+                final Object value = f.get( null );
+                if( value instanceof Namespace ) {
+                    seed( (Namespace) value );
+                }
+                else if( value instanceof Tag ) {
+                    seed( (Tag) value );
+                }
+                else if( value instanceof Attribute ) {
+                    seed( (Attribute) value );
+                }
+            }
+            catch( IllegalAccessException x ) {
+                throw new RuntimeException( x );
+            }
+        }
+    }
+
+    static Namespace find( final Iterable<Namespace> spaces,
+                           final String prefix )
+    {
+        for( Namespace nc : spaces ) {
+            if( nc.prefix().equals( prefix ) ) return nc;
+        }
+        return null;
+    }
+
     private NameSet nset( Namespace ns )
     {
         return nset( ( ns == null ) ? null : ns.nameIRI() );
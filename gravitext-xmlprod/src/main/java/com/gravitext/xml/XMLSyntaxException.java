@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an XMLTokenizer encounters input which is not well
+ * formed, or otherwise not supported.
+ *
+ * @author David Kellum
+ */
+public class XMLSyntaxException extends IOException
+{
+    public XMLSyntaxException( String message, long offset )
+    {
+        super( message + " (at byte offset " + offset + ")" );
+        _offset = offset;
+    }
+
+    /**
+     * Return the byte offset into input at which the error was
+     * detected.
+     */
+    public long offset()
+    {
+        return _offset;
+    }
+
+    private final long _offset;
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,1242 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+
+import com.gravitext.xml.producer.Attribute;
+import com.gravitext.xml.producer.Namespace;
+import com.gravitext.xml.producer.Tag;
+
+/**
+ * A non-validating, namespace aware, pull-style XML tokenizer which
+ * reads UTF-8 (or ASCII) encoded bytes directly, from a byte array or
+ * InputStream. Element and attribute names are resolved to canonical
+ * Tag, Attribute and Namespace instances of a NamespaceCache, via an
+ * internal symbol table keyed on the raw name bytes, such that no
+ * Strings are created for names already seen by this tokenizer.
+ * Character data and attribute values are returned as CharSequence
+ * views over an internal buffer, valid only until the subsequent
+ * call to next().
+ *
+ * <p>Adjacent character data, CDATA sections and references are
+ * coalesced into a single CHARACTERS event, including across
+ * (skipped) comments and processing instructions. An empty element
+ * produces START_ELEMENT and END_ELEMENT events. The DOCTYPE
+ * declaration, if present, is skipped; only the predefined entities
+ * and character references are supported.</p>
+ *
+ * <p>An XMLTokenizer instance is not thread safe, but may be reused
+ * for additional documents via setInput(), retaining its symbol
+ * table.</p>
+ *
+ * @author David Kellum
+ */
+public final class XMLTokenizer
+{
+    public enum Event
+    {
+        START_ELEMENT,
+        END_ELEMENT,
+        CHARACTERS,
+        END_DOCUMENT
+    }
+
+    /**
+     * Construct with a new (private) NamespaceCache.
+     */
+    public XMLTokenizer()
+    {
+        this( new NamespaceCache() );
+    }
+
+    /**
+     * Construct given NamespaceCache from which all Tag, Attribute
+     * and Namespace instances will be obtained.
+     */
+    public XMLTokenizer( NamespaceCache cache )
+    {
+        _cache = cache;
+        _xmlNS = cache.namespace( "xml", XML_IRI );
+    }
+
+    /**
+     * Set input to the complete byte array and reset for a new
+     * document.
+     */
+    public XMLTokenizer setInput( byte[] input )
+    {
+        return setInput( input, 0, input.length );
+    }
+
+    /**
+     * Set input to the specified range of byte array and reset for a
+     * new document. The array is not copied or modified.
+     */
+    public XMLTokenizer setInput( byte[] input, int offset, int length )
+    {
+        reset();
+        _in = null;
+        _buf = input;
+        _pos = offset;
+        _limit = offset + length;
+        _offset = -offset;
+        return this;
+    }
+
+    /**
+     * Set input to the specified stream and reset for a new
+     * document. The stream is read incrementally via an internal
+     * buffer as next() is called. The stream is not closed.
+     */
+    public XMLTokenizer setInput( InputStream in )
+    {
+        reset();
+        if( _streamBuf == null ) {
+            _streamBuf = new byte[ STREAM_BUFFER_SIZE ];
+        }
+        _in = in;
+        _buf = _streamBuf;
+        _pos = _limit = 0;
+        _offset = 0;
+        return this;
+    }
+
+    /**
+     * Bind a namespace prefix in the outermost scope, as if declared
+     * by an enclosing element, for tokenizing a fragment (e.g. the
+     * byte range of a nested element) of a larger document. Must be
+     * called after setInput() and before the first next(). Later
+     * bindings of the same prefix take precedence.
+     * @param prefix the prefix, or Namespace.DEFAULT
+     * @param ns the namespace, or null to undeclare the default
+     * namespace.
+     */
+    public void bind( String prefix, Namespace ns )
+    {
+        if( _event != null ) {
+            throw new IllegalStateException( "bind() after next()" );
+        }
+        if( _bindCount == _bindPrefixes.length ) growBindings();
+        _bindPrefixes[ _bindCount ] = prefix;
+        _bindSpaces[ _bindCount ] = ns;
+        ++_bindCount;
+    }
+
+    /**
+     * Return the number of namespace prefix bindings currently in
+     * scope, including any from bind() and those declared on the
+     * current START_ELEMENT. Bindings are ordered outermost first.
+     */
+    public int bindingCount()
+    {
+        return _bindCount;
+    }
+
+    /**
+     * Return the prefix (or Namespace.DEFAULT) of the in-scope binding
+     * at index [0,bindingCount()).
+     */
+    public String bindingPrefix( int i )
+    {
+        return _bindPrefixes[i];
+    }
+
+    /**
+     * Return the Namespace of the in-scope binding at index
+     * [0,bindingCount()), or null if the binding undeclares the
+     * default namespace.
+     */
+    public Namespace binding( int i )
+    {
+        return _bindSpaces[i];
+    }
+
+    public NamespaceCache namespaceCache()
+    {
+        return _cache;
+    }
+
+    /**
+     * Advance to and return the next event. Once END_DOCUMENT is
+     * returned, subsequent calls will continue to return END_DOCUMENT.
+     * @throws XMLSyntaxException if the input is not well formed.
+     * @throws IOException from the InputStream.
+     */
+    public Event next() throws IOException
+    {
+        _attrCount = 0;
+        _declCount = 0;
+
+        if( _pendingEnd ) {
+            _pendingEnd = false;
+            return _event = popElement();
+        }
+
+        switch( _state ) {
+        case PROLOG:
+            return _event = prolog();
+        case CONTENT:
+            return _event = content();
+        case EPILOG:
+            epilog();
+        }
+        return _event = Event.END_DOCUMENT;
+    }
+
+    /**
+     * Return the last event returned from next(), or null if next()
+     * has not been called.
+     */
+    public Event event()
+    {
+        return _event;
+    }
+
+    /**
+     * Return the number of currently open elements, including the
+     * current element after START_ELEMENT, but not after END_ELEMENT.
+     */
+    public int depth()
+    {
+        return _depth;
+    }
+
+    /**
+     * Return the canonical Tag of the current START_ELEMENT or
+     * END_ELEMENT.
+     */
+    public Tag tag()
+    {
+        return _tag;
+    }
+
+    /**
+     * Return the Namespace resolved from the prefix of the current
+     * START_ELEMENT name, or null if none. This may differ in prefix
+     * from tag().namespace() when the same namespace IRI is used with
+     * different prefixes.
+     */
+    public Namespace elementNamespace()
+    {
+        return _elementNS;
+    }
+
+    /**
+     * Return the number of attributes, excluding namespace
+     * declarations, of the current START_ELEMENT.
+     */
+    public int attributeCount()
+    {
+        return _attrCount;
+    }
+
+    /**
+     * Return canonical Attribute at index [0,attributeCount()).
+     */
+    public Attribute attribute( int i )
+    {
+        return _attrs[i];
+    }
+
+    /**
+     * Return (normalized) attribute value at index
+     * [0,attributeCount()). The value is valid until the next call to
+     * next().
+     */
+    public CharSequence attributeValue( int i )
+    {
+        return CharBuffer.wrap( _chars, _attrOffsets[i], _attrLengths[i] );
+    }
+
+    /**
+     * Return value of the specified attribute on the current
+     * START_ELEMENT, or null if not present. The value is valid until
+     * the next call to next().
+     */
+    public CharSequence attributeValue( Attribute attr )
+    {
+        for( int i = 0; i < _attrCount; ++i ) {
+            if( _attrs[i] == attr ) return attributeValue( i );
+        }
+        return null;
+    }
+
+    /**
+     * Return the number of namespaces declared on the current
+     * START_ELEMENT. Declarations undeclaring the default namespace
+     * (xmlns="") are not included.
+     */
+    public int namespaceCount()
+    {
+        return _declCount;
+    }
+
+    /**
+     * Return canonical Namespace declared at index
+     * [0,namespaceCount()).
+     */
+    public Namespace namespace( int i )
+    {
+        return _decls[i];
+    }
+
+    /**
+     * Return the (coalesced) character data of the current CHARACTERS
+     * event. The value is valid until the next call to next().
+     */
+    public CharSequence characters()
+    {
+        return CharBuffer.wrap( _chars, 0, _clen );
+    }
+
+    /**
+     * On START_ELEMENT, skip the content of the current element and
+     * return its END_ELEMENT, resuming at endPosition: the position()
+     * previously observed following the same element's END_ELEMENT,
+     * e.g. from an index built in an earlier pass. No checking of the
+     * skipped content is performed. Only supported for byte array
+     * input.
+     * @throws IllegalStateException if not on START_ELEMENT or input
+     * is an InputStream.
+     * @throws IllegalArgumentException if endPosition is not within
+     * the remaining input.
+     */
+    public Event skipElement( long endPosition )
+    {
+        if( _event != Event.START_ELEMENT ) {
+            throw new IllegalStateException( "Not on START_ELEMENT" );
+        }
+        if( _in != null ) {
+            throw new IllegalStateException(
+                "skipElement() not supported for stream input" );
+        }
+        _attrCount = 0;
+        _declCount = 0;
+
+        if( !_pendingEnd ) {
+            final long p = endPosition - _offset;
+            if( p < _pos || p > _limit ) {
+                throw new IllegalArgumentException(
+                    "End position " + endPosition + " out of range" );
+            }
+            _pos = (int) p;
+            _markup = NONE;
+            _clen = 0;
+        }
+        _pendingEnd = false;
+        return _event = popElement();
+    }
+
+    /**
+     * Return the byte offset of the '<' beginning the markup of the
+     * current START_ELEMENT or END_ELEMENT event. For an empty
+     * element, this is the same for both events.
+     */
+    public long markupPosition()
+    {
+        return _markStart;
+    }
+
+    /**
+     * Return the current byte offset into the input document.
+     */
+    public long position()
+    {
+        return _offset + _pos;
+    }
+
+    private void reset()
+    {
+        _state = State.PROLOG;
+        _event = null;
+        _markup = NONE;
+        _markStart = -1;
+        _pendingEnd = false;
+        _depth = 0;
+        _bindCount = 0;
+        _attrCount = 0;
+        _declCount = 0;
+        _clen = 0;
+        _tag = null;
+        _elementNS = null;
+    }
+
+    private Event prolog() throws IOException
+    {
+        int c = read();
+
+        // Byte order mark
+        if( c == 0xEF ) {
+            if( read() != 0xBB || read() != 0xBF ) {
+                throw error( "Invalid byte order mark" );
+            }
+            c = read();
+        }
+        else if( c == 0xFE || c == 0xFF ) {
+            throw error( "Unsupported encoding (UTF-16)" );
+        }
+
+        boolean first = true;
+        while( true ) {
+            if( isSpace( c ) ) {
+                c = skipSpace();
+                first = false;
+            }
+            if( c < 0 ) throw error( "No root element" );
+            if( c != '<' ) throw error( "Content not allowed in prolog" );
+            _markStart = position() - 1;
+
+            final int m = read();
+            if( m == '?' ) {
+                processingInstruction( first );
+            }
+            else if( m == '!' ) {
+                c = read();
+                if( c == '-' ) comment();
+                else if( c == 'D' ) doctype();
+                else throw error( "Invalid markup in prolog" );
+            }
+            else {
+                _state = State.CONTENT;
+                return startTag( m );
+            }
+            first = false;
+            c = read();
+        }
+    }
+
+    private Event content() throws IOException
+    {
+        _clen = 0;
+        int m = _markup;
+        _markup = NONE;
+
+        while( true ) {
+            if( m == NONE ) m = readText();
+
+            if( m == '!' ) {
+                final int c = read();
+                if( c == '-' ) comment();
+                else if( c == '[' ) cdata();
+                else throw error( "Invalid markup in content" );
+            }
+            else if( m == '?' ) {
+                processingInstruction( false );
+            }
+            else if( m < 0 ) {
+                throw error( "Unexpected end of input in element <" +
+                             _openNames[ _depth - 1 ].qName + ">" );
+            }
+            else if( _clen > 0 ) {
+                _markup = m;
+                return Event.CHARACTERS;
+            }
+            else if( m == '/' ) {
+                return endTag();
+            }
+            else {
+                return startTag( m );
+            }
+            m = NONE;
+        }
+    }
+
+    private void epilog() throws IOException
+    {
+        int c;
+        while( ( c = skipSpace() ) >= 0 ) {
+            if( c != '<' ) throw error( "Content not allowed after root" );
+            final int m = read();
+            if( m == '?' ) {
+                processingInstruction( false );
+            }
+            else if( m == '!' && read() == '-' ) {
+                comment();
+            }
+            else throw error( "Markup not allowed after root element" );
+        }
+        _state = State.END;
+    }
+
+    private Event startTag( final int first ) throws IOException
+    {
+        final Symbol qn = readName( first );
+        final int mark = _bindCount;
+        int rawCount = 0;
+        _clen = 0;
+
+        int c;
+        while( true ) {
+            c = skipSpace();
+            if( c == '>' ) break;
+            if( c == '/' ) {
+                if( read() != '>' ) throw error( "Expected '>' after '/'" );
+                _pendingEnd = true;
+                break;
+            }
+            if( !_spaced ) {
+                throw error( "Whitespace required before attribute" );
+            }
+
+            final Symbol an = readName( c );
+            if( skipSpace() != '=' ) throw error( "Expected '='" );
+            final int off = _clen;
+            readAttrValue( skipSpace() );
+
+            if( an.prefix == null && an.local.equals( "xmlns" ) ) {
+                declare( Namespace.DEFAULT, off );
+            }
+            else if( an.prefix != null && an.prefix.equals( "xmlns" ) ) {
+                declare( an.local, off );
+            }
+            else {
+                if( rawCount == _rawNames.length ) growAttributes();
+                _rawNames[ rawCount ] = an;
+                _attrOffsets[ rawCount ] = off;
+                _attrLengths[ rawCount ] = _clen - off;
+                ++rawCount;
+            }
+        }
+
+        _tag = resolveTag( qn );
+
+        for( int i = 0; i < rawCount; ++i ) {
+            final Attribute attr = resolveAttribute( _rawNames[i] );
+            for( int j = 0; j < i; ++j ) {
+                if( _attrs[j] == attr ) {
+                    throw error( "Duplicate attribute " +
+                                 _rawNames[i].qName );
+                }
+            }
+            _attrs[i] = attr;
+        }
+        _attrCount = rawCount;
+
+        if( _depth == _openNames.length ) growElements();
+        _openNames[ _depth ] = qn;
+        _openTags[ _depth ] = _tag;
+        _bindMarks[ _depth ] = mark;
+        ++_depth;
+
+        return Event.START_ELEMENT;
+    }
+
+    private Event endTag() throws IOException
+    {
+        final Symbol qn = readName( read() );
+        if( skipSpace() != '>' ) throw error( "Expected '>' in end tag" );
+
+        final Symbol open = _openNames[ _depth - 1 ];
+        if( qn != open ) {
+            throw error( "End tag </" + qn.qName +
+                         "> does not match <" + open.qName + ">" );
+        }
+        return popElement();
+    }
+
+    private Event popElement()
+    {
+        --_depth;
+        _tag = _openTags[ _depth ];
+        _bindCount = _bindMarks[ _depth ];
+        if( _depth == 0 ) _state = State.EPILOG;
+        return Event.END_ELEMENT;
+    }
+
+    private void declare( final String prefix, final int off )
+        throws IOException
+    {
+        final String iri = new String( _chars, off, _clen - off );
+        _clen = off;
+
+        final Namespace ns = _cache.namespace( prefix, iri );
+        if( ns == null && prefix != Namespace.DEFAULT ) {
+            throw error( "Empty namespace IRI for prefix " + prefix );
+        }
+
+        if( _bindCount == _bindPrefixes.length ) growBindings();
+        _bindPrefixes[ _bindCount ] = prefix;
+        _bindSpaces[ _bindCount ] = ns;
+        ++_bindCount;
+
+        if( ns != null ) {
+            if( _declCount == _decls.length ) {
+                final Namespace[] decls = new Namespace[ _declCount * 2 ];
+                System.arraycopy( _decls, 0, decls, 0, _declCount );
+                _decls = decls;
+            }
+            _decls[ _declCount++ ] = ns;
+        }
+    }
+
+    private Namespace resolve( final String prefix ) throws IOException
+    {
+        final String p = ( prefix == null ) ? Namespace.DEFAULT : prefix;
+        for( int i = _bindCount - 1; i >= 0; --i ) {
+            if( _bindPrefixes[i].equals( p ) ) return _bindSpaces[i];
+        }
+        if( prefix == null ) return null;
+        if( prefix.equals( "xml" ) ) return _xmlNS;
+        throw error( "Undeclared namespace prefix " + prefix );
+    }
+
+    private Tag resolveTag( final Symbol qn ) throws IOException
+    {
+        final Namespace ns = _elementNS = resolve( qn.prefix );
+        if( qn.tag == null || qn.tagNS != ns ) {
+            qn.tag = _cache.tag( qn.local, ns );
+            qn.tagNS = ns;
+        }
+        return qn.tag;
+    }
+
+    private Attribute resolveAttribute( final Symbol qn ) throws IOException
+    {
+        // Unprefixed attributes are in no namespace
+        final Namespace ns =
+            ( qn.prefix == null ) ? null : resolve( qn.prefix );
+        if( qn.attribute == null || qn.attributeNS != ns ) {
+            qn.attribute = _cache.attribute( qn.local, ns );
+            qn.attributeNS = ns;
+        }
+        return qn.attribute;
+    }
+
+    /**
+     * Read character data into _chars, until '<', returning the
+     * following byte, or -1 at end of input.
+     */
+    private int readText() throws IOException
+    {
+        while( true ) {
+            final byte[] buf = _buf;
+            final int lim = _limit;
+            int p = _pos;
+            ensureChars( lim - p + 2 );
+            final char[] out = _chars;
+            int o = _clen;
+
+            while( p < lim ) {
+                final int b = buf[p];
+                if( b >= 0x20 ? ( b == '<' || b == '&' ) :
+                                ( b != '\n' && b != '\t' ) ) break;
+                out[o++] = (char) b;
+                ++p;
+            }
+            _pos = p;
+            _clen = o;
+
+            final int c = read();
+            if( c < 0 ) return c;
+
+            if( c == '<' ) {
+                _markStart = position() - 1;
+                return read();
+            }
+            else if( c == '&' ) reference();
+            else if( c >= 0x80 ) putCodePoint( decode( c ) );
+            else if( c == '\r' ) newline();
+            else if( c < 0x20 && c != '\n' && c != '\t' ) {
+                throw invalidChar( c );
+            }
+            else unread(); // Refilled buffer
+        }
+    }
+
+    private void readAttrValue( final int quote ) throws IOException
+    {
+        if( quote != '"' && quote != '\'' ) {
+            throw error( "Expected quoted attribute value" );
+        }
+
+        int c;
+        while( ( c = read() ) != quote ) {
+            if( c >= 0x20 && c < 0x80 ) {
+                if( c == '<' ) {
+                    throw error( "'<' not allowed in attribute value" );
+                }
+                if( c == '&' ) reference();
+                else putChar( (char) c );
+            }
+            else if( c >= 0x80 ) putCodePoint( decode( c ) );
+            else if( c == '\r' ) {
+                putChar( ' ' );
+                final int n = read();
+                if( n >= 0 && n != '\n' ) unread();
+            }
+            else if( c == '\n' || c == '\t' ) putChar( ' ' );
+            else if( c < 0 ) throw error( "Unexpected end of input" );
+            else throw invalidChar( c );
+        }
+    }
+
+    private void cdata() throws IOException
+    {
+        expect( "CDATA[" );
+        int brackets = 0;
+        while( true ) {
+            final int c = read();
+            if( c == '>' && brackets >= 2 ) {
+                _clen -= 2;
+                return;
+            }
+            brackets = ( c == ']' ) ? brackets + 1 : 0;
+
+            if( c >= 0x20 && c < 0x80 ) putChar( (char) c );
+            else if( c >= 0x80 ) putCodePoint( decode( c ) );
+            else if( c == '\r' ) newline();
+            else if( c == '\n' || c == '\t' ) putChar( (char) c );
+            else if( c < 0 ) {
+                throw error( "Unexpected end of input in CDATA" );
+            }
+            else throw invalidChar( c );
+        }
+    }
+
+    /**
+     * Skip comment, following "<!-".
+     */
+    private void comment() throws IOException
+    {
+        if( read() != '-' ) throw error( "Invalid comment" );
+        int dashes = 0;
+        int c;
+        while( ( c = read() ) >= 0 ) {
+            if( c == '>' && dashes >= 2 ) return;
+            dashes = ( c == '-' ) ? dashes + 1 : 0;
+        }
+        throw error( "Unexpected end of input in comment" );
+    }
+
+    /**
+     * Skip processing instruction, following "<?". If allowDecl, an
+     * XML declaration is accepted and its encoding checked.
+     */
+    private void processingInstruction( final boolean allowDecl )
+        throws IOException
+    {
+        final Symbol target = readName( read() );
+        final boolean isDecl = target.qName.equalsIgnoreCase( "xml" );
+        if( isDecl && !allowDecl ) {
+            throw error( "XML declaration only allowed at start of input" );
+        }
+
+        final StringBuilder decl = isDecl ? new StringBuilder( 64 ) : null;
+        boolean question = false;
+        int c;
+        while( ( c = read() ) >= 0 ) {
+            if( c == '>' && question ) {
+                if( isDecl ) checkDeclaration( decl );
+                return;
+            }
+            question = ( c == '?' );
+            if( isDecl ) decl.append( (char) c );
+        }
+        throw error( "Unexpected end of input in processing instruction" );
+    }
+
+    private void checkDeclaration( final StringBuilder decl )
+        throws IOException
+    {
+        final int i = decl.indexOf( "encoding" );
+        if( i < 0 ) return;
+
+        int s = decl.indexOf( "\"", i );
+        final int s1 = decl.indexOf( "'", i );
+        if( s < 0 || ( s1 >= 0 && s1 < s ) ) s = s1;
+        if( s < 0 ) throw error( "Invalid XML declaration" );
+
+        final int e = decl.indexOf( decl.substring( s, s + 1 ), s + 1 );
+        if( e < 0 ) throw error( "Invalid XML declaration" );
+
+        final String enc = decl.substring( s + 1, e );
+        if( !( enc.equalsIgnoreCase( "UTF-8" ) ||
+               enc.equalsIgnoreCase( "UTF8" ) ||
+               enc.equalsIgnoreCase( "US-ASCII" ) ||
+               enc.equalsIgnoreCase( "ASCII" ) ) ) {
+            throw error( "Unsupported encoding " + enc );
+        }
+    }
+
+    /**
+     * Skip DOCTYPE declaration, following "<!D", including any
+     * internal subset.
+     */
+    private void doctype() throws IOException
+    {
+        expect( "OCTYPE" );
+        boolean inSubset = false;
+        int quote = 0;
+        int c;
+        while( ( c = read() ) >= 0 ) {
+            if( quote != 0 ) {
+                if( c == quote ) quote = 0;
+            }
+            else if( c == '"' || c == '\'' ) quote = c;
+            else if( c == '[' ) inSubset = true;
+            else if( c == ']' ) inSubset = false;
+            else if( c == '>' && !inSubset ) return;
+            else if( c == '<' && inSubset ) {
+                c = read();
+                if( c == '!' ) {
+                    c = read();
+                    if( c == '-' ) comment();
+                    else if( c >= 0 ) unread();
+                }
+                else if( c == '?' ) processingInstruction( false );
+                else if( c >= 0 ) unread();
+            }
+        }
+        throw error( "Unexpected end of input in DOCTYPE" );
+    }
+
+    /**
+     * Read reference, following '&', appending its replacement
+     * character(s).
+     */
+    private void reference() throws IOException
+    {
+        int c = read();
+        if( c == '#' ) {
+            int radix = 10;
+            c = read();
+            if( c == 'x' ) {
+                radix = 16;
+                c = read();
+            }
+            int cp = 0;
+            int digits = 0;
+            while( c != ';' ) {
+                final int d = Character.digit( c, radix );
+                if( c < 0 || d < 0 || cp > 0x10FFFF ) {
+                    throw error( "Invalid character reference" );
+                }
+                cp = cp * radix + d;
+                ++digits;
+                c = read();
+            }
+            if( digits == 0 || !isXMLChar( cp ) ) {
+                throw error( "Invalid character reference" );
+            }
+            putCodePoint( cp );
+            return;
+        }
+
+        final Symbol name = readName( c );
+        if( read() != ';' ) throw error( "Invalid entity reference" );
+        final String n = name.qName;
+
+        if( n.equals( "lt" ) )        putChar( '<' );
+        else if( n.equals( "gt" ) )   putChar( '>' );
+        else if( n.equals( "amp" ) )  putChar( '&' );
+        else if( n.equals( "quot" ) ) putChar( '"' );
+        else if( n.equals( "apos" ) ) putChar( '\'' );
+        else throw error( "Undeclared entity &" + n + ';' );
+    }
+
+    /**
+     * Read name starting with byte b, returning its Symbol.
+     */
+    private Symbol readName( final int b ) throws IOException
+    {
+        if( b < 0 || ( b < 0x80 && !NAME_START[b] ) ) {
+            throw error( "Invalid name" );
+        }
+
+        byte[] nb = _nameBuf;
+        int n = 0;
+        int h = (byte) b;
+        nb[n++] = (byte) b;
+
+        while( true ) {
+            final byte[] buf = _buf;
+            final int lim = _limit;
+            int p = _pos;
+            while( p < lim ) {
+                final byte c = buf[p];
+                if( c >= 0 && !NAME_CHAR[c] ) {
+                    _pos = p;
+                    return symbol( nb, n, h );
+                }
+                if( n == nb.length ) {
+                    nb = new byte[ n * 2 ];
+                    System.arraycopy( _nameBuf, 0, nb, 0, n );
+                    _nameBuf = nb;
+                }
+                nb[n++] = c;
+                h = 31 * h + c;
+                ++p;
+            }
+            _pos = p;
+            if( read() < 0 ) return symbol( nb, n, h );
+            unread();
+        }
+    }
+
+    private Symbol symbol( final byte[] nb, final int n, final int h )
+        throws IOException
+    {
+        final Symbol[] table = _symbols;
+        final int i = ( h ^ ( h >>> 16 ) ) & ( table.length - 1 );
+
+        search: for( Symbol s = table[i]; s != null; s = s.next ) {
+            if( s.hash == h && s.bytes.length == n ) {
+                final byte[] sb = s.bytes;
+                for( int j = 0; j < n; ++j ) {
+                    if( sb[j] != nb[j] ) continue search;
+                }
+                return s;
+            }
+        }
+
+        final byte[] bytes = new byte[ n ];
+        System.arraycopy( nb, 0, bytes, 0, n );
+        final Symbol s = new Symbol( bytes, h, new String( bytes, UTF_8 ) );
+        if( s.local.isEmpty() ||
+            ( s.prefix != null && s.prefix.isEmpty() ) ) {
+            throw error( "Invalid qualified name " + s.qName );
+        }
+        s.next = table[i];
+        table[i] = s;
+        if( ++_symbolCount > ( table.length * 3 / 4 ) ) growSymbols();
+        return s;
+    }
+
+    private void growSymbols()
+    {
+        final Symbol[] table = new Symbol[ _symbols.length * 2 ];
+        for( Symbol s : _symbols ) {
+            while( s != null ) {
+                final Symbol next = s.next;
+                final int i = ( s.hash ^ ( s.hash >>> 16 ) ) &
+                              ( table.length - 1 );
+                s.next = table[i];
+                table[i] = s;
+                s = next;
+            }
+        }
+        _symbols = table;
+    }
+
+    /**
+     * Decode a UTF-8 multi-byte sequence starting with b.
+     */
+    private int decode( final int b ) throws IOException
+    {
+        int cp;
+        int n;
+        if( ( b & 0xE0 ) == 0xC0 ) {
+            cp = b & 0x1F;
+            n = 1;
+        }
+        else if( ( b & 0xF0 ) == 0xE0 ) {
+            cp = b & 0x0F;
+            n = 2;
+        }
+        else if( ( b & 0xF8 ) == 0xF0 ) {
+            cp = b & 0x07;
+            n = 3;
+        }
+        else {
+            throw error( "Invalid UTF-8 byte 0x" + Integer.toHexString( b ) );
+        }
+
+        final int min = MIN_CODE_POINTS[n];
+        while( n-- > 0 ) {
+            final int c = read();
+            if( ( c & 0xC0 ) != 0x80 ) {
+                throw error( "Invalid UTF-8 sequence" );
+            }
+            cp = ( cp << 6 ) | ( c & 0x3F );
+        }
+        if( cp < min || !isXMLChar( cp ) ) {
+            throw error( "Invalid UTF-8 sequence or character" );
+        }
+        return cp;
+    }
+
+    private void newline() throws IOException
+    {
+        putChar( '\n' );
+        final int c = read();
+        if( c >= 0 && c != '\n' ) unread();
+    }
+
+    private void putCodePoint( final int cp )
+    {
+        if( cp < 0x10000 ) {
+            putChar( (char) cp );
+        }
+        else {
+            ensureChars( 2 );
+            _chars[ _clen++ ] = (char) ( 0xD7C0 + ( cp >> 10 ) );
+            _chars[ _clen++ ] = (char) ( 0xDC00 | ( cp & 0x3FF ) );
+        }
+    }
+
+    private void putChar( final char c )
+    {
+        if( _clen == _chars.length ) ensureChars( 1 );
+        _chars[ _clen++ ] = c;
+    }
+
+    private void ensureChars( final int more )
+    {
+        if( _clen + more > _chars.length ) {
+            final char[] chars =
+                new char[ Math.max( _chars.length * 2, _clen + more ) ];
+            System.arraycopy( _chars, 0, chars, 0, _clen );
+            _chars = chars;
+        }
+    }
+
+    private void expect( final String literal ) throws IOException
+    {
+        for( int i = 0, end = literal.length(); i < end; ++i ) {
+            if( read() != literal.charAt( i ) ) {
+                throw error( "Expected " + literal );
+            }
+        }
+    }
+
+    /**
+     * Skip any whitespace, returning the following byte (consumed) or
+     * -1 at end of input. Sets _spaced if any whitespace was skipped.
+     */
+    private int skipSpace() throws IOException
+    {
+        _spaced = false;
+        int c;
+        while( isSpace( c = read() ) ) _spaced = true;
+        return c;
+    }
+
+    private int read() throws IOException
+    {
+        if( _pos < _limit ) return _buf[ _pos++ ] & 0xFF;
+        return fill() ? ( _buf[ _pos++ ] & 0xFF ) : -1;
+    }
+
+    /**
+     * Step back one byte. Only valid immediately after a read() which
+     * did not return -1.
+     */
+    private void unread()
+    {
+        --_pos;
+    }
+
+    private boolean fill() throws IOException
+    {
+        if( _in == null ) return false;
+
+        _offset += _limit;
+        _pos = _limit = 0;
+
+        int n;
+        while( ( n = _in.read( _buf, 0, _buf.length ) ) == 0 );
+        if( n < 0 ) return false;
+
+        _limit = n;
+        return true;
+    }
+
+    private XMLSyntaxException invalidChar( final int c )
+    {
+        return error( "Invalid XML character 0x" + Integer.toHexString( c ) );
+    }
+
+    private XMLSyntaxException error( final String message )
+    {
+        return new XMLSyntaxException( message, position() );
+    }
+
+    private static boolean isSpace( final int c )
+    {
+        return ( c == ' ' || c == '\n' || c == '\t' || c == '\r' );
+    }
+
+    private static boolean isXMLChar( final int cp )
+    {
+        return ( ( cp >= 0x20 && cp < 0xD800 ) ||
+                 ( cp >= 0xE000 && cp < 0xFFFE ) ||
+                 ( cp >= 0x10000 && cp <= 0x10FFFF ) ||
+                 cp == '\t' || cp == '\n' || cp == '\r' );
+    }
+
+    private void growAttributes()
+    {
+        final int len = _rawNames.length * 2;
+
+        final Symbol[] names = new Symbol[ len ];
+        System.arraycopy( _rawNames, 0, names, 0, _rawNames.length );
+        _rawNames = names;
+
+        final Attribute[] attrs = new Attribute[ len ];
+        System.arraycopy( _attrs, 0, attrs, 0, _attrs.length );
+        _attrs = attrs;
+
+        final int[] offsets = new int[ len ];
+        System.arraycopy( _attrOffsets, 0, offsets, 0, _attrOffsets.length );
+        _attrOffsets = offsets;
+
+        final int[] lengths = new int[ len ];
+        System.arraycopy( _attrLengths, 0, lengths, 0, _attrLengths.length );
+        _attrLengths = lengths;
+    }
+
+    private void growElements()
+    {
+        final int len = _openNames.length * 2;
+
+        final Symbol[] names = new Symbol[ len ];
+        System.arraycopy( _openNames, 0, names, 0, _depth );
+        _openNames = names;
+
+        final Tag[] tags = new Tag[ len ];
+        System.arraycopy( _openTags, 0, tags, 0, _depth );
+        _openTags = tags;
+
+        final int[] marks = new int[ len ];
+        System.arraycopy( _bindMarks, 0, marks, 0, _depth );
+        _bindMarks = marks;
+    }
+
+    private void growBindings()
+    {
+        final int len = _bindPrefixes.length * 2;
+
+        final String[] prefixes = new String[ len ];
+        System.arraycopy( _bindPrefixes, 0, prefixes, 0, _bindCount );
+        _bindPrefixes = prefixes;
+
+        final Namespace[] spaces = new Namespace[ len ];
+        System.arraycopy( _bindSpaces, 0, spaces, 0, _bindCount );
+        _bindSpaces = spaces;
+    }
+
+    /**
+     * Symbol table entry for a qualified name, with cached name
+     * resolution.
+     */
+    private static final class Symbol
+    {
+        Symbol( byte[] bytes, int hash, String qName )
+        {
+            this.bytes = bytes;
+            this.hash = hash;
+            this.qName = qName;
+
+            final int c = qName.indexOf( ':' );
+            prefix = ( c < 0 ) ? null : qName.substring( 0, c );
+            local = ( c < 0 ) ? qName : qName.substring( c + 1 );
+        }
+
+        final byte[] bytes;
+        final int hash;
+        final String qName;
+        final String prefix;
+        final String local;
+        Symbol next;
+
+        Namespace tagNS;
+        Tag tag;
+        Namespace attributeNS;
+        Attribute attribute;
+    }
+
+    private static enum State
+    {
+        PROLOG,
+        CONTENT,
+        EPILOG,
+        END
+    }
+
+    private static final int NONE = -2;
+    private static final int STREAM_BUFFER_SIZE = 8 * 1024;
+
+    private static final String XML_IRI =
+        "http://www.w3.org/XML/1998/namespace";
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    // Minimum code point by number of continuation bytes
+    private static final int[] MIN_CODE_POINTS = { 0, 0x80, 0x800, 0x10000 };
+
+    private static final boolean[] NAME_START = new boolean[ 0x80 ];
+    private static final boolean[] NAME_CHAR  = new boolean[ 0x80 ];
+    static {
+        for( int c = 0; c < 0x80; ++c ) {
+            NAME_START[c] = ( ( c >= 'a' && c <= 'z' ) ||
+                              ( c >= 'A' && c <= 'Z' ) ||
+                              c == '_' || c == ':' );
+            NAME_CHAR[c] = ( NAME_START[c] ||
+                             ( c >= '0' && c <= '9' ) ||
+                             c == '-' || c == '.' );
+        }
+    }
+
+    private final NamespaceCache _cache;
+    private final Namespace _xmlNS;
+
+    private InputStream _in = null;
+    private byte[] _streamBuf = null;
+    private byte[] _buf = null;
+    private int _pos = 0;
+    private int _limit = 0;
+    private long _offset = 0;
+
+    private State _state = State.PROLOG;
+    private Event _event = null;
+    private int _markup = NONE;
+    private long _markStart = -1;
+    private boolean _pendingEnd = false;
+    private boolean _spaced = false;
+
+    private char[] _chars = new char[ 1024 ];
+    private int _clen = 0;
+
+    private byte[] _nameBuf = new byte[ 64 ];
+    private Symbol[] _symbols = new Symbol[ 256 ];
+    private int _symbolCount = 0;
+
+    private Tag _tag = null;
+    private Namespace _elementNS = null;
+
+    private Symbol[] _rawNames = new Symbol[ 8 ];
+    private Attribute[] _attrs = new Attribute[ 8 ];
+    private int[] _attrOffsets = new int[ 8 ];
+    private int[] _attrLengths = new int[ 8 ];
+    private int _attrCount = 0;
+
+    private Namespace[] _decls = new Namespace[ 4 ];
+    private int _declCount = 0;
+
+    private Symbol[] _openNames = new Symbol[ 32 ];
+    private Tag[] _openTags = new Tag[ 32 ];
+    private int[] _bindMarks = new int[ 32 ];
+    private int _depth = 0;
+
+    private String[] _bindPrefixes = new String[ 8 ];
+    private Namespace[] _bindSpaces = new Namespace[ 8 ];
+    private int _bindCount = 0;
+}
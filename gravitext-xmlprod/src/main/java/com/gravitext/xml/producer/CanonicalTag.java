@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.producer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Internal buffer of the namespace declarations and attributes of an
+ * open start tag in canonical mode, written in sorted order once the
+ * tag is closed. Namespace declarations are ordered by prefix (the
+ * default namespace first) and attributes by namespace IRI (none
+ * first) and then local name.  Attribute values are encoded into a
+ * shared character buffer, so instances are reused without
+ * per-attribute allocation in the steady state.
+ *
+ * @author David Kellum
+ */
+final class CanonicalTag
+{
+    /**
+     * Construct with encoding modes and version of encoder, for
+     * attribute values.
+     */
+    CanonicalTag( final CharacterEncoder encoder )
+    {
+        _values = new CharacterEncoder( _buffer, encoder.version() );
+        _values.setModeNUL( encoder.modeNUL() );
+        _values.setModeNAC( encoder.modeNAC() );
+        _values.setModeC0( encoder.modeC0() );
+        _values.setModeC1( encoder.modeC1() );
+        _values.setCanonical( true );
+    }
+
+    void addNamespace( final Namespace ns )
+    {
+        _spaces.add( ns );
+    }
+
+    /**
+     * Begin an attribute, returning the encoder for its value.
+     * @param iri namespace IRI or "" for none
+     * @param name local name
+     * @param qName begin literal (leading space, qualified name and
+     * '=')
+     */
+    CharacterEncoder beginAttr( final String iri,
+                                final String name,
+                                final String qName )
+    {
+        if( _count == _attrs.size() ) _attrs.add( new Attr() );
+        final Attr a = _attrs.get( _count++ );
+        a.iri = iri;
+        a.name = name;
+        a.qName = qName;
+        a.start = _buffer.length();
+        return _values;
+    }
+
+    void endAttr()
+    {
+        _attrs.get( _count - 1 ).end = _buffer.length();
+    }
+
+    /**
+     * Write sorted namespace declarations and attributes to out and
+     * reset for the next tag.
+     */
+    void write( final Appendable out ) throws IOException
+    {
+        // Encode IRIs beyond any buffered attribute values
+        final int base = _buffer.length();
+        sortSpaces();
+        for( Namespace ns : _spaces ) {
+            out.append( ns.beginDecl() ).append( '"' );
+            _values.encodeAttrValue( ns.nameIRI() );
+            out.append( _buffer, base, _buffer.length() ).append( '"' );
+            _buffer.setLength( base );
+        }
+        _spaces.clear();
+
+        if( _count > 0 ) {
+            sortAttrs();
+            for( int i = 0; i < _count; ++i ) {
+                final Attr a = _attrs.get( i );
+                out.append( a.qName ).append( '"' );
+                out.append( _buffer, a.start, a.end ).append( '"' );
+                a.iri = a.name = a.qName = null;
+            }
+            _count = 0;
+            _buffer.setLength( 0 );
+        }
+    }
+
+    private void sortSpaces()
+    {
+        // Insertion sort: declarations per tag are few.
+        for( int i = 1, end = _spaces.size(); i < end; ++i ) {
+            final Namespace ns = _spaces.get( i );
+            int j = i;
+            while( ( j > 0 ) &&
+                   ( _spaces.get( j - 1 ).prefix()
+                     .compareTo( ns.prefix() ) > 0 ) ) {
+                _spaces.set( j, _spaces.get( j - 1 ) );
+                --j;
+            }
+            _spaces.set( j, ns );
+        }
+    }
+
+    private void sortAttrs()
+    {
+        for( int i = 1; i < _count; ++i ) {
+            final Attr a = _attrs.get( i );
+            int j = i;
+            while( ( j > 0 ) && ( _attrs.get( j - 1 ).compareTo( a ) > 0 ) ) {
+                _attrs.set( j, _attrs.get( j - 1 ) );
+                --j;
+            }
+            _attrs.set( j, a );
+        }
+    }
+
+    private static final class Attr
+    {
+        int compareTo( final Attr o )
+        {
+            final int c = iri.compareTo( o.iri );
+            return ( c != 0 ) ? c : name.compareTo( o.name );
+        }
+
+        String iri;
+        String name;
+        String qName;
+        int start;
+        int end;
+    }
+
+    private final StringBuilder _buffer = new StringBuilder( 256 );
+    private final CharacterEncoder _values;
+    private final ArrayList<Namespace> _spaces = new ArrayList<Namespace>();
+    private final ArrayList<Attr> _attrs = new ArrayList<Attr>();
+    private int _count = 0;
+}
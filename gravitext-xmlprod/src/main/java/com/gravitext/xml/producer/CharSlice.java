@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.producer;
+
+/**
+ * Immutable CharSequence view over a range of a char array, which is
+ * not copied. Output by CharacterEncoder directly from the
+ * array. Smaller than a String (plus its array) or a CharBuffer, for
+ * large numbers of short texts held over shared arrays. The
+ * creator must not modify the array range after construction.
+ *
+ * @see com.gravitext.xml.tree.CharArena
+ * @author David Kellum
+ */
+public final class CharSlice
+    implements CharSequence
+{
+    /**
+     * Construct view over the specified range of chars.
+     * @throws IndexOutOfBoundsException if the range is not within
+     * chars.
+     */
+    public CharSlice( char[] chars, int offset, int length )
+    {
+        if( ( offset < 0 ) || ( length < 0 ) ||
+            ( offset > chars.length - length ) ) {
+            throw new IndexOutOfBoundsException(
+                "offset: " + offset + " length: " + length );
+        }
+        _chars = chars;
+        _offset = offset;
+        _length = length;
+    }
+
+    public int length()
+    {
+        return _length;
+    }
+
+    public char charAt( int index )
+    {
+        if( ( index < 0 ) || ( index >= _length ) ) {
+            throw new IndexOutOfBoundsException( "index: " + index );
+        }
+        return _chars[ _offset + index ];
+    }
+
+    public CharSequence subSequence( int start, int end )
+    {
+        if( ( start < 0 ) || ( end > _length ) || ( start > end ) ) {
+            throw new IndexOutOfBoundsException(
+                "start: " + start + " end: " + end );
+        }
+        return new CharSlice( _chars, _offset + start, end - start );
+    }
+
+    @Override
+    public String toString()
+    {
+        return new String( _chars, _offset, _length );
+    }
+
+    char[] array()
+    {
+        return _chars;
+    }
+
+    int offset()
+    {
+        return _offset;
+    }
+
+    private final char[] _chars;
+    private final int _offset;
+    private final int _length;
+}
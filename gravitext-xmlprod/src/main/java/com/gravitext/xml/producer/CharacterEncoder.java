@@ -20,9 +20,16 @@ import java.io.IOException;
 import java.io.Writer;
 import java.nio.CharBuffer;
 
+import com.gravitext.util.ResizableCharBuffer;
+
 /**
  * Encodes text as XML character data and attribute values.
  *
+ * <p>Characters are classified via lookup table, with runs of
+ * characters not requiring escape copied in bulk. Encoded output is
+ * staged in a small internal buffer and written to the output
+ * Appendable before returning from each encode method.</p>
+ *
  * @author David Kellum
  */
 public class CharacterEncoder
@@ -85,8 +92,11 @@ public class CharacterEncoder
         if( version == Version.XML_1_1 ) _modeC0 = Mode.ENCODE;
         _version = version;
 
-        _outW = (out instanceof Writer) ? (Writer) out : null;
-        _outA = out;
+        _outW  = (out instanceof Writer) ? (Writer) out : null;
+        _outSB = (out instanceof StringBuilder) ? (StringBuilder) out : null;
+        _outRB = (out instanceof ResizableCharBuffer) ?
+                 (ResizableCharBuffer) out : null;
+        _outA  = out;
     }
 
     /**
@@ -98,6 +108,19 @@ public class CharacterEncoder
         _quoteMark = quote;
     }
 
+    /**
+     * Set canonical encoding, as per Canonical XML 1.0: In character
+     * data, '&amp;', '&lt;', '&gt;' and CR are always escaped. In
+     * attribute values (with DOUBLE quote mark, implied), '&amp;',
+     * '&lt;', '"', TAB, LF and CR are escaped and '&gt;' is not. The
+     * default is false.
+     */
+    public final void setCanonical( boolean canonical )
+    {
+        _canonical = canonical;
+        if( canonical ) _quoteMark = QuoteMark.DOUBLE;
+    }
+
     /**
      * Set the mode for handling a NUL (0) character. This character is not
      * allowed in XML in any form. The default is Mode.ERROR.
@@ -164,6 +187,11 @@ public class CharacterEncoder
         return _modeC1;
     }
 
+    public final boolean isCanonical()
+    {
+        return _canonical;
+    }
+
     public final Appendable output()
     {
         return _outA;
@@ -227,22 +255,8 @@ public class CharacterEncoder
     public final void encodeCharData( final CharSequence in )
         throws IOException
     {
-        if( _outW != null ) {
-            if( in instanceof String ) {
-                encodeString( (String) in, false );
-                return;
-            }
-            if( in instanceof CharBuffer ) {
-                final CharBuffer cb = (CharBuffer) in;
-                if( cb.hasArray() ) {
-                    encodeArray( cb.array(),
-                                 cb.arrayOffset() + cb.position(),
-                                 cb.remaining(), false );
-                    return;
-                }
-            }
-        }
-        encodeCharSequence( in, false );
+        encode( in, _canonical ? CANON_CHAR_DATA_CLASSES :
+                                 CHAR_DATA_CLASSES );
     }
 
     /**
@@ -256,222 +270,557 @@ public class CharacterEncoder
     public final void encodeAttrValue( final CharSequence in )
         throws IOException
     {
-        if( ( in instanceof String ) && ( _outW != null ) ) {
-            encodeString( (String) in, true );
+        encode( in, _canonical ? CANON_ATTR_CLASSES :
+                    ( _quoteMark == QuoteMark.DOUBLE ) ?
+                    ATTR_DOUBLE_CLASSES : ATTR_SINGLE_CLASSES );
+    }
+
+    /**
+     * Writes the decimal representation of value to out, without
+     * intermediate String allocation.  No encoding is required.
+     *
+     * @throws IOException from Appendable out.
+     */
+    public final void encodeLong( final long value )
+        throws IOException
+    {
+        reserve( 20 );
+        _bpos = putLong( _buf, _bpos, value );
+        flushBuffer();
+    }
+
+    /**
+     * Writes a shortest round-trip decimal representation of value to
+     * out, suitable as an xsd:double. Values with up to 17 fractional
+     * and 15 integer digits are written in plain decimal notation
+     * without intermediate String allocation, for example "19.99" or
+     * "-3". Other finite values use Double.toString() scientific
+     * notation. Non-finite values are written as "NaN", "INF" or
+     * "-INF".
+     *
+     * @throws IOException from Appendable out.
+     */
+    public final void encodeDouble( final double value )
+        throws IOException
+    {
+        putReal( value, false );
+        flushBuffer();
+    }
+
+    /**
+     * Writes a shortest round-trip decimal representation of value to
+     * out, suitable as an xsd:float. Values below 2^24 (16777216) are
+     * written in plain decimal notation, as with encodeDouble(). Other
+     * finite values use Float.toString() scientific notation.
+     *
+     * @see #encodeDouble(double)
+     * @throws IOException from Appendable out.
+     */
+    public final void encodeFloat( final float value )
+        throws IOException
+    {
+        putReal( value, true );
+        flushBuffer();
+    }
+
+    /**
+     * Writes the ISO-8601 (xsd:dateTime) UTC representation of the
+     * specified time in milliseconds since the epoch, for example
+     * "2012-11-08T14:30:00Z", or with fractional seconds
+     * "2012-11-08T14:30:00.250Z" when milliseconds are non-zero. No
+     * intermediate objects are allocated.
+     *
+     * @throws IOException from Appendable out.
+     */
+    public final void encodeDateTime( final long epochMillis )
+        throws IOException
+    {
+        long days = epochMillis / MILLIS_PER_DAY;
+        int millis = (int) ( epochMillis % MILLIS_PER_DAY );
+        if( millis < 0 ) {
+            millis += MILLIS_PER_DAY;
+            --days;
+        }
+
+        // Civil date from days since epoch, per H. Hinnant's
+        // "chrono-Compatible Low-Level Date Algorithms".
+        final long z = days + 719468;
+        final long era = ( ( z >= 0 ) ? z : ( z - 146096 ) ) / 146097;
+        final long doe = z - era * 146097;
+        final long yoe = ( doe - doe / 1460 + doe / 36524 - doe / 146096 )
+                         / 365;
+        final long doy = doe - ( 365 * yoe + yoe / 4 - yoe / 100 );
+        final long mp = ( 5 * doy + 2 ) / 153;
+        final int day = (int) ( doy - ( 153 * mp + 2 ) / 5 + 1 );
+        final int month = (int) ( ( mp < 10 ) ? ( mp + 3 ) : ( mp - 9 ) );
+        long year = yoe + era * 400;
+        if( month <= 2 ) ++year;
+
+        reserve( 40 );
+        final char[] b = _buf;
+        int p = _bpos;
+
+        if( year < 0 ) {
+            b[p++] = '-';
+            year = -year;
         }
-        else encodeCharSequence( in, true );
+        if( year < 1000 ) {
+            b[p++] = '0';
+            if( year < 100 ) b[p++] = '0';
+            if( year < 10 ) b[p++] = '0';
+        }
+        p = putLong( b, p, year );
+        b[p++] = '-';
+        p = put2( b, p, month );
+        b[p++] = '-';
+        p = put2( b, p, day );
+        b[p++] = 'T';
+        p = put2( b, p, millis / 3600000 );
+        b[p++] = ':';
+        p = put2( b, p, ( millis / 60000 ) % 60 );
+        b[p++] = ':';
+        p = put2( b, p, ( millis / 1000 ) % 60 );
+        final int ms = millis % 1000;
+        if( ms != 0 ) {
+            b[p++] = '.';
+            b[p++] = (char) ( '0' + ms / 100 );
+            p = put2( b, p, ms % 100 );
+        }
+        b[p++] = 'Z';
+        _bpos = p;
+
+        flushBuffer();
     }
 
-    private final void encodeCharSequence( final CharSequence in,
-                                           final boolean doEncodeQuote )
+    private void encode( final CharSequence in, final byte[] classes )
+        throws IOException
+    {
+        if( in instanceof String ) {
+            encodeString( (String) in, classes );
+        }
+        else if( in instanceof CharSlice ) {
+            final CharSlice cs = (CharSlice) in;
+            encodeArray( cs.array(), cs.offset(), cs.length(), classes );
+        }
+        else if( ( in instanceof CharBuffer ) &&
+                 ( (CharBuffer) in ).hasArray() ) {
+            final CharBuffer cb = (CharBuffer) in;
+            encodeArray( cb.array(),
+                         cb.arrayOffset() + cb.position(),
+                         cb.remaining(),
+                         classes );
+        }
+        else {
+            encodeCharSequence( in, classes );
+        }
+        flushBuffer();
+    }
+
+    private void encodeCharSequence( final CharSequence in,
+                                     final byte[] classes )
         throws IOException
     {
-        int i = 0;
-        int last = 0;
         final int end = in.length();
+        int i = 0;
 
         while( i < end ) {
             final char c = in.charAt( i );
 
-            if( c == 0x09 || c == 0x0A || c == 0x0D ) { // TAB, CR, LF
-                // ignore
-                ++i;
-            }
-            else if( doEncodeQuote && c == _quoteMark.literal ) {
-                _outA.append( in, last, i );
-                _outA.append( _quoteMark.entity );
-                last = ++i;
-            }
-            else if( c == '<' ) {
-                _outA.append( in, last, i );
-                _outA.append( "&lt;" );
-                last = ++i;
+            if( isSafe( c, classes ) ) {
+                put( c );
             }
             // Must encode '>' as "&gt;" when it appears in "]]>"
             // Look back in input to see if required, but if at beginning
             // we must assume a prior putChars() included the ']]'.
-            else if( ( c == '>' ) &&
-                     ( ( i < 1 ) || ( in.charAt( i - 1 ) == ']' ) ) &&
-                     ( ( i < 2 ) || ( in.charAt( i - 2 ) == ']' ) ) ) {
-                _outA.append( in, last, i );
-                _outA.append( "&gt;" );
-                last = ++i;
-            }
-            else if( c == '&' ) {
-                _outA.append( in, last, i );
-                _outA.append( "&amp;" );
-                last = ++i;
+            else if( ( c == '>' ) && ( classes[c] == GT ) &&
+                     ( ( ( i > 0 ) && ( in.charAt( i - 1 ) != ']' ) ) ||
+                       ( ( i > 1 ) && ( in.charAt( i - 2 ) != ']' ) ) ) ) {
+                put( c );
             }
-            else if( c <= 0x1F ) { // Other than TAB, CR, LF
-                _outA.append( in, last, i );
-                handleSpecialChar( (c == 0x0) ? _modeNUL : _modeC0, c, i );
-                last = ++i;
+            else {
+                escape( c, classes, i );
             }
-            else if( c >= 0x7F && c <= 0x9F && c != 0x85 ) { // NEL
-                _outA.append( in, last, i );
-                handleSpecialChar( _modeC1, c, i );
-                last = ++i;
-            }
-            else if( c >= 0xFFFE ) {
-                _outA.append( in, last, i );
-                handleSpecialChar( _modeNAC, c, i );
-                last = ++i;
-            }
-            else ++i; // And ignore everything else.
-        } // while
-        _outA.append( in, last, i );
+            ++i;
+        }
     }
 
-    private final void encodeString( final String in,
-                                     final boolean doEncodeQuote )
+    private void encodeString( final String in, final byte[] classes )
         throws IOException
     {
-        int i = 0;
-        int last = 0;
         final int end = in.length();
+        int i = 0;
 
         while( i < end ) {
-            final char c = in.charAt( i );
-
-            if( c == 0x09 || c == 0x0A || c == 0x0D ) { // TAB, CR, LF
-                // ignore
-                ++i;
-            }
-            else if( doEncodeQuote && c == _quoteMark.literal ) {
-                _outW.write( in, last, i - last );
-                _outW.write( _quoteMark.entity );
-                last = ++i;
-            }
-            else if( c == '<' ) {
-                _outW.write( in, last, i - last );
-                _outW.write( "&lt;" );
-                last = ++i;
-            }
-            // Must encode '>' as "&gt;" when it appears in "]]>"
-            // Look back in input to see if required, but if at beginning
-            // we must assume a prior putChars() included the ']]'.
-            else if( ( c == '>' ) &&
-                     ( ( i < 1 ) || ( in.charAt( i - 1 ) == ']' ) ) &&
-                     ( ( i < 2 ) || ( in.charAt( i - 2 ) == ']' ) ) ) {
-                _outW.write( in, last, i - last );
-                _outW.write( "&gt;" );
-                last = ++i;
-            }
-            else if( c == '&' ) {
-                _outW.write( in, last, i - last );
-                _outW.write( "&amp;" );
-                last = ++i;
+            // Bulk scan and copy the run of safe characters.
+            final int start = i;
+            char c = 0;
+            while( ( i < end ) && isSafe( c = in.charAt( i ), classes ) ) ++i;
+            if( i > start ) putRun( in, start, i );
+            if( i == end ) break;
+
+            // See encodeCharSequence
+            if( ( c == '>' ) && ( classes[c] == GT ) &&
+                ( ( ( i > 0 ) && ( in.charAt( i - 1 ) != ']' ) ) ||
+                  ( ( i > 1 ) && ( in.charAt( i - 2 ) != ']' ) ) ) ) {
+                put( c );
             }
-            else if( c <= 0x1F ) { // Other than TAB, CR, LF
-                _outW.write( in, last, i - last );
-                handleSpecialChar( (c == 0x0) ? _modeNUL : _modeC0, c, i );
-                last = ++i;
+            else {
+                escape( c, classes, i );
             }
-            else if( c >= 0x7F && c <= 0x9F && c != 0x85 ) { // NEL
-                _outW.write( in, last, i - last );
-                handleSpecialChar( _modeC1, c, i );
-                last = ++i;
-            }
-            else if( c >= 0xFFFE ) {
-                _outW.write( in, last, i - last );
-                handleSpecialChar( _modeNAC, c, i );
-                last = ++i;
-            }
-            else ++i; // And ignore everything else.
-        } // while
-        _outW.write( in, last, i - last );
+            ++i;
+        }
     }
 
-    private final void encodeArray( final char[] in,
-                                    final int offset,
-                                    final int length,
-                                    final boolean doEncodeQuote )
+    private void encodeArray( final char[] in,
+                              final int offset,
+                              final int length,
+                              final byte[] classes )
         throws IOException
     {
+        final int end = offset + length;
         int i = offset;
-        int last = i;
-        final int end = i + length;
 
         while( i < end ) {
-            final char c = in[i];
-
-            if( c == 0x09 || c == 0x0A || c == 0x0D ) { // TAB, CR, LF
-                // ignore
-                ++i;
+            // Bulk scan and copy the run of safe characters.
+            final int start = i;
+            char c = 0;
+            while( ( i < end ) && isSafe( c = in[i], classes ) ) ++i;
+            if( i > start ) putRun( in, start, i );
+            if( i == end ) break;
+
+            // See encodeCharSequence
+            if( ( c == '>' ) && ( classes[c] == GT ) &&
+                ( ( ( i > offset ) && ( in[ i - 1 ] != ']' ) ) ||
+                  ( ( i > offset + 1 ) && ( in[ i - 2 ] != ']' ) ) ) ) {
+                put( c );
             }
-            else if( doEncodeQuote && c == _quoteMark.literal ) {
-                _outW.write( in, last, i - last );
-                _outW.write( _quoteMark.entity );
-                last = ++i;
+            else {
+                escape( c, classes, i - offset );
             }
-            else if( c == '<' ) {
-                _outW.write( in, last, i - last );
-                _outW.write( "&lt;" );
-                last = ++i;
-            }
-            // Must encode '>' as "&gt;" when it appears in "]]>"
-            // Look back in input to see if required, but if at beginning
-            // we must assume a prior putChars() included the ']]'.
-            else if( ( c == '>' ) &&
-                     ( ( ( i - offset ) < 1 ) || ( in[ i - 1 ] == ']' ) ) &&
-                     ( ( ( i - offset ) < 2 ) || ( in[ i - 2 ] == ']' ) ) ) {
-                _outW.write( in, last, i - last );
-                _outW.write( "&gt;" );
-                last = ++i;
-            }
-            else if( c == '&' ) {
-                _outW.write( in, last, i - last );
-                _outW.write( "&amp;" );
-                last = ++i;
-            }
-            else if( c <= 0x1F ) { // Other than TAB, CR, LF
-                _outW.write( in, last, i - last );
-                handleSpecialChar( (c == 0x0) ? _modeNUL : _modeC0, c, i );
-                last = ++i;
-            }
-            else if( c >= 0x7F && c <= 0x9F && c != 0x85 ) { // NEL
-                _outW.write( in, last, i - last );
-                handleSpecialChar( _modeC1, c, i );
-                last = ++i;
-            }
-            else if( c >= 0xFFFE ) {
-                _outW.write( in, last, i - last );
-                handleSpecialChar( _modeNAC, c, i );
-                last = ++i;
-            }
-            else ++i; // And ignore everything else.
-        } // while
-        _outW.write( in, last, i - last );
+            ++i;
+        }
     }
 
-    private final void handleSpecialChar( final Mode mode,
-                                          final char c,
-                                          final int pos )
+    private static boolean isSafe( final char c, final byte[] classes )
+    {
+        return ( ( c < CLASS_TABLE_SIZE ) ? ( classes[c] == SAFE ) :
+                                            ( c < 0xFFFE ) );
+    }
+
+    private void escape( final char c, final byte[] classes, final int pos )
+        throws IOException
+    {
+        final int cls = ( c < CLASS_TABLE_SIZE ) ? classes[c] : NAC;
+
+        switch( cls ) {
+        case LT:    put( LT_REF );  break;
+        case GT:
+        case GT_ALL: put( GT_REF ); break;
+        case REF:
+            put( ( c == '\t' ) ? TAB_REF : ( c == '\n' ) ? LF_REF : CR_REF );
+            break;
+        case AMP:   put( AMP_REF ); break;
+        case QUOTE: put( _quoteMark.entity ); break;
+        case NUL:   handleSpecialChar( _modeNUL, c, pos ); break;
+        case C0:    handleSpecialChar( _modeC0,  c, pos ); break;
+        case C1:    handleSpecialChar( _modeC1,  c, pos ); break;
+        default:    handleSpecialChar( _modeNAC, c, pos );
+        }
+    }
+
+    private void handleSpecialChar( final Mode mode,
+                                    final char c,
+                                    final int pos )
         throws IOException
     {
         switch( mode ) {
 
         case ENCODE:
-            _outA.append( "&#x" );
-            if( c > 0xfff ) _outA.append( HEX_DIGITS[( c >>> 12 ) & 0xf] );
-            if( c >  0xff ) _outA.append( HEX_DIGITS[( c >>>  8 ) & 0xf] );
-            if( c >   0xf ) _outA.append( HEX_DIGITS[( c >>>  4 ) & 0xf] );
-                            _outA.append( HEX_DIGITS[( c        ) & 0xf] );
-            _outA.append( ';' );
+            reserve( 8 );
+            final char[] b = _buf;
+            int p = _bpos;
+            b[p++] = '&';
+            b[p++] = '#';
+            b[p++] = 'x';
+            if( c > 0xfff ) b[p++] = HEX_DIGITS[( c >>> 12 ) & 0xf];
+            if( c >  0xff ) b[p++] = HEX_DIGITS[( c >>>  8 ) & 0xf];
+            if( c >   0xf ) b[p++] = HEX_DIGITS[( c >>>  4 ) & 0xf];
+                            b[p++] = HEX_DIGITS[( c        ) & 0xf];
+            b[p++] = ';';
+            _bpos = p;
             break;
 
         case REPLACE:
+            flushBuffer();
             replace( c, pos, _outA );
             break;
 
         case ERROR:
         default:
+            flushBuffer();
             throw new CharacterEncodeException( String.format(
                 "Invalid XML character 0x%04x in input at position %d.",
                 (int) c, pos ) );
         }
     }
 
+    private void putReal( double value, final boolean isFloat )
+        throws IOException
+    {
+        if( value != value ) {
+            put( "NaN" );
+            return;
+        }
+
+        reserve( 40 );
+
+        if( ( value < 0.0 ) ||
+            ( ( value == 0.0 ) && ( 1.0 / value < 0.0 ) ) ) { // -0.0
+            _buf[ _bpos++ ] = '-';
+            value = -value;
+        }
+
+        if( value == Double.POSITIVE_INFINITY ) {
+            put( "INF" );
+            return;
+        }
+
+        // Find the fewest fractional digits k, such that digits *
+        // 10^-k round-trips to value. Since both digits and 10^k are
+        // exact doubles, their quotient is correctly rounded and the
+        // equality test is exact.  (Clinger's fast path) The nearest
+        // digits r are preferred, with r-1 and r+1 only as fallback
+        // for rounding error in the scaling. Floats are limited to
+        // values where each integer is exact, as otherwise a nearby
+        // integer other than r could also round-trip.
+        if( value < ( isFloat ? MAX_PLAIN_FLOAT : MAX_PLAIN ) ) {
+            for( int k = 0; k < POW10.length; ++k ) {
+                final double scaled = value * POW10[k];
+                if( scaled >= MAX_EXACT ) break;
+
+                final double r = Math.rint( scaled );
+                for( int i = 0; i < 3; ++i ) {
+                    final double d = r + CANDIDATE_OFFSETS[i];
+                    if( ( d >= 0.0 ) &&
+                        ( isFloat ? ( (float) ( d / POW10[k] ) == value ) :
+                                    ( d / POW10[k] == value ) ) ) {
+                        _bpos = putDecimal( _buf, _bpos, (long) d, k );
+                        return;
+                    }
+                }
+            }
+        }
+
+        put( isFloat ? Float.toString( (float) value ) :
+                       Double.toString( value ) );
+    }
+
+    /**
+     * Put digits with k fractional digits at p.
+     * @return new position
+     */
+    private static int putDecimal( final char[] b, int p,
+                                   final long digits, final int k )
+    {
+        if( k == 0 ) return putLong( b, p, digits );
+
+        final int len = digitCount( digits );
+        if( len <= k ) {
+            b[p++] = '0';
+            b[p++] = '.';
+            for( int i = len; i < k; ++i ) b[p++] = '0';
+            return putLong( b, p, digits );
+        }
+
+        final int end = putLong( b, p, digits );
+        final int dot = end - k;
+        System.arraycopy( b, dot, b, dot + 1, k );
+        b[dot] = '.';
+        return end + 1;
+    }
+
+    /**
+     * Put decimal value at p.
+     * @return new position
+     */
+    private static int putLong( final char[] b, int p, long value )
+    {
+        if( value < 0 ) {
+            if( value == Long.MIN_VALUE ) {
+                final String min = Long.toString( Long.MIN_VALUE );
+                min.getChars( 0, min.length(), b, p );
+                return p + min.length();
+            }
+            b[p++] = '-';
+            value = -value;
+        }
+
+        final int end = p + digitCount( value );
+        int q = end;
+        while( value >= 10 ) {
+            final long n = value / 10;
+            b[--q] = (char) ( '0' + (int) ( value - n * 10 ) );
+            value = n;
+        }
+        b[--q] = (char) ( '0' + (int) value );
+        return end;
+    }
+
+    /**
+     * Put two digit, zero padded value at p.
+     * @return new position
+     */
+    private static int put2( final char[] b, int p, final int value )
+    {
+        b[p++] = (char) ( '0' + value / 10 );
+        b[p++] = (char) ( '0' + value % 10 );
+        return p;
+    }
+
+    private static int digitCount( final long value )
+    {
+        long bound = 10;
+        for( int d = 1; d < 19; ++d ) {
+            if( value < bound ) return d;
+            bound *= 10;
+        }
+        return 19;
+    }
+
+    private void put( final char c ) throws IOException
+    {
+        if( _bpos == _buf.length ) flushBuffer();
+        _buf[ _bpos++ ] = c;
+    }
+
+    private void put( final char[] chars ) throws IOException
+    {
+        reserve( chars.length );
+        System.arraycopy( chars, 0, _buf, _bpos, chars.length );
+        _bpos += chars.length;
+    }
+
+    private void put( final String str ) throws IOException
+    {
+        final int len = str.length();
+        reserve( len );
+        str.getChars( 0, len, _buf, _bpos );
+        _bpos += len;
+    }
+
+    private void putRun( final String in, int start, final int end )
+        throws IOException
+    {
+        while( start < end ) {
+            if( _bpos == _buf.length ) flushBuffer();
+            final int len = Math.min( end - start, _buf.length - _bpos );
+            in.getChars( start, start + len, _buf, _bpos );
+            _bpos += len;
+            start += len;
+        }
+    }
+
+    private void putRun( final char[] in, int start, final int end )
+        throws IOException
+    {
+        while( start < end ) {
+            if( _bpos == _buf.length ) flushBuffer();
+            final int len = Math.min( end - start, _buf.length - _bpos );
+            System.arraycopy( in, start, _buf, _bpos, len );
+            _bpos += len;
+            start += len;
+        }
+    }
+
+    /**
+     * Insure length chars are available in the buffer, flushing if
+     * necessary. Length must be no greater than BUFFER_SIZE.
+     */
+    private void reserve( final int length ) throws IOException
+    {
+        if( ( _bpos + length ) > _buf.length ) flushBuffer();
+    }
+
+    /**
+     * Write any buffered output to out. The buffer is always flushed
+     * before returning from a public encode method.
+     */
+    private void flushBuffer() throws IOException
+    {
+        if( _bpos > 0 ) {
+            if( _outW != null ) _outW.write( _buf, 0, _bpos );
+            else if( _outSB != null ) _outSB.append( _buf, 0, _bpos );
+            else if( _outRB != null ) _outRB.put( _buf, 0, _bpos );
+            else _outA.append( _bufSeq, 0, _bpos );
+            _bpos = 0;
+        }
+    }
+
+    /**
+     * Return true if this encoder has the default modes for its version,
+     * as set on construction.
+     */
+    final boolean hasDefaultModes()
+    {
+        return ( ( _modeNUL == Mode.ERROR ) &&
+                 ( _modeNAC == Mode.ERROR ) &&
+                 ( _modeC0  == ( ( _version == Version.XML_1_1 ) ?
+                                 Mode.ENCODE : Mode.ERROR ) ) &&
+                 ( _modeC1  == Mode.ENCODE ) );
+    }
+
+    /**
+     * Return true if in contains any characters for which encoding
+     * depends on the NUL, NAC, C0 or C1 modes.
+     */
+    static boolean hasModalChars( final CharSequence in )
+    {
+        final int end = in.length();
+        for( int i = 0; i < end; ++i ) {
+            final char c = in.charAt( i );
+            if( ( c < CLASS_TABLE_SIZE ) ? ( CHAR_DATA_CLASSES[c] >= NUL ) :
+                                           ( c >= 0xFFFE ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] createClasses( final QuoteMark quote )
+    {
+        final byte[] classes = new byte[ CLASS_TABLE_SIZE ];
+
+        classes[0] = NUL;
+        for( int c = 0x01; c <= 0x1F; ++c ) classes[c] = C0;
+        classes[0x09] = classes[0x0A] = classes[0x0D] = SAFE; // TAB, LF, CR
+
+        for( int c = 0x7F; c <= 0x9F; ++c ) classes[c] = C1;
+        classes[0x85] = SAFE; // NEL
+
+        classes['<'] = LT;
+        classes['>'] = GT;
+        classes['&'] = AMP;
+
+        if( quote != null ) classes[ quote.literal ] = QUOTE;
+
+        return classes;
+    }
+
+    private static byte[] createCanonicalClasses( final boolean attr )
+    {
+        final byte[] classes =
+            createClasses( attr ? QuoteMark.DOUBLE : null );
+        classes[0x0D] = REF;
+        if( attr ) {
+            classes[0x09] = classes[0x0A] = REF;
+            classes['>'] = SAFE;
+        }
+        else {
+            classes['>'] = GT_ALL;
+        }
+        return classes;
+    }
+
     /**
      * Write a replacement for c to out. This is called when the mode
      * for the class of characters containing c is Mode.REPLACE. The default
@@ -492,9 +841,16 @@ public class CharacterEncoder
 
     private final Version _version;
     private final Writer _outW;
+    private final StringBuilder _outSB;
+    private final ResizableCharBuffer _outRB;
     private final Appendable _outA;
 
+    private final char[] _buf = new char[ BUFFER_SIZE ];
+    private final CharBuffer _bufSeq = CharBuffer.wrap( _buf );
+    private int _bpos = 0;
+
     private QuoteMark _quoteMark = QuoteMark.DOUBLE;
+    private boolean _canonical = false;
 
     private Mode _modeNUL   = Mode.ERROR;
     private Mode _modeNAC   = Mode.ERROR;
@@ -513,4 +869,58 @@ public class CharacterEncoder
     // thus the ERROR modes are appropriate.
 
     private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final int BUFFER_SIZE = 1024;
+
+    // Character classes, by lookup table for chars below
+    // CLASS_TABLE_SIZE. Above that, only the non-characters (NAC) are
+    // special.
+    private static final byte SAFE  = 0;
+    private static final byte LT    = 1;
+    private static final byte GT    = 2;
+    private static final byte AMP   = 3;
+    private static final byte QUOTE = 4;
+    private static final byte NUL   = 5;
+    private static final byte C0    = 6;
+    private static final byte C1    = 7;
+    private static final byte NAC   = 8;
+    private static final byte GT_ALL = 9;  // '>' regardless of "]]>"
+    private static final byte REF    = 10; // Canonical character reference
+
+    private static final int CLASS_TABLE_SIZE = 0xA0;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    // Exact powers of ten as doubles
+    private static final double[] POW10 = {
+        1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,  1e8,
+        1e9,  1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17 };
+
+    // 2^53: Integers below are exactly representable as doubles
+    private static final double MAX_EXACT = 9007199254740992.0;
+
+    private static final double MAX_PLAIN = 1e15;
+
+    // 2^24: Integers below are exactly representable as floats
+    private static final double MAX_PLAIN_FLOAT = 16777216.0;
+
+    private static final double[] CANDIDATE_OFFSETS = { 0.0, -1.0, 1.0 };
+
+    private static final byte[] CHAR_DATA_CLASSES   = createClasses( null );
+    private static final byte[] ATTR_DOUBLE_CLASSES =
+        createClasses( QuoteMark.DOUBLE );
+    private static final byte[] ATTR_SINGLE_CLASSES =
+        createClasses( QuoteMark.SINGLE );
+
+    private static final byte[] CANON_CHAR_DATA_CLASSES =
+        createCanonicalClasses( false );
+    private static final byte[] CANON_ATTR_CLASSES =
+        createCanonicalClasses( true );
+
+    private static final char[] LT_REF  = "&lt;".toCharArray();
+    private static final char[] GT_REF  = "&gt;".toCharArray();
+    private static final char[] AMP_REF = "&amp;".toCharArray();
+    private static final char[] TAB_REF = "&#x9;".toCharArray();
+    private static final char[] LF_REF  = "&#xA;".toCharArray();
+    private static final char[] CR_REF  = "&#xD;".toCharArray();
 }
@@ -17,6 +17,7 @@
 package com.gravitext.xml.producer;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.w3c.dom.Attr;
 import org.w3c.dom.CDATASection;
@@ -25,7 +26,6 @@ import org.w3c.dom.DocumentFragment;
 import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.w3c.dom.Text;
 
 import com.gravitext.xml.NamespaceCache;
@@ -37,13 +37,25 @@ import com.gravitext.xml.NamespaceCache;
 public final class DOMWalker
 {
     public DOMWalker( XMLProducer producer )
+    {
+        this( producer, new NamespaceCache() );
+    }
+
+    /**
+     * Construct given producer and NamespaceCache, which may be shared
+     * if thread safe.
+     */
+    public DOMWalker( XMLProducer producer, NamespaceCache cache )
     {
         _pd = producer;
+        _cache = cache;
     }
 
     /**
-     * Writes the specified DOM node and its children to the producer by
-     * recursive descent. Only some node types are output:
+     * Writes the specified DOM node and its children to the producer,
+     * walking the DOM iteratively via sibling and parent links, such
+     * that deeply nested documents do not exhaust the thread
+     * stack. Only some node types are output:
      *
      * <ul>
      * <li>Document and DocumentFragment nodes are only descended into.</li>
@@ -57,24 +69,67 @@ public final class DOMWalker
      * <p>Namespace information in the DOM is observed. For best results, enable
      * Namespace processing when constructing the DOM.</p>
      */
-    public void putDOM( final Node node ) throws IOException
+    public void putDOM( final Node root ) throws IOException
     {
-        if( node instanceof Element ) {
-            putElement( node );
-        }
-        else if( ( node instanceof Text ) ||
-                 ( node instanceof CDATASection ) ) {
+        // Tags of open elements, for checked endTag( tag )
+        Tag[] tags = new Tag[ 16 ];
+        int depth = 0;
+
+        Node node = root;
+        while( node != null ) {
+            Node child = null;
+            if( node instanceof Element ) {
+                final Tag tag = startElement( node );
+                child = node.getFirstChild();
+                if( child == null ) {
+                    _pd.endTag( tag );
+                }
+                else {
+                    if( depth == tags.length ) {
+                        tags = Arrays.copyOf( tags, depth * 2 );
+                    }
+                    tags[ depth++ ] = tag;
+                }
+            }
+            else if( ( node instanceof Text ) ||
+                     ( node instanceof CDATASection ) ) {
 
-            _pd.putChars( node.getNodeValue() );
-        }
-        else if( ( node instanceof Document ) ||
-                 ( node instanceof DocumentFragment ) ) {
+                _pd.putChars( node.getNodeValue() );
+            }
+            else if( ( node instanceof Document ) ||
+                     ( node instanceof DocumentFragment ) ) {
+
+                child = node.getFirstChild();
+            }
 
-            putNodeList( node.getChildNodes() );
+            if( child != null ) {
+                node = child;
+                continue;
+            }
+
+            // Advance to the next node in document order within root,
+            // ending parent elements as they are completed.
+            while( true ) {
+                if( node == root ) {
+                    node = null;
+                    break;
+                }
+                final Node sibling = node.getNextSibling();
+                if( sibling != null ) {
+                    node = sibling;
+                    break;
+                }
+                node = node.getParentNode();
+                if( node instanceof Element ) {
+                    final Tag tag = tags[ --depth ];
+                    tags[ depth ] = null;
+                    _pd.endTag( tag );
+                }
+            }
         }
     }
 
-    private void putElement( final Node node ) throws IOException
+    private Tag startElement( final Node node ) throws IOException
     {
         final Namespace ns =
             _cache.namespace( node.getPrefix(), node.getNamespaceURI() );
@@ -107,11 +162,7 @@ public final class DOMWalker
                 _pd.addAttr( attr, dattr.getValue() );
             }
         }
-
-        // Add Contents
-        putNodeList( node.getChildNodes() );
-
-        _pd.endTag( tag );
+        return tag;
     }
 
     private String lname( Node node )
@@ -121,17 +172,8 @@ public final class DOMWalker
         return name;
     }
 
-    private void putNodeList( final NodeList list ) throws IOException
-    {
-        final int end = list.getLength();
-
-        for( int i = 0; i < end; ++i ) {
-            putDOM( list.item( i ) );
-        }
-    }
-
     private static final String XMLNS_200_URI = "http://www.w3.org/2000/xmlns/";
 
-    private final NamespaceCache _cache = new NamespaceCache();
+    private final NamespaceCache _cache;
     private final XMLProducer _pd;
 }
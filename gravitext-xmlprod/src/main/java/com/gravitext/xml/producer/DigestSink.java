@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.producer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+/**
+ * Output sink which updates a MessageDigest with the UTF-8 bytes of
+ * written characters, as they are encoded. The serialized form, for
+ * example of a canonical XMLProducer, is thus hashed without being
+ * materialized as a String or byte array. Not thread safe.
+ *
+ * @author David Kellum
+ */
+public final class DigestSink implements UTF8Writer.BufferHandler
+{
+    /**
+     * Construct given digest and a default buffer size.
+     */
+    public DigestSink( final MessageDigest digest )
+    {
+        this( digest, 8 * 1024 );
+    }
+
+    /**
+     * Construct given digest and the size in bytes of the encode
+     * buffer.
+     */
+    public DigestSink( final MessageDigest digest, final int bufferSize )
+    {
+        _digest = digest;
+        _writer = new UTF8Writer( this, bufferSize );
+    }
+
+    /**
+     * Return the writer to use as output, for example of an
+     * XMLProducer.
+     */
+    public UTF8Writer writer()
+    {
+        return _writer;
+    }
+
+    public void filled( final ByteBuffer buffer )
+    {
+        _length += buffer.remaining();
+        _digest.update( buffer );
+        _writer.recycle( buffer );
+    }
+
+    /**
+     * Return the number of bytes digested so far, excluding any
+     * still buffered by the writer.
+     */
+    public long length()
+    {
+        return _length;
+    }
+
+    /**
+     * Complete output of the writer, and return the digest of all
+     * bytes written. The digest and length are then reset for reuse.
+     */
+    public byte[] digest() throws IOException
+    {
+        _writer.close();
+        _length = 0;
+        return _digest.digest();
+    }
+
+    private final MessageDigest _digest;
+    private final UTF8Writer _writer;
+    private long _length = 0;
+}
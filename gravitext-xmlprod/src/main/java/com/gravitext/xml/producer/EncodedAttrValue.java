@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.producer;
+
+import java.io.IOException;
+
+import com.gravitext.xml.producer.CharacterEncoder.QuoteMark;
+
+/**
+ * Immutable attribute value, encoded once on construction for a
+ * specific QuoteMark and Version, for repeated verbatim output via
+ * {@link XMLProducer#addAttr(Attribute, EncodedAttrValue)}. If the
+ * producer's CharacterEncoder is not compatible with the encoding
+ * done on construction, the original value is instead encoded on
+ * output.
+ *
+ * @author David Kellum
+ */
+public final class EncodedAttrValue
+{
+    /**
+     * Construct and encode value for the DOUBLE QuoteMark, XML 1.0
+     * and default modes.
+     * @throws IllegalArgumentException if value can not be encoded.
+     */
+    public EncodedAttrValue( final CharSequence value )
+    {
+        this( value, QuoteMark.DOUBLE, Version.XML_1_0 );
+    }
+
+    /**
+     * Construct and encode value for the specified QuoteMark, XML 1.0
+     * and default modes.
+     * @throws IllegalArgumentException if value can not be encoded.
+     */
+    public EncodedAttrValue( final CharSequence value,
+                             final QuoteMark quote )
+    {
+        this( value, quote, Version.XML_1_0 );
+    }
+
+    /**
+     * Construct and encode value for the specified QuoteMark, XML
+     * version and default modes.
+     * @throws IllegalArgumentException if value can not be encoded.
+     */
+    public EncodedAttrValue( final CharSequence value,
+                             final QuoteMark quote,
+                             final Version version )
+    {
+        if( value == null ) throw new NullPointerException( "value" );
+
+        _value = value.toString();
+        _quoteMark = quote;
+        _version = version;
+        _modal = CharacterEncoder.hasModalChars( _value );
+
+        final StringBuilder out = new StringBuilder( _value.length() + 16 );
+        try {
+            final CharacterEncoder enc = new CharacterEncoder( out, version );
+            enc.setQuoteMark( quote );
+            enc.encodeAttrValue( _value );
+        }
+        catch( IOException e ) {
+            throw new IllegalArgumentException( e.getMessage() );
+        }
+        _encoded = out.toString();
+    }
+
+    /**
+     * Return the original (unencoded) value.
+     */
+    public String value()
+    {
+        return _value;
+    }
+
+    /**
+     * Return the encoded value, excluding surrounding quotes.
+     */
+    public String encoded()
+    {
+        return _encoded;
+    }
+
+    public QuoteMark quoteMark()
+    {
+        return _quoteMark;
+    }
+
+    public Version version()
+    {
+        return _version;
+    }
+
+    /**
+     * Return the original value.
+     */
+    @Override
+    public String toString()
+    {
+        return _value;
+    }
+
+    /**
+     * Return true if the encoded value is valid as output of encoder.
+     */
+    boolean isCompatible( final CharacterEncoder encoder )
+    {
+        return ( !encoder.isCanonical() &&
+                 ( encoder.quoteMark() == _quoteMark ) &&
+                 ( !_modal || ( ( encoder.version() == _version ) &&
+                                encoder.hasDefaultModes() ) ) );
+    }
+
+    private final String _value;
+    private final String _encoded;
+    private final QuoteMark _quoteMark;
+    private final Version _version;
+    private final boolean _modal;
+}
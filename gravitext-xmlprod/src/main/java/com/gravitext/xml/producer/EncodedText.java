@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.producer;
+
+import java.io.IOException;
+
+/**
+ * Immutable character data, encoded once on construction for
+ * repeated verbatim output via {@link XMLProducer#putChars(EncodedText)}.
+ * If the producer's CharacterEncoder is not compatible with the
+ * encoding done on construction, the original text is instead
+ * encoded on output.
+ *
+ * @author David Kellum
+ */
+public final class EncodedText
+{
+    /**
+     * Construct and encode text for XML 1.0 with default modes.
+     * @throws IllegalArgumentException if text can not be encoded.
+     */
+    public EncodedText( final CharSequence text )
+    {
+        this( text, Version.XML_1_0 );
+    }
+
+    /**
+     * Construct and encode text for the specified XML version with
+     * default modes.
+     * @throws IllegalArgumentException if text can not be encoded.
+     */
+    public EncodedText( final CharSequence text, final Version version )
+    {
+        if( text == null ) throw new NullPointerException( "text" );
+
+        _text = text.toString();
+        _version = version;
+        _modal = CharacterEncoder.hasModalChars( _text );
+
+        final StringBuilder out = new StringBuilder( _text.length() + 16 );
+        try {
+            new CharacterEncoder( out, version ).encodeCharData( _text );
+        }
+        catch( IOException e ) {
+            throw new IllegalArgumentException( e.getMessage() );
+        }
+        _encoded = out.toString();
+    }
+
+    /**
+     * Return the original (unencoded) text.
+     */
+    public String text()
+    {
+        return _text;
+    }
+
+    /**
+     * Return the encoded text.
+     */
+    public String encoded()
+    {
+        return _encoded;
+    }
+
+    public Version version()
+    {
+        return _version;
+    }
+
+    /**
+     * Return the original text.
+     */
+    @Override
+    public String toString()
+    {
+        return _text;
+    }
+
+    /**
+     * Return true if the encoded text is valid as output of encoder.
+     */
+    boolean isCompatible( final CharacterEncoder encoder )
+    {
+        return ( !encoder.isCanonical() &&
+                 ( !_modal || ( ( encoder.version() == _version ) &&
+                                encoder.hasDefaultModes() ) ) );
+    }
+
+    private final String _text;
+    private final String _encoded;
+    private final Version _version;
+    private final boolean _modal;
+}
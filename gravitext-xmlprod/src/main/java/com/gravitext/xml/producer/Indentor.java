@@ -64,23 +64,39 @@ public final class Indentor
      */
     public Indentor( final String indent, final String lineSeparator )
     {
+        this( indent, lineSeparator, DEFAULT_CACHE_DEPTH );
+    }
+
+    /**
+     * Construct Indentor as above, pre-rendering the line separator
+     * and indentation for levels 0 through cacheDepth. Deeper levels
+     * are rendered on each indent().
+     */
+    public Indentor( final String indent,
+                     final String lineSeparator,
+                     final int cacheDepth )
+    {
+        if( cacheDepth < 0 ) {
+            throw new IllegalArgumentException( "cacheDepth < 0" );
+        }
         _indent = indent;
-        _lineSeparator = lineSeparator;
 
         if( _indent == null ) {
             _indentSize = -1;
-            _indents = null;
+            _lines = new String[0];
         }
         else {
             _indentSize = _indent.length();
+            _lines = new String[ cacheDepth + 1 ];
             StringBuilder b =
-                new StringBuilder( _lineSeparator.length() +
-                                   _indentSize * CACHE_INDENTS );
-            b.append( _lineSeparator );
-            if( _indentSize > 0 ) {
-                for( int i = 0; i < CACHE_INDENTS; ++i ) b.append( _indent );
+                new StringBuilder( lineSeparator.length() +
+                                   _indentSize * cacheDepth );
+            b.append( lineSeparator );
+            for( int i = 0; i <= cacheDepth; ++i ) {
+                _lines[ i ] = ( _indentSize == 0 && i > 0 ) ?
+                    _lines[ 0 ] : b.toString();
+                b.append( _indent );
             }
-            _indents = b.toString();
         }
     }
 
@@ -102,25 +118,38 @@ public final class Indentor
         return ( _indentSize == 0 );
     }
 
+    /**
+     * Append line separator and indentation for level to out, or
+     * nothing if compressed.
+     */
     public void indent( final Appendable out, final int level )
         throws IOException
     {
-        if( _indentSize == 0 ) { out.append( _lineSeparator ); }
-        else if( _indentSize > 0 ) {
-            int olev = Math.min( level, CACHE_INDENTS );
-            out.append( _indents, 0,
-                        _lineSeparator.length() + ( olev * _indentSize ) );
-            while( olev < level ) { //Remainder
-                out.append( _indent );
-                ++olev;
+        if( level < _lines.length ) out.append( _lines[ level ] );
+        else if( _indentSize >= 0 ) {
+            int olev = _lines.length - 1;
+            out.append( _lines[ olev ] );
+            if( _indentSize > 0 ) {
+                while( olev < level ) { //Remainder
+                    out.append( _indent );
+                    ++olev;
+                }
             }
         }
     }
 
+    /**
+     * Return the pre-rendered line separator and indentation strings,
+     * by level. Empty if compressed.
+     */
+    String[] lines()
+    {
+        return _lines;
+    }
+
     private final int _indentSize;
     private final String _indent;
-    private final String _lineSeparator;
-    private final String _indents;
+    private final String[] _lines;
 
-    private static final int CACHE_INDENTS = 32;
+    private static final int DEFAULT_CACHE_DEPTH = 32;
 }
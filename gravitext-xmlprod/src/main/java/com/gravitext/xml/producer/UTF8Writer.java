@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.producer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.gravitext.util.ResizableByteBuffer;
+
+/**
+ * Unsynchronized Writer which encodes characters as UTF-8 bytes
+ * directly to a ResizableByteBuffer, WritableByteChannel,
+ * OutputStream or BufferHandler.  This
+ * avoids the intermediate char buffering and CharsetEncoder of an
+ * OutputStreamWriter. When used as output of a CharacterEncoder or
+ * XMLProducer, escaped character data is thus encoded to wire bytes
+ * in a single pass.
+ *
+ * <p>Encoded bytes are accumulated in an internal buffer and written
+ * to the output when the high-water mark (by default, the buffer
+ * size) is reached, or on flush() or close(). A lower high-water mark
+ * reduces latency to the first byte written, for example to a
+ * socket, without a flush() per write. Unpaired surrogate characters
+ * are replaced with '?', as with OutputStreamWriter.</p>
+ *
+ * @author David Kellum
+ */
+public final class UTF8Writer extends Writer
+{
+    /**
+     * Receiver of filled buffers, for asynchronous (non-blocking)
+     * output.
+     */
+    public interface BufferHandler
+    {
+        /**
+         * Take ownership of a buffer of encoded bytes, ready to
+         * read. The handler should not block, but may for example
+         * queue the buffer for asynchronous writing, and then return
+         * it via UTF8Writer.recycle() once written.
+         */
+        void filled( ByteBuffer buffer ) throws IOException;
+    }
+
+    /**
+     * Construct given ResizableByteBuffer output and default buffer size.
+     */
+    public UTF8Writer( final ResizableByteBuffer out )
+    {
+        this( out, null, null, null, DEFAULT_BUFFER_SIZE );
+    }
+
+    /**
+     * Construct given (blocking) WritableByteChannel output and
+     * default buffer size.
+     */
+    public UTF8Writer( final WritableByteChannel out )
+    {
+        this( null, out, null, null, DEFAULT_BUFFER_SIZE );
+    }
+
+    /**
+     * Construct given (blocking) WritableByteChannel output and the
+     * size in bytes of the internal buffer.
+     */
+    public UTF8Writer( final WritableByteChannel out, final int bufferSize )
+    {
+        this( null, out, null, null, bufferSize );
+    }
+
+    /**
+     * Construct given OutputStream output and the size in bytes of
+     * the internal buffer.
+     */
+    public UTF8Writer( final OutputStream out, final int bufferSize )
+    {
+        this( null, null, out, null, bufferSize );
+    }
+
+    /**
+     * Construct given BufferHandler output and the size in bytes of
+     * each buffer. Each filled buffer is passed to the handler and
+     * encoding continues in a recycled or new buffer.
+     * @see #recycle(ByteBuffer)
+     */
+    public UTF8Writer( final BufferHandler out, final int bufferSize )
+    {
+        this( null, null, null, out, bufferSize );
+    }
+
+    private UTF8Writer( final ResizableByteBuffer buffer,
+                        final WritableByteChannel channel,
+                        final OutputStream stream,
+                        final BufferHandler handler,
+                        final int bufferSize )
+    {
+        if( bufferSize < MIN_BUFFER_SIZE ) {
+            throw new IllegalArgumentException(
+                "bufferSize must be at least " + MIN_BUFFER_SIZE );
+        }
+        _buffer = buffer;
+        _channel = channel;
+        _stream = stream;
+        _handler = handler;
+        _free = ( handler != null ) ?
+            new ConcurrentLinkedQueue<byte[]>() : null;
+        _b = new byte[ bufferSize ];
+        _limit = bufferSize;
+    }
+
+    /**
+     * Set the number of buffered bytes at which they are written to
+     * the output. Default and maximum: the buffer size.
+     */
+    public void setHighWaterMark( final int bytes )
+    {
+        if( bytes < MIN_BUFFER_SIZE || bytes > _b.length ) {
+            throw new IllegalArgumentException(
+                "High-water mark must be in range [" + MIN_BUFFER_SIZE +
+                "," + _b.length + "]" );
+        }
+        _limit = bytes;
+    }
+
+    /**
+     * Return a buffer previously passed to a BufferHandler, for reuse
+     * by this writer. May be called from any thread.
+     */
+    public void recycle( final ByteBuffer buffer )
+    {
+        if( ( _free != null ) && buffer.hasArray() &&
+            ( buffer.array().length == _b.length ) ) {
+            _free.add( buffer.array() );
+        }
+    }
+
+    @Override
+    public void write( final int c ) throws IOException
+    {
+        _chars[0] = (char) c;
+        encode( _chars, 0, 1 );
+    }
+
+    @Override
+    public void write( final char[] src ) throws IOException
+    {
+        encode( src, 0, src.length );
+    }
+
+    @Override
+    public void write( final char[] src, final int offset, final int length )
+        throws IOException
+    {
+        encode( src, offset, offset + length );
+    }
+
+    @Override
+    public void write( final String str ) throws IOException
+    {
+        write( str, 0, str.length() );
+    }
+
+    @Override
+    public void write( final String str, int offset, final int length )
+        throws IOException
+    {
+        final char[] chars = _chars;
+        final int end = offset + length;
+        while( offset < end ) {
+            final int clen = Math.min( end - offset, chars.length );
+            str.getChars( offset, offset + clen, chars, 0 );
+            encode( chars, 0, clen );
+            offset += clen;
+        }
+    }
+
+    @Override
+    public UTF8Writer append( final char c ) throws IOException
+    {
+        write( c );
+        return this;
+    }
+
+    @Override
+    public UTF8Writer append( final CharSequence csq ) throws IOException
+    {
+        return append( csq, 0, csq.length() );
+    }
+
+    @Override
+    public UTF8Writer append( final CharSequence csq,
+                              int start,
+                              final int end )
+        throws IOException
+    {
+        if( csq instanceof String ) {
+            write( (String) csq, start, end - start );
+        }
+        else {
+            final char[] chars = _chars;
+            while( start < end ) {
+                final int clen = Math.min( end - start, chars.length );
+                for( int i = 0; i < clen; ++i ) {
+                    chars[i] = csq.charAt( start++ );
+                }
+                encode( chars, 0, clen );
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Write any buffered bytes to the output. A trailing high
+     * surrogate remains pending the next write.
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        _pos = drain( _pos, _limit );
+        if( _stream != null ) _stream.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     * Any pending high surrogate is written as a replacement.  Closes
+     * any output channel or stream. A ResizableByteBuffer output is
+     * retained and can be accessed after close.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if( _high != 0 ) {
+            _high = 0;
+            _pos = drain( _pos, 1 );
+            _b[ _pos++ ] = REPLACEMENT;
+        }
+        flush();
+        if( _channel != null ) _channel.close();
+        if( _stream != null ) _stream.close();
+    }
+
+    /**
+     * Return the ResizableByteBuffer output or null if constructed with
+     * a WritableByteChannel.
+     */
+    public ResizableByteBuffer buffer()
+    {
+        return _buffer;
+    }
+
+    private void encode( final char[] in, int i, final int end )
+        throws IOException
+    {
+        byte[] b = _b;
+        int p = _pos;
+
+        if( ( _high != 0 ) && ( i < end ) ) {
+            p = drain( p, 4 );
+            b = _b;
+            p = encodePair( b, p, _high, in[i] );
+            if( in[i] >= 0xDC00 && in[i] <= 0xDFFF ) ++i;
+            _high = 0;
+        }
+
+        while( i < end ) {
+            final char c = in[i];
+
+            if( c < 0x80 ) {
+                if( p >= _limit ) {
+                    p = drain( p, 1 );
+                    b = _b;
+                }
+                b[p++] = (byte) c;
+                ++i;
+            }
+            else {
+                p = drain( p, 4 );
+                b = _b;
+
+                if( c < 0x800 ) {
+                    b[p++] = (byte) ( 0xC0 | ( c >> 6 ) );
+                    b[p++] = (byte) ( 0x80 | ( c & 0x3F ) );
+                    ++i;
+                }
+                else if( c < 0xD800 || c > 0xDFFF ) {
+                    b[p++] = (byte) ( 0xE0 | ( c >> 12 ) );
+                    b[p++] = (byte) ( 0x80 | ( ( c >> 6 ) & 0x3F ) );
+                    b[p++] = (byte) ( 0x80 | ( c & 0x3F ) );
+                    ++i;
+                }
+                else if( c <= 0xDBFF ) { // high surrogate
+                    if( ++i < end ) {
+                        p = encodePair( b, p, c, in[i] );
+                        if( in[i] >= 0xDC00 && in[i] <= 0xDFFF ) ++i;
+                    }
+                    else _high = c; // Await low surrogate in next write
+                }
+                else { // Unpaired low surrogate
+                    b[p++] = REPLACEMENT;
+                    ++i;
+                }
+            }
+        }
+        _pos = p;
+    }
+
+    /**
+     * Encode high surrogate and following char c2 at p, if c2 is a
+     * low surrogate, or replacement for the unpaired high surrogate
+     * otherwise (leaving c2 for the caller.)
+     */
+    private static int encodePair( final byte[] b, int p,
+                                   final char high, final char c2 )
+    {
+        if( c2 >= 0xDC00 && c2 <= 0xDFFF ) {
+            final int cp = 0x10000 + ( ( high - 0xD800 ) << 10 ) +
+                                     ( c2 - 0xDC00 );
+            b[p++] = (byte) ( 0xF0 | ( cp >> 18 ) );
+            b[p++] = (byte) ( 0x80 | ( ( cp >> 12 ) & 0x3F ) );
+            b[p++] = (byte) ( 0x80 | ( ( cp >> 6 ) & 0x3F ) );
+            b[p++] = (byte) ( 0x80 | ( cp & 0x3F ) );
+        }
+        else {
+            b[p++] = REPLACEMENT;
+        }
+        return p;
+    }
+
+    /**
+     * Write buffered bytes [0,p) to output if less than required
+     * bytes remain below the high-water mark. With a BufferHandler,
+     * _b is replaced.
+     * @return the new buffer position
+     */
+    private int drain( final int p, final int required ) throws IOException
+    {
+        if( ( _limit - p ) >= required ) return p;
+
+        if( p > 0 ) {
+            if( _channel != null ) {
+                final ByteBuffer bb = ByteBuffer.wrap( _b, 0, p );
+                while( bb.hasRemaining() ) _channel.write( bb );
+            }
+            else if( _stream != null ) {
+                _stream.write( _b, 0, p );
+            }
+            else if( _handler != null ) {
+                final ByteBuffer bb = ByteBuffer.wrap( _b, 0, p );
+                final byte[] next = _free.poll();
+                _b = ( next != null ) ? next : new byte[ _b.length ];
+                _handler.filled( bb );
+            }
+            else {
+                _buffer.put( _b, 0, p );
+            }
+        }
+        return 0;
+    }
+
+    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+    private static final int MIN_BUFFER_SIZE = 16;
+    private static final byte REPLACEMENT = '?';
+
+    private final ResizableByteBuffer _buffer;
+    private final WritableByteChannel _channel;
+    private final OutputStream _stream;
+    private final BufferHandler _handler;
+    private final ConcurrentLinkedQueue<byte[]> _free;
+
+    private byte[] _b;
+    private int _limit;
+    private int _pos = 0;
+    private char _high = 0;
+
+    private final char[] _chars = new char[ 512 ];
+}
@@ -17,6 +17,7 @@
 package com.gravitext.xml.producer;
 
 import java.io.IOException;
+import java.util.Date;
 
 import com.gravitext.xml.NamespaceCache;
 
@@ -65,6 +66,59 @@ public final class XMLProducer
         return this;
     }
 
+    /**
+     * Set whether well-formed document constraints are checked. The
+     * default is true. When false, state transitions, attribute and
+     * namespace placement, and end tag matching are not validated,
+     * and an invalid sequence of events yields malformed output
+     * instead of an IllegalStateException. Only for callers, such as
+     * generated code, known to produce valid event sequences.
+     */
+    public XMLProducer setChecked( final boolean checked )
+    {
+        _impl.setChecked( checked );
+        return this;
+    }
+
+    /**
+     * Set canonical output, as per Canonical XML 1.0 (without
+     * comments) with exclusive namespace declarations. Must be set
+     * before any output. In canonical mode:
+     * <ul>
+     * <li>The XML declaration, DTD and comments are omitted.</li>
+     * <li>Output is COMPRESSED; any Indentor is ignored.</li>
+     * <li>Empty elements are output as a start and end tag pair.</li>
+     * <li>Namespaces are declared only on the element whose tag or
+     * attributes use them, if not already in scope, ignoring
+     * addNamespace(). Declarations are sorted by prefix.</li>
+     * <li>Attributes are sorted by namespace IRI, then local name,
+     * with double quotes.</li>
+     * <li>Character data and attribute values are escaped as per
+     * CharacterEncoder.setCanonical(). EncodedText,
+     * EncodedAttrValue constants are re-encoded and XMLTemplates
+     * can not be used.</li>
+     * </ul>
+     * Attributes of the current start tag are buffered until it is
+     * closed; otherwise output remains a single streaming pass.
+     */
+    public XMLProducer setCanonical( final boolean canonical )
+    {
+        _impl.setCanonical( canonical );
+        return this;
+    }
+
+    /**
+     * Set the NamespaceCache used to resolve Tags by name in the
+     * startTag(String,Namespace) and endTag(String,Namespace)
+     * methods. The default is a new, private cache.
+     * @see com.gravitext.xml.ConcurrentNamespaceCache
+     */
+    public XMLProducer setNamespaceCache( final NamespaceCache cache )
+    {
+        _cache = cache;
+        return this;
+    }
+
     /**
      * Put a XML declaration in the prolog, with the specified
      * encoding declaration, before the document element is started.
@@ -150,6 +204,22 @@ public final class XMLProducer
         return this;
     }
 
+    /**
+     * Put attribute with pre-encoded value on previous start tag. The
+     * encoded value is output verbatim when compatible with this
+     * producer's CharacterEncoder. It is the callers responsibility to
+     * avoid writing the same attribute more than once to a single tag.
+     * @throws IllegalStateException if not called after startTag().
+     * @throws IOException from the underlying Appendable.
+     */
+    public XMLProducer addAttr( final Attribute attr,
+                                final EncodedAttrValue value )
+        throws IOException
+    {
+        _impl.addAttr( attr, value );
+        return this;
+    }
+
     /**
      * Put attribute with short value on previous start tag. It is the
      * callers responsibility to avoid writing the same attribute more
@@ -161,7 +231,8 @@ public final class XMLProducer
                                 final short value )
         throws IOException
     {
-        _impl.addAttr( attr, Short.toString( value ), false );
+        _impl.beginAttr( attr ).encodeLong( value );
+        _impl.endAttr();
         return this;
     }
 
@@ -176,7 +247,8 @@ public final class XMLProducer
                                 final int value )
         throws IOException
     {
-        _impl.addAttr( attr, Integer.toString( value ), false );
+        _impl.beginAttr( attr ).encodeLong( value );
+        _impl.endAttr();
         return this;
     }
 
@@ -191,7 +263,75 @@ public final class XMLProducer
                                 final long value )
         throws IOException
     {
-        _impl.addAttr( attr, Long.toString( value ), false );
+        _impl.beginAttr( attr ).encodeLong( value );
+        _impl.endAttr();
+        return this;
+    }
+
+    /**
+     * Put attribute with double value on previous start tag. See
+     * CharacterEncoder.encodeDouble() for the format. It is the
+     * callers responsibility to avoid writing the same attribute more
+     * than once to a single tag.
+     * @throws IllegalStateException if not called after startTag().
+     * @throws IOException from the underlying Appendable.
+     */
+    public XMLProducer addAttr( final Attribute attr,
+                                final double value )
+        throws IOException
+    {
+        _impl.beginAttr( attr ).encodeDouble( value );
+        _impl.endAttr();
+        return this;
+    }
+
+    /**
+     * Put attribute with float value on previous start tag. See
+     * CharacterEncoder.encodeFloat() for the format. It is the
+     * callers responsibility to avoid writing the same attribute more
+     * than once to a single tag.
+     * @throws IllegalStateException if not called after startTag().
+     * @throws IOException from the underlying Appendable.
+     */
+    public XMLProducer addAttr( final Attribute attr,
+                                final float value )
+        throws IOException
+    {
+        _impl.beginAttr( attr ).encodeFloat( value );
+        _impl.endAttr();
+        return this;
+    }
+
+    /**
+     * Put attribute with Date value on previous start tag. The Date is
+     * written in ISO-8601 (xsd:dateTime) UTC format. It is the
+     * callers responsibility to avoid writing the same attribute more
+     * than once to a single tag.
+     * @throws IllegalStateException if not called after startTag().
+     * @throws IOException from the underlying Appendable.
+     */
+    public XMLProducer addAttr( final Attribute attr,
+                                final Date value )
+        throws IOException
+    {
+        return addDateTimeAttr( attr, value.getTime() );
+    }
+
+    /**
+     * Put attribute with a date-time value, given as milliseconds
+     * since the epoch, on previous start tag. The value is written in
+     * ISO-8601 (xsd:dateTime) UTC format, without an intermediate
+     * Date. It is the callers responsibility to avoid writing the
+     * same attribute more than once to a single tag.
+     * @throws IllegalStateException if not called after startTag().
+     * @throws IOException from the underlying Appendable.
+     */
+    public XMLProducer addDateTimeAttr( final Attribute attr,
+                                        final long epochMillis )
+        throws IOException
+    {
+        _impl.beginAttr( attr ).encodeDateTime( epochMillis );
+        _impl.endAttr();
         return this;
     }
 
@@ -228,6 +368,23 @@ public final class XMLProducer
         return this;
     }
 
+    /**
+     * Put default namespace attribute name with pre-encoded value on
+     * previous start tag. The encoded value is output verbatim when
+     * compatible with this producer's CharacterEncoder. It is the
+     * callers responsibility to avoid writing the same attribute more
+     * than once to a single tag.
+     * @throws IllegalStateException if not called after startTag().
+     * @throws IOException from the underlying Appendable.
+     */
+    public XMLProducer addAttr( final String name,
+                                final EncodedAttrValue value )
+        throws IOException
+    {
+        _impl.addAttr( name, value );
+        return this;
+    }
+
     /**
      * Put default namespace attribute name with short value on
      * previous start tag. It is the callers responsibility to avoid
@@ -239,7 +396,8 @@ public final class XMLProducer
                                 final short value )
         throws IOException
     {
-        _impl.addAttr( name, Short.toString( value ), false );
+        _impl.beginAttr( name ).encodeLong( value );
+        _impl.endAttr();
         return this;
     }
 
@@ -254,7 +412,8 @@ public final class XMLProducer
                                 final int value )
         throws IOException
     {
-        _impl.addAttr( name, Integer.toString( value ), false );
+        _impl.beginAttr( name ).encodeLong( value );
+        _impl.endAttr();
         return this;
     }
 
@@ -269,7 +428,76 @@ public final class XMLProducer
                                 final long value )
         throws IOException
     {
-        _impl.addAttr( name, Long.toString( value ), false );
+        _impl.beginAttr( name ).encodeLong( value );
+        _impl.endAttr();
+        return this;
+    }
+
+    /**
+     * Put default namespace attribute name with double value on previous
+     * start tag. See CharacterEncoder.encodeDouble() for the format. It
+     * is the callers responsibility to avoid writing the same attribute
+     * more than once to a single tag.
+     * @throws IllegalStateException if not called after startTag().
+     * @throws IOException from the underlying Appendable.
+     */
+    public XMLProducer addAttr( final String name,
+                                final double value )
+        throws IOException
+    {
+        _impl.beginAttr( name ).encodeDouble( value );
+        _impl.endAttr();
+        return this;
+    }
+
+    /**
+     * Put default namespace attribute name with float value on previous
+     * start tag. See CharacterEncoder.encodeFloat() for the format. It
+     * is the callers responsibility to avoid writing the same attribute
+     * more than once to a single tag.
+     * @throws IllegalStateException if not called after startTag().
+     * @throws IOException from the underlying Appendable.
+     */
+    public XMLProducer addAttr( final String name,
+                                final float value )
+        throws IOException
+    {
+        _impl.beginAttr( name ).encodeFloat( value );
+        _impl.endAttr();
+        return this;
+    }
+
+    /**
+     * Put default namespace attribute name with Date value on previous
+     * start tag. The Date is written in ISO-8601 (xsd:dateTime) UTC
+     * format. It is the callers responsibility to avoid writing the same
+     * attribute more than once to a single tag.
+     * @throws IllegalStateException if not called after startTag().
+     * @throws IOException from the underlying Appendable.
+     */
+    public XMLProducer addAttr( final String name,
+                                final Date value )
+        throws IOException
+    {
+        return addDateTimeAttr( name, value.getTime() );
+    }
+
+    /**
+     * Put default namespace attribute name with a date-time value,
+     * given as milliseconds since the epoch, on previous start
+     * tag. The value is written in ISO-8601 (xsd:dateTime) UTC format,
+     * without an intermediate Date. It is the callers responsibility
+     * to avoid writing the same attribute more than once to a single
+     * tag.
+     * @throws IllegalStateException if not called after startTag().
+     * @throws IOException from the underlying Appendable.
+     */
+    public XMLProducer addDateTimeAttr( final String name,
+                                        final long epochMillis )
+        throws IOException
+    {
+        _impl.beginAttr( name ).encodeDateTime( epochMillis );
+        _impl.endAttr();
         return this;
     }
 
@@ -307,12 +535,12 @@ public final class XMLProducer
     }
 
     /**
-     * Imply Namespace within the scope of the previous start tag, or if called
-     * before any start tag, the entire document.  Any subsequent attributes
-     * or tags of this namespace within the same scope will not
-     * make this declaration.  This is useful to testing with markup fragments
-     * and/or default namespaces where it is undesirable to explicitly declare
-     * a namespace on output.
+     * Imply Namespace within the scope of the previous start tag, or if
+     * called before any start tag, the entire document.  Any subsequent
+     * attributes or tags of this namespace within the same scope will
+     * not make this declaration.  This is useful to testing with markup
+     * fragments and/or default namespaces where it is undesirable to
+     * explicitly declare a namespace on output.
      * @throws CharacterEncodeException (an IOException) from the
      *         underlying CharacterEncoder.
      */
@@ -339,6 +567,22 @@ public final class XMLProducer
         return this;
     }
 
+    /**
+     * Put pre-encoded character data into previously started
+     * element. The encoded text is output verbatim when compatible
+     * with this producer's CharacterEncoder. The putChars() methods
+     * may be called repeatedly.
+     * @throws IllegalStateException character data can't be written
+     *         at this location in the document.
+     * @throws IOException from the underlying Appendable.
+     */
+    public XMLProducer putChars( final EncodedText text )
+        throws IOException
+    {
+        _impl.putChars( text );
+        return this;
+    }
+
     /**
      * Put short value as character data into previously started
      * element. The putChars() methods may be called repeatedly.
@@ -348,7 +592,7 @@ public final class XMLProducer
      */
     public XMLProducer putChars( final short value ) throws IOException
     {
-        _impl.putChars( Short.toString( value ), false );
+        _impl.beginChars().encodeLong( value );
         return this;
     }
 
@@ -361,7 +605,7 @@ public final class XMLProducer
      */
     public XMLProducer putChars( final int value ) throws IOException
     {
-        _impl.putChars( Integer.toString( value ), false );
+        _impl.beginChars().encodeLong( value );
         return this;
     }
 
@@ -374,7 +618,65 @@ public final class XMLProducer
      */
     public XMLProducer putChars( final long value ) throws IOException
     {
-        _impl.putChars( Long.toString( value ), false );
+        _impl.beginChars().encodeLong( value );
+        return this;
+    }
+
+    /**
+     * Put double value as character data into previously started
+     * element. See CharacterEncoder.encodeDouble() for the format. The
+     * putChars() methods may be called repeatedly.
+     * @throws IllegalStateException character data can't be written
+     *         at this location in the document.
+     * @throws IOException from the underlying Appendable.
+     */
+    public XMLProducer putChars( final double value ) throws IOException
+    {
+        _impl.beginChars().encodeDouble( value );
+        return this;
+    }
+
+    /**
+     * Put float value as character data into previously started element.
+     * See CharacterEncoder.encodeFloat() for the format. The putChars()
+     * methods may be called repeatedly.
+     * @throws IllegalStateException character data can't be written
+     *         at this location in the document.
+     * @throws IOException from the underlying Appendable.
+     */
+    public XMLProducer putChars( final float value ) throws IOException
+    {
+        _impl.beginChars().encodeFloat( value );
+        return this;
+    }
+
+    /**
+     * Put Date value as character data into previously started element.
+     * The Date is written in ISO-8601 (xsd:dateTime) UTC format. The
+     * putChars() methods may be called repeatedly.
+     * @throws IllegalStateException character data can't be written
+     *         at this location in the document.
+     * @throws IOException from the underlying Appendable.
+     */
+    public XMLProducer putChars( final Date value ) throws IOException
+    {
+        return putDateTime( value.getTime() );
+    }
+
+    /**
+     * Put a date-time value, given as milliseconds since the epoch, as
+     * character data into previously started element. The value is
+     * written in ISO-8601 (xsd:dateTime) UTC format, without an
+     * intermediate Date. The putChars() methods may be called
+     * repeatedly.
+     * @throws IllegalStateException character data can't be written
+     *         at this location in the document.
+     * @throws IOException from the underlying Appendable.
+     */
+    public XMLProducer putDateTime( final long epochMillis )
+        throws IOException
+    {
+        _impl.beginChars().encodeDateTime( epochMillis );
         return this;
     }
 
@@ -436,6 +738,27 @@ public final class XMLProducer
         return this;
     }
 
+    /**
+     * Put template at the current location, encoding values for each
+     * of its slots in order. Any tags left open by the template may
+     * then be closed via endTag().
+     * @throws IllegalStateException if the template can't be written
+     *         at this location in the document or depth.
+     * @throws IllegalArgumentException if the number of values
+     *         doesn't match the template slots, or if the template
+     *         was built with an incompatible encoding.
+     * @throws CharacterEncodeException (an IOException) from the
+     *         underlying CharacterEncoder.
+     * @throws IOException from the underlying Appendable.
+     */
+    public XMLProducer putTemplate( final XMLTemplate template,
+                                    final CharSequence... values )
+        throws IOException
+    {
+        _impl.putTemplate( template, values );
+        return this;
+    }
+
     /**
      * Put comment at the current location.
      * @throws IllegalStateException if a comment can't be written
@@ -451,6 +774,6 @@ public final class XMLProducer
         return this;
     }
 
-    private final NamespaceCache _cache = new NamespaceCache();
+    private NamespaceCache _cache = new NamespaceCache();
     private final XMLProducerImpl _impl;
 }
@@ -18,6 +18,8 @@ package com.gravitext.xml.producer;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 
 /**
  * Internal implementation of the XMLProducer.
@@ -34,13 +36,32 @@ final class XMLProducerImpl
 
     public void setIndent( final Indentor indentor )
     {
-        _indentor = indentor;
+        _indentor = _canonical ? Indentor.COMPRESSED : indentor;
+        _lines = _indentor.lines();
+    }
+
+    public void setChecked( final boolean checked )
+    {
+        _checked = checked;
+    }
+
+    public void setCanonical( final boolean canonical )
+    {
+        if( _state != State.BEGIN ) {
+            throw new IllegalStateException(
+                "XMLProducer: Can only setCanonical() before output." );
+        }
+        _canonical = canonical;
+        _encoder.setCanonical( canonical );
+        _canonTag = canonical ? new CanonicalTag( _encoder ) : null;
+        if( canonical ) setIndent( Indentor.COMPRESSED );
     }
 
     public void putXMLDeclaration( final String encoding )
         throws IOException
     {
         trans( State.XML_DECLARATION );
+        if( _canonical ) return;
         _out.append( "<?xml version=\"" );
         _out.append( _encoder.version().toString() );
         _out.append( "\" encoding=\"" );
@@ -54,6 +75,7 @@ final class XMLProducerImpl
         throws IOException
     {
         trans( State.DOCTYPE_DECLARATION );
+        if( _canonical ) return;
         _out.append( "<!DOCTYPE " );
         _out.append( name );
         _out.append( " SYSTEM \"" );
@@ -66,6 +88,7 @@ final class XMLProducerImpl
         throws IOException
     {
         trans( State.DOCTYPE_DECLARATION );
+        if( _canonical ) return;
         _out.append( dtd );
         newline(0);
     }
@@ -92,62 +115,113 @@ final class XMLProducerImpl
                          final boolean encode )
         throws IOException
     {
-        if( _state != State.START_TAG_OPEN ) {
-            throw new IllegalStateException(
-                "XMLProducer: Can only addAttr() after startTag()." );
-        }
-
-        putNamespaceIfNotInScope( attr.namespace() );
+        final CharacterEncoder enc = beginAttr( attr );
+        if( encode ) enc.encodeAttrValue( value );
+        else enc.output().append( value );
+        endAttr();
+    }
 
-        _out.append( attr.beginAttribute() );
+    public void addAttr( final String name,
+                         final CharSequence value,
+                         final boolean encode )
+        throws IOException
+    {
+        final CharacterEncoder enc = beginAttr( name );
+        if( encode ) enc.encodeAttrValue( value );
+        else enc.output().append( value );
+        endAttr();
+    }
 
-        _out.append( _encoder.quoteMark().literal );
+    /**
+     * Begin attribute output up to and including the opening quote
+     * mark.  The value should then be written via the returned
+     * encoder, followed by endAttr().
+     */
+    public CharacterEncoder beginAttr( final Attribute attr )
+        throws IOException
+    {
+        checkAttrState();
+        putNamespaceIfNotInScope( attr.namespace() );
 
-        if( encode ) _encoder.encodeAttrValue( value );
-        else _out.append( value );
+        if( _canonical ) {
+            final Namespace ns = attr.namespace();
+            return _canonTag.beginAttr(
+                ( ( ns == null ) || ns.isDefault() ) ? "" : ns.nameIRI(),
+                attr.name(),
+                attr.beginAttribute() );
+        }
 
+        _out.append( attr.beginAttribute() );
         _out.append( _encoder.quoteMark().literal );
+        return _encoder;
     }
 
-    public void addAttr( final String name,
-                         final CharSequence value,
-                         final boolean encode )
+    /**
+     * Begin default namespace attribute output.
+     * @see #beginAttr(Attribute)
+     */
+    public CharacterEncoder beginAttr( final String name )
         throws IOException
     {
-        if( _state != State.START_TAG_OPEN ) {
-            throw new IllegalStateException(
-                "XMLProducer: Can only addAttr() after startTag()." );
+        checkAttrState();
+
+        if( _canonical ) {
+            return _canonTag.beginAttr( "", name, ' ' + name + '=' );
         }
 
         _out.append( ' ' );
         _out.append( name );
         _out.append( '=' );
         _out.append( _encoder.quoteMark().literal );
-        if( encode ) _encoder.encodeAttrValue( value );
-        else _out.append( value );
-        _out.append( _encoder.quoteMark().literal );
+        return _encoder;
     }
 
-    public void implyNamespace( final Namespace ns )
+    public void endAttr() throws IOException
+    {
+        if( _canonical ) _canonTag.endAttr();
+        else _out.append( _encoder.quoteMark().literal );
+    }
+
+    public void addAttr( final Attribute attr,
+                         final EncodedAttrValue value )
+        throws IOException
+    {
+        if( value.isCompatible( _encoder ) ) {
+            addAttr( attr, value.encoded(), false );
+        }
+        else addAttr( attr, value.value(), true );
+    }
+
+    public void addAttr( final String name,
+                         final EncodedAttrValue value )
+        throws IOException
     {
-        if( !ns.isXML() ) {
-            _nScopes.add( new NScope( ns, _openTags.size() - 1 ) );
+        if( value.isCompatible( _encoder ) ) {
+            addAttr( name, value.encoded(), false );
         }
+        else addAttr( name, value.value(), true );
+    }
+
+    public void implyNamespace( final Namespace ns )
+    {
+        if( !ns.isXML() ) pushScope( ns, _openTags.size() - 1 );
     }
 
     public void addNamespace( final Namespace ns ) throws IOException
     {
-        if( _state != State.START_TAG_OPEN ) {
+        if( _checked && ( _state != State.START_TAG_OPEN ) ) {
             throw new IllegalStateException(
                 "XMLProducer: Can only addNamespace() after startTag()." );
         }
-        if( !ns.isXML() ) {
+        // Canonical: declared only where used, via
+        // putNamespaceIfNotInScope()
+        if( !ns.isXML() && !_canonical ) {
             _out.append( ns.beginDecl() );
             _out.append( _encoder.quoteMark().literal );
             _encoder.encodeAttrValue( ns.nameIRI() );
             _out.append( _encoder.quoteMark().literal );
 
-            _nScopes.add( new NScope( ns, _openTags.size() - 1 ) );
+            pushScope( ns, _openTags.size() - 1 );
         }
     }
 
@@ -157,13 +231,87 @@ final class XMLProducerImpl
     {
         // Test for empty to avoid non-canonical <t></t> instead of <t/>
         if( data.length() > 0 ) {
-            closeTag();
-            trans( State.CHARS );
+            beginChars();
             if( encode ) _encoder.encodeCharData( data );
             else _out.append( data );
         }
     }
 
+    /**
+     * Begin (non-empty) character data output, returning the encoder
+     * via which it should be written.
+     */
+    public CharacterEncoder beginChars() throws IOException
+    {
+        closeTag();
+        trans( State.CHARS );
+        return _encoder;
+    }
+
+    public void putChars( final EncodedText text )
+        throws IOException
+    {
+        if( text.isCompatible( _encoder ) ) {
+            putChars( text.encoded(), false );
+        }
+        else putChars( text.text(), true );
+    }
+
+    /**
+     * Output template with values for its slots.
+     */
+    public void putTemplate( final XMLTemplate template,
+                             final CharSequence[] values )
+        throws IOException
+    {
+        final boolean[] attrs = template.attrSlots();
+        if( values.length != attrs.length ) {
+            throw new IllegalArgumentException(
+                "XMLProducer: Template requires " + attrs.length +
+                " values, not " + values.length + '.' );
+        }
+        if( template.depth() != _openTags.size() ) {
+            throw new IllegalStateException(
+                "XMLProducer: Template for depth " + template.depth() +
+                " used at depth " + _openTags.size() + '.' );
+        }
+        if( !template.isCompatible( _encoder, _indentor ) ) {
+            throw new IllegalArgumentException(
+                "XMLProducer: Template not compatible with encoder " +
+                "or indentor." );
+        }
+        for( Namespace ns : template.impliedNamespaces() ) {
+            if( !_inScope.containsKey( ns ) ) {
+                if( _checked ) {
+                    throw new IllegalStateException(
+                        "XMLProducer: Template implied namespace " +
+                        ns.nameIRI() + " not in scope." );
+                }
+                // Declare on the enclosing start tag, if still open
+                if( _state == State.START_TAG_OPEN ) addNamespace( ns );
+            }
+        }
+
+        closeTag();
+        trans( template.entryState() );
+
+        final String[] chunks = template.chunks();
+        for( int i = 0; i < values.length; ++i ) {
+            _out.append( chunks[i] );
+            if( attrs[i] ) _encoder.encodeAttrValue( values[i] );
+            else _encoder.encodeCharData( values[i] );
+        }
+        _out.append( chunks[ values.length ] );
+
+        for( Tag tag : template.openTags() ) _openTags.add( tag );
+        final Namespace[] spaces = template.scopeNamespaces();
+        final int[] depths = template.scopeDepths();
+        for( int i = 0; i < spaces.length; ++i ) {
+            pushScope( spaces[i], depths[i] );
+        }
+        _state = template.exitState();
+    }
+
     public void putComment( final CharSequence comment )
         throws IOException
     {
@@ -178,9 +326,11 @@ final class XMLProducerImpl
         }
         else trans( State.COMMENT_END );
 
-        _out.append( "<!--" );
-        _encoder.encodeComment( comment );
-        _out.append( "-->" );
+        if( !_canonical ) {
+            _out.append( "<!--" );
+            _encoder.encodeComment( comment );
+            _out.append( "-->" );
+        }
         if( _openTags.size() == 0 ) newline(0);
     }
 
@@ -196,21 +346,21 @@ final class XMLProducerImpl
 
         int depth = _openTags.size() - 1;
         Tag openTag = _openTags.remove( depth );
-        if( ( tag != null ) && ( tag != openTag ) ) {
+        if( _checked && ( tag != null ) && ( tag != openTag ) ) {
             throw new IllegalStateException(
                 "XMLProducer: Attempt to end " + tag + " while "
                 + openTag + " is open." );
         }
 
         // Remove any namespace scopes closed with this tag.
-        int i = _nScopes.size();
-        while( i-- > 0 ) {
-            if( _nScopes.get( i ).depth == depth ) _nScopes.remove( i );
-            else break;
+        while( ( _scopeCount > 0 ) &&
+               ( _scopeDepths[ _scopeCount - 1 ] == depth ) ) {
+            popScope();
         }
 
         if( ( _state == State.ELEMENT ) ||
             ( _state == State.COMMENT_INTERNAL ) ) newline( depth );
+        if( _canonical ) closeTag(); // No empty element tags
         boolean empty = ( _state == State.START_TAG_OPEN );
 
         trans( State.ELEMENT );
@@ -224,7 +374,7 @@ final class XMLProducerImpl
         }
     }
 
-    private static enum State
+    static enum State
     {
         BEGIN,
         XML_DECLARATION,
@@ -254,48 +404,132 @@ final class XMLProducerImpl
     /*COMEND*/{ false, false, false, false, false, false, false, false, false, true  }
     };
 
-    private static final class NScope
+    /**
+     * Begin recording a template at the specified depth of open
+     * tags, without output.
+     */
+    void beginFragment( final int depth )
+    {
+        for( int i = 0; i < depth; ++i ) _openTags.add( FRAGMENT_TAG );
+        _state = ( depth > 0 ) ? State.ELEMENT : State.BEGIN;
+    }
+
+    State state()
+    {
+        return _state;
+    }
+
+    int depth()
+    {
+        return _openTags.size();
+    }
+
+    /**
+     * Return open tags at or beyond depth.
+     */
+    Tag[] openTags( final int depth )
+    {
+        final int end = _openTags.size();
+        return _openTags.subList( depth, end )
+            .toArray( new Tag[ end - depth ] );
+    }
+
+    /**
+     * Return namespaces of scopes at or beyond depth.
+     */
+    Namespace[] scopeNamespaces( final int depth )
+    {
+        final ArrayList<Namespace> spaces = new ArrayList<Namespace>();
+        for( int i = 0; i < _scopeCount; ++i ) {
+            if( _scopeDepths[i] >= depth ) spaces.add( _scopeSpaces[i] );
+        }
+        return spaces.toArray( new Namespace[ spaces.size() ] );
+    }
+
+    /**
+     * Return depths of scopes at or beyond depth.
+     */
+    int[] scopeDepths( final int depth )
     {
-        NScope( final Namespace namespace, final int depth )
-        {
-            this.namespace = namespace;
-            this.depth = depth;
+        final Namespace[] spaces = scopeNamespaces( depth );
+        final int[] depths = new int[ spaces.length ];
+        int j = 0;
+        for( int i = 0; i < _scopeCount; ++i ) {
+            if( _scopeDepths[i] >= depth ) depths[ j++ ] = _scopeDepths[i];
         }
+        return depths;
+    }
 
-        final Namespace namespace;
-        final int depth;
+    private void checkAttrState()
+    {
+        if( _checked && ( _state != State.START_TAG_OPEN ) ) {
+            throw new IllegalStateException(
+                "XMLProducer: Can only addAttr() after startTag()." );
+        }
     }
 
     private void putNamespaceIfNotInScope( final Namespace ns )
         throws IOException
     {
-        if( ns != null && !ns.isXML() ) {
-            int i = _nScopes.size();
-            while( i-- > 0 ) {
-                if( _nScopes.get( i ).namespace == ns ) return;
+        if( ( ns != null ) && !ns.isXML() &&
+            !_inScope.containsKey( ns ) ) {
+            if( _canonical ) {
+                _canonTag.addNamespace( ns );
+                pushScope( ns, _openTags.size() - 1 );
             }
-            addNamespace( ns );
+            else addNamespace( ns );
         }
     }
 
+    /**
+     * Push scope of ns, to be closed with the end of the tag at
+     * depth.
+     */
+    private void pushScope( final Namespace ns, final int depth )
+    {
+        if( _scopeCount == _scopeSpaces.length ) {
+            _scopeSpaces = Arrays.copyOf( _scopeSpaces, _scopeCount * 2 );
+            _scopeDepths = Arrays.copyOf( _scopeDepths, _scopeCount * 2 );
+        }
+        _scopeSpaces[ _scopeCount ] = ns;
+        _scopeDepths[ _scopeCount ] = depth;
+        ++_scopeCount;
+
+        final Integer count = _inScope.put( ns, ONE );
+        if( count != null ) _inScope.put( ns, count + 1 );
+    }
+
+    private void popScope()
+    {
+        final Namespace ns = _scopeSpaces[ --_scopeCount ];
+        _scopeSpaces[ _scopeCount ] = null;
+
+        final Integer count = _inScope.remove( ns );
+        if( count > 1 ) _inScope.put( ns, count - 1 );
+    }
+
     private void closeTag() throws IOException
     {
         if( _state == State.START_TAG_OPEN ) {
             trans( State.ELEMENT );
+            if( _canonical ) _canonTag.write( _out );
             _out.append( '>' );
         }
     }
 
     private void newline( final int level ) throws IOException
     {
-        _indentor.indent( _out, level );
+        if( level < _lines.length ) _out.append( _lines[ level ] );
+        else _indentor.indent( _out, level );
     }
 
     private void trans( final State next )
     {
-        // Test state transition and throw exception if invalid.
+        // Test state transition (if checked) and throw exception if
+        // invalid.
 
-        if( ALLOWED_STATE_TRANSITIONS[ _state.ordinal() ][ next.ordinal() ] ) {
+        if( !_checked ||
+            ALLOWED_STATE_TRANSITIONS[ _state.ordinal() ][ next.ordinal() ] ) {
             _state = next;
         }
         else {
@@ -305,12 +539,32 @@ final class XMLProducerImpl
         }
     }
 
+    private static final Tag FRAGMENT_TAG = new Tag( "fragment" );
+
     private State _state = State.BEGIN;
     private final Appendable _out;
     private final CharacterEncoder _encoder;
 
+    private boolean _checked = true;
+    private boolean _canonical = false;
+    private CanonicalTag _canonTag = null;
+
     private Indentor _indentor = Indentor.LINE_BREAK;
+    // Always _indentor.lines(), of the effective (not requested) indentor
+    private String[] _lines = _indentor.lines();
 
     private final ArrayList<Tag>    _openTags = new ArrayList<Tag>(16);
-    private final ArrayList<NScope> _nScopes  = new ArrayList<NScope>(8);
+
+    // Stack of namespace scopes, with the depth of the tag closing
+    // each scope.
+    private Namespace[] _scopeSpaces = new Namespace[8];
+    private int[]       _scopeDepths = new int[8];
+    private int         _scopeCount  = 0;
+
+    // Count of scopes on the stack by Namespace identity, for
+    // constant time in-scope checks.
+    private final IdentityHashMap<Namespace,Integer> _inScope =
+        new IdentityHashMap<Namespace,Integer>();
+
+    private static final Integer ONE = 1;
 }
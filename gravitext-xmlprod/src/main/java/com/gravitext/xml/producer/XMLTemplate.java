@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.producer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import com.gravitext.xml.producer.CharacterEncoder.QuoteMark;
+
+/**
+ * Immutable, precompiled sequence of XMLProducer events with variable
+ * attribute value and character data slots, for output of the same
+ * element skeleton with different values. All static markup (tags,
+ * namespace declarations, static values and indentation) is produced
+ * once when the template is built, and output verbatim via
+ * {@link XMLProducer#putTemplate(XMLTemplate, CharSequence...)}, where
+ * only the slot values are encoded.
+ *
+ * <p>A template is built for a specific depth of open tags and
+ * Indentor, which must match the producer's at time of use. All
+ * namespaces used by the template are declared within it, unless
+ * implied via Builder.implyNamespace(), in which case they must be in
+ * scope where the template is used. A template may leave tags
+ * open, to be closed (or given further content) via the producer.
+ * Character data slots always produce a start and end tag pair, even
+ * if the value is empty.</p>
+ *
+ * @author David Kellum
+ */
+public final class XMLTemplate
+{
+    /**
+     * Records a template from a series of XMLProducer-like event
+     * methods. Methods without a value argument add a slot.
+     */
+    public static final class Builder
+    {
+        /**
+         * Construct for use at the specified depth of open tags
+         * (0 for a document element), with the specified Indentor
+         * and XML 1.0.
+         */
+        public Builder( final Indentor indentor, final int depth )
+        {
+            this( indentor, depth, Version.XML_1_0 );
+        }
+
+        /**
+         * Construct for use at the specified depth of open tags
+         * (0 for a document element), with the specified Indentor
+         * and XML version.
+         */
+        public Builder( final Indentor indentor,
+                        final int depth,
+                        final Version version )
+        {
+            if( depth < 0 ) throw new IllegalArgumentException( "depth" );
+            _encoder = new CharacterEncoder( _out, version );
+            _impl = new XMLProducerImpl( _encoder );
+            _impl.setIndent( indentor );
+            _impl.beginFragment( depth );
+            _indentor = indentor;
+            _depth = depth;
+        }
+
+        /**
+         * Declare that ns will be in scope, declared by the context in
+         * which the template is used.
+         */
+        public Builder implyNamespace( final Namespace ns )
+        {
+            if( _entry != null ) {
+                throw new IllegalStateException(
+                    "XMLTemplate: implyNamespace() before other events." );
+            }
+            _impl.implyNamespace( ns );
+            if( !ns.isXML() ) _implied.add( ns );
+            return this;
+        }
+
+        public Builder startTag( final Tag tag ) throws IOException
+        {
+            _impl.startTag( tag );
+            entry();
+            return this;
+        }
+
+        public Builder addNamespace( final Namespace ns ) throws IOException
+        {
+            _impl.addNamespace( ns );
+            return this;
+        }
+
+        /**
+         * Add attribute value slot.
+         */
+        public Builder addAttr( final Attribute attr ) throws IOException
+        {
+            _impl.beginAttr( attr );
+            slot( true );
+            _impl.endAttr();
+            return this;
+        }
+
+        /**
+         * Add static attribute value.
+         */
+        public Builder addAttr( final Attribute attr,
+                                final CharSequence value )
+            throws IOException
+        {
+            _impl.addAttr( attr, value, true );
+            _modal |= CharacterEncoder.hasModalChars( value );
+            return this;
+        }
+
+        /**
+         * Add character data slot. The enclosing start tag is always
+         * closed, so an empty value yields an explicit end tag rather
+         * than an empty element.
+         */
+        public Builder putChars() throws IOException
+        {
+            _impl.beginChars();
+            entry();
+            slot( false );
+            return this;
+        }
+
+        /**
+         * Add static character data.
+         */
+        public Builder putChars( final CharSequence text )
+            throws IOException
+        {
+            if( text.length() > 0 ) {
+                _impl.putChars( text, true );
+                entry();
+                _modal |= CharacterEncoder.hasModalChars( text );
+            }
+            return this;
+        }
+
+        /**
+         * Close the last opened tag of the template.
+         */
+        public Builder endTag() throws IOException
+        {
+            return endTag( null );
+        }
+
+        /**
+         * Close the matching last opened tag of the template.
+         */
+        public Builder endTag( final Tag tag ) throws IOException
+        {
+            if( _impl.depth() <= _depth ) {
+                throw new IllegalStateException(
+                    "XMLTemplate: endTag() with no open template tag." );
+            }
+            _impl.endTag( tag );
+            return this;
+        }
+
+        public XMLTemplate build()
+        {
+            if( _entry == null ) {
+                throw new IllegalStateException(
+                    "XMLTemplate: empty template." );
+            }
+            return new XMLTemplate( this );
+        }
+
+        private void entry()
+        {
+            if( _entry == null ) _entry = _impl.state();
+        }
+
+        private void slot( final boolean attr )
+        {
+            _splits.add( _out.length() );
+            _attrSlots.add( attr );
+        }
+
+        private final StringBuilder _out = new StringBuilder( 256 );
+        private final CharacterEncoder _encoder;
+        private final XMLProducerImpl _impl;
+        private final Indentor _indentor;
+        private final int _depth;
+        private XMLProducerImpl.State _entry = null;
+        private boolean _modal = false;
+        private final ArrayList<Integer> _splits = new ArrayList<Integer>();
+        private final ArrayList<Boolean> _attrSlots =
+            new ArrayList<Boolean>();
+        private final ArrayList<Namespace> _implied =
+            new ArrayList<Namespace>();
+    }
+
+    /**
+     * Return the depth of open tags at which this template may be
+     * used.
+     */
+    public int depth()
+    {
+        return _depth;
+    }
+
+    /**
+     * Return the number of variable slots, in order of the template
+     * events.
+     */
+    public int slotCount()
+    {
+        return _attrSlots.length;
+    }
+
+    /**
+     * Return true if the specified slot is an attribute value, or
+     * false for character data.
+     */
+    public boolean isAttrSlot( final int slot )
+    {
+        return _attrSlots[ slot ];
+    }
+
+    /**
+     * Return the static output for an empty slot value, for
+     * debugging.
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder b = new StringBuilder();
+        for( String chunk : _chunks ) b.append( chunk );
+        return b.toString();
+    }
+
+    /**
+     * Return true if the static output is valid as output of encoder
+     * with indentor.
+     */
+    boolean isCompatible( final CharacterEncoder encoder,
+                          final Indentor indentor )
+    {
+        return ( ( indentor == _indentor ) &&
+                 !encoder.isCanonical() &&
+                 ( encoder.quoteMark() == _quoteMark ) &&
+                 ( !_modal || ( ( encoder.version() == _version ) &&
+                                encoder.hasDefaultModes() ) ) );
+    }
+
+    String[] chunks()
+    {
+        return _chunks;
+    }
+
+    boolean[] attrSlots()
+    {
+        return _attrSlots;
+    }
+
+    XMLProducerImpl.State entryState()
+    {
+        return _entry;
+    }
+
+    XMLProducerImpl.State exitState()
+    {
+        return _exit;
+    }
+
+    Tag[] openTags()
+    {
+        return _openTags;
+    }
+
+    Namespace[] scopeNamespaces()
+    {
+        return _scopeNamespaces;
+    }
+
+    /**
+     * Namespaces implied via Builder.implyNamespace(), which must be
+     * in scope where the template is used.
+     */
+    Namespace[] impliedNamespaces()
+    {
+        return _implied;
+    }
+
+    int[] scopeDepths()
+    {
+        return _scopeDepths;
+    }
+
+    private XMLTemplate( final Builder b )
+    {
+        final int slots = b._splits.size();
+        _chunks = new String[ slots + 1 ];
+        _attrSlots = new boolean[ slots ];
+        int start = 0;
+        for( int i = 0; i < slots; ++i ) {
+            final int end = b._splits.get( i );
+            _chunks[ i ] = b._out.substring( start, end );
+            _attrSlots[ i ] = b._attrSlots.get( i );
+            start = end;
+        }
+        _chunks[ slots ] = b._out.substring( start );
+
+        _indentor = b._indentor;
+        _depth = b._depth;
+        _entry = b._entry;
+        _exit = b._impl.state();
+        _openTags = b._impl.openTags( _depth );
+        _scopeNamespaces = b._impl.scopeNamespaces( _depth );
+        _scopeDepths = b._impl.scopeDepths( _depth );
+        _implied = b._implied.toArray( new Namespace[ b._implied.size() ] );
+
+        _version = b._encoder.version();
+        _quoteMark = b._encoder.quoteMark();
+        _modal = b._modal;
+    }
+
+    private final String[] _chunks;
+    private final boolean[] _attrSlots;
+
+    private final Indentor _indentor;
+    private final int _depth;
+    private final XMLProducerImpl.State _entry;
+    private final XMLProducerImpl.State _exit;
+    private final Tag[] _openTags;
+    private final Namespace[] _scopeNamespaces;
+    private final int[] _scopeDepths;
+    private final Namespace[] _implied;
+
+    private final Version _version;
+    private final QuoteMark _quoteMark;
+    private final boolean _modal;
+}
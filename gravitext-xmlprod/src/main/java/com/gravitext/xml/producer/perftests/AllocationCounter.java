@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.producer.perftests;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Per-thread heap allocation accounting for perf tests, where
+ * supported by the JVM (HotSpot com.sun.management.ThreadMXBean).
+ */
+public final class AllocationCounter
+{
+    /**
+     * Return bytes allocated by the current thread, or -1 if not
+     * supported by the JVM.
+     */
+    public static long allocatedBytes()
+    {
+        if( _supported ) {
+            try {
+                return HotSpot.threadAllocatedBytes();
+            }
+            catch( LinkageError e ) {
+                _supported = false;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Isolates the HotSpot specific com.sun.management dependency.
+     */
+    private static final class HotSpot
+    {
+        static long threadAllocatedBytes()
+        {
+            Object mx = ManagementFactory.getThreadMXBean();
+            if( mx instanceof com.sun.management.ThreadMXBean ) {
+                return ( (com.sun.management.ThreadMXBean) mx )
+                    .getThreadAllocatedBytes(
+                        Thread.currentThread().getId() );
+            }
+            return -1;
+        }
+    }
+
+    private AllocationCounter()
+    {
+    }
+
+    private static volatile boolean _supported = true;
+}
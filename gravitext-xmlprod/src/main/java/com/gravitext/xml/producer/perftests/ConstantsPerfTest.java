@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.producer.perftests;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.gravitext.concurrent.TestFactory;
+import com.gravitext.concurrent.TestRunnable;
+import com.gravitext.xml.producer.Attribute;
+import com.gravitext.xml.producer.EncodedAttrValue;
+import com.gravitext.xml.producer.EncodedText;
+import com.gravitext.xml.producer.Namespace;
+import com.gravitext.xml.producer.Tag;
+import com.gravitext.xml.producer.XMLProducer;
+
+/**
+ * GraphItem serialization with additional constant attribute values
+ * and text, comparing plain Strings (encoded on each output) to
+ * EncodedAttrValue/EncodedText constants.
+ */
+public final class ConstantsPerfTest
+    extends SerializePerfTest
+    implements TestFactory
+{
+    public ConstantsPerfTest( boolean useEncoded )
+    {
+        _useEncoded = useEncoded;
+    }
+
+    public String name()
+    {
+        return ( _useEncoded ? "XMLPROD+encoded" : "XMLPROD+strings" );
+    }
+
+    public TestRunnable createTestRunnable( int seed )
+    {
+        ConstantsPerfTest t = new ConstantsPerfTest( _useEncoded );
+        t.setIndent( getIndent() );
+        t.setUseWriter( useWriter() );
+        t.setSeed( seed );
+        return t;
+    }
+
+    protected void serializeGraph( List<GraphItem> graph, TestOutput out )
+        throws IOException
+    {
+        final boolean enc = _useEncoded;
+
+        XMLProducer p = new XMLProducer( out.getWriter() );
+        p.setIndent( getIndent() );
+
+        p.putXMLDeclaration( getEncoding() );
+        p.startTag( testdoc );
+
+        for( GraphItem g : graph ) {
+            p.startTag( item ).addAttr( name, g.getName() )
+                              .addAttr( value, g.getValue() )
+                              .addAttr( score, g.getScore() );
+            if( enc ) {
+                p.addAttr( type, TYPE_E )
+                 .addAttr( visible, TRUE_E )
+                 .addAttr( href, HREF_E );
+            }
+            else {
+                p.addAttr( type, TYPE )
+                 .addAttr( visible, TRUE )
+                 .addAttr( href, HREF );
+            }
+
+            p.startTag( label );
+            if( enc ) p.putChars( LABEL_E ); else p.putChars( LABEL );
+            p.endTag();
+
+            p.startTag( content ).putChars( g.getContent() ).endTag();
+
+            if( g.getList().size() > 0 ) {
+                p.startTag( list );
+                for( String gl : g.getList() ) {
+                    p.startTag( listItem );
+                    if( enc ) p.addAttr( kind, KIND_E );
+                    else p.addAttr( kind, KIND );
+                    p.putChars( gl ).endTag();
+                }
+                p.endTag( list );
+            }
+
+            p.endTag( item );
+        }
+
+        p.endTag( testdoc );
+    }
+
+    private final boolean _useEncoded;
+
+    private static final Namespace itemNS =
+        new Namespace( "graph", "urn:some-unique-id" );
+
+    private static final Tag item     = new Tag( "item", itemNS );
+    private static final Attribute name    = new Attribute( "name" );
+    private static final Attribute value   = new Attribute( "value" );
+    private static final Attribute score   = new Attribute( "score", itemNS );
+    private static final Attribute type    = new Attribute( "type" );
+    private static final Attribute visible = new Attribute( "visible" );
+    private static final Attribute href    = new Attribute( "href" );
+    private static final Attribute kind    = new Attribute( "kind" );
+
+    private static final Tag testdoc  = new Tag( "testdoc" );
+    private static final Tag label    = new Tag( "label" );
+    private static final Tag content  = new Tag( "content" );
+    private static final Tag list     = new Tag( "list" );
+    private static final Tag listItem = new Tag( "listItem" );
+
+    private static final String TYPE  = "graph-item";
+    private static final String TRUE  = "true";
+    private static final String HREF  =
+        "http://gravitext.com/graph/items?format=xml&sort=score&order=desc";
+    private static final String KIND  = "LIST_ENTRY";
+    private static final String LABEL =
+        "Graph Item <generated> \"Sample\" Data & Other Fixed Text";
+
+    private static final EncodedAttrValue TYPE_E =
+        new EncodedAttrValue( TYPE );
+    private static final EncodedAttrValue TRUE_E =
+        new EncodedAttrValue( TRUE );
+    private static final EncodedAttrValue HREF_E =
+        new EncodedAttrValue( HREF );
+    private static final EncodedAttrValue KIND_E =
+        new EncodedAttrValue( KIND );
+    private static final EncodedText LABEL_E = new EncodedText( LABEL );
+}
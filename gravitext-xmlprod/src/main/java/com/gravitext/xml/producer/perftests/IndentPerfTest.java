@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.producer.perftests;
+
+import java.io.IOException;
+
+import com.gravitext.concurrent.TestFactory;
+import com.gravitext.concurrent.TestRunnable;
+import com.gravitext.util.ResizableCharBuffer;
+import com.gravitext.xml.producer.Indentor;
+import com.gravitext.xml.producer.Tag;
+import com.gravitext.xml.producer.XMLProducer;
+
+/**
+ * Serialization of a deeply nested document with single space
+ * (PRETTY) indentation, where newline and indentation output
+ * dominates. Compares Indentors with varying pre-rendered cache
+ * depths, where 0 renders each indentation level per newline. The
+ * result count is the document length in characters.
+ */
+public final class IndentPerfTest implements TestFactory
+{
+    /**
+     * @param cacheDepth Indentor cache depth
+     * @param maxDepth maximum element nesting depth of the document
+     */
+    public IndentPerfTest( int cacheDepth, int maxDepth )
+    {
+        _cacheDepth = cacheDepth;
+        _maxDepth = maxDepth;
+        _indentor = new Indentor( " ", "\n", cacheDepth );
+    }
+
+    public String name()
+    {
+        return "PRETTY-depth" + _maxDepth + "+cache" + _cacheDepth;
+    }
+
+    public TestRunnable createTestRunnable( final int seed )
+    {
+        return new TestRunnable() {
+            public int runIteration( int run ) throws IOException
+            {
+                _out.setPosition( 0 );
+                final XMLProducer p = new XMLProducer( _out );
+                p.setIndent( _indentor );
+
+                p.startTag( DOC );
+                for( int i = 0; i < BRANCHES; ++i ) {
+                    // Descend to the maximum depth, with a leaf
+                    // element at each level on the way back up.
+                    for( int d = 1; d < _maxDepth; ++d ) p.startTag( NODE );
+                    for( int d = 1; d < _maxDepth; ++d ) {
+                        p.startTag( LEAF ).endTag();
+                        p.endTag( NODE );
+                    }
+                }
+                p.endTag( DOC );
+
+                return _out.position();
+            }
+
+            private final ResizableCharBuffer _out =
+                new ResizableCharBuffer( 256 * 1024 );
+        };
+    }
+
+    private final int _cacheDepth;
+    private final int _maxDepth;
+    private final Indentor _indentor;
+
+    private static final int BRANCHES = 16;
+
+    private static final Tag DOC  = new Tag( "doc" );
+    private static final Tag NODE = new Tag( "node" );
+    private static final Tag LEAF = new Tag( "leaf" );
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.producer.perftests;
+
+import java.io.IOException;
+
+import com.gravitext.concurrent.TestFactory;
+import com.gravitext.concurrent.TestRunnable;
+import com.gravitext.util.ResizableCharBuffer;
+import com.gravitext.xml.producer.Attribute;
+import com.gravitext.xml.producer.Indentor;
+import com.gravitext.xml.producer.Namespace;
+import com.gravitext.xml.producer.Tag;
+import com.gravitext.xml.producer.XMLProducer;
+
+/**
+ * Serialization of a namespace heavy document, in the style of a
+ * SOAP envelope or Atom feed with many extensions. A configurable
+ * number of namespaces are declared on the root element and used by
+ * item tags and attributes throughout. Each item also uses two local
+ * namespaces, declared on the item and out of scope after it. The
+ * result count is the document length in characters.
+ */
+public final class NamespacePerfTest implements TestFactory
+{
+    public NamespacePerfTest( int namespaces )
+    {
+        _spaces = new Namespace[ namespaces ];
+        _tags = new Tag[ namespaces ];
+        _attrs = new Attribute[ namespaces ];
+        for( int i = 0; i < namespaces; ++i ) {
+            _spaces[i] = new Namespace( "ns" + i,
+                                        "http://gravitext.com/ns/" + i );
+            _tags[i] = new Tag( "value", _spaces[i] );
+            _attrs[i] = new Attribute( "type", _spaces[i] );
+        }
+    }
+
+    public String name()
+    {
+        return "Namespaces-" + _spaces.length;
+    }
+
+    public TestRunnable createTestRunnable( final int seed )
+    {
+        return new TestRunnable() {
+            public int runIteration( int run ) throws IOException
+            {
+                _out.setPosition( 0 );
+                final XMLProducer p = new XMLProducer( _out );
+                p.setIndent( Indentor.COMPRESSED );
+
+                final int n = _spaces.length;
+                p.startTag( ENVELOPE );
+                for( Namespace ns : _spaces ) p.addNamespace( ns );
+
+                for( int i = 0; i < ITEMS; ++i ) {
+                    p.startTag( ITEM ).addAttr( LOCAL_ID, i );
+                    for( int j = 0; j < 8; ++j ) {
+                        final int k = ( i + j * 7 ) % n;
+                        p.startTag( _tags[k] );
+                        p.addAttr( _attrs[ ( k + 1 ) % n ], "t" );
+                        p.addAttr( LOCAL_REF, j );
+                        p.putChars( "text" ).endTag();
+                    }
+                    p.endTag( ITEM );
+                }
+                p.endTag( ENVELOPE );
+
+                return _out.position();
+            }
+
+            private final ResizableCharBuffer _out =
+                new ResizableCharBuffer( 128 * 1024 );
+        };
+    }
+
+    private final Namespace[] _spaces;
+    private final Tag[] _tags;
+    private final Attribute[] _attrs;
+
+    private static final int ITEMS = 200;
+
+    private static final Namespace ITEM_NS =
+        new Namespace( "item", "http://gravitext.com/ns/item" );
+    private static final Namespace LOCAL_NS =
+        new Namespace( "local", "http://gravitext.com/ns/local" );
+
+    private static final Tag ENVELOPE = new Tag( "envelope" );
+    private static final Tag ITEM = new Tag( "item", ITEM_NS );
+    private static final Attribute LOCAL_ID =
+        new Attribute( "id", LOCAL_NS );
+    private static final Attribute LOCAL_REF =
+        new Attribute( "ref", LOCAL_NS );
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.producer.perftests;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import com.gravitext.concurrent.TestFactory;
+import com.gravitext.concurrent.TestRunnable;
+import com.gravitext.util.FastRandom;
+import com.gravitext.util.ResizableCharBuffer;
+import com.gravitext.xml.producer.Attribute;
+import com.gravitext.xml.producer.Indentor;
+import com.gravitext.xml.producer.Tag;
+import com.gravitext.xml.producer.XMLProducer;
+
+/**
+ * Serialization of numeric and timestamp heavy documents, comparing
+ * conversion via String (Long.toString(), Double.toString(),
+ * SimpleDateFormat) to the XMLProducer numeric and epoch millis
+ * date-time overloads.
+ * The result count of each iteration is the number of bytes
+ * allocated by the test thread while producing the document, where
+ * the JVM supports thread allocation accounting, or otherwise the
+ * document length in characters.
+ */
+public final class NumericPerfTest implements TestFactory
+{
+    public NumericPerfTest( boolean useStrings )
+    {
+        _useStrings = useStrings;
+    }
+
+    public String name()
+    {
+        return ( _useStrings ? "Numeric-strings" : "Numeric-direct" );
+    }
+
+    public TestRunnable createTestRunnable( final int seed )
+    {
+        return new Runner( seed );
+    }
+
+    private final class Runner implements TestRunnable
+    {
+        public Runner( int seed )
+        {
+            _rnd = new FastRandom( seed );
+            _dateFormat.setTimeZone( TimeZone.getTimeZone( "UTC" ) );
+        }
+
+        public int runIteration( int run ) throws IOException
+        {
+            final long start = AllocationCounter.allocatedBytes();
+
+            _out.setPosition( 0 );
+            final XMLProducer p = new XMLProducer( _out );
+            p.setIndent( Indentor.COMPRESSED );
+
+            p.startTag( DOC );
+            for( int i = 0; i < ITEMS; ++i ) {
+                final long id = _rnd.nextInt( Integer.MAX_VALUE ) *
+                                1000L + i;
+                final double price = _rnd.nextInt( 1000000 ) / 100.0;
+                final double lat = ( _rnd.nextInt( 180000000 ) -
+                                     90000000 ) / 1e6;
+                final float ratio = _rnd.nextInt( 1000 ) / 7.0f;
+                final long time = EPOCH_BASE +
+                                  _rnd.nextInt( Integer.MAX_VALUE ) * 10L;
+
+                p.startTag( ITEM );
+                if( _useStrings ) {
+                    p.addAttr( ID, Long.toString( id ) );
+                    p.addAttr( UPDATED,
+                               _dateFormat.format( new Date( time ) ) );
+                    p.startTag( PRICE ).putChars( Double.toString( price ) );
+                    p.endTag();
+                    p.startTag( LAT ).putChars( Double.toString( lat ) );
+                    p.endTag();
+                    p.startTag( RATIO ).putChars( Float.toString( ratio ) );
+                    p.endTag();
+                    p.startTag( COUNT ).putChars( Integer.toString( i ) );
+                    p.endTag();
+                }
+                else {
+                    p.addAttr( ID, id );
+                    p.addDateTimeAttr( UPDATED, time );
+                    p.startTag( PRICE ).putChars( price ).endTag();
+                    p.startTag( LAT ).putChars( lat ).endTag();
+                    p.startTag( RATIO ).putChars( ratio ).endTag();
+                    p.startTag( COUNT ).putChars( i ).endTag();
+                }
+                p.endTag( ITEM );
+            }
+            p.endTag( DOC );
+
+            final long allocated = AllocationCounter.allocatedBytes() - start;
+            return (int) ( ( allocated >= 0 ) ? allocated : _out.position() );
+        }
+
+        private final FastRandom _rnd;
+        private final ResizableCharBuffer _out =
+            new ResizableCharBuffer( 64 * 1024 );
+        private final SimpleDateFormat _dateFormat =
+            new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'" );
+    }
+
+    private final boolean _useStrings;
+
+    private static final int ITEMS = 100;
+
+    // 2001-09-09T01:46:40Z
+    private static final long EPOCH_BASE = 1000000000000L;
+
+    private static final Tag DOC   = new Tag( "doc" );
+    private static final Tag ITEM  = new Tag( "item" );
+    private static final Tag PRICE = new Tag( "price" );
+    private static final Tag LAT   = new Tag( "lat" );
+    private static final Tag RATIO = new Tag( "ratio" );
+    private static final Tag COUNT = new Tag( "count" );
+
+    private static final Attribute ID      = new Attribute( "id" );
+    private static final Attribute UPDATED = new Attribute( "updated" );
+}
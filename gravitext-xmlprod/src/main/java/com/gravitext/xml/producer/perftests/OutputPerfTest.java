@@ -24,7 +24,9 @@ import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 
+import com.gravitext.util.ResizableByteBuffer;
 import com.gravitext.util.ResizableCharBufferWriter;
+import com.gravitext.xml.producer.UTF8Writer;
 
 public class OutputPerfTest
 {
@@ -36,14 +38,43 @@ public class OutputPerfTest
             ( "If not doEncode, shouldn't use stream." );
 
             if( _stream == null ) {
-                _stream = new ByteArrayOutputStream( 1024 * 24 );
+                _stream = new ByteArrayOutputStream( 1024 * 24 ) {
+                    @Override
+                    public void write( byte[] b, int off, int len )
+                    {
+                        firstByte();
+                        super.write( b, off, len );
+                    }
+
+                    @Override
+                    public void write( int b )
+                    {
+                        firstByte();
+                        super.write( b );
+                    }
+                };
             }
             return _stream;
         }
 
+        /**
+         * Return nanoseconds from construction until the first byte
+         * was written to the stream, or otherwise until the first
+         * flush().
+         */
+        public long firstByteNanos()
+        {
+            return ( _firstByte - _start );
+        }
+
         public void print() throws UnsupportedEncodingException
         {
-            if( _doEncode ) {
+            if( _bytes != null ) {
+                System.out.print( new String( _bytes.flipAsByteBuffer().array(),
+                                              0, _bytes.position(),
+                                              _encoding ) );
+            }
+            else if( _doEncode ) {
                 System.out.print( new String( _stream.toByteArray(),
                                               _encoding ) );
             }
@@ -55,6 +86,8 @@ public class OutputPerfTest
 
         public int size()
         {
+            if( _bytes != null ) return _bytes.position();
+
             return ( _doEncode ? _stream.size() :
                                  ( (ResizableCharBufferWriter) _writer).
                                  buffer().position() );
@@ -63,12 +96,27 @@ public class OutputPerfTest
         public void flush() throws IOException
         {
             if( _writer != null ) _writer.flush();
+            firstByte();
+        }
+
+        private void firstByte()
+        {
+            if( _firstByte == 0 ) _firstByte = System.nanoTime();
         }
 
         public Writer getWriter() throws UnsupportedEncodingException
         {
             if( _writer == null  ) {
-                if( _doEncode ) {
+                if( _doEncode && _directUTF8 && ( _highWaterMark > 0 ) ) {
+                    UTF8Writer w = new UTF8Writer( getStream(), 8 * 1024 );
+                    w.setHighWaterMark( _highWaterMark );
+                    _writer = w;
+                }
+                else if( _doEncode && _directUTF8 ) {
+                    _bytes = new ResizableByteBuffer( 1024 * 24 );
+                    _writer = new UTF8Writer( _bytes );
+                }
+                else if( _doEncode ) {
                     Writer t = new OutputStreamWriter( getStream(), _encoding );
                     _writer = new BufferedWriter( t, 1024 );
                 }
@@ -80,7 +128,10 @@ public class OutputPerfTest
         }
 
         private ByteArrayOutputStream _stream = null;
+        private ResizableByteBuffer _bytes    = null;
         private Writer _writer                = null;
+        private final long _start             = System.nanoTime();
+        private long _firstByte               = 0;
     }
 
     public void setDoEncode( boolean doEncode )
@@ -98,7 +149,48 @@ public class OutputPerfTest
         return _encoding;
     }
 
+    /**
+     * If true and doEncode, use a UTF8Writer to encode directly to bytes
+     * instead of the OutputStreamWriter path. Implies UTF-8 encoding.
+     */
+    public void setDirectUTF8( boolean directUTF8 )
+    {
+        _directUTF8 = directUTF8;
+        if( directUTF8 ) _encoding = "UTF-8";
+    }
+
+    public boolean directUTF8()
+    {
+        return _directUTF8;
+    }
+
+    /**
+     * If greater than zero and directUTF8, use a UTF8Writer to an
+     * OutputStream with the specified high-water mark in bytes.
+     */
+    public void setHighWaterMark( int highWaterMark )
+    {
+        _highWaterMark = highWaterMark;
+    }
+
+    /**
+     * If true, report TestOutput.firstByteNanos() as the result
+     * count of each iteration.
+     */
+    public void setReportFirstByte( boolean reportFirstByte )
+    {
+        _reportFirstByte = reportFirstByte;
+    }
+
+    public boolean reportFirstByte()
+    {
+        return _reportFirstByte;
+    }
+
     private boolean _doEncode = false;
+    private boolean _directUTF8 = false;
+    private int _highWaterMark = 0;
+    private boolean _reportFirstByte = false;
     private String _encoding = "ISO-8859-1";
 
 }
@@ -35,7 +35,11 @@ public class PerfTestFactory implements TestFactory
 
     public String name()
     {
-        return _serializer.toString();
+        String name = _serializer.toString();
+        if( _directUTF8 ) name += "+utf8";
+        if( _highWaterMark > 0 ) name += "+hwm" + _highWaterMark;
+        if( !_checked ) name += "+unchecked";
+        return name;
     }
 
     public void setDoEncode( boolean doEncode )
@@ -48,6 +52,39 @@ public class PerfTestFactory implements TestFactory
         _encoding = encoding;
     }
 
+    /**
+     * Encode directly to UTF-8 bytes via UTF8Writer, if doEncode.
+     */
+    public void setDirectUTF8( boolean directUTF8 )
+    {
+        _directUTF8 = directUTF8;
+    }
+
+    /**
+     * UTF8Writer high-water mark, if greater than zero and directUTF8.
+     */
+    public void setHighWaterMark( int highWaterMark )
+    {
+        _highWaterMark = highWaterMark;
+    }
+
+    /**
+     * Report nanoseconds to first byte output as the result count.
+     */
+    public void setReportFirstByte( boolean reportFirstByte )
+    {
+        _reportFirstByte = reportFirstByte;
+    }
+
+    /**
+     * XMLPROD only: set whether XMLProducer checks well-formed
+     * constraints (default true).
+     */
+    public void setChecked( boolean checked )
+    {
+        _checked = checked;
+    }
+
     public void setVerbose( boolean doVerbose )
     {
         _doVerbose = doVerbose;
@@ -65,13 +102,19 @@ public class PerfTestFactory implements TestFactory
         case JAXP:    r = new JaxpPerfTest(); break;
         case JDOM:    r = new JDomPerfTest(); break;
         case STAX:    r = new StaxPerfTest(); break;
-        case XMLPROD: r = new ProducerPerfTest();
+        case XMLPROD:
+            ProducerPerfTest p = new ProducerPerfTest();
+            p.setChecked( _checked );
+            r = p;
         }
 
         r.setVerbose( _doVerbose );
         r.setUseWriter( _useWriter );
         r.setEncoding( _encoding );
         r.setDoEncode( _doEncode );
+        r.setDirectUTF8( _directUTF8 );
+        r.setHighWaterMark( _highWaterMark );
+        r.setReportFirstByte( _reportFirstByte );
 
         r.setSeed( seed );
 
@@ -81,6 +124,10 @@ public class PerfTestFactory implements TestFactory
     private boolean _doVerbose   = false;
     private boolean _useWriter   = true;
     private boolean _doEncode = false;
+    private boolean _directUTF8 = false;
+    private int _highWaterMark = 0;
+    private boolean _reportFirstByte = false;
+    private boolean _checked = true;
     private String _encoding = "ISO-8859-1";
 
     private final Serializer _serializer;
@@ -40,11 +40,21 @@ public final class ProducerPerfTest
     private static final Tag list     = new Tag( "list" );
     private static final Tag listItem = new Tag( "listItem" );
 
+    /**
+     * Set whether XMLProducer checks well-formed constraints (default
+     * true).
+     */
+    public void setChecked( boolean checked )
+    {
+        _checked = checked;
+    }
+
     protected void serializeGraph( List<GraphItem> graph, TestOutput out )
         throws IOException
     {
         XMLProducer p = new XMLProducer( out.getWriter() );
         p.setIndent( getIndent() );
+        p.setChecked( _checked );
 
         p.putXMLDeclaration( getEncoding() );
         p.putSystemDTD( "testdoc", "bogus.dtd" );
@@ -71,4 +81,6 @@ public final class ProducerPerfTest
 
         p.endTag( testdoc );
     }
+
+    private boolean _checked = true;
 }
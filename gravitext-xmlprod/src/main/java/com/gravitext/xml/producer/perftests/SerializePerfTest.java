@@ -39,6 +39,8 @@ public abstract class SerializePerfTest
 
         if( _doVerbose ) out.print();
 
+        if( reportFirstByte() ) return (int) out.firstByteNanos();
+
         if( _doSerialize ) return out.size();
 
         return ( ( _random.nextInt() & 0x7fffffff ) % 3 );
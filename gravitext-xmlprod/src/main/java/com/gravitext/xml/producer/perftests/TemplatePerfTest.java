@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.producer.perftests;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.gravitext.concurrent.TestFactory;
+import com.gravitext.concurrent.TestRunnable;
+import com.gravitext.xml.producer.Attribute;
+import com.gravitext.xml.producer.Indentor;
+import com.gravitext.xml.producer.Namespace;
+import com.gravitext.xml.producer.Tag;
+import com.gravitext.xml.producer.XMLProducer;
+import com.gravitext.xml.producer.XMLTemplate;
+
+/**
+ * GraphItem serialization with the constant attributes and text of
+ * ConstantsPerfTest, comparing individual XMLProducer event calls to
+ * XMLTemplate output of the item and list item skeletons.
+ */
+public final class TemplatePerfTest
+    extends SerializePerfTest
+    implements TestFactory
+{
+    public TemplatePerfTest( boolean useTemplate )
+    {
+        _useTemplate = useTemplate;
+    }
+
+    public String name()
+    {
+        return ( _useTemplate ? "XMLPROD+template" : "XMLPROD+events" );
+    }
+
+    public TestRunnable createTestRunnable( int seed )
+    {
+        TemplatePerfTest t = new TemplatePerfTest( _useTemplate );
+        t.setIndent( getIndent() );
+        t.setUseWriter( useWriter() );
+        t.setSeed( seed );
+        return t;
+    }
+
+    protected void serializeGraph( List<GraphItem> graph, TestOutput out )
+        throws IOException
+    {
+        XMLProducer p = new XMLProducer( out.getWriter() );
+        p.setIndent( getIndent() );
+
+        p.putXMLDeclaration( getEncoding() );
+        p.startTag( testdoc );
+
+        if( _useTemplate ) {
+            if( _itemT == null ) compile();
+            for( GraphItem g : graph ) {
+                p.putTemplate( _itemT, g.getName(),
+                               String.valueOf( g.getValue() ),
+                               String.valueOf( g.getScore() ),
+                               g.getContent() );
+                if( g.getList().size() > 0 ) {
+                    p.startTag( list );
+                    for( String gl : g.getList() ) {
+                        p.putTemplate( _listItemT, gl );
+                    }
+                    p.endTag( list );
+                }
+                p.endTag( item );
+            }
+        }
+        else {
+            for( GraphItem g : graph ) {
+                p.startTag( item ).addAttr( name, g.getName() )
+                                  .addAttr( value, g.getValue() )
+                                  .addAttr( score, g.getScore() )
+                                  .addAttr( type, TYPE )
+                                  .addAttr( visible, TRUE )
+                                  .addAttr( href, HREF );
+                p.startTag( label ).putChars( LABEL ).endTag();
+                p.startTag( content ).putChars( g.getContent() ).endTag();
+
+                if( g.getList().size() > 0 ) {
+                    p.startTag( list );
+                    for( String gl : g.getList() ) {
+                        p.startTag( listItem ).addAttr( kind, KIND );
+                        p.putChars( gl ).endTag();
+                    }
+                    p.endTag( list );
+                }
+                p.endTag( item );
+            }
+        }
+
+        p.endTag( testdoc );
+    }
+
+    /**
+     * Build templates for the current Indentor, leaving item open
+     * for its optional list.
+     */
+    private void compile() throws IOException
+    {
+        final Indentor indent = getIndent();
+        _itemT = new XMLTemplate.Builder( indent, 1 )
+            .startTag( item ).addAttr( name ).addAttr( value )
+                             .addAttr( score )
+                             .addAttr( type, TYPE )
+                             .addAttr( visible, TRUE )
+                             .addAttr( href, HREF )
+            .startTag( label ).putChars( LABEL ).endTag()
+            .startTag( content ).putChars().endTag()
+            .build();
+
+        _listItemT = new XMLTemplate.Builder( indent, 3 )
+            .implyNamespace( itemNS )
+            .startTag( listItem ).addAttr( kind, KIND ).putChars().endTag()
+            .build();
+    }
+
+    private final boolean _useTemplate;
+    private XMLTemplate _itemT = null;
+    private XMLTemplate _listItemT = null;
+
+    private static final Namespace itemNS =
+        new Namespace( "graph", "urn:some-unique-id" );
+
+    private static final Tag item     = new Tag( "item", itemNS );
+    private static final Attribute name    = new Attribute( "name" );
+    private static final Attribute value   = new Attribute( "value" );
+    private static final Attribute score   = new Attribute( "score", itemNS );
+    private static final Attribute type    = new Attribute( "type" );
+    private static final Attribute visible = new Attribute( "visible" );
+    private static final Attribute href    = new Attribute( "href" );
+    private static final Attribute kind    = new Attribute( "kind" );
+
+    private static final Tag testdoc  = new Tag( "testdoc" );
+    private static final Tag label    = new Tag( "label" );
+    private static final Tag content  = new Tag( "content" );
+    private static final Tag list     = new Tag( "list" );
+    private static final Tag listItem = new Tag( "listItem" );
+
+    private static final String TYPE  = "graph-item";
+    private static final String TRUE  = "true";
+    private static final String HREF  =
+        "http://gravitext.com/graph/items?format=xml&sort=score&order=desc";
+    private static final String KIND  = "LIST_ENTRY";
+    private static final String LABEL =
+        "Graph Item <generated> \"Sample\" Data & Other Fixed Text";
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.util.ArrayList;
+
+import com.gravitext.concurrent.TestFactory;
+import com.gravitext.concurrent.TestRunnable;
+import com.gravitext.xml.NamespaceCache;
+import com.gravitext.xml.producer.Attribute;
+import com.gravitext.xml.producer.Tag;
+import com.gravitext.xml.producer.perftests.AllocationCounter;
+
+/**
+ * Attribute set and lookup on elements with a given number of
+ * attributes. LIST emulates the prior storage: an ArrayList of
+ * AttributeValue, as set by the parsers, with a linear equals()
+ * scan. ELEMENT uses Element's interleaved array storage, the
+ * ensureAttributeCapacity() bulk path, and attribute(Attribute)
+ * lookups. Each iteration builds a new element and looks up each
+ * attribute, plus one missing attribute, by canonical (NamespaceCache)
+ * Attribute. The result count is lookups, or with setReportHeap(true),
+ * bytes allocated per element.
+ */
+public class AttributePerfTest implements TestFactory
+{
+    public enum Impl
+    {
+        LIST,
+        ELEMENT
+    };
+
+    public AttributePerfTest( int attributes, Impl impl )
+    {
+        _impl = impl;
+        _attrs = new Attribute[ attributes ];
+        _values = new String[ attributes ];
+        for( int i = 0; i < attributes; ++i ) {
+            _attrs[ i ] = CACHE.attribute( "attr" + i, null );
+            _values[ i ] = "value" + i;
+        }
+    }
+
+    /**
+     * If true, report bytes allocated per element as the result
+     * count, instead of lookups.
+     */
+    public void setReportHeap( boolean reportHeap )
+    {
+        _reportHeap = reportHeap;
+    }
+
+    public String name()
+    {
+        return ( "ATTR_" + _impl.name() + "+" + _attrs.length +
+                 ( _reportHeap ? "+heap" : "" ) );
+    }
+
+    public TestRunnable createTestRunnable( final int seed )
+    {
+        return new TestRunnable() {
+            public int runIteration( int run )
+            {
+                final long start =
+                    _reportHeap ? AllocationCounter.allocatedBytes() : -1L;
+
+                final int found = ( _impl == Impl.LIST ) ? list() : element();
+                if( found != _attrs.length ) {
+                    throw new IllegalStateException( "found " + found );
+                }
+
+                if( start >= 0 ) {
+                    return (int)
+                        ( AllocationCounter.allocatedBytes() - start );
+                }
+                return _attrs.length + 1;
+            }
+        };
+    }
+
+    private int list()
+    {
+        final Element e = new Element( TAG );
+        final ArrayList<AttributeValue> atts =
+            new ArrayList<AttributeValue>( _attrs.length );
+        for( int i = 0; i < _attrs.length; ++i ) {
+            atts.add( new AttributeValue( _attrs[ i ], _values[ i ] ) );
+        }
+        _sink = e;
+        _listSink = atts;
+
+        int found = 0;
+        for( Attribute attr : _attrs ) {
+            if( find( atts, attr ) != null ) ++found;
+        }
+        if( find( atts, MISSING ) != null ) ++found;
+        return found;
+    }
+
+    private static CharSequence find( ArrayList<AttributeValue> atts,
+                                      Attribute attr )
+    {
+        for( AttributeValue av : atts ) {
+            if( av.attribute().equals( attr ) ) return av.value();
+        }
+        return null;
+    }
+
+    private int element()
+    {
+        final Element e = new Element( TAG );
+        e.ensureAttributeCapacity( _attrs.length );
+        for( int i = 0; i < _attrs.length; ++i ) {
+            e.addAttribute( _attrs[ i ], _values[ i ] );
+        }
+        _sink = e;
+
+        int found = 0;
+        for( Attribute attr : _attrs ) {
+            if( e.attribute( attr ) != null ) ++found;
+        }
+        if( e.attribute( MISSING ) != null ) ++found;
+        return found;
+    }
+
+    private static final NamespaceCache CACHE = new NamespaceCache();
+    private static final Tag TAG = CACHE.tag( "element", null );
+    private static final Attribute MISSING =
+        CACHE.attribute( "missing", null );
+
+    private final Impl _impl;
+    private final Attribute[] _attrs;
+    private final String[] _values;
+    private boolean _reportHeap = false;
+
+    // Keep built elements reachable, against escape analysis
+    private volatile Element _sink = null;
+    private volatile ArrayList<AttributeValue> _listSink = null;
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.nio.CharBuffer;
+
+import com.gravitext.xml.producer.CharSlice;
+
+/**
+ * Shared storage for the text of many Characters nodes. Text is
+ * copied into large char array blocks and returned as immutable
+ * CharSlice views (one small object each) over non-overlapping
+ * ranges of a block, instead of as a String and array per text node.
+ *
+ * <p>Blocks are never reused or written after text is taken, so
+ * views are safe from any later parsing or tree mutation. A block is
+ * retained while any view over it is reachable, and is otherwise
+ * garbage collected normally. Instances are not thread safe.</p>
+ *
+ * @see StAXConsumer#setCharArena(CharArena)
+ * @see SAXHandler#setCharArena(CharArena)
+ * @see TokenizerConsumer#setCharArena(CharArena)
+ */
+public final class CharArena
+{
+    /**
+     * Default block size in chars (32KB).
+     */
+    public static final int BLOCK_SIZE = 16 * 1024;
+
+    /**
+     * Construct with the default BLOCK_SIZE.
+     */
+    public CharArena()
+    {
+        this( BLOCK_SIZE );
+    }
+
+    /**
+     * Construct given block size in chars. Text longer than a quarter
+     * block is given its own array.
+     */
+    public CharArena( int blockSize )
+    {
+        if( blockSize < 1 ) {
+            throw new IllegalArgumentException( "blockSize < 1" );
+        }
+        _blockSize = blockSize;
+    }
+
+    /**
+     * Return a view over a copy of the specified range of chars.
+     */
+    public CharSlice copy( char[] chars, int offset, int length )
+    {
+        append( chars, offset, length );
+        return take();
+    }
+
+    /**
+     * Append the specified range of chars to the current text,
+     * as returned by the next take().
+     */
+    public void append( char[] chars, int offset, int length )
+    {
+        if( ( _block == null ) ||
+            ( _block.length - _end < length ) ) {
+            newBlock( length );
+        }
+        System.arraycopy( chars, offset, _block, _end, length );
+        _end += length;
+    }
+
+    /**
+     * Append a CharSequence to the current text.
+     */
+    public void append( CharSequence chars )
+    {
+        if( ( chars instanceof CharBuffer ) &&
+            ( (CharBuffer) chars ).hasArray() ) {
+            final CharBuffer cb = (CharBuffer) chars;
+            append( cb.array(), cb.arrayOffset() + cb.position(),
+                    cb.remaining() );
+        }
+        else {
+            final int length = chars.length();
+            if( ( _block == null ) ||
+                ( _block.length - _end < length ) ) {
+                newBlock( length );
+            }
+            for( int i = 0; i < length; ++i ) {
+                _block[ _end++ ] = chars.charAt( i );
+            }
+        }
+    }
+
+    /**
+     * Return true if text has been appended since the last take().
+     */
+    public boolean hasText()
+    {
+        return ( _end > _start );
+    }
+
+    /**
+     * Return a view over the current text (possibly empty), and
+     * start new text.
+     */
+    public CharSlice take()
+    {
+        if( _block == null ) return EMPTY;
+        final CharSlice text = new CharSlice( _block, _start, _end - _start );
+        _start = _end;
+        return text;
+    }
+
+    /**
+     * Allocate a new block with room for current text plus length
+     * more chars, moving any current text to it.
+     */
+    private void newBlock( int length )
+    {
+        final int current = _end - _start;
+        final int needed = current + length;
+        // Large text gets its own block, grown geometrically if
+        // appended in parts.
+        final char[] block = new char[ ( needed > _blockSize / 4 ) ?
+                                       Math.max( needed, current * 2 ) :
+                                       _blockSize ];
+        if( current > 0 ) {
+            System.arraycopy( _block, _start, block, 0, current );
+        }
+        _block = block;
+        _start = 0;
+        _end = current;
+    }
+
+    private static final CharSlice EMPTY = new CharSlice( new char[0], 0, 0 );
+
+    private final int _blockSize;
+    private char[] _block = null;
+    private int _start = 0;
+    private int _end = 0;
+}
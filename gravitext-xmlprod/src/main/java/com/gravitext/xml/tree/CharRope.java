@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.IOException;
+
+/**
+ * CharSequence view over the concatenation of a sequence of parts,
+ * which are referenced, not copied. As returned by
+ * Element.characters() for the text of several Characters
+ * nodes. Index lookups start from the part of the prior lookup, so
+ * sequential charAt() access is constant time per char. The parts
+ * should not be modified after construction.
+ *
+ * @see Element#characters()
+ */
+public final class CharRope
+    implements CharSequence
+{
+    /**
+     * Construct view over the first count parts.
+     */
+    public CharRope( CharSequence[] parts, int count )
+    {
+        _parts = parts;
+        _count = count;
+        _starts = new int[ count + 1 ];
+        int start = 0;
+        for( int i = 0; i < count; ++i ) {
+            _starts[ i ] = start;
+            start += parts[ i ].length();
+        }
+        _starts[ count ] = start;
+    }
+
+    public int length()
+    {
+        return _starts[ _count ];
+    }
+
+    public char charAt( int index )
+    {
+        int p = _last;
+        if( ( index < _starts[ p ] ) || ( index >= _starts[ p + 1 ] ) ) {
+            if( ( index < 0 ) || ( index >= length() ) ) {
+                throw new IndexOutOfBoundsException( "index: " + index );
+            }
+            p = part( index );
+        }
+        return _parts[ p ].charAt( index - _starts[ p ] );
+    }
+
+    public CharSequence subSequence( int start, int end )
+    {
+        if( ( start < 0 ) || ( end > length() ) || ( start > end ) ) {
+            throw new IndexOutOfBoundsException(
+                "start: " + start + " end: " + end );
+        }
+        if( start == end ) return "";
+
+        final int first = part( start );
+        final int last = part( end - 1 );
+        final int firstStart = _starts[ first ];
+        if( first == last ) {
+            return _parts[ first ].subSequence( start - firstStart,
+                                                end - firstStart );
+        }
+
+        final int count = last - first + 1;
+        final CharSequence[] parts = new CharSequence[ count ];
+        System.arraycopy( _parts, first, parts, 0, count );
+        parts[ 0 ] = parts[ 0 ].subSequence( start - firstStart,
+                                             parts[ 0 ].length() );
+        parts[ count - 1 ] =
+            parts[ count - 1 ].subSequence( 0, end - _starts[ last ] );
+        return new CharRope( parts, count );
+    }
+
+    /**
+     * Append all parts to out, in order.
+     */
+    public void appendTo( Appendable out ) throws IOException
+    {
+        for( int i = 0; i < _count; ++i ) out.append( _parts[ i ] );
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder b = new StringBuilder( length() );
+        for( int i = 0; i < _count; ++i ) b.append( _parts[ i ] );
+        return b.toString();
+    }
+
+    /**
+     * Return the index of the (non-empty) part containing the char
+     * at index, where 0 &lt;= index &lt; length().
+     */
+    private int part( final int index )
+    {
+        int p = _last;
+        if( ( index < _starts[ p ] ) || ( index >= _starts[ p + 1 ] ) ) {
+            if( ( index >= _starts[ p + 1 ] ) && ( p + 2 <= _count ) &&
+                ( index < _starts[ p + 2 ] ) ) {
+                ++p; // Sequential access into the next part
+            }
+            else {
+                // Last part starting at or before index, thus non-empty
+                int low = 0;
+                int high = _count - 1;
+                while( low < high ) {
+                    final int mid = ( low + high + 1 ) >>> 1;
+                    if( _starts[ mid ] <= index ) low = mid;
+                    else high = mid - 1;
+                }
+                p = low;
+            }
+            _last = p;
+        }
+        return p;
+    }
+
+    private final CharSequence[] _parts;
+    private final int _count;
+    private final int[] _starts;
+
+    // Part of the last lookup. Racy use is safe, as any value is a
+    // valid starting point.
+    private int _last = 0;
+}
@@ -51,6 +51,50 @@ public final class Characters extends Node
         }
 
         _chars = chars;
+        invalidateHash();
+    }
+
+    @Override
+    public boolean deepEquals( Node other )
+    {
+        if( other == this ) return true;
+        return ( ( other != null ) && other.isCharacters() &&
+                 ( structuralHash() == other.structuralHash() ) &&
+                 contentEquals( _chars, other.characters() ) );
+    }
+
+    @Override
+    int computeHash()
+    {
+        return hash( _chars );
+    }
+
+    /**
+     * Return hash of chars, as per String.hashCode() for any
+     * CharSequence.
+     */
+    static int hash( final CharSequence chars )
+    {
+        if( chars instanceof String ) return chars.hashCode();
+        int h = 0;
+        final int end = chars.length();
+        for( int i = 0; i < end; ++i ) h = 31 * h + chars.charAt( i );
+        return h;
+    }
+
+    /**
+     * Return true if a and b contain the same characters.
+     */
+    static boolean contentEquals( final CharSequence a,
+                                  final CharSequence b )
+    {
+        if( a == b ) return true;
+        final int end = a.length();
+        if( end != b.length() ) return false;
+        for( int i = 0; i < end; ++i ) {
+            if( a.charAt( i ) != b.charAt( i ) ) return false;
+        }
+        return true;
     }
 
     public <T> T get( Key<T> key )
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.IOException;
+
+import com.gravitext.concurrent.TestFactory;
+import com.gravitext.concurrent.TestRunnable;
+import com.gravitext.util.ResizableCharBuffer;
+import com.gravitext.xml.producer.perftests.AllocationCounter;
+
+/**
+ * Body text extraction from an article element of a given number of
+ * paragraphs, each with three text nodes. Each iteration appends the
+ * text to a reused StringBuilder. BUFFER emulates the prior
+ * Element.characters(), which copied the text of each element into a
+ * new ResizableCharBuffer. ROPE uses Element.characters() and its
+ * CharRope, and WRITE uses Element.writeCharacters(). The result count
+ * is characters extracted, or with setReportHeap(true), bytes
+ * allocated per iteration.
+ */
+public class CharactersPerfTest implements TestFactory
+{
+    public enum Impl
+    {
+        BUFFER,
+        ROPE,
+        WRITE
+    };
+
+    public CharactersPerfTest( int paragraphs, Impl impl )
+    {
+        _impl = impl;
+        _article = new Element( "article" );
+        for( int i = 0; i < paragraphs; ++i ) {
+            Element p = new Element( "p" );
+            p.addChild( new Characters( "Paragraph " + i +
+                                        " of the article, with " ) );
+            Element b = new Element( "b" );
+            b.addChild( new Characters( "bold" ) );
+            p.addChild( b );
+            p.addChild( new Characters( " text and the rest of the" +
+                                        " sentence.\n" ) );
+            _article.addChild( p );
+        }
+    }
+
+    /**
+     * If true, report bytes allocated per iteration as the result
+     * count, instead of characters.
+     */
+    public void setReportHeap( boolean reportHeap )
+    {
+        _reportHeap = reportHeap;
+    }
+
+    public String name()
+    {
+        return ( "CHARS_" + _impl.name() +
+                 "+" + _article.children().size() +
+                 ( _reportHeap ? "+heap" : "" ) );
+    }
+
+    public TestRunnable createTestRunnable( int seed )
+    {
+        return new TestRunnable() {
+            public int runIteration( int run ) throws IOException
+            {
+                final long start =
+                    _reportHeap ? AllocationCounter.allocatedBytes() : -1L;
+
+                _out.setLength( 0 );
+                switch( _impl ) {
+                case BUFFER:
+                    _out.append( buffered( _article ) );
+                    break;
+                case ROPE:
+                    _out.append( _article.characters() );
+                    break;
+                case WRITE:
+                    _article.writeCharacters( _out );
+                    break;
+                }
+
+                if( start >= 0 ) {
+                    return (int)
+                        ( AllocationCounter.allocatedBytes() - start );
+                }
+                return _out.length();
+            }
+
+            private final StringBuilder _out = new StringBuilder();
+        };
+    }
+
+    /**
+     * The prior Element.characters(), by recursive concatenation.
+     */
+    private static CharSequence buffered( Node node )
+    {
+        final Element element = node.asElement();
+        if( element == null ) return node.characters();
+
+        CharSequence first = null;
+        ResizableCharBuffer buffer = null;
+        for( Node child : element.children() ) {
+            CharSequence cc = buffered( child );
+            if( cc != null ) {
+                if( buffer != null ) buffer.put( cc );
+                else if( first == null ) first = cc;
+                else {
+                    buffer = new ResizableCharBuffer( first.length() +
+                                                      cc.length() +
+                                                      32 );
+                    buffer.put( first );
+                    buffer.put( cc );
+                }
+            }
+        }
+        return ( ( buffer != null ) ? buffer.flipAsCharBuffer() : first );
+    }
+
+    private final Impl _impl;
+    private final Element _article;
+    private boolean _reportHeap = false;
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import com.gravitext.xml.producer.Tag;
+
+/**
+ * Index of an Element's child elements by local name, to ascending
+ * child positions. Keyed by name rather than Tag, since a
+ * Tag.WILDCARD_NS lookup must find children in any namespace; each
+ * candidate is then matched via Tag.equals(). Created unbuilt, to
+ * count children visited by linear scans until building the index
+ * would be cheaper.
+ */
+final class ChildIndex
+{
+    /**
+     * Record count children visited by a linear scan.
+     */
+    void scanned( int count )
+    {
+        _scanned += count;
+    }
+
+    /**
+     * Return true if scans have visited enough children (about the
+     * cost of a build) that the index should be built.
+     */
+    boolean isDue( int size )
+    {
+        return ( _scanned >= ( size * 2 ) );
+    }
+
+    boolean isBuilt()
+    {
+        return ( _names != null );
+    }
+
+    /**
+     * Build or rebuild the index from children.
+     */
+    void build( List<Node> children )
+    {
+        final int end = children.size();
+        _names = new HashMap<String,Positions>( end );
+        _size = 0;
+        for( int i = 0; i < end; ++i ) {
+            add( i, children.get( i ) );
+        }
+    }
+
+    /**
+     * Add child at position, which must be beyond any previously
+     * indexed position.
+     */
+    void add( int position, Node child )
+    {
+        final Element e = child.asElement();
+        if( e != null ) {
+            final String name = e.name();
+            Positions p = _names.get( name );
+            if( p == null ) {
+                p = new Positions();
+                _names.put( name, p );
+            }
+            p.add( position );
+        }
+        _size = position + 1;
+    }
+
+    /**
+     * Return the number of children indexed.
+     */
+    int size()
+    {
+        return _size;
+    }
+
+    Element first( List<Node> children, Tag tag )
+    {
+        final Positions p = _names.get( tag.name() );
+        if( p != null ) {
+            for( int i = 0; i < p.count; ++i ) {
+                final Element e = children.get( p.at[ i ] ).asElement();
+                if( matches( e, tag ) ) return e;
+            }
+        }
+        return null;
+    }
+
+    List<Element> elements( List<Node> children, Tag tag )
+    {
+        final Positions p = _names.get( tag.name() );
+        if( p == null ) return new ArrayList<Element>( 0 );
+
+        final List<Element> found = new ArrayList<Element>( p.count );
+        for( int i = 0; i < p.count; ++i ) {
+            final Element e = children.get( p.at[ i ] ).asElement();
+            if( matches( e, tag ) ) found.add( e );
+        }
+        return found;
+    }
+
+    private static boolean matches( Element e, Tag tag )
+    {
+        return ( ( e.tag() == tag ) || e.tag().equals( tag ) );
+    }
+
+    private static final class Positions
+    {
+        void add( int position )
+        {
+            if( count == at.length ) {
+                final int[] grown = new int[ count * 2 ];
+                System.arraycopy( at, 0, grown, 0, count );
+                at = grown;
+            }
+            at[ count++ ] = position;
+        }
+
+        int[] at = new int[ 2 ];
+        int count = 0;
+    }
+
+    private HashMap<String,Positions> _names = null;
+    private int _size = 0;
+    private int _scanned = 0;
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import com.gravitext.concurrent.TestFactory;
+import com.gravitext.concurrent.TestRunnable;
+import com.gravitext.util.FastRandom;
+import com.gravitext.xml.producer.Tag;
+
+/**
+ * Repeated child lookups by Tag on a wide element, via a linear scan
+ * of children (as Element.firstElement() without an index) or via
+ * Element.firstElement() and elements() with the child index. Each
+ * iteration builds a new element, with each child name occurring
+ * twice, so the index build cost is included. The result count is
+ * the number of lookups.
+ */
+public class ChildIndexPerfTest implements TestFactory
+{
+    public enum Impl
+    {
+        SCAN,
+        INDEX
+    };
+
+    /**
+     * @param width number of children of each element
+     * @param lookups number of firstElement() lookups per element
+     * @param impl lookup method
+     */
+    public ChildIndexPerfTest( int width, int lookups, Impl impl )
+    {
+        _width = width;
+        _lookups = lookups;
+        _impl = impl;
+        _tags = new Tag[ Math.max( width / 2, 1 ) ];
+        for( int i = 0; i < _tags.length; ++i ) {
+            _tags[ i ] = new Tag( "field" + i );
+        }
+    }
+
+    public String name()
+    {
+        return "CHILD_" + _impl.name() + "+lookups" + _lookups;
+    }
+
+    public TestRunnable createTestRunnable( final int seed )
+    {
+        return new TestRunnable() {
+            public int runIteration( int run )
+            {
+                final Element e = new Element( RECORD );
+                for( int i = 0; i < _width; ++i ) {
+                    e.addChild( new Element( _tags[ i % _tags.length ] ) );
+                }
+
+                int found = 0;
+                for( int i = 0; i < _lookups; ++i ) {
+                    final Tag tag = _tags[ _rnd.nextInt( _tags.length ) ];
+                    if( _impl == Impl.SCAN ) {
+                        if( scan( e, tag ) != null ) ++found;
+                    }
+                    else {
+                        if( e.firstElement( tag ) != null ) ++found;
+                    }
+                }
+                if( found != _lookups ) throw new IllegalStateException();
+                return found;
+            }
+
+            private final FastRandom _rnd = new FastRandom( seed );
+        };
+    }
+
+    private static Element scan( Element parent, Tag tag )
+    {
+        for( Node child : parent.children() ) {
+            Element celm = child.asElement();
+            if( ( celm != null ) && celm.tag().equals( tag ) ) {
+                return celm;
+            }
+        }
+        return null;
+    }
+
+    private static final Tag RECORD = new Tag( "record" );
+
+    private final int _width;
+    private final int _lookups;
+    private final Impl _impl;
+    private final Tag[] _tags;
+}
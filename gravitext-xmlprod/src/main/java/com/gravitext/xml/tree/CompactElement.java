@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.gravitext.util.ResizableCharBuffer;
+import com.gravitext.xml.producer.Attribute;
+import com.gravitext.xml.producer.Namespace;
+import com.gravitext.xml.producer.Tag;
+
+/**
+ * A transient, read-only view of an element in a CompactTree,
+ * offering the read API of Element.
+ */
+public final class CompactElement extends CompactNode
+{
+    @Override
+    public boolean isElement()
+    {
+        return true;
+    }
+
+    @Override
+    public CompactElement asElement()
+    {
+        return this;
+    }
+
+    public Tag tag()
+    {
+        return _tree.tag( _index );
+    }
+
+    public String name()
+    {
+        return tag().name();
+    }
+
+    public Namespace namespace()
+    {
+        return tag().namespace();
+    }
+
+    /**
+     * Return attributes as a list of AttributeValue, created on
+     * demand. May be empty, but not null.
+     */
+    public List<AttributeValue> attributes()
+    {
+        final int start = _tree.attrStart( _index );
+        final int end = _tree.attrEnd( _index );
+        if( start == end ) return Collections.emptyList();
+
+        return new AbstractList<AttributeValue>() {
+            @Override
+            public AttributeValue get( int i )
+            {
+                if( i < 0 || i >= end - start ) {
+                    throw new IndexOutOfBoundsException( "index: " + i );
+                }
+                return new AttributeValue( _tree.attr( start + i ),
+                                           _tree.attrValue( start + i ) );
+            }
+
+            @Override
+            public int size()
+            {
+                return end - start;
+            }
+        };
+    }
+
+    /**
+     * Return the specified attribute value or null is no match
+     * AttributeValue is found.
+     */
+    public CharSequence attribute( Attribute attr )
+    {
+        final int end = _tree.attrEnd( _index );
+        for( int a = _tree.attrStart( _index ); a < end; ++a ) {
+            if( _tree.attr( a ).equals( attr ) ) {
+                return _tree.attrValue( a );
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the attribute value with the given name and default
+     * Namespace, or null if no matching AttributeValue is found.
+     */
+    public CharSequence attribute( String name )
+    {
+        final int end = _tree.attrEnd( _index );
+        for( int a = _tree.attrStart( _index ); a < end; ++a ) {
+            final Attribute attr = _tree.attr( a );
+            if( attr.name().equals( name ) &&
+                ( attr.namespace() == null ) ) {
+                return _tree.attrValue( a );
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return any additional Namespace declarations rooted at this
+     * element.  May be empty, but not null.
+     */
+    public List<Namespace> namespaceDeclarations()
+    {
+        final int start = _tree.nsStart( _index );
+        final int end = _tree.nsEnd( _index );
+        if( start == end ) return Collections.emptyList();
+
+        final List<Namespace> spaces =
+            new ArrayList<Namespace>( end - start );
+        for( int n = start; n < end; ++n ) {
+            spaces.add( _tree.ns( n ) );
+        }
+        return spaces;
+    }
+
+    /**
+     * Return children nodes (may be empty, may not null.)
+     */
+    public List<CompactNode> children()
+    {
+        int c = _tree.firstChild( _index );
+        if( c < 0 ) return Collections.emptyList();
+
+        final List<CompactNode> children = new ArrayList<CompactNode>( 4 );
+        while( c >= 0 ) {
+            children.add( create( _tree, c ) );
+            c = _tree.nextSibling( c );
+        }
+        return children;
+    }
+
+    /**
+     * Return the first child element with matching tag, or null if
+     * not found.
+     */
+    public CompactElement firstElement( Tag tag )
+    {
+        for( int c = _tree.firstChild( _index );
+             c >= 0;
+             c = _tree.nextSibling( c ) ) {
+            final Tag ctag = _tree.tag( c );
+            if( ( ctag != null ) && ctag.equals( tag ) ) {
+                return new CompactElement( _tree, c );
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return all child elements with matching tag, in order. May be
+     * empty, but not null.
+     */
+    public List<CompactElement> elements( Tag tag )
+    {
+        final List<CompactElement> found = new ArrayList<CompactElement>();
+        for( int c = _tree.firstChild( _index );
+             c >= 0;
+             c = _tree.nextSibling( c ) ) {
+            final Tag ctag = _tree.tag( c );
+            if( ( ctag != null ) && ctag.equals( tag ) ) {
+                found.add( new CompactElement( _tree, c ) );
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Return the first descendant by consecutively matching elements
+     * with tags, or null if the path of tags is not found.
+     */
+    public CompactElement firstElement( Tag... tags )
+    {
+        CompactElement pos = this;
+
+        for( Tag t : tags ) {
+            pos = pos.firstElement( t );
+            if( pos == null ) break;
+        }
+        return pos;
+    }
+
+    /**
+     * Return all contained character data in the descendants of this
+     * element, or null if there is no character data.
+     */
+    @Override
+    public CharSequence characters()
+    {
+        CharSequence first = null;
+        ResizableCharBuffer buffer = null;
+
+        // Iterative pre-order walk of this subtree.
+        int n = _tree.firstChild( _index );
+        while( n >= 0 ) {
+            if( _tree.tag( n ) == null ) {
+                final CharSequence cc = _tree.text( n );
+                if( buffer != null ) buffer.put( cc );
+                else if( first == null ) first = cc;
+                else {
+                    buffer = new ResizableCharBuffer( first.length() +
+                                                      cc.length() +
+                                                      32 );
+                    buffer.put( first );
+                    buffer.put( cc );
+                }
+            }
+            else if( _tree.firstChild( n ) >= 0 ) {
+                n = _tree.firstChild( n );
+                continue;
+            }
+            while( _tree.nextSibling( n ) < 0 ) {
+                n = _tree.parent( n );
+                if( n == _index ) return result( first, buffer );
+            }
+            n = _tree.nextSibling( n );
+        }
+        return result( first, buffer );
+    }
+
+    /**
+     * Return a new, mutable Element copy of this element and its
+     * descendants.
+     */
+    public Element toElement()
+    {
+        return (Element) toNode();
+    }
+
+    @Override
+    Node toNode()
+    {
+        final Element element = new Element( tag() );
+
+        final int nsEnd = _tree.nsEnd( _index );
+        for( int n = _tree.nsStart( _index ); n < nsEnd; ++n ) {
+            element.addNamespace( _tree.ns( n ) );
+        }
+
+        final int attrEnd = _tree.attrEnd( _index );
+        for( int a = _tree.attrStart( _index ); a < attrEnd; ++a ) {
+            element.addAttribute( _tree.attr( a ),
+                                  _tree.attrValue( a ).toString() );
+        }
+
+        for( int c = _tree.firstChild( _index );
+             c >= 0;
+             c = _tree.nextSibling( c ) ) {
+            element.addChild( create( _tree, c ).toNode() );
+        }
+        return element;
+    }
+
+    CompactElement( CompactTree tree, int index )
+    {
+        super( tree, index );
+    }
+
+    private static CharSequence result( CharSequence first,
+                                        ResizableCharBuffer buffer )
+    {
+        return ( ( buffer != null ) ? buffer.flipAsCharBuffer() : first );
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+/**
+ * A transient, read-only view of a node in a CompactTree, offering
+ * the read API of Node. Views are created on demand; two views are
+ * equal if they reference the same node of the same tree.
+ */
+public class CompactNode
+{
+    /**
+     * Return this nodes parent, or null if there is no parent (root
+     * element.)
+     */
+    public final CompactElement parent()
+    {
+        final int p = _tree.parent( _index );
+        return ( p >= 0 ) ? new CompactElement( _tree, p ) : null;
+    }
+
+    /**
+     * Return true if this is an element.
+     */
+    public boolean isElement()
+    {
+        return false;
+    }
+
+    /**
+     * Return this node cast as CompactElement, or null if this is not
+     * an element.
+     */
+    public CompactElement asElement()
+    {
+        return null;
+    }
+
+    /**
+     * Return true if this node is characters.
+     */
+    public final boolean isCharacters()
+    {
+        return !isElement();
+    }
+
+    /**
+     * Return characters if this is a characters node, or all
+     * contained character data if this is an element. Null may be
+     * returned in the later case.
+     */
+    public CharSequence characters()
+    {
+        return _tree.text( _index );
+    }
+
+    /**
+     * Return the CompactTree containing this node.
+     */
+    public final CompactTree tree()
+    {
+        return _tree;
+    }
+
+    @Override
+    public final boolean equals( Object other )
+    {
+        if( other instanceof CompactNode ) {
+            final CompactNode o = (CompactNode) other;
+            return ( ( _index == o._index ) && ( _tree == o._tree ) );
+        }
+        return false;
+    }
+
+    @Override
+    public final int hashCode()
+    {
+        return ( System.identityHashCode( _tree ) * 31 ) + _index;
+    }
+
+    /**
+     * Return a new Node copy of this node.
+     */
+    Node toNode()
+    {
+        return new Characters( characters().toString() );
+    }
+
+    static CompactNode create( CompactTree tree, int index )
+    {
+        if( tree.tag( index ) != null ) {
+            return new CompactElement( tree, index );
+        }
+        return new CompactNode( tree, index );
+    }
+
+    CompactNode( CompactTree tree, int index )
+    {
+        _tree = tree;
+        _index = index;
+    }
+
+    final CompactTree _tree;
+    final int _index;
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.gravitext.xml.NamespaceCache;
+import com.gravitext.xml.producer.Namespace;
+
+/**
+ * A SAX2 event handler which builds a CompactTree.
+ * @see SAXUtils#saxParseCompact
+ */
+public final class CompactSAXHandler
+    extends DefaultHandler
+{
+    /**
+     * Construct with a new (private) NamespaceCache.
+     */
+    public CompactSAXHandler()
+    {
+        this( new NamespaceCache() );
+    }
+
+    /**
+     * Construct given NamespaceCache, which may be shared if thread
+     * safe.
+     * @see com.gravitext.xml.ConcurrentNamespaceCache
+     */
+    public CompactSAXHandler( NamespaceCache cache )
+    {
+        _cache = cache;
+    }
+
+    /**
+     * The CompactTree available after SAX parsing events have been
+     * received.
+     */
+    public CompactTree tree()
+    {
+        return _tree;
+    }
+
+    @Override
+    public void startDocument()
+    {
+        _builder.reset();
+        _tree = null;
+        _scope.clear();
+    }
+
+    @Override
+    public void endDocument()
+    {
+        _tree = _builder.build();
+    }
+
+    @Override
+    public void startPrefixMapping( String prefix, String iri )
+    {
+        _nextNS.add( _cache.namespace( prefix, iri ) );
+    }
+
+    @Override
+    public void startElement( String iri, String localName, String qName,
+                              Attributes attributes )
+    {
+        final Namespace ns = findNamespace( iri );
+        _builder.startElement( _cache.tag( localName, ns ) );
+
+        // Add any namespaces declared and not
+        // already used by this element.
+        for( Namespace decl: _nextNS ) {
+            if( decl != ns ) _builder.addNamespace( decl );
+        }
+
+        final int end = attributes.getLength();
+        for( int i = 0; i < end; ++i ) {
+            _builder.addAttribute(
+                _cache.attribute( attributes.getLocalName( i ),
+                                  findNamespace( attributes.getURI( i ) ) ),
+                attributes.getValue( i ) );
+        }
+
+        // Push declarations into scope, marking prior scope end.
+        final int depth = _builder.depth();
+        if( depth >= _scopeMarks.length ) {
+            _scopeMarks = Arrays.copyOf( _scopeMarks, depth * 2 );
+        }
+        _scopeMarks[ depth ] = _scope.size();
+        _scope.addAll( _nextNS );
+        _nextNS.clear();
+    }
+
+    @Override
+    public void endElement( String iri, String localName, String qName )
+    {
+        final int mark = _scopeMarks[ _builder.depth() ];
+        for( int i = _scope.size(); i > mark; --i ) {
+            _scope.remove( i - 1 );
+        }
+        _builder.endElement();
+    }
+
+    @Override
+    public void characters( char[] ch, int start, int length )
+    {
+        _builder.characters( ch, start, length );
+    }
+
+    private Namespace findNamespace( String iri )
+    {
+        if( ( iri != null ) && ! iri.isEmpty() ) {
+            for( Namespace ns : _nextNS ) {
+                if( ns.nameIRI().equals( iri ) ) return ns;
+            }
+            for( int i = _scope.size() - 1; i >= 0; --i ) {
+                final Namespace ns = _scope.get( i );
+                if( ns.nameIRI().equals( iri ) ) return ns;
+            }
+            if( iri.equals( "http://www.w3.org/XML/1998/namespace" ) ) {
+                return _cache.namespace( "xml", iri );
+            }
+            throw new IllegalStateException( "ns: " + iri + " not found!" );
+        }
+        return null;
+    }
+
+    private final NamespaceCache _cache;
+    private final CompactTreeBuilder _builder = new CompactTreeBuilder();
+    private CompactTree _tree = null;
+
+    private final ArrayList<Namespace> _nextNS = new ArrayList<Namespace>( 8 );
+
+    // In-scope namespace declarations, and scope size at each depth.
+    private final ArrayList<Namespace> _scope =
+        new ArrayList<Namespace>( 8 );
+    private int[] _scopeMarks = new int[ 16 ];
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import com.gravitext.xml.producer.Attribute;
+import com.gravitext.xml.producer.CharSlice;
+import com.gravitext.xml.producer.Namespace;
+import com.gravitext.xml.producer.Tag;
+
+/**
+ * A read-only XML tree stored in parallel arrays, as a compact
+ * alternative to an Element/Characters Node tree. Each node is an
+ * index into arrays of tag, parent, first-child and next-sibling,
+ * and a text or attribute range. All character data (text and
+ * attribute values) is held in a single shared char buffer. Namespace
+ * declarations, being rare, are held as (owner, Namespace) pairs
+ * ordered by owner.
+ *
+ * <p>Nodes are read via transient CompactElement and CompactNode
+ * views, which offer the read API of Element. Use toElement() to
+ * materialize a mutable Element tree if needed. Instances are built
+ * via CompactTreeBuilder and are safe for concurrent reads.</p>
+ *
+ * @see CompactTreeBuilder
+ * @see CompactSAXHandler
+ */
+public final class CompactTree
+{
+    /**
+     * Return the root element.
+     */
+    public CompactElement root()
+    {
+        return new CompactElement( this, 0 );
+    }
+
+    /**
+     * Return the total number of nodes (elements and characters) in
+     * this tree.
+     */
+    public int nodeCount()
+    {
+        return _count;
+    }
+
+    /**
+     * Return the number of attributes in this tree.
+     */
+    public int attributeCount()
+    {
+        return _attrCount;
+    }
+
+    /**
+     * Return the total length of character data (text and attribute
+     * values) in this tree.
+     */
+    public int charLength()
+    {
+        return _chars.length;
+    }
+
+    /**
+     * Materialize and return an equivalent, mutable Element tree.
+     */
+    public Element toElement()
+    {
+        return root().toElement();
+    }
+
+    CompactTree( int count, Tag[] tags,
+                 int[] parents, int[] firstChilds, int[] nextSiblings,
+                 int[] offsets, int[] lengths,
+                 int attrCount, Attribute[] attrs,
+                 int[] attrOffsets, int[] attrLengths,
+                 int nsCount, int[] nsOwners, Namespace[] nsDecls,
+                 char[] chars )
+    {
+        _count = count;
+        _tags = tags;
+        _parents = parents;
+        _firstChilds = firstChilds;
+        _nextSiblings = nextSiblings;
+        _offsets = offsets;
+        _lengths = lengths;
+        _attrCount = attrCount;
+        _attrs = attrs;
+        _attrOffsets = attrOffsets;
+        _attrLengths = attrLengths;
+        _nsCount = nsCount;
+        _nsOwners = nsOwners;
+        _nsDecls = nsDecls;
+        _chars = chars;
+    }
+
+    Tag tag( int node )
+    {
+        return _tags[ node ];
+    }
+
+    int parent( int node )
+    {
+        return _parents[ node ];
+    }
+
+    int firstChild( int node )
+    {
+        return _firstChilds[ node ];
+    }
+
+    int nextSibling( int node )
+    {
+        return _nextSiblings[ node ];
+    }
+
+    /**
+     * Return characters of a text node as a read-only CharSlice view
+     * of the shared buffer, which CharacterEncoder writes directly
+     * from the backing array.
+     */
+    CharSequence text( int node )
+    {
+        return chars( _offsets[ node ], _lengths[ node ] );
+    }
+
+    int attrStart( int element )
+    {
+        return _offsets[ element ];
+    }
+
+    int attrEnd( int element )
+    {
+        return _offsets[ element ] + _lengths[ element ];
+    }
+
+    Attribute attr( int a )
+    {
+        return _attrs[ a ];
+    }
+
+    CharSequence attrValue( int a )
+    {
+        return chars( _attrOffsets[ a ], _attrLengths[ a ] );
+    }
+
+    /**
+     * Return index of first namespace declaration of element, or
+     * nsEnd( element ) if none.
+     */
+    int nsStart( int element )
+    {
+        // Binary search for lowest index with owner >= element
+        int low = 0;
+        int high = _nsCount;
+        while( low < high ) {
+            final int mid = ( low + high ) >>> 1;
+            if( _nsOwners[ mid ] < element ) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    int nsEnd( int element )
+    {
+        return nsStart( element + 1 );
+    }
+
+    Namespace ns( int n )
+    {
+        return _nsDecls[ n ];
+    }
+
+    private CharSequence chars( int offset, int length )
+    {
+        return new CharSlice( _chars, offset, length );
+    }
+
+    private final int _count;
+
+    // Per node: Tag or null for characters.
+    private final Tag[] _tags;
+    private final int[] _parents;
+    private final int[] _firstChilds;
+    private final int[] _nextSiblings;
+
+    // Per node: characters range in _chars, or for elements the
+    // range of attributes in the _attr* arrays.
+    private final int[] _offsets;
+    private final int[] _lengths;
+
+    private final int _attrCount;
+    private final Attribute[] _attrs;
+    private final int[] _attrOffsets;
+    private final int[] _attrLengths;
+
+    private final int _nsCount;
+    private final int[] _nsOwners;
+    private final Namespace[] _nsDecls;
+
+    private final char[] _chars;
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.util.Arrays;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.gravitext.xml.NamespaceCache;
+import com.gravitext.xml.producer.Attribute;
+import com.gravitext.xml.producer.Namespace;
+import com.gravitext.xml.producer.Tag;
+
+import static javax.xml.stream.XMLStreamConstants.*;
+
+/**
+ * Builds a CompactTree from element, attribute and character events,
+ * either supplied directly or consumed from a StAX XMLStreamReader.
+ * Adjacent character events are coalesced into a single node. A
+ * builder is not thread safe, but may be reused for successive trees
+ * (retaining its grown buffers) once build() has been called.
+ *
+ * @see CompactSAXHandler
+ */
+public final class CompactTreeBuilder
+{
+    /**
+     * Construct with a new (private) NamespaceCache.
+     */
+    public CompactTreeBuilder()
+    {
+        this( new NamespaceCache() );
+    }
+
+    /**
+     * Construct given NamespaceCache, which may be shared if thread
+     * safe. The cache is only used when consuming from StAX.
+     * @see com.gravitext.xml.ConcurrentNamespaceCache
+     */
+    public CompactTreeBuilder( NamespaceCache cache )
+    {
+        _cache = cache;
+    }
+
+    /**
+     * Start a new element as the root, or as the last child of the
+     * current element.
+     * @throws IllegalStateException if the root element has already
+     * ended.
+     */
+    public void startElement( Tag tag )
+    {
+        if( ( _count > 0 ) && ( _depth == 0 ) ) {
+            throw new IllegalStateException( "Root element already ended" );
+        }
+        final int node = addNode( tag );
+        _offsets[ node ] = _attrCount;
+        _lengths[ node ] = 0;
+
+        if( _depth == _open.length ) {
+            _open = Arrays.copyOf( _open, _depth * 2 );
+            _lastChild = Arrays.copyOf( _lastChild, _depth * 2 );
+        }
+        _open[ _depth ] = node;
+        _lastChild[ _depth ] = -1;
+        ++_depth;
+        _lastText = -1;
+    }
+
+    /**
+     * Add a namespace declaration to the current element, which
+     * should not be the element's own namespace.
+     * @throws IllegalStateException if there is no current element or
+     * it already has children.
+     */
+    public void addNamespace( Namespace ns )
+    {
+        final int element = currentNoChildren();
+        if( _nsCount == _nsDecls.length ) {
+            final int cap = _nsCount * 2 + 4;
+            _nsOwners = Arrays.copyOf( _nsOwners, cap );
+            _nsDecls = Arrays.copyOf( _nsDecls, cap );
+        }
+        _nsOwners[ _nsCount ] = element;
+        _nsDecls[ _nsCount++ ] = ns;
+    }
+
+    /**
+     * Add an attribute value to the current element, making no
+     * attempt to check if the same attribute already exists.
+     * @throws IllegalStateException if there is no current element or
+     * it already has children.
+     */
+    public void addAttribute( Attribute attr, CharSequence value )
+    {
+        final int element = currentNoChildren();
+        if( _attrCount == _attrs.length ) {
+            final int cap = _attrCount * 2;
+            _attrs = Arrays.copyOf( _attrs, cap );
+            _attrOffsets = Arrays.copyOf( _attrOffsets, cap );
+            _attrLengths = Arrays.copyOf( _attrLengths, cap );
+        }
+        _attrs[ _attrCount ] = attr;
+        _attrOffsets[ _attrCount ] = _charsLength;
+        _attrLengths[ _attrCount ] = value.length();
+        ++_attrCount;
+        ++_lengths[ element ];
+        putChars( value );
+    }
+
+    /**
+     * Add characters as the last child of the current element,
+     * coalesced with any immediately preceding characters.
+     * @throws IllegalStateException if there is no current element.
+     */
+    public void characters( char[] chars, int offset, int length )
+    {
+        final int node = textNode();
+        ensureChars( length );
+        System.arraycopy( chars, offset, _chars, _charsLength, length );
+        _charsLength += length;
+        _lengths[ node ] += length;
+    }
+
+    /**
+     * Add characters as the last child of the current element,
+     * coalesced with any immediately preceding characters.
+     * @throws IllegalStateException if there is no current element.
+     */
+    public void characters( CharSequence chars )
+    {
+        final int node = textNode();
+        _lengths[ node ] += chars.length();
+        putChars( chars );
+    }
+
+    /**
+     * End the current element.
+     * @throws IllegalStateException if there is no current element.
+     */
+    public void endElement()
+    {
+        current();
+        --_depth;
+        _lastText = -1;
+    }
+
+    /**
+     * Return the current nesting depth of open elements.
+     */
+    public int depth()
+    {
+        return _depth;
+    }
+
+    /**
+     * Return the completed tree and reset this builder for reuse.
+     * @throws IllegalStateException if no root element was started or
+     * elements remain open.
+     */
+    public CompactTree build()
+    {
+        if( _count == 0 ) {
+            throw new IllegalStateException( "No root element" );
+        }
+        if( _depth > 0 ) {
+            throw new IllegalStateException( _depth + " unclosed elements" );
+        }
+
+        CompactTree tree =
+            new CompactTree( _count,
+                             Arrays.copyOf( _tags, _count ),
+                             Arrays.copyOf( _parents, _count ),
+                             Arrays.copyOf( _firstChilds, _count ),
+                             Arrays.copyOf( _nextSiblings, _count ),
+                             Arrays.copyOf( _offsets, _count ),
+                             Arrays.copyOf( _lengths, _count ),
+                             _attrCount,
+                             Arrays.copyOf( _attrs, _attrCount ),
+                             Arrays.copyOf( _attrOffsets, _attrCount ),
+                             Arrays.copyOf( _attrLengths, _attrCount ),
+                             _nsCount,
+                             Arrays.copyOf( _nsOwners, _nsCount ),
+                             Arrays.copyOf( _nsDecls, _nsCount ),
+                             Arrays.copyOf( _chars, _charsLength ) );
+        reset();
+        return tree;
+    }
+
+    /**
+     * Discard any partially built tree, for reuse.
+     */
+    public void reset()
+    {
+        // Release references for GC, retaining capacity
+        Arrays.fill( _tags, 0, _count, null );
+        Arrays.fill( _attrs, 0, _attrCount, null );
+        Arrays.fill( _nsDecls, 0, _nsCount, null );
+
+        _count = _attrCount = _nsCount = _charsLength = _depth = 0;
+        _lastText = -1;
+    }
+
+    /**
+     * Build a tree from the current START_ELEMENT of sr through its
+     * matching END_ELEMENT.
+     */
+    public CompactTree readCurrentElement( XMLStreamReader sr )
+        throws XMLStreamException
+    {
+        if( sr.getEventType() != START_ELEMENT ) {
+            throw new XMLStreamException(
+                "Reader not on START_ELEMENT (" + sr.getEventType() + ")." );
+        }
+        reset();
+        startElement( sr );
+        consume( sr );
+        return build();
+    }
+
+    /**
+     * Build a tree from the entire document of sr.
+     */
+    public CompactTree readDocument( XMLStreamReader sr )
+        throws XMLStreamException
+    {
+        reset();
+        consume( sr );
+        return build();
+    }
+
+    private void consume( XMLStreamReader sr ) throws XMLStreamException
+    {
+        int depth = ( sr.getEventType() == START_ELEMENT ) ? 1 : 0;
+        loop: while( true ) {
+            switch( sr.next() ) {
+            case START_DOCUMENT:
+                ++depth;
+                break;
+            case START_ELEMENT:
+                startElement( sr );
+                ++depth;
+                break;
+            case CHARACTERS:
+            case CDATA:
+                characters( sr.getTextCharacters(),
+                            sr.getTextStart(),
+                            sr.getTextLength() );
+                break;
+            case END_ELEMENT:
+                endElement();
+                if( --depth <= 0 ) break loop;
+                break;
+            case END_DOCUMENT:
+                break loop;
+            }
+        }
+    }
+
+    private void startElement( XMLStreamReader sr )
+    {
+        final Namespace ns = _cache.namespace( sr.getPrefix(),
+                                               sr.getNamespaceURI() );
+        startElement( _cache.tag( sr.getLocalName(), ns ) );
+
+        final int nsds = sr.getNamespaceCount();
+        for( int i = 0; i < nsds; ++i ) {
+            Namespace decl = _cache.namespace( sr.getNamespacePrefix( i ),
+                                               sr.getNamespaceURI( i ) );
+            if( decl != ns ) addNamespace( decl );
+        }
+
+        final int end = sr.getAttributeCount();
+        for( int i = 0; i < end; ++i ) {
+            final Attribute attr =
+                _cache.attribute( sr.getAttributeLocalName( i ),
+                                  _cache.namespace(
+                                      sr.getAttributePrefix( i ),
+                                      sr.getAttributeNamespace( i ) ) );
+            addAttribute( attr, sr.getAttributeValue( i ) );
+        }
+    }
+
+    private int addNode( Tag tag )
+    {
+        if( _count == _tags.length ) {
+            final int cap = _count * 2;
+            _tags = Arrays.copyOf( _tags, cap );
+            _parents = Arrays.copyOf( _parents, cap );
+            _firstChilds = Arrays.copyOf( _firstChilds, cap );
+            _nextSiblings = Arrays.copyOf( _nextSiblings, cap );
+            _offsets = Arrays.copyOf( _offsets, cap );
+            _lengths = Arrays.copyOf( _lengths, cap );
+        }
+
+        final int node = _count++;
+        _tags[ node ] = tag;
+        _firstChilds[ node ] = -1;
+        _nextSiblings[ node ] = -1;
+
+        if( _depth > 0 ) {
+            final int parent = _open[ _depth - 1 ];
+            final int prior = _lastChild[ _depth - 1 ];
+            _parents[ node ] = parent;
+            if( prior < 0 ) _firstChilds[ parent ] = node;
+            else _nextSiblings[ prior ] = node;
+            _lastChild[ _depth - 1 ] = node;
+        }
+        else {
+            _parents[ node ] = -1;
+        }
+        return node;
+    }
+
+    private int textNode()
+    {
+        current();
+        if( _lastText < 0 ) {
+            _lastText = addNode( null );
+            _offsets[ _lastText ] = _charsLength;
+            _lengths[ _lastText ] = 0;
+        }
+        return _lastText;
+    }
+
+    private int current()
+    {
+        if( _depth == 0 ) {
+            throw new IllegalStateException( "No current element" );
+        }
+        return _open[ _depth - 1 ];
+    }
+
+    private int currentNoChildren()
+    {
+        final int element = current();
+        if( _firstChilds[ element ] >= 0 ) {
+            throw new IllegalStateException(
+                "Current element already has children" );
+        }
+        return element;
+    }
+
+    private void putChars( CharSequence chars )
+    {
+        final int length = chars.length();
+        ensureChars( length );
+        if( chars instanceof String ) {
+            ( (String) chars ).getChars( 0, length, _chars, _charsLength );
+        }
+        else {
+            for( int i = 0; i < length; ++i ) {
+                _chars[ _charsLength + i ] = chars.charAt( i );
+            }
+        }
+        _charsLength += length;
+    }
+
+    private void ensureChars( int length )
+    {
+        final int required = _charsLength + length;
+        if( required > _chars.length ) {
+            _chars = Arrays.copyOf( _chars,
+                                    Math.max( required, _chars.length * 2 ) );
+        }
+    }
+
+    private final NamespaceCache _cache;
+
+    private int _count = 0;
+    private Tag[] _tags = new Tag[ 64 ];
+    private int[] _parents = new int[ 64 ];
+    private int[] _firstChilds = new int[ 64 ];
+    private int[] _nextSiblings = new int[ 64 ];
+    private int[] _offsets = new int[ 64 ];
+    private int[] _lengths = new int[ 64 ];
+
+    private int _attrCount = 0;
+    private Attribute[] _attrs = new Attribute[ 16 ];
+    private int[] _attrOffsets = new int[ 16 ];
+    private int[] _attrLengths = new int[ 16 ];
+
+    private int _nsCount = 0;
+    private int[] _nsOwners = new int[ 0 ];
+    private Namespace[] _nsDecls = new Namespace[ 0 ];
+
+    private char[] _chars = new char[ 1024 ];
+    private int _charsLength = 0;
+
+    // Stack of open elements and each's last child, by depth.
+    private int _depth = 0;
+    private int[] _open = new int[ 16 ];
+    private int[] _lastChild = new int[ 16 ];
+
+    // Text node to coalesce subsequent characters into, or -1.
+    private int _lastText = -1;
+}
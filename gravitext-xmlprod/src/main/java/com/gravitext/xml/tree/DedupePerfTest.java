@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.IOException;
+import java.util.HashSet;
+
+import com.gravitext.concurrent.TestFactory;
+import com.gravitext.concurrent.TestRunnable;
+import com.gravitext.util.FastRandom;
+import com.gravitext.xml.producer.Attribute;
+import com.gravitext.xml.producer.Indentor;
+import com.gravitext.xml.producer.Tag;
+
+/**
+ * Deduplication of a set of near-duplicate record trees, where
+ * duplicates differ only in a character deep in the tree. Compares
+ * a set keyed by serialized (produceString) form to one keyed by
+ * Node.structuralHash() and deepEquals(). Each iteration builds new
+ * trees, so no hashes are cached up front.  The result count is the
+ * number of unique trees.
+ */
+public class DedupePerfTest implements TestFactory
+{
+    public enum Impl
+    {
+        SERIALIZE,
+        STRUCTURAL
+    };
+
+    /**
+     * @param records number of trees per iteration
+     * @param impl dedupe method
+     */
+    public DedupePerfTest( int records, Impl impl )
+    {
+        _records = records;
+        _impl = impl;
+    }
+
+    public String name()
+    {
+        return "DEDUPE_" + _impl.name();
+    }
+
+    public TestRunnable createTestRunnable( final int seed )
+    {
+        return new TestRunnable() {
+            public int runIteration( int run ) throws IOException
+            {
+                if( _impl == Impl.SERIALIZE ) {
+                    HashSet<String> unique = new HashSet<String>();
+                    for( int i = 0; i < _records; ++i ) {
+                        unique.add( TreeUtils.produceString(
+                            record( i ), Indentor.COMPRESSED ) );
+                    }
+                    return unique.size();
+                }
+
+                HashSet<TreeKey> unique = new HashSet<TreeKey>();
+                for( int i = 0; i < _records; ++i ) {
+                    unique.add( new TreeKey( record( i ) ) );
+                }
+                return unique.size();
+            }
+
+            /**
+             * Build a record tree, a duplicate of one of a few
+             * variants: half vary by a single deep character.
+             */
+            private Element record( int i )
+            {
+                final int variant = _rnd.nextInt( VARIANTS );
+
+                Element r = new Element( RECORD );
+                r.addAttribute( ID, "record-" + ( variant / 2 ) );
+                r.addAttribute( TYPE, "entry" );
+                Element title = new Element( TITLE );
+                title.addChild( new Characters(
+                    "Near-duplicate record title " + ( variant / 2 ) ) );
+                r.addChild( title );
+
+                Element body = new Element( BODY );
+                for( int p = 0; p < 4; ++p ) {
+                    Element para = new Element( PARA );
+                    para.addChild( new Characters( TEXT ) );
+                    body.addChild( para );
+                }
+                Element last = new Element( PARA );
+                last.addChild( new Characters(
+                    ( ( variant % 2 ) == 0 ) ? TEXT : TEXT_ALT ) );
+                body.addChild( last );
+                r.addChild( body );
+                return r;
+            }
+
+            private final FastRandom _rnd = new FastRandom( seed );
+        };
+    }
+
+    /**
+     * Set key by structural hash and deep equality.
+     */
+    private static final class TreeKey
+    {
+        TreeKey( Element root )
+        {
+            _root = root;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return _root.structuralHash();
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            return ( ( o instanceof TreeKey ) &&
+                     _root.deepEquals( ( (TreeKey) o )._root ) );
+        }
+
+        private final Element _root;
+    }
+
+    private static final int VARIANTS = 200;
+
+    private static final String TEXT =
+        "Paragraph text, which is the same across all records & thus " +
+        "only compared where structural hashes match. ";
+    private static final String TEXT_ALT = TEXT.replace( '&', '+' );
+
+    private static final Tag RECORD = new Tag( "record" );
+    private static final Tag TITLE  = new Tag( "title" );
+    private static final Tag BODY   = new Tag( "body" );
+    private static final Tag PARA   = new Tag( "p" );
+
+    private static final Attribute ID   = new Attribute( "id" );
+    private static final Attribute TYPE = new Attribute( "type" );
+
+    private final int _records;
+    private final Impl _impl;
+}
@@ -16,17 +16,26 @@
 
 package com.gravitext.xml.tree;
 
+import java.io.IOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 
-import com.gravitext.util.ResizableCharBuffer;
 import com.gravitext.xml.producer.Attribute;
 import com.gravitext.xml.producer.Namespace;
 import com.gravitext.xml.producer.Tag;
 
 /**
  * Node representing a *ML Element with Tag, attributes and children.
+ * Children may be materialized on first access, if read via
+ * LazyConsumer. Elements with many children are indexed by child
+ * name once repeated firstElement() or elements() lookups have
+ * scanned more children than an index build would visit. Modifying
+ * children only via this class (not the children() list) keeps the
+ * index current.
  */
 public final class Element extends Node
 {
@@ -76,9 +85,43 @@ public final class Element extends Node
         return _tag.namespace();
     }
 
+    /**
+     * Return a list view of the attributes of this element. The view
+     * supports get, set, add and remove, but creates a new
+     * AttributeValue on each get. Prefer attributeCount(),
+     * attributeAt() and attributeValueAt() for iteration.
+     */
     public List<AttributeValue> attributes()
     {
-        return _attributes;
+        return new AttributeList();
+    }
+
+    /**
+     * Return the number of attributes of this element.
+     */
+    public int attributeCount()
+    {
+        return _attCount;
+    }
+
+    /**
+     * Return the Attribute at the specified index.
+     * @throws IndexOutOfBoundsException on bad index
+     */
+    public Attribute attributeAt( int index )
+    {
+        checkAttributeIndex( index );
+        return (Attribute) _atts[ index * 2 ];
+    }
+
+    /**
+     * Return the attribute value at the specified index.
+     * @throws IndexOutOfBoundsException on bad index
+     */
+    public CharSequence attributeValueAt( int index )
+    {
+        checkAttributeIndex( index );
+        return (CharSequence) _atts[ index * 2 + 1 ];
     }
 
     /**
@@ -87,12 +130,8 @@ public final class Element extends Node
      */
     public CharSequence attribute( Attribute attr )
     {
-        for( AttributeValue av : _attributes ) {
-            if( av.attribute().equals( attr ) ) {
-                return av.value();
-            }
-        }
-        return null;
+        final int i = indexOfAttribute( attr );
+        return ( i < 0 ) ? null : (CharSequence) _atts[ i * 2 + 1 ];
     }
 
     /**
@@ -101,13 +140,8 @@ public final class Element extends Node
      */
     public CharSequence attribute( String name )
     {
-        for( AttributeValue av : _attributes ) {
-            if( av.attribute().name().equals( name ) &&
-                ( av.attribute().namespace() == null ) ) {
-                return av.value();
-            }
-        }
-        return null;
+        final int i = indexOfAttribute( name );
+        return ( i < 0 ) ? null : (CharSequence) _atts[ i * 2 + 1 ];
     }
 
     /**
@@ -124,6 +158,7 @@ public final class Element extends Node
      */
     public List<Node> children()
     {
+        materialize();
         return _children;
     }
 
@@ -133,15 +168,42 @@ public final class Element extends Node
      */
     public Element firstElement( Tag tag )
     {
+        materialize();
+        if( indexed() ) return _index.first( _children, tag );
+
+        int scanned = 0;
         for( Node child : _children ) {
+            ++scanned;
             Element celm = child.asElement();
             if( ( celm != null ) && celm.tag().equals( tag ) ) {
+                scanned( scanned );
                 return celm;
             }
         }
+        scanned( scanned );
         return null;
     }
 
+    /**
+     * Return all child elements with matching tag, in order. May be
+     * empty, but not null.
+     */
+    public List<Element> elements( Tag tag )
+    {
+        materialize();
+        if( indexed() ) return _index.elements( _children, tag );
+
+        scanned( _children.size() );
+        final List<Element> found = new ArrayList<Element>();
+        for( Node child : _children ) {
+            Element celm = child.asElement();
+            if( ( celm != null ) && celm.tag().equals( tag ) ) {
+                found.add( celm );
+            }
+        }
+        return found;
+    }
+
     /**
      * Return the first descendant by consecutively matching elements
      * with tags, or null if the path of tags is not found.
@@ -158,31 +220,41 @@ public final class Element extends Node
     }
 
     /**
-     * Return all contained character data in the children of this
-     * element, or null if there is no character data.
+     * Return all contained character data in the descendants of this
+     * element, or null if there is no character data. The text of
+     * multiple Characters nodes is returned as a CharRope, which
+     * references but does not copy each.
      */
     @Override
     public CharSequence characters()
     {
-        CharSequence first = null;
-        ResizableCharBuffer buffer = null;
+        final TextVisitor text = new TextVisitor( null, true );
+        text.walk( this );
+        if( text._count == 0 ) return null;
+        if( text._count == 1 ) return text._parts[ 0 ];
+        return new CharRope( text._parts, text._count );
+    }
 
-        for( Node node : _children ) {
-            CharSequence cc = node.characters();
-            if( cc != null ) {
-                if( buffer != null ) buffer.put( cc );
-                else if( first == null ) first = cc;
-                else {
-                    buffer = new ResizableCharBuffer( first.length() +
-                                                      cc.length() +
-                                                      32 );
-                    buffer.put( first );
-                    buffer.put( cc );
-                }
-            }
-        }
+    /**
+     * Append all contained character data in the descendants of this
+     * element to out, without concatenation.
+     * @throws IOException from out
+     */
+    public void writeCharacters( Appendable out ) throws IOException
+    {
+        new TextVisitor( out, false ).visit( this );
+    }
 
-        return ( ( buffer != null ) ? buffer.flipAsCharBuffer() : first );
+    /**
+     * Return the total length of contained character data: the
+     * length of characters(), or 0 if null. The length is cached for
+     * this and all descendant elements, and invalidated by changes as
+     * per structuralHash().
+     */
+    public int textLength()
+    {
+        if( _textLength < 0 ) new TextVisitor( null, false ).walk( this );
+        return _textLength;
     }
 
     /**
@@ -191,6 +263,8 @@ public final class Element extends Node
     public void setTag( Tag tag )
     {
         _tag = tag;
+        if( parent() != null ) parent()._index = null;
+        invalidateHash();
     }
 
     /**
@@ -200,7 +274,30 @@ public final class Element extends Node
      */
     public void setAttributes( List<AttributeValue> attributes )
     {
-        _attributes = attributes;
+        final int count = attributes.size();
+        _atts = ( count == 0 ) ? EMPTY_ATTS : new Object[ count * 2 ];
+        _attCount = 0;
+        for( AttributeValue av : attributes ) {
+            _atts[ _attCount * 2 ] = av.attribute();
+            _atts[ _attCount * 2 + 1 ] = av.value();
+            ++_attCount;
+        }
+        _attIndex = null;
+        invalidateHash();
+    }
+
+    /**
+     * Ensure capacity for the specified total number of attributes,
+     * for example before a sequence of addAttribute() calls when
+     * copying attributes from a parser.
+     */
+    public void ensureAttributeCapacity( int count )
+    {
+        if( _atts.length < count * 2 ) {
+            final Object[] atts = new Object[ count * 2 ];
+            System.arraycopy( _atts, 0, atts, 0, _attCount * 2 );
+            _atts = atts;
+        }
     }
 
     /**
@@ -210,34 +307,32 @@ public final class Element extends Node
      */
     public CharSequence setAttribute( AttributeValue avalue )
     {
-        final int end = _attributes.size();
-        for( int i = 0; i < end; ++i ) {
-            if( _attributes.get(i).attribute().equals( avalue.attribute() ) ) {
-                return _attributes.set( i, avalue ).value();
-            }
-        }
-        addAttribute( avalue );
-        return null;
+        return replaceAttribute( avalue.attribute(), avalue.value() );
     }
 
     /**
      * Set the specified attribute value, replacing any existing
      * attribute if found.
-     * @return previous attribute value or null if not found.
      */
     public void setAttribute( Attribute attr, CharSequence value )
     {
-        setAttribute( new AttributeValue( attr, value ) );
+        replaceAttribute( attr, value );
     }
 
     /**
      * Set the specified attribute value, replacing any existing
      * attribute if found.
-     * @return previous attribute value or null if not found.
      */
     public void setAttribute( String name, CharSequence value )
     {
-        setAttribute( new AttributeValue( new Attribute( name ), value ) );
+        final int i = indexOfAttribute( name );
+        if( i >= 0 ) {
+            _atts[ i * 2 + 1 ] = value;
+            invalidateHash();
+        }
+        else {
+            addAttribute( new Attribute( name ), value );
+        }
     }
 
     /**
@@ -246,11 +341,7 @@ public final class Element extends Node
      */
     public void addAttribute( AttributeValue avalue )
     {
-        if( _attributes == EMPTY_ATTS ) {
-            _attributes = new ArrayList<AttributeValue>(3);
-        }
-
-        _attributes.add( avalue );
+        addAttribute( avalue.attribute(), avalue.value() );
     }
 
     /**
@@ -259,7 +350,7 @@ public final class Element extends Node
      */
     public void addAttribute( Attribute attr, CharSequence value )
     {
-        addAttribute( new AttributeValue( attr, value ) );
+        insertAttribute( _attCount, attr, value );
     }
 
     /**
@@ -268,7 +359,7 @@ public final class Element extends Node
      */
     public void addAttribute( String name, CharSequence value )
     {
-        addAttribute( new AttributeValue( new Attribute( name ), value ) );
+        addAttribute( new Attribute( name ), value );
     }
 
     /**
@@ -277,13 +368,8 @@ public final class Element extends Node
      */
     public CharSequence removeAttribute( Attribute attr )
     {
-        final int end = _attributes.size();
-        for( int i = 0; i < end; ++i ) {
-            if( _attributes.get( i ).attribute().equals( attr ) ) {
-                return _attributes.remove( i ).value();
-            }
-        }
-        return null;
+        final int i = indexOfAttribute( attr );
+        return ( i < 0 ) ? null : removeAttributeAt( i );
     }
 
     /**
@@ -293,14 +379,8 @@ public final class Element extends Node
      */
     public CharSequence removeAttribute( String name )
     {
-        final int end = _attributes.size();
-        for( int i = 0; i < end; ++i ) {
-            final Attribute attr = _attributes.get( i ).attribute();
-            if( attr.name().equals( name ) && ( attr.namespace() == null ) ) {
-                return _attributes.remove( i ).value();
-            }
-        }
-        return null;
+        final int i = indexOfAttribute( name );
+        return ( i < 0 ) ? null : removeAttributeAt( i );
     }
 
     /**
@@ -330,6 +410,7 @@ public final class Element extends Node
      */
     public void addChild( Node node )
     {
+        materialize();
         if( _children == EMPTY_CHILDREN ) {
             _children = new ArrayList<Node>(3);
         }
@@ -337,6 +418,10 @@ public final class Element extends Node
         node.detach();
         _children.add( node );
         node.setParent( this );
+        if( ( _index != null ) && _index.isBuilt() ) {
+            _index.add( _children.size() - 1, node );
+        }
+        invalidateHash();
     }
 
     /**
@@ -346,6 +431,7 @@ public final class Element extends Node
      */
     public void insertChild( int index, Node node )
     {
+        materialize();
         if( _children == EMPTY_CHILDREN ) {
             _children = new ArrayList<Node>(3);
         }
@@ -353,6 +439,8 @@ public final class Element extends Node
         node.detach();
         _children.add( index, node );
         node.setParent( this );
+        _index = null;
+        invalidateHash();
     }
 
     /**
@@ -360,25 +448,405 @@ public final class Element extends Node
      */
     public void detachAllChildren()
     {
+        materialize();
         for( Node node : _children ) {
             node.setParent( null );
         }
         _children = EMPTY_CHILDREN;
+        _index = null;
+        invalidateHash();
+    }
+
+    @Override
+    public boolean deepEquals( Node other )
+    {
+        if( other == this ) return true;
+        final Element o = ( other != null ) ? other.asElement() : null;
+        if( ( o == null ) ||
+            ( structuralHash() != o.structuralHash() ) ||
+            !( ( _tag == o._tag ) || _tag.equals( o._tag ) ) ||
+            !attributesEqual( this, o ) ) {
+            return false;
+        }
+
+        final List<Node> children = children();
+        final List<Node> others = o.children();
+        final int end = children.size();
+        if( end != others.size() ) return false;
+        for( int i = 0; i < end; ++i ) {
+            if( !children.get( i ).deepEquals( others.get( i ) ) ) {
+                return false;
+            }
+        }
+        return true;
     }
 
     void removeChild( Node node )
     {
+        materialize();
         _children.remove( node );
+        _index = null;
+        invalidateHash();
     }
 
-    private static final List<AttributeValue> EMPTY_ATTS =
-        Collections.emptyList();
+    @Override
+    boolean clearTextLength()
+    {
+        if( _textLength < 0 ) return false;
+        _textLength = -1;
+        return true;
+    }
+
+    @Override
+    int computeHash()
+    {
+        int h = _tag.hashCode();
+
+        // Attribute order is not significant
+        int ah = 0;
+        final int end = _attCount * 2;
+        for( int i = 0; i < end; i += 2 ) {
+            ah += ( _atts[ i ].hashCode() * 31 ) +
+                  Characters.hash( (CharSequence) _atts[ i + 1 ] );
+        }
+        h = ( h * 31 ) + ah;
+
+        for( Node child : children() ) {
+            h = ( h * 31 ) + child.structuralHash();
+        }
+        return h;
+    }
+
+    /**
+     * Return true if a and b contain equal attributes and values, in
+     * any order. Attributes are compared first by identity, as when
+     * resolved via the same NamespaceCache.
+     */
+    private static boolean attributesEqual( final Element a,
+                                            final Element b )
+    {
+        final int end = a._attCount * 2;
+        if( end != b._attCount * 2 ) return false;
+        final Object[] aa = a._atts;
+        final Object[] ba = b._atts;
+
+        for( int i = 0; i < end; i += 2 ) {
+            // Try same position first
+            int j = i;
+            if( !sameAttribute( aa[ i ], ba[ j ] ) ) {
+                j = 0;
+                while( ( j < end ) && !sameAttribute( aa[ i ], ba[ j ] ) ) {
+                    j += 2;
+                }
+                if( j == end ) return false;
+            }
+            if( !Characters.contentEquals( (CharSequence) aa[ i + 1 ],
+                                           (CharSequence) ba[ j + 1 ] ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameAttribute( final Object a, final Object b )
+    {
+        return ( ( a == b ) || a.equals( b ) );
+    }
+
+    /**
+     * Return the index of the first attribute equal to attr, or -1
+     * if not found. Compares by identity first, as when resolved via
+     * a NamespaceCache. Elements with at least ATTR_HASH_MIN
+     * attributes use a lazily built hash index instead.
+     */
+    private int indexOfAttribute( final Attribute attr )
+    {
+        if( _attCount >= ATTR_HASH_MIN ) {
+            if( _attIndex == null ) {
+                _attIndex = new HashMap<Attribute,Integer>( _attCount * 2 );
+                // Reverse, such that the first of any duplicates wins
+                for( int i = _attCount - 1; i >= 0; --i ) {
+                    _attIndex.put( (Attribute) _atts[ i * 2 ], i );
+                }
+            }
+            final Integer i = _attIndex.get( attr );
+            return ( i == null ) ? -1 : i;
+        }
+
+        final Object[] atts = _atts;
+        final int end = _attCount * 2;
+        for( int i = 0; i < end; i += 2 ) {
+            if( atts[ i ] == attr ) return i / 2;
+        }
+        for( int i = 0; i < end; i += 2 ) {
+            if( attr.equals( atts[ i ] ) ) return i / 2;
+        }
+        return -1;
+    }
+
+    /**
+     * Return the index of the first attribute with name and no
+     * namespace, or -1 if not found.
+     */
+    private int indexOfAttribute( final String name )
+    {
+        final Object[] atts = _atts;
+        final int end = _attCount * 2;
+        for( int i = 0; i < end; i += 2 ) {
+            final Attribute a = (Attribute) atts[ i ];
+            if( ( a.namespace() == null ) && a.name().equals( name ) ) {
+                return i / 2;
+            }
+        }
+        return -1;
+    }
+
+    private CharSequence replaceAttribute( final Attribute attr,
+                                           final CharSequence value )
+    {
+        final int i = indexOfAttribute( attr );
+        if( i < 0 ) {
+            addAttribute( attr, value );
+            return null;
+        }
+        final CharSequence prior = (CharSequence) _atts[ i * 2 + 1 ];
+        _atts[ i * 2 ] = attr;
+        _atts[ i * 2 + 1 ] = value;
+        invalidateHash();
+        return prior;
+    }
+
+    private void insertAttribute( final int index,
+                                  final Attribute attr,
+                                  final CharSequence value )
+    {
+        if( ( index < 0 ) || ( index > _attCount ) ) {
+            throw new IndexOutOfBoundsException( String.valueOf( index ) );
+        }
+        if( _atts.length < ( _attCount + 1 ) * 2 ) {
+            ensureAttributeCapacity( Math.max( _attCount * 2, 3 ) );
+        }
+        final int i = index * 2;
+        System.arraycopy( _atts, i, _atts, i + 2, _attCount * 2 - i );
+        _atts[ i ] = attr;
+        _atts[ i + 1 ] = value;
+        ++_attCount;
+        _attIndex = null;
+        invalidateHash();
+    }
+
+    private CharSequence removeAttributeAt( final int index )
+    {
+        final int i = index * 2;
+        final CharSequence prior = (CharSequence) _atts[ i + 1 ];
+        final int end = _attCount * 2;
+        System.arraycopy( _atts, i + 2, _atts, i, end - i - 2 );
+        _atts[ end - 2 ] = _atts[ end - 1 ] = null;
+        --_attCount;
+        _attIndex = null;
+        invalidateHash();
+        return prior;
+    }
+
+    private void checkAttributeIndex( final int index )
+    {
+        if( ( index < 0 ) || ( index >= _attCount ) ) {
+            throw new IndexOutOfBoundsException( String.valueOf( index ) );
+        }
+    }
+
+    /**
+     * List view of attributes, as returned by attributes().
+     */
+    private final class AttributeList extends AbstractList<AttributeValue>
+    {
+        @Override
+        public AttributeValue get( int index )
+        {
+            return new AttributeValue( attributeAt( index ),
+                                       attributeValueAt( index ) );
+        }
+
+        @Override
+        public int size()
+        {
+            return _attCount;
+        }
+
+        @Override
+        public AttributeValue set( int index, AttributeValue avalue )
+        {
+            final AttributeValue prior = get( index );
+            _atts[ index * 2 ] = avalue.attribute();
+            _atts[ index * 2 + 1 ] = avalue.value();
+            _attIndex = null;
+            invalidateHash();
+            return prior;
+        }
+
+        @Override
+        public void add( int index, AttributeValue avalue )
+        {
+            insertAttribute( index, avalue.attribute(), avalue.value() );
+        }
+
+        @Override
+        public AttributeValue remove( int index )
+        {
+            final AttributeValue prior = get( index );
+            removeAttributeAt( index );
+            return prior;
+        }
+    }
+
+    /**
+     * Set children to be loaded from content on first access.
+     */
+    void setLazyContent( LazyContent content )
+    {
+        _lazy = content;
+    }
+
+    /**
+     * Return true if children have not yet been loaded.
+     */
+    boolean isLazy()
+    {
+        return ( _lazy != null );
+    }
+
+    /**
+     * Return true if lookups should use the child index, building or
+     * rebuilding it as needed.
+     */
+    private boolean indexed()
+    {
+        if( _index == null ) return false;
+        final int size = _children.size();
+        if( _index.isBuilt() ) {
+            if( _index.size() != size ) _index.build( _children );
+            return true;
+        }
+        if( _index.isDue( size ) ) {
+            _index.build( _children );
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record count children visited by a linear scan, toward building
+     * a child index for elements with at least INDEX_MIN_CHILDREN
+     * children.
+     */
+    private void scanned( int count )
+    {
+        if( _children.size() >= INDEX_MIN_CHILDREN ) {
+            if( _index == null ) _index = new ChildIndex();
+            _index.scanned( count );
+        }
+    }
+
+    /**
+     * Walks descendants for character data, collecting the parts
+     * and/or appending them to out, and caching the text length of
+     * each element on exit. With neither, subtrees with a cached text
+     * length are not walked.
+     */
+    private static final class TextVisitor implements NodeVisitor
+    {
+        TextVisitor( Appendable out, boolean collect )
+        {
+            _out = out;
+            _parts = collect ? new CharSequence[ 8 ] : null;
+        }
+
+        void visit( Element element ) throws IOException
+        {
+            TreeUtils.visit( element, this );
+        }
+
+        /**
+         * Visit without output.
+         */
+        void walk( Element element )
+        {
+            try {
+                visit( element );
+            }
+            catch( IOException e ) {
+                throw new RuntimeException( e ); // Not without out.
+            }
+        }
+
+        public boolean enter( Element element )
+        {
+            if( _depth == _starts.length ) {
+                _starts = Arrays.copyOf( _starts, _depth * 2 );
+            }
+            _starts[ _depth++ ] = _length;
+
+            if( ( _out == null ) && ( _parts == null ) &&
+                ( element._textLength >= 0 ) ) {
+                _length += element._textLength;
+                return false;
+            }
+            return true;
+        }
+
+        public void exit( Element element )
+        {
+            element._textLength = _length - _starts[ --_depth ];
+        }
+
+        public void characters( Node node ) throws IOException
+        {
+            final CharSequence cc = node.characters();
+            _length += cc.length();
+            if( _out != null ) _out.append( cc );
+            if( _parts != null ) {
+                if( _count == _parts.length ) {
+                    _parts = Arrays.copyOf( _parts, _count * 2 );
+                }
+                _parts[ _count++ ] = cc;
+            }
+        }
+
+        private final Appendable _out;
+        private CharSequence[] _parts;
+        private int _count = 0;
+        private int _length = 0;
+        private int[] _starts = new int[ 16 ];
+        private int _depth = 0;
+    }
+
+    private void materialize()
+    {
+        if( _lazy != null ) {
+            final LazyContent content = _lazy;
+            _lazy = null;
+            content.load( this );
+        }
+    }
+
+    private static final int INDEX_MIN_CHILDREN = 16;
+    private static final int ATTR_HASH_MIN = 64;
+
+    private static final Object[] EMPTY_ATTS = new Object[0];
     private static final List<Node> EMPTY_CHILDREN = Collections.emptyList();
     private static final List<Namespace> EMPTY_NAMESPACES =
         Collections.emptyList();
 
     private Tag _tag;
-    private List<AttributeValue> _attributes = EMPTY_ATTS;
+
+    // Attributes as interleaved Attribute, CharSequence value pairs
+    private Object[] _atts = EMPTY_ATTS;
+    private int _attCount = 0;
+    private HashMap<Attribute,Integer> _attIndex = null;
+
     private List<Namespace> _spaces = EMPTY_NAMESPACES;
     private List<Node> _children = EMPTY_CHILDREN;
+    private LazyContent _lazy = null;
+    private ChildIndex _index = null;
+    private int _textLength = -1;
 }
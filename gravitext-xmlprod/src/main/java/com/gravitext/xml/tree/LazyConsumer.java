@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.gravitext.xml.NamespaceCache;
+import com.gravitext.xml.XMLTokenizer;
+import com.gravitext.xml.XMLTokenizer.Event;
+import com.gravitext.xml.producer.Namespace;
+
+/**
+ * Reads a UTF-8 encoded document from a byte array into an Element
+ * tree whose children are materialized on demand. A first pass via
+ * XMLTokenizer checks the entire document and indexes the start and
+ * end byte offsets of every element, but creates only the root
+ * Element. The children of any Element are then created on first
+ * access (children(), firstElement(), characters() or mutation) by
+ * tokenizing only that element's byte range, skipping over the
+ * content of each child element via the index. Only the elements
+ * actually accessed, and their siblings, are ever created.
+ *
+ * <p>The input array is retained by the tree until fully
+ * materialized, and must not be modified. As materialization mutates
+ * the tree, a lazy tree is not safe for concurrent access, even if
+ * only read.</p>
+ *
+ * @see XMLTokenizer#skipElement(long)
+ */
+public final class LazyConsumer
+{
+    /**
+     * Construct with a new (private) NamespaceCache.
+     */
+    public LazyConsumer()
+    {
+        this( new NamespaceCache() );
+    }
+
+    /**
+     * Construct given NamespaceCache, which may be shared if thread
+     * safe.
+     * @see com.gravitext.xml.ConcurrentNamespaceCache
+     */
+    public LazyConsumer( NamespaceCache cache )
+    {
+        _cache = cache;
+    }
+
+    /**
+     * Index and return the lazy root element of the complete input
+     * document.
+     * @throws com.gravitext.xml.XMLSyntaxException if the input is
+     * not well formed.
+     */
+    public Element readDocument( byte[] input ) throws IOException
+    {
+        return readDocument( input, 0, input.length );
+    }
+
+    /**
+     * Index and return the lazy root element of the document in the
+     * specified range of input.
+     * @throws com.gravitext.xml.XMLSyntaxException if the input is
+     * not well formed.
+     */
+    public Element readDocument( byte[] input, int offset, int length )
+        throws IOException
+    {
+        final XMLTokenizer tk = new XMLTokenizer( _cache );
+        tk.setInput( input, offset, length );
+
+        final Index index = new Index( input, offset, _cache );
+        Element root = null;
+        int[] open = new int[ 16 ];
+        int depth = 0;
+
+        Event e;
+        while( ( e = tk.next() ) != Event.END_DOCUMENT ) {
+            if( e == Event.START_ELEMENT ) {
+                final int i = index.add( (int) tk.markupPosition() );
+                if( root == null ) root = createElement( tk );
+                if( depth == open.length ) {
+                    open = Arrays.copyOf( open, depth * 2 );
+                }
+                open[ depth++ ] = i;
+            }
+            else if( e == Event.END_ELEMENT ) {
+                index.end( open[ --depth ], (int) tk.position() );
+            }
+        }
+
+        root.setLazyContent( new Content( index, 0, null ) );
+        return root;
+    }
+
+    /**
+     * Element start/end byte offsets, relative to base, and subtree
+     * sizes, in document order.
+     */
+    private static final class Index
+    {
+        Index( byte[] input, int base, NamespaceCache cache )
+        {
+            _input = input;
+            _base = base;
+            _cache = cache;
+        }
+
+        /**
+         * Return a tokenizer for loading, created on first use and
+         * retained for subsequent loads.
+         */
+        XMLTokenizer tokenizer()
+        {
+            if( _tokenizer == null ) _tokenizer = new XMLTokenizer( _cache );
+            return _tokenizer;
+        }
+
+        int add( int start )
+        {
+            if( _count == _starts.length ) {
+                final int cap = _count * 2;
+                _starts = Arrays.copyOf( _starts, cap );
+                _ends = Arrays.copyOf( _ends, cap );
+                _sizes = Arrays.copyOf( _sizes, cap );
+            }
+            _starts[ _count ] = start;
+            return _count++;
+        }
+
+        void end( int i, int end )
+        {
+            _ends[ i ] = end;
+            _sizes[ i ] = _count - i;
+        }
+
+        final byte[] _input;
+        final int _base;
+        final NamespaceCache _cache;
+        XMLTokenizer _tokenizer = null;
+
+        int _count = 0;
+        int[] _starts = new int[ 64 ];
+        int[] _ends = new int[ 64 ];
+        int[] _sizes = new int[ 64 ];
+    }
+
+    /**
+     * Children of element at index position, loaded by tokenizing
+     * its byte range.
+     */
+    private static final class Content extends LazyContent
+    {
+        Content( Index index, int element, Scope scope )
+        {
+            _index = index;
+            _element = element;
+            _scope = scope;
+        }
+
+        @Override
+        void load( Element element )
+        {
+            try {
+                loadChildren( element );
+            }
+            catch( IOException x ) {
+                // Input was fully checked on the first pass
+                throw new IllegalStateException(
+                    "Lazy input modified after read?", x );
+            }
+        }
+
+        private void loadChildren( Element element ) throws IOException
+        {
+            final Index ix = _index;
+            final int start = ix._starts[ _element ];
+            final XMLTokenizer tk = ix.tokenizer();
+            tk.setInput( ix._input,
+                         ix._base + start,
+                         ix._ends[ _element ] - start );
+            if( _scope != null ) _scope.bind( tk );
+
+            tk.next(); // START_ELEMENT of element itself
+            final Scope scope = new Scope( tk );
+            int child = _element + 1;
+
+            Event e;
+            while( ( e = tk.next() ) != Event.END_ELEMENT ) {
+                if( e == Event.CHARACTERS ) {
+                    element.addChild(
+                        new Characters( tk.characters().toString() ) );
+                }
+                else {
+                    final Element celm = createElement( tk );
+                    element.addChild( celm );
+                    if( ix._sizes[ child ] > 1 ||
+                        ix._ends[ child ] - ix._starts[ child ] >
+                        tk.position() - tk.markupPosition() ) {
+                        celm.setLazyContent(
+                            new Content( ix, child, scope ) );
+                    }
+                    tk.skipElement( ix._ends[ child ] - start );
+                    child += ix._sizes[ child ];
+                }
+            }
+        }
+
+        private final Index _index;
+        private final int _element;
+        private final Scope _scope;
+    }
+
+    /**
+     * Namespace bindings in scope within an element, shared by the
+     * lazy content of its children.
+     */
+    private static final class Scope
+    {
+        Scope( XMLTokenizer tk )
+        {
+            final int count = tk.bindingCount();
+            _prefixes = new String[ count ];
+            _spaces = new Namespace[ count ];
+            for( int i = 0; i < count; ++i ) {
+                _prefixes[i] = tk.bindingPrefix( i );
+                _spaces[i] = tk.binding( i );
+            }
+        }
+
+        void bind( XMLTokenizer tk )
+        {
+            for( int i = 0; i < _prefixes.length; ++i ) {
+                tk.bind( _prefixes[i], _spaces[i] );
+            }
+        }
+
+        private final String[] _prefixes;
+        private final Namespace[] _spaces;
+    }
+
+    private static Element createElement( XMLTokenizer tk )
+    {
+        final Namespace ns = tk.elementNamespace();
+        final Element element = new Element( tk.tag() );
+
+        final int nsds = tk.namespaceCount();
+        for( int i = 0; i < nsds; ++i ) {
+            final Namespace decl = tk.namespace( i );
+            if( decl != ns ) element.addNamespace( decl );
+        }
+
+        final int atts = tk.attributeCount();
+        if( atts > 0 ) {
+            element.ensureAttributeCapacity( atts );
+            for( int i = 0; i < atts; ++i ) {
+                element.addAttribute( tk.attribute( i ),
+                                      tk.attributeValue( i ).toString() );
+            }
+        }
+        return element;
+    }
+
+    private final NamespaceCache _cache;
+}
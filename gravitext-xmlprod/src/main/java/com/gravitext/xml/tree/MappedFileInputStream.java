@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An InputStream reading a file via read-only memory mapping, rather
+ * than copying through the operating system read() path. Files larger
+ * than the chunk size (including those over 2GB, the limit of a
+ * single mapping) are mapped one chunk at a time, as read. Reads
+ * never span chunks, thus may return fewer bytes than requested
+ * before the end of file. This implementation is unsynchronized.
+ *
+ * <p>Note that the JVM only releases a mapping when its buffer is
+ * garbage collected, which may be some time after close().</p>
+ */
+public final class MappedFileInputStream
+    extends InputStream
+{
+    /**
+     * Default maximum bytes per mapping: 1GB.
+     */
+    public static final int CHUNK_SIZE = 1 << 30;
+
+    /**
+     * Open file for mapped reading with the default CHUNK_SIZE.
+     */
+    public MappedFileInputStream( File file ) throws IOException
+    {
+        this( file, CHUNK_SIZE );
+    }
+
+    /**
+     * Open file for mapped reading with the specified maximum bytes
+     * per mapping.
+     */
+    public MappedFileInputStream( File file, int chunkSize )
+        throws IOException
+    {
+        if( chunkSize < 1 ) {
+            throw new IllegalArgumentException( "chunkSize < 1" );
+        }
+        _chunkSize = chunkSize;
+        _file = new RandomAccessFile( file, "r" );
+        try {
+            _channel = _file.getChannel();
+            _length = _channel.size();
+        }
+        catch( IOException x ) {
+            _file.close();
+            throw x;
+        }
+    }
+
+    /**
+     * Return the total length of the file in bytes.
+     */
+    public long length()
+    {
+        return _length;
+    }
+
+    /**
+     * Return the current byte offset into the file.
+     */
+    public long position()
+    {
+        return _chunkStart + ( ( _chunk == null ) ? 0 : _chunk.position() );
+    }
+
+    @Override
+    public int available()
+    {
+        final long rem = _length - position();
+        return (int) Math.min( rem, Integer.MAX_VALUE );
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if( !ensure() ) return -1;
+        return ( _chunk.get() & 0xFF );
+    }
+
+    @Override
+    public int read( final byte[] out, final int offset, final int length )
+        throws IOException
+    {
+        if( length == 0 ) return 0;
+        if( !ensure() ) return -1;
+
+        final int n = Math.min( length, _chunk.remaining() );
+        _chunk.get( out, offset, n );
+        return n;
+    }
+
+    @Override
+    public long skip( long n ) throws IOException
+    {
+        if( n <= 0 ) return 0;
+        final long pos = position();
+        final long skip = Math.min( n, _length - pos );
+        if( ( _chunk != null ) && ( skip <= _chunk.remaining() ) ) {
+            _chunk.position( _chunk.position() + (int) skip );
+        }
+        else {
+            map( pos + skip );
+        }
+        return skip;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Closes the underlying file. Subsequent reads return EOF.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        _chunk = null;
+        _chunkStart = _length;
+        _file.close();
+    }
+
+    /**
+     * Ensure a current chunk with remaining bytes, mapping the next
+     * chunk as needed. Return false at end of file.
+     */
+    private boolean ensure() throws IOException
+    {
+        if( ( _chunk != null ) && _chunk.hasRemaining() ) return true;
+        final long pos = position();
+        if( pos >= _length ) return false;
+        map( pos );
+        return true;
+    }
+
+    private void map( long start ) throws IOException
+    {
+        _chunk = null; // Release prior mapping before next.
+        _chunkStart = start;
+        final long size = Math.min( _chunkSize, _length - start );
+        if( size > 0 ) {
+            _chunk = _channel.map( FileChannel.MapMode.READ_ONLY,
+                                   start, size );
+        }
+    }
+
+    private final int _chunkSize;
+    private final RandomAccessFile _file;
+    private final FileChannel _channel;
+    private final long _length;
+
+    private MappedByteBuffer _chunk = null;
+    private long _chunkStart = 0;
+}
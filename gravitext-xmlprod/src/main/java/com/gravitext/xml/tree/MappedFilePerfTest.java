@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+
+import com.gravitext.concurrent.TestFactory;
+import com.gravitext.concurrent.TestRunnable;
+import com.gravitext.xml.XMLTokenizer;
+import com.gravitext.xml.XMLTokenizer.Event;
+
+import static javax.xml.stream.XMLStreamConstants.*;
+
+/**
+ * Compares parsing a (possibly multi-GB) file via FileInputStream
+ * against MappedFileInputStream. To measure input costs independent
+ * of tree building, each iteration streams the entire file without
+ * building a tree, and the result count is the number of elements.
+ */
+public class MappedFilePerfTest implements TestFactory
+{
+    public enum Impl
+    {
+        STAX_STREAM,
+        STAX_MAPPED,
+        TOKENIZER_STREAM,
+        TOKENIZER_MAPPED
+    };
+
+    public MappedFilePerfTest( File file, Impl impl )
+    {
+        _file = file;
+        _impl = impl;
+    }
+
+    public String name()
+    {
+        return _impl.name();
+    }
+
+    public TestRunnable createTestRunnable( int seed )
+    {
+        return new TestRunnable() {
+            public int runIteration( int run ) throws Exception
+            {
+                final InputStream in = open();
+                try {
+                    return isTokenizer() ? tokenize( in ) : stax( in );
+                }
+                finally {
+                    in.close();
+                }
+            }
+
+            private int tokenize( InputStream in ) throws IOException
+            {
+                final XMLTokenizer tk = _tokenizer.setInput( in );
+                int count = 0;
+                Event e;
+                while( ( e = tk.next() ) != Event.END_DOCUMENT ) {
+                    if( e == Event.START_ELEMENT ) ++count;
+                }
+                return count;
+            }
+
+            private final XMLTokenizer _tokenizer = new XMLTokenizer();
+        };
+    }
+
+    /**
+     * Write a feed file of the specified number of records, via
+     * RecordPerfTest.generate(). At about 170 bytes per record, 20M
+     * records is a file over 3GB.
+     */
+    public static void generateFile( File file, long records )
+        throws IOException
+    {
+        final OutputStream out =
+            new BufferedOutputStream( new FileOutputStream( file ), 65536 );
+        try {
+            RecordPerfTest.generate( records, out );
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private boolean isTokenizer()
+    {
+        return ( _impl == Impl.TOKENIZER_STREAM ||
+                 _impl == Impl.TOKENIZER_MAPPED );
+    }
+
+    private InputStream open() throws IOException
+    {
+        if( _impl == Impl.STAX_MAPPED || _impl == Impl.TOKENIZER_MAPPED ) {
+            return TreeUtils.mappedStream( _file );
+        }
+        return new FileInputStream( _file );
+    }
+
+    private static int stax( InputStream in ) throws Exception
+    {
+        final XMLStreamReader sr =
+            StAXUtils.staxReader( new StreamSource( in ) );
+        try {
+            int count = 0;
+            while( sr.hasNext() ) {
+                if( sr.next() == START_ELEMENT ) ++count;
+            }
+            return count;
+        }
+        finally {
+            sr.close();
+        }
+    }
+
+    private final File _file;
+    private final Impl _impl;
+}
@@ -89,6 +89,34 @@ public abstract class Node
         throw new UnsupportedOperationException( "Not a Characters node" );
     }
 
+    /**
+     * Return a hash of the structure and content of this node and its
+     * descendants, equal for all nodes which are deepEquals(). The
+     * hash is cached, and is invalidated (for this node and its
+     * ancestors) by changes made via Element and Characters
+     * methods. Changes made directly to returned lists, or to
+     * mutable CharSequence content, are not detected.
+     */
+    public final int structuralHash()
+    {
+        int h = _hash;
+        if( h == 0 ) {
+            h = computeHash();
+            if( h == 0 ) h = 1; // 0 is reserved for not computed
+            _hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * Return true if other has the same structure and content as this
+     * node: equal tags, attributes (in any order) and characters, and
+     * deepEquals() children in order. Namespace declarations and
+     * properties are not compared. Returns false quickly where
+     * structuralHash() values differ.
+     */
+    public abstract boolean deepEquals( Node other );
+
     public <T, V extends T> T set( Key<T> key, V value )
     {
         if( _props == EMPTY_PROPS ) {
@@ -116,9 +144,39 @@ public abstract class Node
         _parent = parent;
     }
 
+    abstract int computeHash();
+
+    /**
+     * Clear any cached text length, returning true if there was one.
+     */
+    boolean clearTextLength()
+    {
+        return false;
+    }
+
+    /**
+     * Clear any cached structuralHash() and Element text length of
+     * this node and its ancestors. Since cached values imply the same
+     * for all descendant elements, this stops at the first ancestor
+     * without either.
+     */
+    final void invalidateHash()
+    {
+        _hash = 0;
+        clearTextLength();
+        Node n = _parent;
+        while( n != null ) {
+            final boolean hashed = ( n._hash != 0 );
+            if( !n.clearTextLength() && !hashed ) break;
+            n._hash = 0;
+            n = n._parent;
+        }
+    }
+
     protected static final ArrayHTMap EMPTY_PROPS = new ArrayHTMap( KEY_SPACE );
     protected static final KeySpace COMPAT_KEY_SPACE = new KeySpace();
 
     private ArrayHTMap _props = EMPTY_PROPS;
     private Element _parent = null;
+    private int _hash = 0;
 }
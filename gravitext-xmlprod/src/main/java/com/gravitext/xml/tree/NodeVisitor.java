@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.IOException;
+
+/**
+ * Receiver of pre-order (enter) and post-order (exit) events from
+ * TreeUtils.visit(), an iterative walk of a Node tree in document
+ * order.
+ */
+public interface NodeVisitor
+{
+    /**
+     * Visit element before its children.
+     * @return true to visit the children of element, or false to
+     * skip them. In either case exit( element ) follows.
+     */
+    boolean enter( Element element ) throws IOException;
+
+    /**
+     * Visit element after its children.
+     */
+    void exit( Element element ) throws IOException;
+
+    /**
+     * Visit a non-element (character data) node.
+     */
+    void characters( Node node ) throws IOException;
+}
@@ -17,10 +17,19 @@
 package com.gravitext.xml.tree;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
 import com.gravitext.xml.producer.Namespace;
 import com.gravitext.xml.producer.XMLProducer;
 
+/**
+ * Writes Element and CompactTree nodes to an XMLProducer. Trees are
+ * walked iteratively with an explicit stack (or CompactTree parent
+ * links), so writing is not limited by thread stack size for deeply
+ * nested documents. Instances reuse the stack across calls and are
+ * not thread safe.
+ */
 public final class NodeWriter
 {
     public NodeWriter( XMLProducer producer )
@@ -29,37 +38,124 @@ public final class NodeWriter
     }
 
     /**
-     * Write the tree node and its children to the producer by recursive
-     * descent.
+     * Write the tree node and its children to the producer, in
+     * document order.
      */
     public void putTree( final Node node ) throws IOException
     {
-        Element element = node.asElement();
-
-        if( element != null ) {
+        final Element root = node.asElement();
+        if( root == null ) {
+            _pd.putChars( node.characters() );
+            return;
+        }
 
-            _pd.startTag( element.tag() );
+        startElement( root );
+        Element[] elements = _elements;
+        int[] next = _next;
+        int depth = 0;
+        elements[ 0 ] = root;
+        next[ 0 ] = 0;
 
-            for( Namespace ns : element.namespaceDeclarations() ) {
-                _pd.addNamespace( ns );
+        while( depth >= 0 ) {
+            final List<Node> children = elements[ depth ].children();
+            final int i = next[ depth ];
+            if( i < children.size() ) {
+                next[ depth ] = i + 1;
+                final Node child = children.get( i );
+                final Element e = child.asElement();
+                if( e != null ) {
+                    startElement( e );
+                    if( ++depth == elements.length ) {
+                        elements = _elements =
+                            Arrays.copyOf( elements, depth * 2 );
+                        next = _next = Arrays.copyOf( next, depth * 2 );
+                    }
+                    elements[ depth ] = e;
+                    next[ depth ] = 0;
+                }
+                else {
+                    _pd.putChars( child.characters() );
+                }
             }
+            else {
+                _pd.endTag(); //FIXME: Checked end tag?
+                elements[ depth-- ] = null;
+            }
+        }
+    }
 
-            // Add attributes
-            for( AttributeValue av : element.attributes() ) {
-                _pd.addAttr( av.attribute(), av.value() );
+    /**
+     * Write the CompactTree node and its children to the producer, in
+     * document order.
+     */
+    public void putTree( final CompactNode node ) throws IOException
+    {
+        final CompactTree tree = node.tree();
+        final int root = node._index;
+        int n = root;
+
+        while( true ) {
+            if( tree.tag( n ) != null ) {
+                startElement( tree, n );
+                final int child = tree.firstChild( n );
+                if( child >= 0 ) {
+                    n = child;
+                    continue;
+                }
+                _pd.endTag();
+            }
+            else {
+                _pd.putChars( tree.text( n ) );
             }
 
-            // Add Contents
-            for( Node child : element.children() ) {
-                putTree( child );
+            // Advance to next sibling, ending parents as needed
+            while( n != root ) {
+                final int sibling = tree.nextSibling( n );
+                if( sibling >= 0 ) {
+                    n = sibling;
+                    break;
+                }
+                n = tree.parent( n );
+                _pd.endTag();
             }
+            if( n == root ) break;
+        }
+    }
+
+    private void startElement( final Element element ) throws IOException
+    {
+        _pd.startTag( element.tag() );
 
-            _pd.endTag(); //FIXME: Checked end tag? Move cache up here?
+        for( Namespace ns : element.namespaceDeclarations() ) {
+            _pd.addNamespace( ns );
         }
-        else {
-            _pd.putChars( node.characters() );
+
+        final int atts = element.attributeCount();
+        for( int i = 0; i < atts; ++i ) {
+            _pd.addAttr( element.attributeAt( i ),
+                         element.attributeValueAt( i ) );
+        }
+    }
+
+    private void startElement( final CompactTree tree, final int index )
+        throws IOException
+    {
+        _pd.startTag( tree.tag( index ) );
+
+        final int nsEnd = tree.nsEnd( index );
+        for( int n = tree.nsStart( index ); n < nsEnd; ++n ) {
+            _pd.addNamespace( tree.ns( n ) );
+        }
+
+        final int attrEnd = tree.attrEnd( index );
+        for( int a = tree.attrStart( index ); a < attrEnd; ++a ) {
+            _pd.addAttr( tree.attr( a ), tree.attrValue( a ) );
         }
     }
 
     private final XMLProducer _pd;
+
+    // Element stack and next child index per depth
+    private Element[] _elements = new Element[ 32 ];
+    private int[] _next = new int[ 32 ];
 }
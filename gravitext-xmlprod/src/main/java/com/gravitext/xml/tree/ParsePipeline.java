@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+
+import com.gravitext.util.ByteBufferInputStream;
+import com.gravitext.xml.ConcurrentNamespaceCache;
+import com.gravitext.xml.NamespaceCache;
+import com.gravitext.xml.XMLTokenizer;
+
+/**
+ * Parses a sequence of byte documents into Element trees across a
+ * pool of worker threads. Documents are read from a DocumentSource
+ * and results are delivered to a Handler on the thread calling
+ * run(), either in source order or as completed. At most
+ * maxPending documents are read but not yet delivered, bounding
+ * memory use and applying backpressure to the source. Each worker
+ * reuses its own consumer (and tokenizer or XMLInputFactory) across
+ * documents, and all workers share a ConcurrentNamespaceCache.
+ */
+public final class ParsePipeline
+{
+    public enum Parser
+    {
+        STAX,
+        TOKENIZER
+    }
+
+    /**
+     * Source of documents to parse.
+     */
+    public interface DocumentSource
+    {
+        /**
+         * Return the next document, ready to read, or null if there
+         * are no more documents.
+         */
+        ByteBuffer next() throws IOException, InterruptedException;
+    }
+
+    /**
+     * Receiver of parsed documents.
+     */
+    public interface Handler
+    {
+        /**
+         * Handle the root Element of the document with the given
+         * 0-based sequence number in source order.
+         */
+        void handle( long sequence, Element root ) throws Exception;
+    }
+
+    /**
+     * Construct given number of worker threads, with defaults:
+     * STAX parser, ordered delivery, maxPending of 4 * threads.
+     */
+    public ParsePipeline( int threads )
+    {
+        _executor = Executors.newFixedThreadPool( threads, new Workers() );
+        _maxPending = threads * 4;
+    }
+
+    public void setParser( Parser parser )
+    {
+        _parser = parser;
+    }
+
+    /**
+     * Set whether results are delivered in source order (default:
+     * true) or as soon as parsed.
+     */
+    public void setOrdered( boolean ordered )
+    {
+        _ordered = ordered;
+    }
+
+    /**
+     * Set the maximum number of documents read but not yet delivered.
+     */
+    public void setMaxPending( int maxPending )
+    {
+        if( maxPending < 1 ) {
+            throw new IllegalArgumentException( "maxPending < 1" );
+        }
+        _maxPending = maxPending;
+    }
+
+    /**
+     * Set the cache shared by all workers. Default: a new
+     * ConcurrentNamespaceCache. Workers build their parsers with the
+     * cache on first use and keep them, so the cache may only be set
+     * before the first call to run().
+     * @throws IllegalStateException if run() has been called.
+     */
+    public void setNamespaceCache( ConcurrentNamespaceCache cache )
+    {
+        if( _started ) {
+            throw new IllegalStateException(
+                "setNamespaceCache() after run()" );
+        }
+        _cache = cache;
+    }
+
+    /**
+     * Parse all documents from source, delivering each to handler on
+     * the calling thread. Stops at the first parse or handler
+     * failure.
+     * @return the number of documents delivered.
+     * @throws ExecutionException wrapping the first parse or handler
+     * failure.
+     * @throws IOException from source.
+     */
+    public long run( DocumentSource source, Handler handler )
+        throws IOException, ExecutionException, InterruptedException
+    {
+        _started = true;
+
+        final ArrayDeque<Future<Result>> pending =
+            new ArrayDeque<Future<Result>>( _maxPending );
+        final CompletionService<Result> completed = _ordered ? null :
+            new ExecutorCompletionService<Result>( _executor );
+        long read = 0;
+        long delivered = 0;
+        boolean done = false;
+
+        try {
+            while( true ) {
+                while( !done && ( pending.size() < _maxPending ) ) {
+                    final ByteBuffer doc = source.next();
+                    if( doc == null ) {
+                        done = true;
+                        break;
+                    }
+                    final Task task = new Task( read++, doc );
+                    pending.add( _ordered ? _executor.submit( task ) :
+                                            completed.submit( task ) );
+                }
+                if( pending.isEmpty() ) break;
+
+                final Future<Result> next;
+                if( _ordered ) {
+                    next = pending.remove();
+                }
+                else {
+                    next = completed.take();
+                    pending.remove( next );
+                }
+                deliver( handler, next );
+                ++delivered;
+            }
+        }
+        finally {
+            for( Future<Result> f : pending ) f.cancel( true );
+        }
+        return delivered;
+    }
+
+    /**
+     * Shutdown the worker threads once all documents are processed.
+     */
+    public void shutdown()
+    {
+        _executor.shutdown();
+    }
+
+    /**
+     * Return a DocumentSource over in-memory documents.
+     */
+    public static DocumentSource documents( final Iterable<byte[]> docs )
+    {
+        final Iterator<byte[]> iter = docs.iterator();
+        return new DocumentSource() {
+            public ByteBuffer next()
+            {
+                return ( iter.hasNext() ?
+                         ByteBuffer.wrap( iter.next() ) : null );
+            }
+        };
+    }
+
+    /**
+     * Return a DocumentSource reading each file fully into memory, as
+     * needed.
+     */
+    public static DocumentSource files( final Iterable<File> files )
+    {
+        final Iterator<File> iter = files.iterator();
+        return new DocumentSource() {
+            public ByteBuffer next() throws IOException
+            {
+                return iter.hasNext() ? readFile( iter.next() ) : null;
+            }
+        };
+    }
+
+    /**
+     * Return a DocumentSource taking documents from queue, until the
+     * specified end marker instance is taken.
+     */
+    public static DocumentSource queue(
+        final BlockingQueue<ByteBuffer> queue,
+        final ByteBuffer endMarker )
+    {
+        return new DocumentSource() {
+            public ByteBuffer next() throws InterruptedException
+            {
+                final ByteBuffer doc = queue.take();
+                return ( doc == endMarker ) ? null : doc;
+            }
+        };
+    }
+
+    private static void deliver( Handler handler, Future<Result> future )
+        throws ExecutionException, InterruptedException
+    {
+        final Result result = future.get();
+        try {
+            handler.handle( result.sequence, result.root );
+        }
+        catch( Exception e ) {
+            throw new ExecutionException( e );
+        }
+    }
+
+    private static ByteBuffer readFile( File file ) throws IOException
+    {
+        final FileInputStream in = new FileInputStream( file );
+        try {
+            final FileChannel channel = in.getChannel();
+            final ByteBuffer buf =
+                ByteBuffer.allocate( (int) channel.size() );
+            while( buf.hasRemaining() && ( channel.read( buf ) >= 0 ) );
+            buf.flip();
+            return buf;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Parse of one document, on a worker thread.
+     */
+    private static final class Result
+    {
+        Result( long sequence, Element root )
+        {
+            this.sequence = sequence;
+            this.root = root;
+        }
+
+        final long sequence;
+        final Element root;
+    }
+
+    private final class Task implements Callable<Result>
+    {
+        Task( long sequence, ByteBuffer doc )
+        {
+            _sequence = sequence;
+            _doc = doc;
+        }
+
+        public Result call() throws IOException, XMLStreamException
+        {
+            final Worker w = _worker.get();
+            final Element root = ( _parser == Parser.TOKENIZER ) ?
+                w.tokenize( _doc ) : w.stax( _doc );
+            return new Result( _sequence, root );
+        }
+
+        private final long _sequence;
+        private final ByteBuffer _doc;
+    }
+
+    /**
+     * Per worker thread parser state.
+     */
+    private final class Worker
+    {
+        Element stax( ByteBuffer doc ) throws XMLStreamException
+        {
+            if( _stax == null ) _stax = new StAXConsumer( _cache );
+            final XMLStreamReader sr =
+                StAXUtils.staxReader( new StreamSource( stream( doc ) ) );
+            try {
+                return _stax.readDocument( sr );
+            }
+            finally {
+                sr.close();
+            }
+        }
+
+        Element tokenize( ByteBuffer doc ) throws IOException
+        {
+            if( _tokenizer == null ) {
+                _tokenizer = new XMLTokenizer( _cache );
+                _consumer = new TokenizerConsumer();
+            }
+            if( doc.hasArray() ) {
+                _tokenizer.setInput( doc.array(),
+                                     doc.arrayOffset() + doc.position(),
+                                     doc.remaining() );
+            }
+            else {
+                _tokenizer.setInput( stream( doc ) );
+            }
+            return _consumer.readDocument( _tokenizer );
+        }
+
+        private InputStream stream( ByteBuffer doc )
+        {
+            return new ByteBufferInputStream( doc.duplicate() );
+        }
+
+        private StAXConsumer _stax = null;
+        private XMLTokenizer _tokenizer = null;
+        private TokenizerConsumer _consumer = null;
+    }
+
+    private static final class Workers implements ThreadFactory
+    {
+        public Thread newThread( Runnable r )
+        {
+            final Thread t = new Thread( r, "parse-pipeline-" +
+                                         _count.incrementAndGet() );
+            t.setDaemon( true );
+            return t;
+        }
+
+        private final AtomicInteger _count = new AtomicInteger();
+    }
+
+    private final ExecutorService _executor;
+    private final ThreadLocal<Worker> _worker = new ThreadLocal<Worker>() {
+        @Override
+        protected Worker initialValue()
+        {
+            return new Worker();
+        }
+    };
+
+    private Parser _parser = Parser.STAX;
+    private boolean _ordered = true;
+    private int _maxPending;
+    private NamespaceCache _cache = new ConcurrentNamespaceCache();
+    private volatile boolean _started = false;
+}
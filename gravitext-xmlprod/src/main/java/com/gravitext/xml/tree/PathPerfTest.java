@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import javax.xml.stream.XMLStreamException;
+
+import com.gravitext.concurrent.TestFactory;
+import com.gravitext.concurrent.TestRunnable;
+import com.gravitext.xml.ConcurrentNamespaceCache;
+import com.gravitext.xml.NamespaceCache;
+import com.gravitext.xml.producer.Attribute;
+import com.gravitext.xml.producer.Namespace;
+import com.gravitext.xml.producer.Tag;
+
+/**
+ * Extraction of the alternate link href of each entry of an Atom
+ * feed, via hand-written traversal or a PathQuery. The TREE_*
+ * implementations query a tree parsed once up front, while PARSE_HAND
+ * parses a tree per iteration and STREAM_PATH queries a StAX reader
+ * directly. The result count is the number of values found.
+ */
+public class PathPerfTest implements TestFactory
+{
+    public enum Impl
+    {
+        TREE_HAND,
+        TREE_PATH,
+        PARSE_HAND,
+        STREAM_PATH
+    };
+
+    public PathPerfTest( byte[] xml, Impl impl ) throws XMLStreamException
+    {
+        _xml = xml;
+        _impl = impl;
+        _root = StAXUtils.staxParse( StAXUtils.staxInput( xml ), CACHE );
+    }
+
+    public String name()
+    {
+        return "PATH_" + _impl.name();
+    }
+
+    public TestRunnable createTestRunnable( int seed )
+    {
+        return new TestRunnable() {
+            public int runIteration( int run ) throws XMLStreamException
+            {
+                switch( _impl ) {
+                case TREE_HAND:
+                    return hand( _root );
+                case TREE_PATH:
+                    return check( QUERY.values( _root ).size() );
+                case PARSE_HAND:
+                    return hand( StAXUtils.staxParse(
+                        StAXUtils.staxInput( _xml ), CACHE ) );
+                default:
+                    return check( QUERY.values( StAXUtils.staxReader(
+                        StAXUtils.staxInput( _xml ) ) ).size() );
+                }
+            }
+        };
+    }
+
+    /**
+     * Hand-written equivalent of QUERY.
+     */
+    private static int hand( Element root )
+    {
+        int count = 0;
+        if( root.tag() != FEED ) return 0;
+        for( Node entry : root.children() ) {
+            if( entry.isElement() && ( entry.asElement().tag() == ENTRY ) ) {
+                for( Node link : entry.asElement().children() ) {
+                    final Element e = link.asElement();
+                    if( ( e != null ) && ( e.tag() == LINK ) ) {
+                        final CharSequence rel = e.attribute( REL );
+                        if( ( rel != null ) &&
+                            ALTERNATE.contentEquals( rel ) &&
+                            ( e.attribute( HREF ) != null ) ) {
+                            ++count;
+                        }
+                    }
+                }
+            }
+        }
+        return check( count );
+    }
+
+    private static int check( int count )
+    {
+        if( count == 0 ) throw new IllegalStateException( "no matches" );
+        return count;
+    }
+
+    // Shared with the tree parse, for Tag identity matches
+    private static final NamespaceCache CACHE =
+        new ConcurrentNamespaceCache();
+
+    private static final Namespace ATOM =
+        CACHE.namespace( Namespace.DEFAULT, "http://www.w3.org/2005/Atom" );
+
+    private static final Tag FEED  = CACHE.tag( "feed", ATOM );
+    private static final Tag ENTRY = CACHE.tag( "entry", ATOM );
+    private static final Tag LINK  = CACHE.tag( "link", ATOM );
+
+    private static final Attribute REL  = CACHE.attribute( "rel", null );
+    private static final Attribute HREF = CACHE.attribute( "href", null );
+
+    private static final String ALTERNATE = "alternate";
+
+    private static final PathQuery QUERY = PathQuery.compile(
+        "/feed/entry/link[@rel='alternate']/@href", CACHE, ATOM );
+
+    private final byte[] _xml;
+    private final Impl _impl;
+    private final Element _root;
+}
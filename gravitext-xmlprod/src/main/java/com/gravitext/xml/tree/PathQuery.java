@@ -0,0 +1,783 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.gravitext.xml.NamespaceCache;
+import com.gravitext.xml.producer.Attribute;
+import com.gravitext.xml.producer.Namespace;
+import com.gravitext.xml.producer.Tag;
+
+import static javax.xml.stream.XMLStreamConstants.*;
+
+/**
+ * A compiled path query, selecting elements, element text or
+ * attribute values from Element trees or directly from a StAX
+ * XMLStreamReader without building a full tree. The supported
+ * syntax is a small subset of XPath:
+ *
+ * <pre>
+ *   path      := ['/' | '//'] step ( ('/' | '//') step )* [target]
+ *   step      := ( qname | '*' ) predicate*
+ *   predicate := '[' '@' qname [ '=' quoted ] ']'
+ *   target    := '/text()' | '/@' qname
+ * </pre>
+ *
+ * <p>A leading '/' or '//' makes the path absolute: the first step
+ * matches the root element of the context's tree (or any element
+ * with '//'). Otherwise steps match from the children of the context
+ * element. Predicates test for attribute presence or an exact value.
+ * Prefixes are resolved against the Namespaces passed to
+ * compile(). Unprefixed element names match in the default Namespace
+ * if one was passed, otherwise in any namespace (Tag.WILDCARD_NS).
+ * Unprefixed attribute names have no namespace, as in XML. The
+ * text() target is all character data within the element, as with
+ * Element.characters().</p>
+ *
+ * <p>Steps are compiled to a state machine over Tag and Attribute
+ * instances, with all active steps for an element held in a single
+ * bit set (thus at most 63 steps). Subtrees which can no longer
+ * match are not visited. Instances are immutable and thread
+ * safe.</p>
+ */
+public final class PathQuery
+{
+    /**
+     * Receiver of streaming matches, as passed to read().
+     */
+    public interface Handler
+    {
+        /**
+         * Handle a match.
+         * @param element the matched Element, or null for text() and
+         * attribute targets.
+         * @param value the text() or attribute value of the match,
+         * or null for element targets.
+         */
+        void handle( Element element, CharSequence value );
+    }
+
+    /**
+     * Compile path, resolving prefixes against the specified
+     * namespaces.
+     * @throws IllegalArgumentException on invalid syntax or an
+     * undeclared prefix.
+     */
+    public static PathQuery compile( String path, Namespace... namespaces )
+    {
+        return new Parser( path, null, namespaces ).parse();
+    }
+
+    /**
+     * Compile path, resolving prefixes against the specified
+     * namespaces, and obtaining Tags and Attributes from cache, such
+     * that matches against trees built with the same cache are
+     * identity comparisons.
+     * @throws IllegalArgumentException on invalid syntax or an
+     * undeclared prefix.
+     */
+    public static PathQuery compile( String path,
+                                     NamespaceCache cache,
+                                     Namespace... namespaces )
+    {
+        return new Parser( path, cache, namespaces ).parse();
+    }
+
+    /**
+     * Return the first matching element in document order, or null
+     * if none match. For text() or attribute targets, this is the
+     * first element having the target value.
+     */
+    public Element first( Element context )
+    {
+        final List<Element> found = new ArrayList<Element>( 1 );
+        evaluate( context, found, null, 1 );
+        return found.isEmpty() ? null : found.get( 0 );
+    }
+
+    /**
+     * Return all matching elements in document order. For text() or
+     * attribute targets, these are the elements having the target
+     * value.
+     */
+    public List<Element> select( Element context )
+    {
+        final List<Element> found = new ArrayList<Element>();
+        evaluate( context, found, null, Integer.MAX_VALUE );
+        return found;
+    }
+
+    /**
+     * Return the value of the first match, or null if none match:
+     * the text() or attribute value of the target, or the characters
+     * of a matched element.
+     */
+    public CharSequence value( Element context )
+    {
+        final List<CharSequence> values = new ArrayList<CharSequence>( 1 );
+        evaluate( context, null, values, 1 );
+        return values.isEmpty() ? null : values.get( 0 );
+    }
+
+    /**
+     * Return the values of all matches in document order.
+     * @see #value(Element)
+     */
+    public List<CharSequence> values( Element context )
+    {
+        final List<CharSequence> values = new ArrayList<CharSequence>();
+        evaluate( context, null, values, Integer.MAX_VALUE );
+        return values;
+    }
+
+    /**
+     * Read the remainder of the current (or next) root element from
+     * sr, passing each match to handler as found. A relative path is
+     * evaluated with the root element as context. Only matched
+     * elements are built as trees, and only for element
+     * targets. Unlike evaluation over a tree, a match nested within
+     * an element target or text() target match is not separately
+     * reported, as its events have already been consumed. On return,
+     * sr is positioned on the END_ELEMENT of the root element, or at
+     * END_DOCUMENT.
+     * @return the number of matches.
+     */
+    public long read( XMLStreamReader sr, Handler handler )
+        throws XMLStreamException
+    {
+        StAXConsumer consumer = null;
+        StringBuilder text = null;
+        long[] states = new long[ 16 ];
+        int depth = 0;
+        long count = 0;
+
+        int event = sr.getEventType();
+        while( true ) {
+            if( event == START_ELEMENT ) {
+                final long next;
+                if( depth == 0 ) {
+                    next = _absolute ? advance( 1L, sr ) : 1L;
+                }
+                else {
+                    final long state = states[ depth - 1 ];
+                    next = ( state == 0L ) ? 0L : advance( state, sr );
+                }
+
+                if( ( next & _matched ) != 0L ) {
+                    if( _target == Target.ATTRIBUTE ) {
+                        final String value = streamAttribute( sr );
+                        if( value != null ) {
+                            handler.handle( null, value );
+                            ++count;
+                        }
+                    }
+                    else if( _target == Target.TEXT ) {
+                        if( text == null ) text = new StringBuilder( 256 );
+                        text.setLength( 0 );
+                        readText( sr, text );
+                        if( text.length() > 0 ) {
+                            handler.handle( null, text.toString() );
+                            ++count;
+                        }
+                        if( depth == 0 ) break;
+                        event = sr.next();
+                        continue;
+                    }
+                    else {
+                        if( consumer == null ) {
+                            consumer = ( _cache != null ) ?
+                                new StAXConsumer( _cache ) :
+                                new StAXConsumer();
+                        }
+                        final Element e = consumer.readCurrentElement( sr );
+                        handler.handle( e, null );
+                        ++count;
+                        if( depth == 0 ) break;
+                        event = sr.next();
+                        continue;
+                    }
+                }
+
+                if( depth == states.length ) {
+                    final long[] grown = new long[ depth * 2 ];
+                    System.arraycopy( states, 0, grown, 0, depth );
+                    states = grown;
+                }
+                states[ depth++ ] = next & ~_matched;
+            }
+            else if( event == END_ELEMENT ) {
+                if( --depth == 0 ) break;
+            }
+            else if( event == END_DOCUMENT ) {
+                break;
+            }
+            event = sr.next();
+        }
+        return count;
+    }
+
+    /**
+     * Read matched elements from sr.
+     * @see #read(XMLStreamReader, Handler)
+     * @throws IllegalStateException if this path has a text() or
+     * attribute target.
+     */
+    public List<Element> select( XMLStreamReader sr )
+        throws XMLStreamException
+    {
+        if( _target != Target.ELEMENT ) {
+            throw new IllegalStateException(
+                "Path [" + _path + "] does not select elements." );
+        }
+        final List<Element> found = new ArrayList<Element>();
+        read( sr, new Handler() {
+            public void handle( Element element, CharSequence value )
+            {
+                found.add( element );
+            }
+        } );
+        return found;
+    }
+
+    /**
+     * Read match values from sr.
+     * @see #read(XMLStreamReader, Handler)
+     */
+    public List<CharSequence> values( XMLStreamReader sr )
+        throws XMLStreamException
+    {
+        final List<CharSequence> values = new ArrayList<CharSequence>();
+        read( sr, new Handler() {
+            public void handle( Element element, CharSequence value )
+            {
+                if( element != null ) value = element.characters();
+                if( value != null ) values.add( value );
+            }
+        } );
+        return values;
+    }
+
+    /**
+     * Return the path as compiled.
+     */
+    @Override
+    public String toString()
+    {
+        return _path;
+    }
+
+    private enum Target
+    {
+        ELEMENT,
+        TEXT,
+        ATTRIBUTE
+    }
+
+    private static final class Predicate
+    {
+        Predicate( Attribute attribute, String value )
+        {
+            this.attribute = attribute;
+            this.value = value;
+            this.iri = iri( attribute.namespace() );
+        }
+
+        boolean matches( Element element )
+        {
+            final CharSequence v = element.attribute( attribute );
+            return ( ( v != null ) &&
+                     ( ( value == null ) ||
+                       Characters.contentEquals( value, v ) ) );
+        }
+
+        boolean matches( XMLStreamReader sr )
+        {
+            final String v = streamAttribute( sr, attribute.name(), iri );
+            return ( ( v != null ) &&
+                     ( ( value == null ) || value.equals( v ) ) );
+        }
+
+        final Attribute attribute;
+        final String value; // or null for presence only
+        final String iri;
+    }
+
+    private static final class Step
+    {
+        Step( Tag tag, boolean descendant, Predicate[] predicates )
+        {
+            this.tag = tag;
+            this.descendant = descendant;
+            this.predicates = predicates;
+            this.iri = ( tag == null ) ? null : iri( tag.namespace() );
+        }
+
+        boolean matches( Element element )
+        {
+            if( tag != null ) {
+                final Tag t = element.tag();
+                if( ( t != tag ) && !tag.equals( t ) ) return false;
+            }
+            for( Predicate p : predicates ) {
+                if( !p.matches( element ) ) return false;
+            }
+            return true;
+        }
+
+        boolean matches( XMLStreamReader sr )
+        {
+            if( tag != null ) {
+                if( !tag.name().equals( sr.getLocalName() ) ) return false;
+                if( ( iri != null ) &&
+                    !iri.equals( nullToEmpty( sr.getNamespaceURI() ) ) ) {
+                    return false;
+                }
+            }
+            for( Predicate p : predicates ) {
+                if( !p.matches( sr ) ) return false;
+            }
+            return true;
+        }
+
+        final Tag tag;          // or null for '*'
+        final boolean descendant;
+        final Predicate[] predicates;
+        final String iri;       // "" for none, or null for any
+    }
+
+    private PathQuery( String path,
+                       NamespaceCache cache,
+                       boolean absolute,
+                       Step[] steps,
+                       Target target,
+                       Attribute targetAttribute )
+    {
+        _path = path;
+        _cache = cache;
+        _absolute = absolute;
+        _steps = steps;
+        _target = target;
+        _targetAttribute = targetAttribute;
+        _targetIRI = ( targetAttribute == null ) ? null :
+            iri( targetAttribute.namespace() );
+        _matched = 1L << steps.length;
+    }
+
+    private void evaluate( Element context,
+                           List<Element> elements,
+                           List<CharSequence> values,
+                           int limit )
+    {
+        final Collector c = new Collector( elements, values, limit );
+        if( _absolute ) {
+            Element root = context;
+            while( root.parent() != null ) root = root.parent();
+            long next = advance( 1L, root );
+            if( ( next & _matched ) != 0L ) {
+                if( !c.add( root ) ) return;
+                next &= ~_matched;
+            }
+            if( next != 0L ) visitDescendants( root, next, c );
+        }
+        else {
+            visitDescendants( context, 1L, c );
+        }
+    }
+
+    /**
+     * Visit the descendants of top in document order, given the state
+     * for its children, until the collector limit is reached. Each
+     * open element is held on explicit stacks with its next child
+     * index and child state, so '//' steps may descend any depth.
+     */
+    private void visitDescendants( Element top, long state, Collector c )
+    {
+        Element[] elements = new Element[ 16 ];
+        int[] nextChild = new int[ 16 ];
+        long[] states = new long[ 16 ];
+        int depth = 0;
+        elements[ 0 ] = top;
+        states[ 0 ] = state;
+
+        while( depth >= 0 ) {
+            final List<Node> children = elements[ depth ].children();
+            final int i = nextChild[ depth ];
+            if( i == children.size() ) {
+                --depth;
+                continue;
+            }
+            nextChild[ depth ] = i + 1;
+
+            final Element e = children.get( i ).asElement();
+            if( e == null ) continue;
+
+            long next = advance( states[ depth ], e );
+            if( ( next & _matched ) != 0L ) {
+                if( !c.add( e ) ) return;
+                next &= ~_matched;
+            }
+            if( next != 0L ) {
+                if( ++depth == elements.length ) {
+                    elements = Arrays.copyOf( elements, depth * 2 );
+                    nextChild = Arrays.copyOf( nextChild, depth * 2 );
+                    states = Arrays.copyOf( states, depth * 2 );
+                }
+                elements[ depth ] = e;
+                nextChild[ depth ] = 0;
+                states[ depth ] = next;
+            }
+        }
+    }
+
+    private CharSequence targetValue( Element e )
+    {
+        if( _target == Target.ATTRIBUTE ) {
+            return e.attribute( _targetAttribute );
+        }
+        return e.characters();
+    }
+
+    /**
+     * Return the state for children of element, given the state of
+     * its parent.
+     */
+    private long advance( long state, Element element )
+    {
+        long next = 0L;
+        while( state != 0L ) {
+            final int i = Long.numberOfTrailingZeros( state );
+            state &= state - 1;
+            final Step s = _steps[ i ];
+            if( s.descendant ) next |= 1L << i;
+            if( s.matches( element ) ) next |= 1L << ( i + 1 );
+        }
+        return next;
+    }
+
+    private long advance( long state, XMLStreamReader sr )
+    {
+        long next = 0L;
+        while( state != 0L ) {
+            final int i = Long.numberOfTrailingZeros( state );
+            state &= state - 1;
+            final Step s = _steps[ i ];
+            if( s.descendant ) next |= 1L << i;
+            if( s.matches( sr ) ) next |= 1L << ( i + 1 );
+        }
+        return next;
+    }
+
+    private String streamAttribute( XMLStreamReader sr )
+    {
+        return streamAttribute( sr, _targetAttribute.name(), _targetIRI );
+    }
+
+    private static String streamAttribute( XMLStreamReader sr,
+                                           String name,
+                                           String iri )
+    {
+        final int end = sr.getAttributeCount();
+        for( int i = 0; i < end; ++i ) {
+            if( name.equals( sr.getAttributeLocalName( i ) ) &&
+                iri.equals( nullToEmpty( sr.getAttributeNamespace( i ) ) ) ) {
+                return sr.getAttributeValue( i );
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Append all character data from the current START_ELEMENT
+     * through its matching END_ELEMENT, on which sr is left.
+     */
+    private static void readText( XMLStreamReader sr, StringBuilder text )
+        throws XMLStreamException
+    {
+        int depth = 1;
+        while( depth > 0 ) {
+            switch( sr.next() ) {
+            case START_ELEMENT:
+                ++depth;
+                break;
+            case END_ELEMENT:
+                --depth;
+                break;
+            case CHARACTERS:
+            case CDATA:
+            case SPACE:
+                text.append( sr.getTextCharacters(),
+                             sr.getTextStart(),
+                             sr.getTextLength() );
+                break;
+            case END_DOCUMENT:
+                return;
+            }
+        }
+    }
+
+    private static String iri( Namespace ns )
+    {
+        if( ns == Tag.WILDCARD_NS ) return null;
+        return ( ns == null ) ? "" : ns.nameIRI();
+    }
+
+    private static String nullToEmpty( String s )
+    {
+        return ( s == null ) ? "" : s;
+    }
+
+    private final class Collector
+    {
+        Collector( List<Element> elements,
+                   List<CharSequence> values,
+                   int limit )
+        {
+            _elements = elements;
+            _values = values;
+            _limit = limit;
+        }
+
+        /**
+         * Add match e, if it has a value where required.
+         * @return false if the limit has been reached.
+         */
+        boolean add( Element e )
+        {
+            if( ( _values != null ) || ( _target != Target.ELEMENT ) ) {
+                final CharSequence value = targetValue( e );
+                if( value == null ) return true;
+                if( _values != null ) _values.add( value );
+            }
+            if( _elements != null ) _elements.add( e );
+            return ( ++_count < _limit );
+        }
+
+        private final List<Element> _elements;
+        private final List<CharSequence> _values;
+        private final int _limit;
+        private int _count = 0;
+    }
+
+    private static final class Parser
+    {
+        Parser( String path, NamespaceCache cache, Namespace[] namespaces )
+        {
+            _in = path;
+            _cache = cache;
+            for( Namespace ns : namespaces ) {
+                _prefixes.put( ns.prefix(), ns );
+            }
+        }
+
+        PathQuery parse()
+        {
+            boolean absolute = false;
+            boolean descendant = false;
+            if( _in.startsWith( "//" ) ) {
+                absolute = descendant = true;
+                _pos = 2;
+            }
+            else if( _in.startsWith( "/" ) ) {
+                absolute = true;
+                _pos = 1;
+            }
+
+            final List<Step> steps = new ArrayList<Step>();
+            Target target = Target.ELEMENT;
+            Attribute targetAttr = null;
+
+            while( true ) {
+                if( !steps.isEmpty() && !descendant ) {
+                    if( _in.startsWith( "text()", _pos ) ) {
+                        _pos += 6;
+                        target = Target.TEXT;
+                        expectEnd();
+                        break;
+                    }
+                    if( peek() == '@' ) {
+                        ++_pos;
+                        targetAttr = attribute( qname() );
+                        target = Target.ATTRIBUTE;
+                        expectEnd();
+                        break;
+                    }
+                }
+                steps.add( step( descendant ) );
+
+                if( _pos == _in.length() ) break;
+                if( _in.startsWith( "//", _pos ) ) {
+                    descendant = true;
+                    _pos += 2;
+                }
+                else if( peek() == '/' ) {
+                    descendant = false;
+                    ++_pos;
+                }
+                else {
+                    throw error( "expected '/'" );
+                }
+            }
+
+            if( steps.size() > 63 ) {
+                throw error( "more than 63 steps" );
+            }
+
+            return new PathQuery( _in, _cache, absolute,
+                                  steps.toArray( new Step[ steps.size() ] ),
+                                  target, targetAttr );
+        }
+
+        private Step step( boolean descendant )
+        {
+            Tag tag = null;
+            if( peek() == '*' ) {
+                ++_pos;
+            }
+            else {
+                tag = tag( qname() );
+            }
+
+            final List<Predicate> preds = new ArrayList<Predicate>( 2 );
+            while( peek() == '[' ) {
+                ++_pos;
+                expect( '@' );
+                final Attribute attr = attribute( qname() );
+                String value = null;
+                if( peek() == '=' ) {
+                    ++_pos;
+                    value = quoted();
+                }
+                expect( ']' );
+                preds.add( new Predicate( attr, value ) );
+            }
+
+            return new Step( tag, descendant,
+                             preds.toArray( new Predicate[ preds.size() ] ) );
+        }
+
+        private String quoted()
+        {
+            final char q = peek();
+            if( ( q != '\'' ) && ( q != '"' ) ) {
+                throw error( "expected quoted value" );
+            }
+            final int end = _in.indexOf( q, _pos + 1 );
+            if( end < 0 ) throw error( "unterminated value" );
+            final String value = _in.substring( _pos + 1, end );
+            _pos = end + 1;
+            return value;
+        }
+
+        private String qname()
+        {
+            final int start = _pos;
+            while( ( _pos < _in.length() ) &&
+                   isNameChar( _in.charAt( _pos ) ) ) {
+                ++_pos;
+            }
+            if( _pos == start ) throw error( "expected name" );
+            return _in.substring( start, _pos );
+        }
+
+        private Tag tag( String qname )
+        {
+            final int c = qname.indexOf( ':' );
+            final Namespace ns;
+            if( c < 0 ) {
+                ns = _prefixes.containsKey( Namespace.DEFAULT ) ?
+                    _prefixes.get( Namespace.DEFAULT ) : Tag.WILDCARD_NS;
+            }
+            else {
+                ns = namespace( qname.substring( 0, c ) );
+            }
+            final String name = ( c < 0 ) ? qname : qname.substring( c + 1 );
+            if( ( _cache != null ) && ( ns != Tag.WILDCARD_NS ) ) {
+                return _cache.tag( name, ns );
+            }
+            return new Tag( name, ns );
+        }
+
+        private Attribute attribute( String qname )
+        {
+            final int c = qname.indexOf( ':' );
+            final Namespace ns =
+                ( c < 0 ) ? null : namespace( qname.substring( 0, c ) );
+            final String name = ( c < 0 ) ? qname : qname.substring( c + 1 );
+            if( _cache != null ) return _cache.attribute( name, ns );
+            return new Attribute( name, ns );
+        }
+
+        private Namespace namespace( String prefix )
+        {
+            final Namespace ns = _prefixes.get( prefix );
+            if( ns == null ) throw error( "undeclared prefix " + prefix );
+            return ns;
+        }
+
+        private static boolean isNameChar( char c )
+        {
+            return ( Character.isLetterOrDigit( c ) ||
+                     ( c == '_' ) || ( c == '-' ) ||
+                     ( c == '.' ) || ( c == ':' ) );
+        }
+
+        private char peek()
+        {
+            return ( _pos < _in.length() ) ? _in.charAt( _pos ) : 0;
+        }
+
+        private void expect( char c )
+        {
+            if( peek() != c ) throw error( "expected '" + c + "'" );
+            ++_pos;
+        }
+
+        private void expectEnd()
+        {
+            if( _pos != _in.length() ) throw error( "expected end" );
+        }
+
+        private IllegalArgumentException error( String message )
+        {
+            return new IllegalArgumentException(
+                "Path [" + _in + "] at " + _pos + ": " + message );
+        }
+
+        private final String _in;
+        private final NamespaceCache _cache;
+        private final Map<String,Namespace> _prefixes =
+            new HashMap<String,Namespace>();
+        private int _pos = 0;
+    }
+
+    private final String _path;
+    private final NamespaceCache _cache;
+    private final boolean _absolute;
+    private final Step[] _steps;
+    private final Target _target;
+    private final Attribute _targetAttribute;
+    private final String _targetIRI;
+    private final long _matched;
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gravitext.concurrent.TestFactory;
+import com.gravitext.concurrent.TestRunnable;
+import com.gravitext.xml.producer.Tag;
+
+/**
+ * ParsePipeline performance test. Each iteration parses all of a set
+ * of documents via a pipeline of the given number of worker threads,
+ * and the result count is the number of documents parsed. Intended
+ * for a single harness thread, varying the pipeline thread count. All
+ * runs of a factory share one pipeline, which must be shutdown()
+ * after the test.
+ */
+public class PipelinePerfTest implements TestFactory
+{
+    public PipelinePerfTest( byte[][] docs,
+                             ParsePipeline.Parser parser,
+                             int threads,
+                             boolean ordered )
+    {
+        _docs = docs;
+        _parser = parser;
+        _threads = threads;
+        _ordered = ordered;
+    }
+
+    public String name()
+    {
+        return ( "PIPELINE_" + _parser.name() + "_" + _threads +
+                 ( _ordered ? "" : "_UNORDERED" ) );
+    }
+
+    /**
+     * Shutdown the worker threads of the pipeline shared by all
+     * runnables of this factory, once all runs are complete.
+     */
+    public synchronized void shutdown()
+    {
+        if( _pipeline != null ) {
+            _pipeline.shutdown();
+            _pipeline = null;
+        }
+    }
+
+    public TestRunnable createTestRunnable( int seed )
+    {
+        final ParsePipeline pipeline = pipeline();
+
+        return new TestRunnable() {
+            public int runIteration( int run ) throws Exception
+            {
+                final AtomicLong sum = new AtomicLong();
+                long count = pipeline.run(
+                    ParsePipeline.documents( Arrays.asList( _docs ) ),
+                    new ParsePipeline.Handler() {
+                        public void handle( long seq, Element root )
+                        {
+                            sum.addAndGet( root.children().size() );
+                            sum.addAndGet( root.firstElement( TITLE )
+                                           .characters().length() );
+                        }
+                    } );
+                if( sum.get() == 0 ) throw new IllegalStateException();
+                return (int) count;
+            }
+        };
+    }
+
+    /**
+     * Return the shared pipeline, created on first use.
+     */
+    private synchronized ParsePipeline pipeline()
+    {
+        if( _pipeline == null ) {
+            _pipeline = new ParsePipeline( _threads );
+            _pipeline.setParser( _parser );
+            _pipeline.setOrdered( _ordered );
+        }
+        return _pipeline;
+    }
+
+    private static final Tag TITLE = new Tag( "title", Tag.WILDCARD_NS );
+
+    private final byte[][] _docs;
+    private final ParsePipeline.Parser _parser;
+    private final int _threads;
+    private final boolean _ordered;
+    private ParsePipeline _pipeline = null;
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.gravitext.concurrent.TestFactory;
+import com.gravitext.concurrent.TestRunnable;
+import com.gravitext.xml.XMLTokenizer;
+import com.gravitext.xml.producer.Tag;
+
+/**
+ * RecordReader performance test over a synthetic feed document of
+ * many item records. Each iteration reads all records of the
+ * document, and the result count is the number of records read.
+ */
+public class RecordPerfTest implements TestFactory
+{
+    public enum Impl
+    {
+        STAX,
+        TOKENIZER
+    };
+
+    /**
+     * @param xml document from generate()
+     * @param impl record reader source
+     * @param poolThreads if greater than zero, handle records with a
+     * thread pool of this size, otherwise on the reading thread.
+     */
+    public RecordPerfTest( byte[] xml, Impl impl, int poolThreads )
+    {
+        _xml = xml;
+        _impl = impl;
+        _poolThreads = poolThreads;
+    }
+
+    public String name()
+    {
+        if( _poolThreads > 0 ) {
+            return "RECORDS_" + _impl.name() + "+pool" + _poolThreads;
+        }
+        return "RECORDS_" + _impl.name();
+    }
+
+    public TestRunnable createTestRunnable( int seed )
+    {
+        return new TestRunnable() {
+            public int runIteration( int run ) throws Exception
+            {
+                final RecordReader reader = createReader();
+                final AtomicLong sum = new AtomicLong();
+                final RecordReader.Handler handler =
+                    new RecordReader.Handler() {
+                        public void handle( Element record )
+                        {
+                            Element title = record.firstElement( TITLE );
+                            sum.addAndGet( title.characters().length() );
+                        }
+                    };
+
+                if( _pool != null ) {
+                    reader.process( _pool, handler, 4096 );
+                }
+                else {
+                    Element record;
+                    while( ( record = reader.read() ) != null ) {
+                        handler.handle( record );
+                    }
+                }
+                if( sum.get() == 0 ) throw new IllegalStateException();
+                return (int) reader.count();
+            }
+
+            private final ExecutorService _pool = ( _poolThreads > 0 ) ?
+                Executors.newFixedThreadPool( _poolThreads, DAEMONS ) : null;
+        };
+    }
+
+    /**
+     * Return a UTF-8 encoded feed document with the specified number
+     * of item records.
+     */
+    public static byte[] generate( int records )
+    {
+        ByteArrayOutputStream out =
+            new ByteArrayOutputStream( records * 170 + 128 );
+        try {
+            generate( records, out );
+        }
+        catch( IOException e ) {
+            throw new RuntimeException( e );
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Write a UTF-8 encoded feed document with the specified number
+     * of item records to out, for example to generate a multi-GB
+     * file.
+     */
+    public static void generate( long records, OutputStream out )
+        throws IOException
+    {
+        // Encode per record, to limit peak memory for large counts
+        StringBuilder b = new StringBuilder( 256 );
+        b.append( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" );
+        b.append( "<feed xmlns=\"urn:feed\">\n" );
+        for( long i = 0; i < records; ++i ) {
+            b.append( " <item id=\"" ).append( i ).append( "\">" );
+            b.append( "<title>Item " ).append( i ).append( "</title>" );
+            b.append( "<link href=\"http://example.com/items/" );
+            b.append( i ).append( "\"/>" );
+            b.append( "<description>Some &amp; more text for item " );
+            b.append( i ).append( ".</description>" );
+            b.append( "</item>\n" );
+            write( b, out );
+        }
+        b.append( "</feed>\n" );
+        write( b, out );
+    }
+
+    private static void write( StringBuilder b, OutputStream out )
+        throws IOException
+    {
+        out.write( b.toString().getBytes( "UTF-8" ) );
+        b.setLength( 0 );
+    }
+
+    private RecordReader createReader() throws Exception
+    {
+        if( _impl == Impl.STAX ) {
+            return RecordReader.create(
+                StAXUtils.staxReader( StAXUtils.staxInput( _xml ) ), ITEM );
+        }
+        return RecordReader.create( new XMLTokenizer().setInput( _xml ),
+                                    ITEM );
+    }
+
+    private static final ThreadFactory DAEMONS = new ThreadFactory() {
+        public Thread newThread( Runnable r )
+        {
+            Thread t = new Thread( r, "record-handler" );
+            t.setDaemon( true );
+            return t;
+        }
+    };
+
+    private static final Tag ITEM = new Tag( "item", Tag.WILDCARD_NS );
+    private static final Tag TITLE = new Tag( "title", Tag.WILDCARD_NS );
+
+    private final byte[] _xml;
+    private final Impl _impl;
+    private final int _poolThreads;
+}
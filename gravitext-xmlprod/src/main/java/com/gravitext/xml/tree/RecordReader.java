@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.gravitext.xml.NamespaceCache;
+import com.gravitext.xml.XMLTokenizer;
+import com.gravitext.xml.producer.Tag;
+
+import static javax.xml.stream.XMLStreamConstants.*;
+
+/**
+ * Splits a (possibly very large) document into records: one Element
+ * per subtree rooted at an element matching a given Tag, at any
+ * depth. Only the current record is held in memory. Elements outside
+ * of matching subtrees are skipped. The underlying consumer and
+ * NamespaceCache are reused across records, such that records share
+ * canonical Tag, Attribute and Namespace instances.
+ *
+ * <p>Records may be read sequentially via read() or iterator(), or
+ * handed to an Executor for parallel processing via
+ * process(). Instances are not thread safe.</p>
+ */
+public abstract class RecordReader
+    implements Iterable<Element>
+{
+    /**
+     * Handler of records, as passed to process().
+     */
+    public interface Handler
+    {
+        void handle( Element record ) throws Exception;
+    }
+
+    /**
+     * Return a reader of records matching tag from a StAX
+     * XMLStreamReader, using a new NamespaceCache.
+     */
+    public static RecordReader create( XMLStreamReader sr, Tag tag )
+    {
+        return create( sr, tag, new NamespaceCache() );
+    }
+
+    /**
+     * Return a reader of records matching tag from a StAX
+     * XMLStreamReader, using the specified NamespaceCache.
+     */
+    public static RecordReader create( XMLStreamReader sr,
+                                       Tag tag,
+                                       NamespaceCache cache )
+    {
+        return new StAXReader( sr, tag, cache );
+    }
+
+    /**
+     * Return a reader of records matching tag from an XMLTokenizer
+     * (over bytes or an InputStream), using the tokenizer's
+     * NamespaceCache.
+     */
+    public static RecordReader create( XMLTokenizer tk, Tag tag )
+    {
+        return new TokenizerReader( tk, tag );
+    }
+
+    /**
+     * Return the next record, or null if no further records are found
+     * in the document.
+     * @throws IOException on read or parse failure, including as
+     * wrapper of XMLStreamException.
+     */
+    public abstract Element read() throws IOException;
+
+    /**
+     * Return the number of records read so far.
+     */
+    public final long count()
+    {
+        return _count;
+    }
+
+    /**
+     * Return a single-use iterator over the remaining records. Any
+     * IOException from read() is thrown wrapped in a RuntimeException.
+     */
+    public Iterator<Element> iterator()
+    {
+        return new Iterator<Element>() {
+            public boolean hasNext()
+            {
+                if( _next == null ) {
+                    try {
+                        _next = read();
+                    }
+                    catch( IOException e ) {
+                        throw new RuntimeException( e );
+                    }
+                }
+                return ( _next != null );
+            }
+
+            public Element next()
+            {
+                if( !hasNext() ) throw new NoSuchElementException();
+                final Element next = _next;
+                _next = null;
+                return next;
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException( "remove" );
+            }
+
+            private Element _next = null;
+        };
+    }
+
+    /**
+     * Read all remaining records on the calling thread and pass each
+     * to handler via executor, with at most maxPending records read
+     * but not yet handled, bounding memory use. Returns once all
+     * records have been handled. Stops reading at the first handler
+     * failure.
+     * @return the number of records handled.
+     * @throws IOException from read().
+     * @throws ExecutionException wrapping the first handler failure.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public long process( final Executor executor,
+                         final Handler handler,
+                         final int maxPending )
+        throws IOException, ExecutionException, InterruptedException
+    {
+        final Semaphore pending = new Semaphore( maxPending );
+        final AtomicReference<Throwable> failure =
+            new AtomicReference<Throwable>();
+        long handled = 0;
+
+        try {
+            Element record;
+            while( ( failure.get() == null ) &&
+                   ( record = read() ) != null ) {
+
+                pending.acquire();
+                final Element r = record;
+                try {
+                    executor.execute( new Runnable() {
+                        public void run()
+                        {
+                            try {
+                                if( failure.get() == null ) {
+                                    handler.handle( r );
+                                }
+                            }
+                            catch( Throwable t ) {
+                                failure.compareAndSet( null, t );
+                            }
+                            finally {
+                                pending.release();
+                            }
+                        }
+                    } );
+                }
+                catch( RuntimeException e ) {
+                    pending.release();
+                    throw e;
+                }
+                ++handled;
+            }
+        }
+        finally {
+            // Wait for all outstanding to complete
+            pending.acquireUninterruptibly( maxPending );
+            pending.release( maxPending );
+        }
+
+        if( failure.get() != null ) {
+            throw new ExecutionException( failure.get() );
+        }
+        return handled;
+    }
+
+    private static final class StAXReader extends RecordReader
+    {
+        StAXReader( XMLStreamReader sr, Tag tag, NamespaceCache cache )
+        {
+            super( tag );
+            _sr = sr;
+            _consumer = new StAXConsumer( cache );
+        }
+
+        @Override
+        public Element read() throws IOException
+        {
+            try {
+                while( _sr.hasNext() ) {
+                    if( ( _sr.next() == START_ELEMENT ) &&
+                        matches( _sr.getLocalName(),
+                                 _sr.getNamespaceURI() ) ) {
+                        return counted(
+                            _consumer.readCurrentElement( _sr ) );
+                    }
+                }
+                return null;
+            }
+            catch( XMLStreamException e ) {
+                throw new IOException( e );
+            }
+        }
+
+        private final XMLStreamReader _sr;
+        private final StAXConsumer _consumer;
+    }
+
+    private static final class TokenizerReader extends RecordReader
+    {
+        TokenizerReader( XMLTokenizer tk, Tag tag )
+        {
+            super( tag );
+            _tk = tk;
+        }
+
+        @Override
+        public Element read() throws IOException
+        {
+            XMLTokenizer.Event e;
+            while( ( e = _tk.next() ) != XMLTokenizer.Event.END_DOCUMENT ) {
+                if( ( e == XMLTokenizer.Event.START_ELEMENT ) &&
+                    _tk.tag().equals( _tag ) ) {
+                    return counted( _consumer.readCurrentElement( _tk ) );
+                }
+            }
+            return null;
+        }
+
+        private final XMLTokenizer _tk;
+        private final TokenizerConsumer _consumer = new TokenizerConsumer();
+    }
+
+    RecordReader( Tag tag )
+    {
+        _tag = tag;
+        final String iri = ( tag.namespace() != null ) ?
+            tag.namespace().nameIRI() : "";
+        _iri = ( tag.namespace() == Tag.WILDCARD_NS ) ? null : iri;
+    }
+
+    final boolean matches( String localName, String iri )
+    {
+        return ( _tag.name().equals( localName ) &&
+                 ( ( _iri == null ) ||
+                   _iri.equals( ( iri == null ) ? "" : iri ) ) );
+    }
+
+    final Element counted( Element record )
+    {
+        ++_count;
+        return record;
+    }
+
+    final Tag _tag;
+
+    // Tag namespace IRI, "" for none, or null for wildcard.
+    private final String _iri;
+
+    private long _count = 0;
+}
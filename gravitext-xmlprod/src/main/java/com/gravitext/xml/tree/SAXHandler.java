@@ -33,8 +33,32 @@ import com.gravitext.xml.producer.Namespace;
 public final class SAXHandler
     extends DefaultHandler
 {
+    /**
+     * Construct with a new (private) NamespaceCache.
+     */
     public SAXHandler()
     {
+        this( new NamespaceCache() );
+    }
+
+    /**
+     * Construct given NamespaceCache, which may be shared if thread
+     * safe.
+     * @see com.gravitext.xml.ConcurrentNamespaceCache
+     */
+    public SAXHandler( NamespaceCache cache )
+    {
+        _cache = cache;
+    }
+
+    /**
+     * Set an arena to hold the text of Characters nodes as CharSlice
+     * views, instead of a separate buffer per text node. Default:
+     * null (no arena).
+     */
+    public void setCharArena( CharArena arena )
+    {
+        _arena = arena;
     }
 
     /**
@@ -89,6 +113,10 @@ public final class SAXHandler
     @Override
     public void characters( char[] ch, int start, int length )
     {
+        if( _arena != null ) {
+            _arena.append( ch, start, length );
+            return;
+        }
         if( _buffer == null ) {
             _buffer = new ResizableCharBuffer( length + 16 );
         }
@@ -101,6 +129,9 @@ public final class SAXHandler
             _current.addChild( new Characters( _buffer.flipAsCharBuffer() ) );
             _buffer = null;
         }
+        else if( ( _arena != null ) && _arena.hasText() ) {
+            _current.addChild( new Characters( _arena.take() ) );
+        }
     }
 
     private void copyAttributes( Attributes attributes, Element element )
@@ -108,18 +139,13 @@ public final class SAXHandler
         final int end = attributes.getLength();
         if( end == 0 ) return;
 
-        final ArrayList<AttributeValue> atts
-            = new ArrayList<AttributeValue>( end );
-
+        element.ensureAttributeCapacity( end );
         for( int i = 0; i < end; ++i ) {
             final Attribute attr =
                 _cache.attribute( attributes.getLocalName( i ),
                                   findNamespace( attributes.getURI( i ) ) );
-            atts.add( new AttributeValue( attr,
-                                          attributes.getValue( i ) ) );
+            element.addAttribute( attr, attributes.getValue( i ) );
         }
-
-        element.setAttributes( atts );
     }
 
     //FIXME: Test perf of alternative: processing qName for prefix
@@ -155,7 +181,8 @@ public final class SAXHandler
 
     private Element _root = null;
     private Element _current = null;
-    private final NamespaceCache _cache = new NamespaceCache();
+    private final NamespaceCache _cache;
     private final ArrayList<Namespace> _nextNS = new ArrayList<Namespace>( 8 );
     private ResizableCharBuffer _buffer = null;
+    private CharArena _arena = null;
 }
@@ -16,6 +16,7 @@
 
 package com.gravitext.xml.tree;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
 
@@ -24,6 +25,7 @@ import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 
+import com.gravitext.xml.NamespaceCache;
 import com.gravitext.xml.producer.Indentor;
 
 public class SAXUtils extends TreeUtils
@@ -40,14 +42,65 @@ public class SAXUtils extends TreeUtils
 
     public static Element saxParse( InputSource input )
         throws SAXException, IOException
+    {
+        return saxParse( input, new NamespaceCache() );
+    }
+
+    public static Element saxParse( InputSource input, NamespaceCache cache )
+        throws SAXException, IOException
     {
         XMLReader reader = XMLReaderFactory.createXMLReader();
-        SAXHandler handler = new SAXHandler();
+        SAXHandler handler = new SAXHandler( cache );
         reader.setContentHandler( handler );
         reader.parse( input );
         return handler.root();
     }
 
+    /**
+     * Parse file via a memory mapped stream.
+     * @see TreeUtils#mappedStream(File)
+     */
+    public static Element saxParse( File file )
+        throws SAXException, IOException
+    {
+        return saxParse( file, new NamespaceCache() );
+    }
+
+    /**
+     * Parse file via a memory mapped stream, using cache.
+     * @see TreeUtils#mappedStream(File)
+     */
+    public static Element saxParse( File file, NamespaceCache cache )
+        throws SAXException, IOException
+    {
+        final MappedFileInputStream in = mappedStream( file );
+        try {
+            final InputSource input = new InputSource( in );
+            input.setSystemId( file.toURI().toString() );
+            return saxParse( input, cache );
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    public static CompactTree saxParseCompact( InputSource input )
+        throws SAXException, IOException
+    {
+        return saxParseCompact( input, new NamespaceCache() );
+    }
+
+    public static CompactTree saxParseCompact( InputSource input,
+                                               NamespaceCache cache )
+        throws SAXException, IOException
+    {
+        XMLReader reader = XMLReaderFactory.createXMLReader();
+        CompactSAXHandler handler = new CompactSAXHandler( cache );
+        reader.setContentHandler( handler );
+        reader.parse( input );
+        return handler.tree();
+    }
+
     public static String roundTripSAX( String input )
         throws SAXException, IOException
     {
@@ -16,8 +16,6 @@
 
 package com.gravitext.xml.tree;
 
-import java.util.ArrayList;
-
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 
@@ -35,6 +33,34 @@ import static javax.xml.stream.XMLStreamConstants.*;
  */
 public class StAXConsumer
 {
+    /**
+     * Construct with a new (private) NamespaceCache.
+     */
+    public StAXConsumer()
+    {
+        this( new NamespaceCache() );
+    }
+
+    /**
+     * Construct given NamespaceCache, which may be shared if thread
+     * safe.
+     * @see com.gravitext.xml.ConcurrentNamespaceCache
+     */
+    public StAXConsumer( NamespaceCache cache )
+    {
+        _cache = cache;
+    }
+
+    /**
+     * Set an arena to hold the text of Characters nodes as CharSlice
+     * views, instead of a String per text node. Default: null (no
+     * arena).
+     */
+    public void setCharArena( CharArena arena )
+    {
+        _arena = arena;
+    }
+
     public Element readCurrentElement( XMLStreamReader sr )
         throws XMLStreamException
     {
@@ -104,7 +130,15 @@ public class StAXConsumer
     protected void characters( XMLStreamReader sr )
     {
         //FIXME: Check _current set?
-        _current.addChild( new Characters( sr.getText() ) );
+        if( _arena != null ) {
+            _current.addChild( new Characters(
+                _arena.copy( sr.getTextCharacters(),
+                             sr.getTextStart(),
+                             sr.getTextLength() ) ) );
+        }
+        else {
+            _current.addChild( new Characters( sr.getText() ) );
+        }
     }
 
     protected void endElement()
@@ -117,19 +151,13 @@ public class StAXConsumer
     {
         final int end = sr.getAttributeCount();
         if( end > 0 ) {
-
-            final ArrayList<AttributeValue> atts
-                = new ArrayList<AttributeValue>( end );
-
+            element.ensureAttributeCapacity( end );
             for( int i = 0; i < end; ++i ) {
                 final Attribute attr = findAttribute( sr, i );
                 if( attr != null ) {
-                    atts.add( new AttributeValue( attr,
-                                                  sr.getAttributeValue( i ) ) );
+                    element.addAttribute( attr, sr.getAttributeValue( i ) );
                 }
             }
-
-            element.setAttributes( atts );
         }
     }
 
@@ -164,5 +192,6 @@ public class StAXConsumer
     protected Element _root = null;
     protected Element _current = null;
 
-    protected final NamespaceCache _cache = new NamespaceCache();
+    protected final NamespaceCache _cache;
+    protected CharArena _arena = null;
 }
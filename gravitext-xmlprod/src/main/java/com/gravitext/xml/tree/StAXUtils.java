@@ -16,16 +16,17 @@
 
 package com.gravitext.xml.tree;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
 
 import javax.xml.stream.FactoryConfigurationError;
-import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
 
+import com.gravitext.xml.NamespaceCache;
 import com.gravitext.xml.producer.Indentor;
 
 public class StAXUtils extends TreeUtils
@@ -40,14 +41,14 @@ public class StAXUtils extends TreeUtils
         return new StreamSource( new StringReader( input ) );
     }
 
+    /**
+     * Create a coalescing, non-DTD supporting XMLStreamReader for
+     * source, using the XMLInputFactoryCache.defaultCache() factory.
+     */
     public static XMLStreamReader staxReader( Source source )
         throws FactoryConfigurationError, XMLStreamException
     {
-        XMLInputFactory inf = XMLInputFactory.newFactory();
-        inf.setProperty( "javax.xml.stream.isCoalescing", true );
-        inf.setProperty( "javax.xml.stream.supportDTD", false );
-        XMLStreamReader sr = inf.createXMLStreamReader( source );
-        return sr;
+        return XMLInputFactoryCache.defaultCache().createReader( source );
     }
 
     public static Element readCurrentElement( XMLStreamReader sr )
@@ -62,12 +63,70 @@ public class StAXUtils extends TreeUtils
         return new StAXConsumer().readDocument( sr );
     }
 
+    public static Element readDocument( XMLStreamReader sr,
+                                        NamespaceCache cache )
+        throws XMLStreamException
+    {
+        return new StAXConsumer( cache ).readDocument( sr );
+    }
+
     public static Element staxParse( Source source )
         throws XMLStreamException
     {
         return readDocument( staxReader( source ) );
     }
 
+    public static Element staxParse( Source source, NamespaceCache cache )
+        throws XMLStreamException
+    {
+        return readDocument( staxReader( source ), cache );
+    }
+
+    /**
+     * Parse file via a memory mapped stream.
+     * @see TreeUtils#mappedStream(File)
+     */
+    public static Element staxParse( File file )
+        throws IOException, XMLStreamException
+    {
+        return staxParse( file, new NamespaceCache() );
+    }
+
+    /**
+     * Parse file via a memory mapped stream, using cache.
+     * @see TreeUtils#mappedStream(File)
+     */
+    public static Element staxParse( File file, NamespaceCache cache )
+        throws IOException, XMLStreamException
+    {
+        final MappedFileInputStream in = mappedStream( file );
+        try {
+            final XMLStreamReader sr = staxReader(
+                new StreamSource( in, file.toURI().toString() ) );
+            try {
+                return readDocument( sr, cache );
+            }
+            finally {
+                sr.close();
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    public static CompactTree readCompactDocument( XMLStreamReader sr )
+        throws XMLStreamException
+    {
+        return new CompactTreeBuilder().readDocument( sr );
+    }
+
+    public static CompactTree staxParseCompact( Source source )
+        throws XMLStreamException
+    {
+        return readCompactDocument( staxReader( source ) );
+    }
+
     public static String roundTripStAX( String input )
         throws IOException, XMLStreamException
     {
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.IOException;
+
+import com.gravitext.xml.XMLTokenizer;
+import com.gravitext.xml.producer.Namespace;
+
+import static com.gravitext.xml.XMLTokenizer.Event.*;
+
+/**
+ * Consumes events from an XMLTokenizer, for a single Element or
+ * entire document, and producing a Node tree.
+ *
+ * @see TokenizerUtils
+ */
+public class TokenizerConsumer
+{
+    /**
+     * Set an arena to hold the text of Characters nodes as CharSlice
+     * views, instead of a String per text node. Default: null (no
+     * arena).
+     */
+    public void setCharArena( CharArena arena )
+    {
+        _arena = arena;
+    }
+
+    public Element readCurrentElement( XMLTokenizer tk )
+        throws IOException
+    {
+        if( tk.event() != START_ELEMENT ) {
+            throw new IllegalStateException(
+                "Tokenizer not on START_ELEMENT (" + tk.event() + ")." );
+        }
+        startElement( tk );
+        return consume( tk, 1 );
+    }
+
+    public Element readDocument( XMLTokenizer tk )
+        throws IOException
+    {
+        return consume( tk, 0 );
+    }
+
+    protected Element consume( XMLTokenizer tk, int depth )
+        throws IOException
+    {
+        loop: while( true ) {
+            switch( tk.next() ) {
+            case START_ELEMENT:
+                startElement( tk );
+                ++depth;
+                break;
+            case CHARACTERS:
+                _current.addChild( new Characters( text( tk ) ) );
+                break;
+            case END_ELEMENT:
+                _current = _current.parent();
+                if( --depth <= 0 ) break loop;
+                break;
+            case END_DOCUMENT:
+                break loop;
+            }
+        }
+
+        Element root = _root;
+        _root = _current = null;
+        return root;
+    }
+
+    protected CharSequence text( XMLTokenizer tk )
+    {
+        if( _arena != null ) {
+            _arena.append( tk.characters() );
+            return _arena.take();
+        }
+        return tk.characters().toString();
+    }
+
+    protected void startElement( XMLTokenizer tk )
+    {
+        Element element = new Element( tk.tag() );
+
+        final Namespace ns = tk.elementNamespace();
+        final int nsds = tk.namespaceCount();
+        for( int i = 0; i < nsds; ++i ) {
+            final Namespace decl = tk.namespace( i );
+            if( decl != ns ) element.addNamespace( decl );
+        }
+
+        final int end = tk.attributeCount();
+        if( end > 0 ) {
+            element.ensureAttributeCapacity( end );
+            for( int i = 0; i < end; ++i ) {
+                element.addAttribute( tk.attribute( i ),
+                                      tk.attributeValue( i ).toString() );
+            }
+        }
+
+        if( _root == null ) {
+            _root = _current = element;
+        }
+        else {
+            _current.addChild( element );
+            _current = element;
+        }
+    }
+
+    protected Element _root = null;
+    protected Element _current = null;
+    protected CharArena _arena = null;
+}
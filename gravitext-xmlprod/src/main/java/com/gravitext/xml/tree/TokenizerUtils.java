@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+import com.gravitext.xml.NamespaceCache;
+import com.gravitext.xml.XMLTokenizer;
+import com.gravitext.xml.producer.Indentor;
+
+public class TokenizerUtils extends TreeUtils
+{
+    public static XMLTokenizer tokenizer( byte[] input )
+    {
+        return new XMLTokenizer().setInput( input );
+    }
+
+    public static XMLTokenizer tokenizer( byte[] input,
+                                          NamespaceCache cache )
+    {
+        return new XMLTokenizer( cache ).setInput( input );
+    }
+
+    public static XMLTokenizer tokenizer( String input )
+    {
+        try {
+            return tokenizer( input.getBytes( "UTF-8" ) );
+        }
+        catch( UnsupportedEncodingException e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
+    public static Element readCurrentElement( XMLTokenizer tk )
+        throws IOException
+    {
+        return new TokenizerConsumer().readCurrentElement( tk );
+    }
+
+    public static Element readDocument( XMLTokenizer tk )
+        throws IOException
+    {
+        return new TokenizerConsumer().readDocument( tk );
+    }
+
+    /**
+     * Parse file via a memory mapped stream.
+     * @see TreeUtils#mappedStream(File)
+     */
+    public static Element readDocument( File file ) throws IOException
+    {
+        return readDocument( file, new NamespaceCache() );
+    }
+
+    /**
+     * Parse file via a memory mapped stream, using cache.
+     * @see TreeUtils#mappedStream(File)
+     */
+    public static Element readDocument( File file, NamespaceCache cache )
+        throws IOException
+    {
+        final MappedFileInputStream in = mappedStream( file );
+        try {
+            return readDocument( new XMLTokenizer( cache ).setInput( in ) );
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Return the root of a lazily materialized tree.
+     * @see LazyConsumer
+     */
+    public static Element readLazyDocument( byte[] input )
+        throws IOException
+    {
+        return new LazyConsumer().readDocument( input );
+    }
+
+    public static String roundTripTokenizer( String input )
+        throws IOException
+    {
+        return roundTripTokenizer( input, Indentor.COMPRESSED );
+    }
+
+    public static String roundTripTokenizer( String input, Indentor indent )
+        throws IOException
+    {
+        Node root = readDocument( tokenizer( input ) );
+
+        return produceString( root, indent );
+    }
+}
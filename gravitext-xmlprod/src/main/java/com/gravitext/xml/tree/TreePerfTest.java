@@ -16,25 +16,48 @@
 
 package com.gravitext.xml.tree;
 
-import java.io.IOException;
-
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
 
 import org.w3c.dom.Document;
-import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
 
 import com.gravitext.concurrent.TestFactory;
 import com.gravitext.concurrent.TestRunnable;
+import com.gravitext.xml.XMLTokenizer;
 import com.gravitext.xml.producer.Indentor;
+import com.gravitext.xml.producer.perftests.AllocationCounter;
 
+/**
+ * Tree parsing (and optionally writing) performance test. Each
+ * iteration parses a single document, so the iteration (run) rate is
+ * documents/second, which is the relevant measure when comparing
+ * implementations with many small documents. With setReportHeap(true)
+ * the result count of each iteration is the number of bytes
+ * allocated by the test thread for the document (where supported by
+ * the JVM), so the mean result is heap-bytes/document.
+ *
+ * TREE_NODE_LAZY materializes only the children of the root element,
+ * unless writing. The *_ARENA implementations hold text in a
+ * CharArena shared across the documents parsed by each thread.
+ *
+ * @see #retainedBytes(byte[], Impl, int)
+ */
 public class TreePerfTest implements TestFactory
 {
     public enum Impl
     {
         DOM,
         TREE_NODE_SAX,
-        TREE_NODE_STAX
+        TREE_NODE_SAX_ARENA,
+        TREE_NODE_STAX,
+        TREE_NODE_STAX_ARENA,
+        TREE_NODE_TOKENIZER,
+        TREE_NODE_TOKENIZER_ARENA,
+        TREE_NODE_LAZY,
+        COMPACT_SAX,
+        COMPACT_STAX
     };
 
     public TreePerfTest( byte[][] xml, Impl impl, boolean doWrite )
@@ -44,76 +67,169 @@ public class TreePerfTest implements TestFactory
         _doWrite = doWrite;
     }
 
+    /**
+     * If false, the TREE_NODE_STAX implementation creates and
+     * configures a new XMLInputFactory for every document, instead of
+     * using the XMLInputFactoryCache.defaultCache(). Default: true.
+     */
+    public void setCacheFactory( boolean cacheFactory )
+    {
+        _cacheFactory = cacheFactory;
+    }
+
+    /**
+     * If true, report bytes allocated per document as the result
+     * count of each iteration. Default: false.
+     */
+    public void setReportHeap( boolean reportHeap )
+    {
+        _reportHeap = reportHeap;
+    }
+
     public String name()
     {
-        return _doWrite ? _impl.name() + "+write" : _impl.name();
+        String name = _impl.name();
+        if( !_cacheFactory && _impl == Impl.TREE_NODE_STAX ) {
+            name += "+newfactory";
+        }
+        return _doWrite ? name + "+write" : name;
     }
 
     public TestRunnable createTestRunnable( int seed )
     {
-        switch( _impl ) {
-        case TREE_NODE_SAX :
-            return new TestRunnable() {
-                public int runIteration( int run )
-                    throws SAXException, IOException
-                {
-                    Element element = SAXUtils.saxParse(
-                        SAXUtils.saxInput( _xml[ run % _xml.length ] ) );
-                    if( _doWrite ) {
-                        StringBuilder buffer =
-                            new StringBuilder( _xml.length * 4/3 );
-                        TreeUtils.produce( element, Indentor.PRETTY, buffer );
-                        return buffer.length();
-                    }
-                    else {
-                        return element.children().size();
-                    }
+        return new Runner();
+    }
+
+    /**
+     * Return the approximate retained heap bytes per parsed document
+     * tree, measured by holding copies trees of xml parsed via impl
+     * and comparing used heap after garbage collection.
+     */
+    public static long retainedBytes( byte[] xml, Impl impl, int copies )
+        throws Exception
+    {
+        final Runner runner = new TreePerfTest( new byte[][] { xml },
+                                                impl, false ).new Runner();
+        final Object[] held = new Object[ copies ];
+        final long before = usedHeap();
+        for( int i = 0; i < copies; ++i ) {
+            held[ i ] = runner.parse( xml );
+        }
+        final long after = usedHeap();
+        if( held[ copies - 1 ] == null ) throw new IllegalStateException();
+        return ( after - before ) / copies;
+    }
+
+    private final class Runner implements TestRunnable
+    {
+        public int runIteration( int run ) throws Exception
+        {
+            final long start =
+                _reportHeap ? AllocationCounter.allocatedBytes() : -1L;
+
+            final int count = parseAndCount( _xml[ run % _xml.length ] );
+
+            if( start >= 0 ) {
+                return (int) ( AllocationCounter.allocatedBytes() - start );
+            }
+            return count;
+        }
+
+        Object parse( byte[] xml ) throws Exception
+        {
+            switch( _impl ) {
+            case TREE_NODE_SAX:
+                return SAXUtils.saxParse( SAXUtils.saxInput( xml ) );
+            case TREE_NODE_STAX: {
+                Source input = StAXUtils.staxInput( xml );
+                XMLStreamReader sr = _cacheFactory ?
+                    StAXUtils.staxReader( input ) :
+                    new XMLInputFactoryCache().createReader( input );
+                return StAXUtils.readDocument( sr );
+            }
+            case TREE_NODE_SAX_ARENA: {
+                SAXHandler handler = new SAXHandler();
+                handler.setCharArena( _arena );
+                XMLReader reader = XMLReaderFactory.createXMLReader();
+                reader.setContentHandler( handler );
+                reader.parse( SAXUtils.saxInput( xml ) );
+                return handler.root();
+            }
+            case TREE_NODE_STAX_ARENA: {
+                StAXConsumer consumer = new StAXConsumer();
+                consumer.setCharArena( _arena );
+                return consumer.readDocument(
+                    StAXUtils.staxReader( StAXUtils.staxInput( xml ) ) );
+            }
+            case TREE_NODE_TOKENIZER:
+                _tokenizer.setInput( xml );
+                return new TokenizerConsumer().readDocument( _tokenizer );
+            case TREE_NODE_TOKENIZER_ARENA: {
+                _tokenizer.setInput( xml );
+                TokenizerConsumer consumer = new TokenizerConsumer();
+                consumer.setCharArena( _arena );
+                return consumer.readDocument( _tokenizer );
+            }
+            case TREE_NODE_LAZY:
+                return new LazyConsumer().readDocument( xml );
+            case COMPACT_SAX:
+                return SAXUtils.saxParseCompact( SAXUtils.saxInput( xml ) );
+            case COMPACT_STAX:
+                return _builder.readDocument(
+                    StAXUtils.staxReader( StAXUtils.staxInput( xml ) ) );
+            case DOM:
+                return DOMUtils.domParse( xml );
+            }
+            throw new RuntimeException();
+        }
+
+        private int parseAndCount( byte[] xml ) throws Exception
+        {
+            final Object tree = parse( xml );
+            if( _doWrite ) {
+                StringBuilder buffer = new StringBuilder( xml.length * 4/3 );
+                if( tree instanceof Element ) {
+                    TreeUtils.produce( (Element) tree,
+                                       Indentor.PRETTY, buffer );
+                }
+                else if( tree instanceof CompactTree ) {
+                    TreeUtils.produce( (CompactTree) tree,
+                                       Indentor.PRETTY, buffer );
                 }
-            };
-        case TREE_NODE_STAX :
-            return new TestRunnable() {
-                public int runIteration( int run )
-                    throws XMLStreamException, IOException
-                {
-                    Element element = StAXUtils.staxParse(
-                        StAXUtils.staxInput( _xml[ run % _xml.length ] ) );
-                    if( _doWrite ) {
-                        StringBuilder buffer =
-                            new StringBuilder( _xml.length * 4/3 );
-                        TreeUtils.produce( element, Indentor.PRETTY, buffer );
-                        return buffer.length();
-                    }
-                    else {
-                        return element.children().size();
-                    }
+                else {
+                    DOMUtils.produce( (Document) tree,
+                                      Indentor.PRETTY, buffer );
                 }
-            };
-
-        case DOM :
-            return new TestRunnable() {
-                public int runIteration( int run )
-                    throws SAXException, IOException,
-                        ParserConfigurationException
-                {
-                    Document doc =
-                        DOMUtils.domParse( _xml[ run % _xml.length ] );
-                    if( _doWrite ) {
-                        StringBuilder buffer =
-                            new StringBuilder( _xml.length * 4/3 );
-                        DOMUtils.produce( doc,Indentor.PRETTY, buffer );
-                        return buffer.length();
-                    }
-                    else {
-                        return doc.getDocumentElement()
-                            .getChildNodes().getLength();
-                    }
+                return buffer.length();
+            }
+            else {
+                if( tree instanceof Element ) {
+                    return ( (Element) tree ).children().size();
                 }
-            };
+                else if( tree instanceof CompactTree ) {
+                    return ( (CompactTree) tree ).root().children().size();
+                }
+                return ( (Document) tree ).getDocumentElement()
+                    .getChildNodes().getLength();
+            }
         }
-        throw new RuntimeException();
+
+        // Per-thread, retaining symbol table across documents
+        private final XMLTokenizer _tokenizer = new XMLTokenizer();
+        private final CompactTreeBuilder _builder = new CompactTreeBuilder();
+        private final CharArena _arena = new CharArena();
+    }
+
+    private static long usedHeap()
+    {
+        final Runtime rt = Runtime.getRuntime();
+        for( int i = 0; i < 4; ++i ) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
     }
 
     private final byte[][] _xml;
     private final Impl _impl;
     private final boolean _doWrite;
+    private boolean _cacheFactory = true;
+    private boolean _reportHeap = false;
 }
@@ -16,9 +16,14 @@
 
 package com.gravitext.xml.tree;
 
+import java.io.File;
 import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
 
 import com.gravitext.util.ByteArrayInputStream;
+import com.gravitext.xml.producer.DigestSink;
 import com.gravitext.xml.producer.Indentor;
 import com.gravitext.xml.producer.XMLProducer;
 
@@ -32,6 +37,24 @@ public class TreeUtils
         new NodeWriter( pd ).putTree( root );
     }
 
+    public static void produce( CompactTree tree,
+                                Indentor indent,
+                                Appendable out )
+        throws IOException
+    {
+        XMLProducer pd = new XMLProducer( out );
+        pd.setIndent( indent );
+        new NodeWriter( pd ).putTree( tree.root() );
+    }
+
+    public static String produceString( CompactTree tree, Indentor indent )
+        throws IOException
+    {
+        StringBuilder out = new StringBuilder( 256 );
+        produce( tree, indent, out );
+        return out.toString();
+    }
+
     public static String produceString( Node root, Indentor indent )
         throws IOException
     {
@@ -40,8 +63,98 @@ public class TreeUtils
         return out.toString();
     }
 
+    /**
+     * Produce the canonical form of root to out.
+     * @see XMLProducer#setCanonical(boolean)
+     */
+    public static void produceCanonical( Node root, Appendable out )
+        throws IOException
+    {
+        XMLProducer pd = new XMLProducer( out );
+        pd.setCanonical( true );
+        new NodeWriter( pd ).putTree( root );
+    }
+
+    /**
+     * Return the digest of the UTF-8 encoded canonical form of root,
+     * computed as it is produced. Resets digest.
+     */
+    public static byte[] canonicalDigest( Node root, MessageDigest digest )
+        throws IOException
+    {
+        DigestSink sink = new DigestSink( digest );
+        produceCanonical( root, sink.writer() );
+        return sink.digest();
+    }
+
+    /**
+     * Walk root and its descendants in document order, passing each
+     * to visitor. The walk is iterative with an explicit stack, and
+     * thus not limited by thread stack size for deeply nested
+     * trees. Children may not be added or removed during the walk,
+     * other than those of an element not yet entered.
+     */
+    public static void visit( Node root, NodeVisitor visitor )
+        throws IOException
+    {
+        final Element top = root.asElement();
+        if( top == null ) {
+            visitor.characters( root );
+            return;
+        }
+
+        Element[] elements = new Element[ 32 ];
+        int[] next = new int[ 32 ];
+        int depth = -1;
+        if( visitor.enter( top ) ) {
+            elements[ ++depth ] = top;
+        }
+        else {
+            visitor.exit( top );
+        }
+
+        while( depth >= 0 ) {
+            final Element parent = elements[ depth ];
+            final List<Node> children = parent.children();
+            final int i = next[ depth ];
+            if( i < children.size() ) {
+                next[ depth ] = i + 1;
+                final Node child = children.get( i );
+                final Element e = child.asElement();
+                if( e == null ) {
+                    visitor.characters( child );
+                }
+                else if( visitor.enter( e ) ) {
+                    if( ++depth == elements.length ) {
+                        elements = Arrays.copyOf( elements, depth * 2 );
+                        next = Arrays.copyOf( next, depth * 2 );
+                    }
+                    elements[ depth ] = e;
+                    next[ depth ] = 0;
+                }
+                else {
+                    visitor.exit( e );
+                }
+            }
+            else {
+                --depth;
+                visitor.exit( parent );
+            }
+        }
+    }
+
     public static ByteArrayInputStream byteStream( byte[] input )
     {
         return new ByteArrayInputStream( input, 0, input.length );
     }
+
+    /**
+     * Open a memory mapped stream over file, avoiding a heap copy
+     * through the read() path. The caller must close the stream.
+     */
+    public static MappedFileInputStream mappedStream( File file )
+        throws IOException
+    {
+        return new MappedFileInputStream( file );
+    }
 }
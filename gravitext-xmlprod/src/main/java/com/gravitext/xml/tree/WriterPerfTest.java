@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.IOException;
+
+import com.gravitext.concurrent.TestFactory;
+import com.gravitext.concurrent.TestRunnable;
+import com.gravitext.xml.producer.Indentor;
+import com.gravitext.xml.producer.Namespace;
+import com.gravitext.xml.producer.XMLProducer;
+
+/**
+ * Element tree writing performance, via a recursive descent writer
+ * (as NodeWriter was previously implemented) or the iterative
+ * NodeWriter. The documents are parsed once up front, so each
+ * iteration only writes a single tree. The result count is characters
+ * written.
+ *
+ * @see #generateDeep(int)
+ */
+public class WriterPerfTest implements TestFactory
+{
+    public enum Impl
+    {
+        RECURSIVE,
+        NODE_WRITER
+    };
+
+    public WriterPerfTest( byte[][] xml, Impl impl ) throws Exception
+    {
+        _impl = impl;
+        _trees = new Element[ xml.length ];
+        for( int i = 0; i < xml.length; ++i ) {
+            _trees[ i ] =
+                StAXUtils.staxParse( StAXUtils.staxInput( xml[ i ] ) );
+        }
+    }
+
+    /**
+     * Return a document with elements nested depth deep, each with
+     * an attribute, and text at the innermost element.
+     */
+    public static byte[] generateDeep( int depth )
+    {
+        StringBuilder b = new StringBuilder( depth * 24 );
+        for( int i = 0; i < depth; ++i ) {
+            b.append( "<level n=\"" ).append( i ).append( "\">" );
+        }
+        b.append( "text" );
+        for( int i = 0; i < depth; ++i ) b.append( "</level>" );
+        return b.toString().getBytes();
+    }
+
+    public String name()
+    {
+        return _impl.name();
+    }
+
+    public TestRunnable createTestRunnable( int seed )
+    {
+        return new TestRunnable() {
+            public int runIteration( int run ) throws IOException
+            {
+                final StringBuilder out = new StringBuilder( 4096 );
+                final XMLProducer pd = new XMLProducer( out );
+                pd.setIndent( Indentor.PRETTY );
+                final Element tree = _trees[ run % _trees.length ];
+                if( _impl == Impl.RECURSIVE ) {
+                    putRecursive( pd, tree );
+                }
+                else {
+                    new NodeWriter( pd ).putTree( tree );
+                }
+                return out.length();
+            }
+        };
+    }
+
+    private static void putRecursive( XMLProducer pd, Node node )
+        throws IOException
+    {
+        final Element element = node.asElement();
+        if( element != null ) {
+            pd.startTag( element.tag() );
+            for( Namespace ns : element.namespaceDeclarations() ) {
+                pd.addNamespace( ns );
+            }
+            final int atts = element.attributeCount();
+            for( int i = 0; i < atts; ++i ) {
+                pd.addAttr( element.attributeAt( i ),
+                            element.attributeValueAt( i ) );
+            }
+            for( Node child : element.children() ) {
+                putRecursive( pd, child );
+            }
+            pd.endTag();
+        }
+        else {
+            pd.putChars( node.characters() );
+        }
+    }
+
+    private final Impl _impl;
+    private final Element[] _trees;
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.FactoryConfigurationError;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+
+/**
+ * Holds configured XMLInputFactory instances for reuse, avoiding the
+ * service lookup, class loading and configuration costs of
+ * XMLInputFactory.newFactory() on every parse. Implementations known
+ * to be thread safe once configured (Woodstox, Aalto) are shared
+ * across threads. Otherwise, including for the JDK default
+ * implementation, a factory is created and cached per thread.
+ *
+ * @see StAXUtils#staxReader(Source)
+ */
+public final class XMLInputFactoryCache
+{
+    /**
+     * Construct with default properties: coalescing, with DTD support
+     * disabled.
+     */
+    public XMLInputFactoryCache()
+    {
+        this( DEFAULT_PROPERTIES );
+    }
+
+    /**
+     * Construct given XMLInputFactory properties, sharing a single
+     * factory across threads only if the implementation is known to be
+     * thread safe.
+     * @throws FactoryConfigurationError if no factory is available.
+     * @throws IllegalArgumentException if a property isn't supported.
+     */
+    public XMLInputFactoryCache( Map<String,Object> properties )
+    {
+        this( properties, null );
+    }
+
+    /**
+     * Construct given XMLInputFactory properties and whether to share a
+     * single factory across threads (overriding detection), or
+     * null to detect.
+     * @throws FactoryConfigurationError if no factory is available.
+     * @throws IllegalArgumentException if a property isn't supported.
+     */
+    public XMLInputFactoryCache( Map<String,Object> properties,
+                                 Boolean shared )
+    {
+        _properties = new HashMap<String,Object>( properties );
+
+        final XMLInputFactory first = newFactory();
+        if( shared == null ) {
+            shared = THREAD_SAFE_FACTORIES.contains(
+                first.getClass().getName() );
+        }
+
+        if( shared ) {
+            _shared = first;
+            _perThread = null;
+        }
+        else {
+            _shared = null;
+            _perThread = new ThreadLocal<XMLInputFactory>() {
+                @Override
+                protected XMLInputFactory initialValue()
+                {
+                    return newFactory();
+                }
+            };
+            _perThread.set( first );
+        }
+    }
+
+    /**
+     * Return the default cache instance, as used by StAXUtils.
+     */
+    public static XMLInputFactoryCache defaultCache()
+    {
+        return DefaultHolder.DEFAULT;
+    }
+
+    /**
+     * Return a configured factory for use by the current thread.
+     */
+    public XMLInputFactory factory()
+    {
+        return ( _shared != null ) ? _shared : _perThread.get();
+    }
+
+    /**
+     * Return true if a single factory is shared by all threads.
+     */
+    public boolean isShared()
+    {
+        return ( _shared != null );
+    }
+
+    /**
+     * Create a new XMLStreamReader for source, via factory().
+     */
+    public XMLStreamReader createReader( Source source )
+        throws XMLStreamException
+    {
+        return factory().createXMLStreamReader( source );
+    }
+
+    private XMLInputFactory newFactory()
+    {
+        XMLInputFactory inf = XMLInputFactory.newFactory();
+        for( Map.Entry<String,Object> p : _properties.entrySet() ) {
+            inf.setProperty( p.getKey(), p.getValue() );
+        }
+        return inf;
+    }
+
+    // Lazy initialization of the default instance
+    private static final class DefaultHolder
+    {
+        static final XMLInputFactoryCache DEFAULT =
+            new XMLInputFactoryCache();
+    }
+
+    private static final Map<String,Object> DEFAULT_PROPERTIES;
+    static {
+        Map<String,Object> props = new HashMap<String,Object>();
+        props.put( XMLInputFactory.IS_COALESCING, true );
+        props.put( XMLInputFactory.SUPPORT_DTD, false );
+        DEFAULT_PROPERTIES = Collections.unmodifiableMap( props );
+    }
+
+    private static final List<String> THREAD_SAFE_FACTORIES =
+        Arrays.asList( "com.ctc.wstx.stax.WstxInputFactory",
+                       "com.fasterxml.aalto.stax.InputFactoryImpl" );
+
+    private final Map<String,Object> _properties;
+    private final XMLInputFactory _shared;
+    private final ThreadLocal<XMLInputFactory> _perThread;
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.gravitext.xml.producer.Attribute;
+import com.gravitext.xml.producer.Namespace;
+import com.gravitext.xml.producer.Tag;
+import com.gravitext.xml.tree.Element;
+import com.gravitext.xml.tree.SAXUtils;
+import com.gravitext.xml.tree.StAXUtils;
+import com.gravitext.xml.tree.TokenizerUtils;
+
+import static org.junit.Assert.*;
+
+public class NamespaceCacheTest
+{
+    public static final class Schema
+    {
+        public static final Namespace NS = new Namespace( "s", "urn:s" );
+        public static final Tag DOC = new Tag( "doc", NS );
+        public static final Tag ITEM = new Tag( "item", NS );
+        public static final Attribute ID = new Attribute( "id" );
+    }
+
+    @Test
+    public void testSeed()
+    {
+        testSeed( new NamespaceCache() );
+        testSeed( new ConcurrentNamespaceCache() );
+    }
+
+    private void testSeed( NamespaceCache cache )
+    {
+        cache.seedConstants( Schema.class );
+        assertSame( Schema.NS, cache.namespace( "s", "urn:s" ) );
+        assertSame( Schema.DOC, cache.tag( "doc", Schema.NS ) );
+        assertSame( Schema.ITEM,
+                    cache.tag( "item", cache.namespace( "s", "urn:s" ) ) );
+        assertSame( Schema.ID, cache.attribute( "id", null ) );
+
+        // First seeded remains canonical
+        assertSame( Schema.DOC, cache.seed( new Tag( "doc", Schema.NS ) ) );
+    }
+
+    @Test
+    public void testBound()
+    {
+        ConcurrentNamespaceCache cache = new ConcurrentNamespaceCache( 10 );
+        cache.seedConstants( Schema.class );
+        assertEquals( 0, cache.size() );
+
+        Namespace ns = cache.namespace( "o", "urn:other" ); // 2 entries
+        for( int i = 0; i < 20; ++i ) {
+            cache.tag( "t" + i, ns );
+        }
+        assertEquals( 10, cache.size() );
+
+        assertSame( cache.tag( "t0", ns ), cache.tag( "t0", ns ) );
+        Tag over = cache.tag( "t19", ns );
+        assertNotSame( over, cache.tag( "t19", ns ) );
+        assertEquals( over, cache.tag( "t19", ns ) );
+
+        assertSame( Schema.DOC, cache.tag( "doc", Schema.NS ) );
+    }
+
+    @Test
+    public void testConcurrent() throws Exception
+    {
+        final ConcurrentNamespaceCache cache = new ConcurrentNamespaceCache();
+        ExecutorService exec = Executors.newFixedThreadPool( 4 );
+        try {
+            List<Future<Tag[]>> results = new ArrayList<Future<Tag[]>>();
+            for( int t = 0; t < 8; ++t ) {
+                results.add( exec.submit( new Callable<Tag[]>() {
+                    public Tag[] call()
+                    {
+                        Tag[] tags = new Tag[ 500 ];
+                        for( int i = 0; i < tags.length; ++i ) {
+                            Namespace ns = cache.namespace(
+                                "p" + ( i % 5 ), "urn:" + ( i % 7 ) );
+                            tags[i] = cache.tag( "t" + i, ns );
+                        }
+                        return tags;
+                    }
+                } ) );
+            }
+            Tag[] first = results.get( 0 ).get();
+            for( Future<Tag[]> f : results ) {
+                assertArrayEquals( first, f.get() );
+                Tag[] tags = f.get();
+                for( int i = 0; i < tags.length; ++i ) {
+                    assertSame( first[i], tags[i] );
+                }
+            }
+        }
+        finally {
+            exec.shutdown();
+        }
+    }
+
+    @Test
+    public void testSharedParsers() throws Exception
+    {
+        NamespaceCache cache = new ConcurrentNamespaceCache();
+        cache.seedConstants( Schema.class );
+
+        String xml = "<s:doc xmlns:s='urn:s'><s:item id='1'/></s:doc>";
+
+        Element[] roots = {
+            StAXUtils.staxParse( StAXUtils.staxInput( xml ), cache ),
+            SAXUtils.saxParse( SAXUtils.saxInput( xml ), cache ),
+            TokenizerUtils.readDocument(
+                TokenizerUtils.tokenizer( xml.getBytes( "UTF-8" ), cache ) ) };
+
+        for( Element root : roots ) {
+            assertSame( Schema.DOC, root.tag() );
+            Element item = root.firstElement( Schema.ITEM );
+            assertSame( Schema.ITEM, item.tag() );
+            assertSame( Schema.ID, item.attributes().get( 0 ).attribute() );
+        }
+    }
+}
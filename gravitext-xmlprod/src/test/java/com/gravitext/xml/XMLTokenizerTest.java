@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import com.gravitext.xml.producer.Attribute;
+import com.gravitext.xml.producer.Namespace;
+import com.gravitext.xml.producer.Tag;
+
+import static org.junit.Assert.*;
+import static com.gravitext.xml.XMLTokenizer.Event.*;
+
+public class XMLTokenizerTest
+{
+    @Test
+    public void testEvents() throws IOException
+    {
+        XMLTokenizer tk = tokenizer(
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<!DOCTYPE doc [ <!ENTITY e \"<'>\"> <!-- ]> --> ]>\n" +
+            "<!-- prolog -->\n" +
+            "<doc a=\"1\" b='&lt;\t2&#x41;'>" +
+            "t&amp;x<!-- c -->y<![CDATA[<z>]]><?pi ?>\r\n" +
+            "<e/></doc>\n" +
+            "<!-- after -->" );
+
+        assertEquals( START_ELEMENT, tk.next() );
+        assertEquals( "doc", tk.tag().name() );
+        assertEquals( 1, tk.depth() );
+        assertEquals( 2, tk.attributeCount() );
+        assertEquals( "a", tk.attribute( 0 ).name() );
+        assertEquals( "1", tk.attributeValue( 0 ).toString() );
+        assertEquals( "< 2A", tk.attributeValue( 1 ).toString() );
+        assertEquals( "< 2A", tk.attributeValue( tk.attribute( 1 ) ).toString() );
+
+        assertEquals( CHARACTERS, tk.next() );
+        assertEquals( "t&xy<z>\n", tk.characters().toString() );
+
+        assertEquals( START_ELEMENT, tk.next() );
+        assertEquals( "e", tk.tag().name() );
+        assertEquals( 0, tk.attributeCount() );
+        assertEquals( END_ELEMENT, tk.next() );
+        assertEquals( "e", tk.tag().name() );
+        assertEquals( 1, tk.depth() );
+
+        assertEquals( END_ELEMENT, tk.next() );
+        assertEquals( "doc", tk.tag().name() );
+        assertEquals( 0, tk.depth() );
+
+        assertEquals( END_DOCUMENT, tk.next() );
+        assertEquals( END_DOCUMENT, tk.next() );
+    }
+
+    @Test
+    public void testNamespaces() throws IOException
+    {
+        NamespaceCache cache = new NamespaceCache();
+        XMLTokenizer tk = new XMLTokenizer( cache );
+        tk.setInput( bytes(
+            "<a:doc xmlns:a='urn:a' xmlns='urn:d' a:at='1' at='2' " +
+            "xml:lang='en'>" +
+            "<sub xmlns=''><a:sub/></sub><sub/></a:doc>" ) );
+
+        Namespace nsA = cache.namespace( "a", "urn:a" );
+        Namespace nsD = cache.namespace( null, "urn:d" );
+
+        assertEquals( START_ELEMENT, tk.next() );
+        assertSame( cache.tag( "doc", nsA ), tk.tag() );
+        assertEquals( 2, tk.namespaceCount() );
+        assertSame( nsA, tk.namespace( 0 ) );
+        assertSame( nsD, tk.namespace( 1 ) );
+        assertEquals( 3, tk.attributeCount() );
+        assertSame( cache.attribute( "at", nsA ), tk.attribute( 0 ) );
+        assertSame( cache.attribute( "at", null ), tk.attribute( 1 ) );
+        assertEquals( "xml", tk.attribute( 2 ).namespace().prefix() );
+
+        assertEquals( START_ELEMENT, tk.next() );
+        Tag sub = tk.tag();
+        assertSame( cache.tag( "sub", null ), sub );
+        assertEquals( 0, tk.namespaceCount() );
+
+        assertEquals( START_ELEMENT, tk.next() );
+        assertSame( cache.tag( "sub", nsA ), tk.tag() );
+        assertEquals( END_ELEMENT, tk.next() );
+        assertEquals( END_ELEMENT, tk.next() );
+        assertSame( sub, tk.tag() );
+
+        assertEquals( START_ELEMENT, tk.next() );
+        assertSame( cache.tag( "sub", nsD ), tk.tag() );
+    }
+
+    @Test
+    public void testUTF8() throws IOException
+    {
+        String text = "Cérébrales € 𝄞";
+        XMLTokenizer tk = tokenizer( "﻿<dé at='" + text + "'>" +
+                                     text + "</dé>" );
+        assertEquals( START_ELEMENT, tk.next() );
+        assertEquals( "dé", tk.tag().name() );
+        assertEquals( text, tk.attributeValue( 0 ).toString() );
+        assertEquals( CHARACTERS, tk.next() );
+        assertEquals( text, tk.characters().toString() );
+    }
+
+    @Test
+    public void testStreamInput() throws IOException
+    {
+        StringBuilder b = new StringBuilder();
+        b.append( "<doc>" );
+        for( int i = 0; i < 2000; ++i ) {
+            b.append( "<item id=\"" ).append( i ).append( "\">" );
+            b.append( "café &amp; 𝄞 text\r\n" );
+            b.append( "</item>" );
+        }
+        b.append( "</doc>" );
+
+        // One byte at a time to exercise buffer boundaries
+        InputStream in = new ByteArrayInputStream( bytes( b.toString() ) ) {
+            public int read( byte[] buf, int off, int len )
+            {
+                return super.read( buf, off, Math.min( len, 3 ) );
+            }
+        };
+
+        XMLTokenizer tk = new XMLTokenizer().setInput( in );
+        Attribute id = new NamespaceCache().attribute( "id", null );
+        assertEquals( START_ELEMENT, tk.next() );
+        int count = 0;
+        while( tk.next() == START_ELEMENT ) {
+            assertEquals( id, tk.attribute( 0 ) );
+            assertEquals( Integer.toString( count ),
+                          tk.attributeValue( 0 ).toString() );
+            assertEquals( CHARACTERS, tk.next() );
+            assertEquals( "café & 𝄞 text\n",
+                          tk.characters().toString() );
+            assertEquals( END_ELEMENT, tk.next() );
+            ++count;
+        }
+        assertEquals( 2000, count );
+        assertEquals( END_DOCUMENT, tk.next() );
+    }
+
+    @Test
+    public void testSkipAndFragment() throws IOException
+    {
+        String doc = "<doc xmlns:p='urn:p'>x<p:a><b/>y</p:a><c/></doc>";
+        byte[] in = bytes( doc );
+        XMLTokenizer tk = new XMLTokenizer().setInput( in );
+
+        assertEquals( START_ELEMENT, tk.next() );
+        assertEquals( 0, tk.markupPosition() );
+        assertEquals( CHARACTERS, tk.next() );
+        assertEquals( START_ELEMENT, tk.next() );
+        final int aStart = (int) tk.markupPosition();
+        assertEquals( doc.indexOf( "<p:a>" ), aStart );
+        final int aEnd = doc.indexOf( "<c/>" );
+
+        assertEquals( END_ELEMENT, tk.skipElement( aEnd ) );
+        assertEquals( "a", tk.tag().name() );
+        assertEquals( 1, tk.depth() );
+        assertEquals( START_ELEMENT, tk.next() );
+        assertEquals( "c", tk.tag().name() );
+        assertEquals( END_ELEMENT, tk.skipElement( -1 ) ); // empty
+        assertEquals( END_ELEMENT, tk.next() );
+        assertEquals( END_DOCUMENT, tk.next() );
+
+        // Tokenize the p:a element alone, given its enclosing scope
+        tk.setInput( in, aStart, aEnd - aStart );
+        Namespace p = tk.namespaceCache().namespace( "p", "urn:p" );
+        tk.bind( "p", p );
+        assertEquals( START_ELEMENT, tk.next() );
+        assertSame( p, tk.tag().namespace() );
+        assertEquals( 0, tk.namespaceCount() );
+        assertEquals( 1, tk.bindingCount() );
+        assertEquals( START_ELEMENT, tk.next() );
+        assertEquals( END_ELEMENT, tk.next() );
+        assertEquals( CHARACTERS, tk.next() );
+        assertEquals( END_ELEMENT, tk.next() );
+        assertEquals( END_DOCUMENT, tk.next() );
+
+        try {
+            tk.bind( "q", p );
+            fail( "bind after next()" );
+        }
+        catch( IllegalStateException x ) {}
+    }
+
+    @Test
+    public void testErrors() throws IOException
+    {
+        String[] bad = {
+            "",
+            "text",
+            "<a>",
+            "<a></b>",
+            "<a b='1' b='2'/>",
+            "<a b=1/>",
+            "<a b='<'/>",
+            "<a>&bogus;</a>",
+            "<a>&#xD800;</a>",
+            "<a>\u0001</a>",
+            "<p:a/>",
+            "<a/><b/>",
+            "<a/>text",
+            " <?xml version='1.0'?><a/>",
+            "<?xml version='1.0' encoding='ISO-8859-1'?><a/>" };
+
+        for( String in : bad ) {
+            XMLTokenizer tk = tokenizer( in );
+            try {
+                while( tk.next() != END_DOCUMENT );
+                fail( "Expected exception for: " + in );
+            }
+            catch( XMLSyntaxException x ) {
+                // expected
+            }
+        }
+    }
+
+    private XMLTokenizer tokenizer( String input )
+    {
+        return new XMLTokenizer().setInput( bytes( input ) );
+    }
+
+    private static byte[] bytes( String input )
+    {
+        try {
+            return input.getBytes( "UTF-8" );
+        }
+        catch( java.io.UnsupportedEncodingException e ) {
+            throw new RuntimeException( e );
+        }
+    }
+}
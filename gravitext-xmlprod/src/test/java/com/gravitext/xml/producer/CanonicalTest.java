@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.producer;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class CanonicalTest extends TestCase
+{
+    static final Namespace NSA = new Namespace( "a", "urn:a" );
+    static final Namespace NSB = new Namespace( "b", "urn:b" );
+    static final Tag DOC  = new Tag( "doc" );
+    static final Tag ITEM = new Tag( "item", NSB );
+    static final Tag NONE = new Tag( "none" );
+
+    static final Attribute ID = new Attribute( "id" );
+    static final Attribute ZED = new Attribute( "zed" );
+    static final Attribute A_X = new Attribute( "x", NSA );
+    static final Attribute B_X = new Attribute( "x", NSB );
+
+    public void testCanonical() throws IOException
+    {
+        StringBuilder out = new StringBuilder();
+        XMLProducer p = new XMLProducer( out );
+        p.setIndent( Indentor.PRETTY ).setCanonical( true );
+
+        p.putXMLDeclaration( "UTF-8" );
+        p.putComment( "dropped" );
+        p.startTag( DOC ).addNamespace( NSA );
+        p.startTag( ITEM ).addAttr( ZED, "z" )
+                          .addAttr( B_X, 2 )
+                          .addAttr( A_X, "1" )
+                          .addAttr( "id", "i\t\n\r<>\"&" );
+        p.putChars( "t\r<>&]]>" );
+        p.putComment( "dropped" );
+        p.endTag();
+        p.startTag( NONE ).addAttr( A_X, "3" ).endTag();
+        p.endTag();
+
+        assertEquals(
+            "<doc>" +
+            "<b:item xmlns:a=\"urn:a\" xmlns:b=\"urn:b\" " +
+            "id=\"i&#x9;&#xA;&#xD;&lt;>&quot;&amp;\" zed=\"z\" " +
+            "a:x=\"1\" b:x=\"2\">" +
+            "t&#xD;&lt;&gt;&amp;]]&gt;</b:item>" +
+            "<none xmlns:a=\"urn:a\" a:x=\"3\"></none>" +
+            "</doc>",
+            out.toString() );
+    }
+
+    public void testIndentAfterCanonical() throws IOException
+    {
+        // Indentor is ignored, whether set before or after
+        StringBuilder out = new StringBuilder();
+        XMLProducer p = new XMLProducer( out ).setCanonical( true );
+        p.setIndent( Indentor.PRETTY );
+
+        p.startTag( DOC );
+        p.startTag( NONE ).addAttr( ZED, "z" ).addAttr( ID, "i" );
+        p.putChars( "t" ).endTag();
+        p.startTag( NONE ).endTag();
+        p.endTag();
+
+        assertEquals( "<doc><none id=\"i\" zed=\"z\">t</none>" +
+                      "<none></none></doc>",
+                      out.toString() );
+    }
+
+    public void testEquivalent() throws IOException
+    {
+        EncodedText text = new EncodedText( "a > b" );
+        EncodedAttrValue val = new EncodedAttrValue( "v" );
+
+        StringBuilder out1 = new StringBuilder();
+        XMLProducer p = new XMLProducer( out1 ).setCanonical( true );
+        p.startTag( DOC ).addNamespace( NSB ).addNamespace( NSA );
+        p.startTag( ITEM ).addAttr( A_X, val ).addAttr( ID, 1 );
+        p.putChars( text ).endTag();
+        p.endTag();
+
+        StringBuilder out2 = new StringBuilder();
+        p = new XMLProducer( out2 ).setCanonical( true );
+        p.startTag( DOC );
+        p.startTag( ITEM ).addAttr( ID, "1" ).addAttr( A_X, "v" );
+        p.putChars( "a > b" ).endTag();
+        p.endTag();
+
+        assertEquals( out1.toString(), out2.toString() );
+    }
+
+    public void testDigest() throws Exception
+    {
+        StringBuilder out = new StringBuilder();
+        write( new XMLProducer( out ).setCanonical( true ) );
+        byte[] expected = MessageDigest.getInstance( "SHA-256" )
+            .digest( out.toString().getBytes( "UTF-8" ) );
+
+        // Small buffer for multiple filled buffers
+        DigestSink sink =
+            new DigestSink( MessageDigest.getInstance( "SHA-256" ), 16 );
+        write( new XMLProducer( sink.writer() ).setCanonical( true ) );
+        assertTrue( Arrays.equals( expected, sink.digest() ) );
+
+        // Reusable
+        write( new XMLProducer( sink.writer() ).setCanonical( true ) );
+        assertTrue( Arrays.equals( expected, sink.digest() ) );
+    }
+
+    public void testErrors() throws IOException
+    {
+        XMLProducer p = new XMLProducer( new StringBuilder() );
+        p.startTag( DOC );
+        try {
+            p.setCanonical( true );
+            fail( "Expected IllegalStateException (after output)" );
+        }
+        catch( IllegalStateException e ) {}
+    }
+
+    private void write( XMLProducer p ) throws IOException
+    {
+        p.startTag( DOC );
+        for( int i = 0; i < 10; ++i ) {
+            p.startTag( ITEM ).addAttr( ID, i ).addAttr( A_X, "é" );
+            p.putChars( "Café €" + i ).endTag();
+        }
+        p.endTag();
+    }
+}
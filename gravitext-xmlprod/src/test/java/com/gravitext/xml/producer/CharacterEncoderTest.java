@@ -19,6 +19,11 @@ package com.gravitext.xml.producer;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.nio.CharBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -74,6 +79,138 @@ public class CharacterEncoderTest extends TestCase
         }
     }
 
+    public void testLongInput() throws IOException
+    {
+        StringBuilder in = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for( int i = 0; in.length() < 5000; ++i ) {
+            in.append( "clean text run " ).append( i );
+            expected.append( "clean text run " ).append( i );
+            if( i % 7 == 0 ) {
+                in.append( "<&\"\u0085\u0090" );
+                expected.append( "&lt;&amp;\"\u0085&#x90;" );
+            }
+        }
+        String input = in.toString();
+        String exp = expected.toString();
+
+        assertEquals( exp, encodeAppendable( input ) );
+        assertEquals( exp, encodeWriter( input ) );
+        assertEquals( exp, encodeWriter( asSequence( input ) ) );
+        assertEquals( exp, encodeWriter( asBuffer( input ) ) );
+        assertEquals( exp, encodeAppendable( asBuffer( input ) ) );
+
+        StringBuilder out = new StringBuilder();
+        new CharacterEncoder( out ).encodeAttrValue( asBuffer( input ) );
+        assertEquals( exp.replace( "\"", "&quot;" ), out.toString() );
+    }
+
+    public void testLongs() throws IOException
+    {
+        long[] samples = { 0, 1, -1, 9, 10, 99, 100, 12345,
+                           Integer.MAX_VALUE, Integer.MIN_VALUE,
+                           Long.MAX_VALUE, Long.MIN_VALUE,
+                           Long.MAX_VALUE / 10, 1000000000000000000L };
+        for( long l : samples ) {
+            StringBuilder out = new StringBuilder();
+            new CharacterEncoder( out ).encodeLong( l );
+            assertEquals( Long.toString( l ), out.toString() );
+        }
+    }
+
+    public void testDoubles() throws IOException
+    {
+        String[][] samples = {
+            { "0",        "0.0" },
+            { "-0",       "-0.0" },
+            { "1",        "1.0" },
+            { "-3",       "-3.0" },
+            { "19.99",    "19.99" },
+            { "0.1",      "0.1" },
+            { "0.001",    "0.001" },
+            { "37.7749295", "37.7749295" },
+            { "123456789012345", "123456789012345" },
+            { "1.0E15",   "1e15" },
+            { "1.0E-20",  "1e-20" },
+            { "NaN",      "NaN" },
+            { "INF",      "Infinity" },
+            { "-INF",     "-Infinity" } };
+
+        for( String[] s : samples ) {
+            StringBuilder out = new StringBuilder();
+            new CharacterEncoder( out ).encodeDouble(
+                Double.parseDouble( s[1] ) );
+            assertEquals( s[0], out.toString() );
+        }
+
+        Object[][] floats = {
+            { "0.1",          0.1f },
+            { "16777215",     16777215f },
+            { "3.3554432E7",  33554432f },
+            { "1.0E8",        1.0E8f },
+            { "3.0000001E10", 3.0E10f } };
+
+        for( Object[] s : floats ) {
+            StringBuilder out = new StringBuilder();
+            new CharacterEncoder( out ).encodeFloat( (Float) s[1] );
+            assertEquals( s[0], out.toString() );
+        }
+    }
+
+    public void testRealRoundTrip() throws IOException
+    {
+        Random rand = new Random( 1234 );
+        for( int i = 0; i < 100000; ++i ) {
+            double d = ( rand.nextDouble() - 0.5 ) *
+                       Math.pow( 10, rand.nextInt( 30 ) - 15 );
+            if( ( i % 2 ) == 0 ) d = Math.rint( d * 1000.0 ) / 1000.0;
+
+            StringBuilder out = new StringBuilder();
+            new CharacterEncoder( out ).encodeDouble( d );
+            assertEquals( out.toString(),
+                          d, Double.parseDouble( out.toString() ) );
+
+            float f = (float) d;
+            out = new StringBuilder();
+            new CharacterEncoder( out ).encodeFloat( f );
+            assertEquals( out.toString(),
+                          f, Float.parseFloat( out.toString() ) );
+        }
+    }
+
+    public void testDateTime() throws IOException
+    {
+        Calendar cal = Calendar.getInstance( TimeZone.getTimeZone( "UTC" ) );
+        SimpleDateFormat fmt =
+            new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'" );
+        fmt.setCalendar( cal );
+
+        Random rand = new Random( 4321 );
+        for( int i = 0; i < 10000; ++i ) {
+            // 1900 - 2100
+            long t = ( rand.nextLong() % ( 200L * 365 * 86400000 ) ) +
+                     ( 100L * 365 * 86400000 ) - 2208988800000L;
+            if( ( i % 2 ) == 0 ) t -= t % 1000;
+
+            String expected = fmt.format( new Date( t ) );
+            if( expected.endsWith( ".000Z" ) ) {
+                expected = expected.substring( 0, 19 ) + 'Z';
+            }
+
+            StringBuilder out = new StringBuilder();
+            new CharacterEncoder( out ).encodeDateTime( t );
+            assertEquals( expected, out.toString() );
+        }
+
+        StringBuilder out = new StringBuilder();
+        new CharacterEncoder( out ).encodeDateTime( 0L );
+        assertEquals( "1970-01-01T00:00:00Z", out.toString() );
+
+        out = new StringBuilder();
+        new CharacterEncoder( out ).encodeDateTime( -1L );
+        assertEquals( "1969-12-31T23:59:59.999Z", out.toString() );
+    }
+
     public void testDefaultErrorC0() throws IOException
     {
         StringBuilder out = new StringBuilder();
@@ -49,6 +49,24 @@ public class IndentorTest extends TestCase
         assertEquals( 2 * 67 + 1, b.length() );
     }
 
+    public void testCacheDepth() throws IOException
+    {
+        Indentor i = new Indentor( "ab", "\r\n", 2 );
+        StringBuilder b = new StringBuilder(128);
+        for( int level = 0; level < 6; ++level ) {
+            b.setLength( 0 );
+            i.indent( b, level );
+            StringBuilder e = new StringBuilder( "\r\n" );
+            for( int j = 0; j < level; ++j ) e.append( "ab" );
+            assertEquals( e.toString(), b.toString() );
+        }
+
+        i = new Indentor( "", "\n", 0 );
+        b.setLength( 0 );
+        i.indent( b, 5 );
+        assertEquals( "\n", b.toString() );
+    }
+
     public void testCompressed() throws IOException
     {
         Indentor i = Indentor.COMPRESSED;
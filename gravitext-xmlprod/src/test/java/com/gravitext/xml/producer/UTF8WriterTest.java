@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.gravitext.xml.producer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import com.gravitext.util.ResizableByteBuffer;
+
+import junit.framework.TestCase;
+
+public class UTF8WriterTest extends TestCase
+{
+    public void testSamples() throws IOException
+    {
+        for( String sample : SAMPLES ) {
+            assertEquals( sample, decode( encodeString( sample ) ) );
+            assertEquals( sample, decode( encodeChars( sample ) ) );
+            assertEquals( sample, decode( encodeSequence( sample ) ) );
+        }
+    }
+
+    public void testSplitSurrogate() throws IOException
+    {
+        String sample = "a𝄞b";
+        ResizableByteBuffer out = new ResizableByteBuffer( 16 );
+        UTF8Writer w = new UTF8Writer( out );
+        w.write( sample, 0, 2 );
+        w.flush();
+        w.write( sample, 2, 2 );
+        w.close();
+        assertEquals( sample, decode( out ) );
+    }
+
+    public void testUnpaired() throws IOException
+    {
+        ResizableByteBuffer out = new ResizableByteBuffer( 16 );
+        UTF8Writer w = new UTF8Writer( out );
+        w.write( "a\uDD1Eb\uD834c\uD834" );
+        w.close();
+        assertEquals( "a?b?c?", decode( out ) );
+    }
+
+    public void testChannel() throws IOException
+    {
+        String sample = sample( 1000 );
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        UTF8Writer w = new UTF8Writer( Channels.newChannel( bout ), 16 );
+        w.write( sample );
+        w.close();
+        assertEquals( sample, new String( bout.toByteArray(), "UTF-8" ) );
+    }
+
+    public void testHighWaterMark() throws IOException
+    {
+        final List<Integer> writes = new ArrayList<Integer>();
+        ByteArrayOutputStream bout = new ByteArrayOutputStream() {
+            @Override
+            public void write( byte[] b, int off, int len )
+            {
+                writes.add( len );
+                super.write( b, off, len );
+            }
+        };
+        UTF8Writer w = new UTF8Writer( bout, 1024 );
+        w.setHighWaterMark( 100 );
+        String sample = sample( 1000 );
+        w.write( sample );
+        assertTrue( bout.size() > 0 );
+        for( int n : writes ) {
+            assertTrue( n <= 100 );
+            assertTrue( n >= 97 );
+        }
+        w.close();
+        assertEquals( sample, new String( bout.toByteArray(), "UTF-8" ) );
+
+        try {
+            w.setHighWaterMark( 2000 );
+            fail( "expected IllegalArgumentException" );
+        }
+        catch( IllegalArgumentException e ) {}
+    }
+
+    public void testBufferHandler() throws IOException
+    {
+        final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        final List<ByteBuffer> filled = new ArrayList<ByteBuffer>();
+        final UTF8Writer[] writer = new UTF8Writer[1];
+        final Set<byte[]> arrays = Collections.newSetFromMap(
+            new IdentityHashMap<byte[],Boolean>() );
+
+        writer[0] = new UTF8Writer( new UTF8Writer.BufferHandler() {
+            public void filled( ByteBuffer buffer )
+            {
+                // Complete "asynchronous" write of prior buffer
+                for( ByteBuffer b : filled ) {
+                    bout.write( b.array(), b.position(), b.remaining() );
+                    writer[0].recycle( b );
+                }
+                filled.clear();
+                filled.add( buffer );
+                arrays.add( buffer.array() );
+            }
+        }, 64 );
+        String sample = sample( 2000 );
+        writer[0].write( sample );
+        writer[0].close();
+        for( ByteBuffer b : filled ) {
+            bout.write( b.array(), b.position(), b.remaining() );
+        }
+        assertEquals( sample, new String( bout.toByteArray(), "UTF-8" ) );
+        // Two buffers alternate once recycled
+        assertTrue( arrays.size() <= 3 );
+    }
+
+    public void testProducer() throws IOException
+    {
+        ResizableByteBuffer out = new ResizableByteBuffer( 64 );
+        UTF8Writer w = new UTF8Writer( out );
+        XMLProducer p = new XMLProducer( w );
+        p.setIndent( Indentor.COMPRESSED );
+        p.startTag( "doc" ).addAttr( "a", "é\"" )
+         .putChars( "x & €" ).endTag();
+        w.flush();
+        assertEquals( "<doc a=\"é&quot;\">x &amp; €</doc>",
+                      decode( out ) );
+    }
+
+    private ResizableByteBuffer encodeString( String in ) throws IOException
+    {
+        ResizableByteBuffer out = new ResizableByteBuffer( 16 );
+        UTF8Writer w = new UTF8Writer( out );
+        w.write( in );
+        w.flush();
+        return out;
+    }
+
+    private ResizableByteBuffer encodeChars( String in ) throws IOException
+    {
+        ResizableByteBuffer out = new ResizableByteBuffer( 16 );
+        UTF8Writer w = new UTF8Writer( out );
+        w.write( in.toCharArray() );
+        w.flush();
+        return out;
+    }
+
+    private ResizableByteBuffer encodeSequence( String in ) throws IOException
+    {
+        ResizableByteBuffer out = new ResizableByteBuffer( 16 );
+        UTF8Writer w = new UTF8Writer( out );
+        w.append( new StringBuilder( in ) );
+        w.flush();
+        return out;
+    }
+
+    private String sample( int length )
+    {
+        StringBuilder b = new StringBuilder();
+        while( b.length() < length ) b.append( "Cérébrales € " );
+        return b.toString();
+    }
+
+    private String decode( ResizableByteBuffer out ) throws IOException
+    {
+        ByteBuffer bb = out.flipAsByteBuffer();
+        return new String( bb.array(), 0, bb.limit(), "UTF-8" );
+    }
+
+    private static final String[] SAMPLES = {
+        "",
+        "ascii",
+        "Cérébrales",
+        "\u0080߿ࠀ�",
+        "€ euro",
+        "𝄞 clef",
+        "mixed é𝄞中文 end" };
+}
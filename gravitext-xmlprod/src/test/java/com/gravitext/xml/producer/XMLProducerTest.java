@@ -19,6 +19,7 @@ package com.gravitext.xml.producer;
 import java.io.IOException;
 import java.io.StringReader;
 import java.nio.CharBuffer;
+import java.util.Date;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -138,6 +139,98 @@ public class XMLProducerTest extends TestCase
                       out.buffer().toString() );
     }
 
+    public void testRealTypes() throws IOException
+    {
+        StringBuilder out = new StringBuilder();
+        Date date = new Date( 1352385000250L );
+
+        XMLProducer p = new XMLProducer( out );
+        p.setIndent( Indentor.PRETTY );
+
+        p.startTag  ( DOC );
+        p.startTag  (  SUB ).putChars( 19.99       ).endTag();
+        p.startTag  (  SUB ).putChars( -0.5f       ).endTag();
+        p.startTag  (  SUB ).putChars( date        ).endTag();
+
+        p.startTag  (  SUB ).addAttr( AT,   1e-20 ).endTag();
+        p.startTag  (  SUB ).addAttr( AT,   3.0f  ).endTag();
+        p.startTag  (  SUB ).addAttr( AT,   date  ).endTag();
+
+        p.startTag  (  SUB ).addAttr( "at", 1e-20 ).endTag();
+        p.startTag  (  SUB ).addAttr( "at", 3.0f  ).endTag();
+        p.startTag  (  SUB ).addAttr( "at", date  ).endTag();
+
+        final long t = date.getTime();
+        p.startTag  (  SUB ).putDateTime( t ).endTag();
+        p.startTag  (  SUB ).addDateTimeAttr( AT,   t ).endTag();
+        p.startTag  (  SUB ).addDateTimeAttr( "at", t ).endTag();
+
+        p.endTag    ( DOC );
+
+        assertEquals( "<doc>\n" +
+                      " <sub>19.99</sub>\n" +
+                      " <sub>-0.5</sub>\n" +
+                      " <sub>2012-11-08T14:30:00.250Z</sub>\n" +
+                      " <sub at=\"1.0E-20\"/>\n" +
+                      " <sub at=\"3\"/>\n" +
+                      " <sub at=\"2012-11-08T14:30:00.250Z\"/>\n" +
+                      " <sub at=\"1.0E-20\"/>\n" +
+                      " <sub at=\"3\"/>\n" +
+                      " <sub at=\"2012-11-08T14:30:00.250Z\"/>\n" +
+                      " <sub>2012-11-08T14:30:00.250Z</sub>\n" +
+                      " <sub at=\"2012-11-08T14:30:00.250Z\"/>\n" +
+                      " <sub at=\"2012-11-08T14:30:00.250Z\"/>\n" +
+                      "</doc>\n",
+                      out.toString() );
+    }
+
+    public void testEncodedConstants() throws IOException
+    {
+        EncodedAttrValue av = new EncodedAttrValue( "a&'\"" );
+        EncodedText text = new EncodedText( "<x>&amp" );
+        assertEquals( "a&amp;'&quot;", av.encoded() );
+        assertEquals( "&lt;x>&amp;amp", text.encoded() );
+
+        StringBuilder out = new StringBuilder();
+        XMLProducer p = new XMLProducer( out );
+        p.setIndent( Indentor.COMPRESSED );
+        p.startTag( DOC ).addAttr( AT, av ).addAttr( "b", av );
+        p.putChars( text ).endTag();
+        assertEquals( "<doc at=\"a&amp;'&quot;\" b=\"a&amp;'&quot;\">" +
+                      "&lt;x>&amp;amp</doc>",
+                      out.toString() );
+
+        // Incompatible QuoteMark, encoded on output instead
+        out = new StringBuilder();
+        CharacterEncoder enc = new CharacterEncoder( out );
+        enc.setQuoteMark( QuoteMark.SINGLE );
+        p = new XMLProducer( enc );
+        p.startTag( DOC ).addAttr( AT, av ).endTag();
+        assertEquals( "<doc at='a&amp;&apos;\"'/>\n", out.toString() );
+    }
+
+    public void testEncodedModes() throws IOException
+    {
+        EncodedText text = new EncodedText( "\u0085\u0086",
+                                            Version.XML_1_1 );
+        assertEquals( "\u0085&#x86;", text.encoded() );
+
+        StringBuilder out = new StringBuilder();
+        CharacterEncoder enc = new CharacterEncoder( out, Version.XML_1_1 );
+        enc.setModeC1( CharacterEncoder.Mode.REPLACE );
+        XMLProducer p = new XMLProducer( enc );
+        p.startTag( DOC ).putChars( text ).endTag();
+        assertEquals( "<doc>\u0085</doc>\n", out.toString() );
+
+        try {
+            new EncodedText( "\u0000" );
+            fail();
+        }
+        catch( IllegalArgumentException e ) {
+            _log.debug( "Expected: " + e );
+        }
+    }
+
     public void testCompressed() throws IOException
     {
         StringBuilder out = new StringBuilder();
@@ -216,6 +309,37 @@ public class XMLProducerTest extends TestCase
             out.toString() );
     }
 
+    public void testRedeclaredNamespaces() throws IOException
+    {
+        StringBuilder out = new StringBuilder();
+        XMLProducer p = new XMLProducer( out );
+        p.setIndent( Indentor.COMPRESSED );
+
+        Namespace[] spaces = new Namespace[ 12 ];
+        p.startTag( DOC );
+        for( int i = 0; i < spaces.length; ++i ) {
+            spaces[i] = new Namespace( "n" + i, "urn:n" + i );
+            p.addNamespace( spaces[i] );
+        }
+        p.startTag( SUB ).addNamespace( spaces[3] ).endTag();
+        p.startTag( new Tag( "e", spaces[3] ) ).endTag();
+        p.startTag( SUB ).addAttr( AT1, "v" ).endTag();
+        p.startTag( SUB ).addAttr( AT1, "w" ).endTag();
+        p.startTag( new Tag( "e", spaces[11] ) ).endTag();
+        p.endTag( DOC );
+
+        String decls = "";
+        for( int i = 0; i < spaces.length; ++i ) {
+            decls += " xmlns:n" + i + "=\"urn:n" + i + '"';
+        }
+        assertEquals( "<doc" + decls + ">" +
+                      "<sub xmlns:n3=\"urn:n3\"/><n3:e/>" +
+                      "<sub xmlns:ns1=\"urn:foo.ns1\" ns1:at1=\"v\"/>" +
+                      "<sub xmlns:ns1=\"urn:foo.ns1\" ns1:at1=\"w\"/>" +
+                      "<n11:e/></doc>",
+                      out.toString() );
+    }
+
     public void testStateError1() throws IOException
     {
         StringBuilder out = new StringBuilder();
@@ -246,6 +370,24 @@ public class XMLProducerTest extends TestCase
             _log.debug( "Expected: " + e );
         }
     }
+    public void testUnchecked() throws IOException
+    {
+        StringBuilder out = new StringBuilder();
+        XMLProducer p = new XMLProducer( out ).setChecked( false );
+        p.setIndent( Indentor.COMPRESSED );
+
+        p.startTag( DOC ).addNamespace( DEF );
+        p.startTag( NSB ).addAttr( AT1, "v" ).putChars( "c" ).endTag();
+        p.startTag( SUB ).endTag( SB2 ); // mismatch not checked
+        p.endTag( DOC );
+
+        assertEquals( "<doc xmlns=\"urn:foo.def\">" +
+                      "<ns1:sub xmlns:ns1=\"urn:foo.ns1\" " +
+                      "ns1:at1=\"v\">c</ns1:sub>" +
+                      "<sub/></doc>",
+                      out.toString() );
+    }
+
     static final Namespace NS_I = new Namespace( Namespace.DEFAULT,
                                                  "urn:foo.ns_i" );
 
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.producer;
+
+import java.io.IOException;
+
+import com.gravitext.xml.producer.CharacterEncoder.QuoteMark;
+
+import junit.framework.TestCase;
+
+public class XMLTemplateTest extends TestCase
+{
+    static final Namespace NS1 = new Namespace( "ns1", "urn:foo.ns1" );
+
+    static final Tag DOC = new Tag( "doc" );
+    static final Tag ITEM = new Tag( "item", NS1 );
+    static final Tag NAME = new Tag( "name" );
+    static final Tag LIST = new Tag( "list" );
+
+    static final Attribute ID = new Attribute( "id" );
+    static final Attribute SCORE = new Attribute( "score", NS1 );
+    static final Attribute TYPE = new Attribute( "type" );
+
+    public void testEquivalent() throws IOException
+    {
+        for( Indentor indent : new Indentor[] { Indentor.COMPRESSED,
+                                                Indentor.LINE_BREAK,
+                                                Indentor.PRETTY } ) {
+            XMLTemplate item = itemTemplate( indent, 1 );
+            XMLTemplate leaf = new XMLTemplate.Builder( indent, 3 )
+                .startTag( NAME ).putChars().endTag().build();
+
+            StringBuilder expected = new StringBuilder();
+            XMLProducer p = new XMLProducer( expected ).setIndent( indent );
+            p.startTag( DOC ).putChars( "lead" );
+            for( int i = 0; i < 3; ++i ) {
+                p.startTag( ITEM ).addAttr( ID, "i" + i )
+                    .addAttr( TYPE, "st&tic" ).addAttr( SCORE, "<" + i );
+                p.startTag( NAME ).putChars( "a & b" ).endTag();
+                p.startTag( LIST );
+                p.startTag( NAME ).putChars( "x" + i ).endTag();
+                p.endTag( LIST );
+                p.endTag( ITEM );
+            }
+            p.endTag( DOC );
+
+            StringBuilder out = new StringBuilder();
+            p = new XMLProducer( out ).setIndent( indent );
+            p.startTag( DOC ).putChars( "lead" );
+            for( int i = 0; i < 3; ++i ) {
+                p.putTemplate( item, "i" + i, "<" + i, "a & b" );
+                p.startTag( LIST );
+                p.putTemplate( leaf, "x" + i );
+                p.endTag( LIST );
+                p.endTag( ITEM );
+            }
+            p.endTag( DOC );
+
+            assertEquals( expected.toString(), out.toString() );
+        }
+    }
+
+    public void testDocument() throws IOException
+    {
+        XMLTemplate doc = new XMLTemplate.Builder( Indentor.PRETTY, 0 )
+            .startTag( DOC ).addAttr( ID )
+            .startTag( NAME ).putChars( "static" ).endTag()
+            .endTag().build();
+        assertEquals( 1, doc.slotCount() );
+        assertTrue( doc.isAttrSlot( 0 ) );
+
+        StringBuilder out = new StringBuilder();
+        XMLProducer p = new XMLProducer( out ).setIndent( Indentor.PRETTY );
+        p.putXMLDeclaration( "UTF-8" );
+        p.putTemplate( doc, "\"1\"" );
+        p.putComment( "end" );
+        assertEquals( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                      "<doc id=\"&quot;1&quot;\">\n" +
+                      " <name>static</name>\n" +
+                      "</doc>\n" +
+                      "<!--end-->\n", out.toString() );
+        try {
+            p.putTemplate( doc, "2" );
+            fail( "Expected IllegalStateException" );
+        }
+        catch( IllegalStateException e ) {}
+    }
+
+    public void testOpenTags() throws IOException
+    {
+        // Template leaving start tag open for further attributes,
+        // with namespace scope from the template.
+        XMLTemplate open = new XMLTemplate.Builder( Indentor.COMPRESSED, 1 )
+            .startTag( ITEM ).addAttr( ID ).build();
+        StringBuilder out = new StringBuilder();
+        XMLProducer p = new XMLProducer( out );
+        p.setIndent( Indentor.COMPRESSED );
+        p.startTag( DOC );
+        p.putTemplate( open, "1" ).addAttr( SCORE, "2" );
+        p.endTag( ITEM ).endTag( DOC );
+        assertEquals( "<doc><ns1:item xmlns:ns1=\"urn:foo.ns1\" id=\"1\" " +
+                      "ns1:score=\"2\"/></doc>", out.toString() );
+    }
+
+    public void testImpliedNamespace() throws IOException
+    {
+        XMLTemplate item = new XMLTemplate.Builder( Indentor.COMPRESSED, 1 )
+            .implyNamespace( NS1 )
+            .startTag( ITEM ).addAttr( ID ).endTag()
+            .build();
+        final String declared =
+            "<doc xmlns:ns1=\"urn:foo.ns1\"><ns1:item id=\"1\"/></doc>";
+
+        // Not in scope, checked
+        XMLProducer p = new XMLProducer( new StringBuilder() );
+        p.setIndent( Indentor.COMPRESSED );
+        p.startTag( DOC );
+        try {
+            p.putTemplate( item, "1" );
+            fail( "Expected IllegalStateException (implied namespace)" );
+        }
+        catch( IllegalStateException e ) {}
+
+        // Declared by the context
+        StringBuilder out = new StringBuilder();
+        p = new XMLProducer( out ).setIndent( Indentor.COMPRESSED );
+        p.startTag( DOC ).addNamespace( NS1 );
+        p.putTemplate( item, "1" ).endTag( DOC );
+        assertEquals( declared, out.toString() );
+
+        // Implied by the context
+        out = new StringBuilder();
+        p = new XMLProducer( out ).setIndent( Indentor.COMPRESSED );
+        p.implyNamespace( NS1 );
+        p.startTag( DOC ).putTemplate( item, "1" ).endTag( DOC );
+        assertEquals( "<doc><ns1:item id=\"1\"/></doc>", out.toString() );
+
+        // Not in scope, unchecked: declared on the open start tag
+        out = new StringBuilder();
+        p = new XMLProducer( out ).setIndent( Indentor.COMPRESSED );
+        p.setChecked( false );
+        p.startTag( DOC ).putTemplate( item, "1" ).endTag( DOC );
+        assertEquals( declared, out.toString() );
+    }
+
+    public void testErrors() throws IOException
+    {
+        XMLTemplate item = itemTemplate( Indentor.COMPRESSED, 1 );
+        XMLProducer p = new XMLProducer( new StringBuilder() );
+        p.setIndent( Indentor.COMPRESSED );
+        try {
+            p.putTemplate( item, "1", "2", "3" );
+            fail( "Expected IllegalStateException (depth)" );
+        }
+        catch( IllegalStateException e ) {}
+
+        p.startTag( DOC );
+        try {
+            p.putTemplate( item, "1" );
+            fail( "Expected IllegalArgumentException (values)" );
+        }
+        catch( IllegalArgumentException e ) {}
+
+        p = new XMLProducer( new StringBuilder() );
+        p.setIndent( Indentor.PRETTY );
+        p.startTag( DOC );
+        try {
+            p.putTemplate( item, "1", "2", "3" );
+            fail( "Expected IllegalArgumentException (indentor)" );
+        }
+        catch( IllegalArgumentException e ) {}
+
+        CharacterEncoder enc = new CharacterEncoder( new StringBuilder() );
+        enc.setQuoteMark( QuoteMark.SINGLE );
+        p = new XMLProducer( enc ).setIndent( Indentor.COMPRESSED );
+        p.startTag( DOC );
+        try {
+            p.putTemplate( item, "1", "2", "3" );
+            fail( "Expected IllegalArgumentException (quote mark)" );
+        }
+        catch( IllegalArgumentException e ) {}
+
+        XMLTemplate.Builder b = new XMLTemplate.Builder( Indentor.PRETTY, 2 );
+        try {
+            b.build();
+            fail( "Expected IllegalStateException (empty)" );
+        }
+        catch( IllegalStateException e ) {}
+        try {
+            b.endTag();
+            fail( "Expected IllegalStateException (endTag)" );
+        }
+        catch( IllegalStateException e ) {}
+    }
+
+    private XMLTemplate itemTemplate( Indentor indent, int depth )
+        throws IOException
+    {
+        return new XMLTemplate.Builder( indent, depth )
+            .startTag( ITEM ).addAttr( ID ).addAttr( TYPE, "st&tic" )
+            .addAttr( SCORE )
+            .startTag( NAME ).putChars().endTag()
+            .build();
+    }
+}
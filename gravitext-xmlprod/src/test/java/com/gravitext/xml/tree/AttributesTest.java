@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.gravitext.xml.producer.Attribute;
+import com.gravitext.xml.producer.Namespace;
+
+import static org.junit.Assert.*;
+
+public class AttributesTest
+{
+    @Test
+    public void test_lookup_and_mutation()
+    {
+        Element e = new Element( "e" );
+        assertEquals( 0, e.attributeCount() );
+        assertEquals( 0, e.attributes().size() );
+        assertNull( e.attribute( ID ) );
+
+        e.addAttribute( ID, "1" );
+        e.addAttribute( NS_ID, "2" );
+        e.addAttribute( "type", "t" );
+        assertEquals( 3, e.attributeCount() );
+
+        assertEquals( "1", e.attribute( ID ) );
+        assertEquals( "1", e.attribute( new Attribute( "id" ) ) );
+        assertEquals( "1", e.attribute( "id" ) );
+        assertEquals( "2", e.attribute( NS_ID ) );
+        assertEquals( "2", e.attribute(
+                          new Attribute( "id", new Namespace( "urn:n" ) ) ) );
+        assertEquals( "t", e.attribute( "type" ) );
+        assertSame( NS_ID, e.attributeAt( 1 ) );
+        assertEquals( "t", e.attributeValueAt( 2 ) );
+
+        assertEquals( "1", e.setAttribute( new AttributeValue( ID, "3" ) ) );
+        e.setAttribute( "type", "u" );
+        assertEquals( "3", e.attribute( ID ) );
+        assertEquals( "u", e.attribute( "type" ) );
+        assertEquals( 3, e.attributeCount() );
+
+        assertEquals( "2", e.removeAttribute( NS_ID ) );
+        assertNull( e.removeAttribute( NS_ID ) );
+        assertEquals( "u", e.removeAttribute( "type" ) );
+        assertEquals( 1, e.attributeCount() );
+        assertEquals( "3", e.attribute( "id" ) );
+
+        e.setAttributes( Arrays.asList( new AttributeValue( NS_ID, "a" ),
+                                        new AttributeValue( ID, "b" ) ) );
+        assertEquals( 2, e.attributeCount() );
+        assertEquals( "b", e.attribute( ID ) );
+        assertSame( NS_ID, e.attributeAt( 0 ) );
+    }
+
+    @Test
+    public void test_list_view()
+    {
+        Element e = new Element( "e" );
+        List<AttributeValue> atts = e.attributes();
+        atts.add( new AttributeValue( ID, "1" ) );
+        atts.add( 0, new AttributeValue( NS_ID, "2" ) );
+        assertEquals( 2, e.attributeCount() );
+        assertSame( NS_ID, e.attributeAt( 0 ) );
+
+        assertEquals( "2", atts.set( 0, new AttributeValue( NS_ID, "3" ) )
+                      .value() );
+        assertEquals( "3", e.attribute( NS_ID ) );
+        assertEquals( "3", atts.remove( 0 ).value() );
+        assertEquals( 1, atts.size() );
+        assertSame( ID, atts.get( 0 ).attribute() );
+
+        try {
+            e.attributeAt( 1 );
+            fail();
+        }
+        catch( IndexOutOfBoundsException x ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void test_wide()
+    {
+        Element e = new Element( "e" );
+        e.ensureAttributeCapacity( 100 );
+        for( int i = 0; i < 100; ++i ) {
+            e.addAttribute( "a" + i, String.valueOf( i ) );
+        }
+        // Duplicates are not checked, and first match wins
+        e.addAttribute( "a5", "dup" );
+
+        for( int i = 0; i < 100; ++i ) {
+            assertEquals( String.valueOf( i ),
+                          e.attribute( new Attribute( "a" + i ) ) );
+        }
+        assertNull( e.attribute( ID ) );
+
+        assertEquals( "5", e.removeAttribute( new Attribute( "a5" ) ) );
+        assertEquals( "dup", e.attribute( new Attribute( "a5" ) ) );
+        assertEquals( "99", e.attribute( new Attribute( "a99" ) ) );
+        e.addAttribute( ID, "id" );
+        assertEquals( "id", e.attribute( ID ) );
+    }
+
+    @Test
+    public void test_parsed() throws Exception
+    {
+        final String doc =
+            "<doc xmlns:n=\"urn:n\"><e id=\"1\" n:id=\"2\" b=\"3\"/></doc>";
+        Element[] roots = {
+            StAXUtils.staxParse( StAXUtils.staxInput( doc ) ),
+            SAXUtils.saxParse( SAXUtils.saxInput( doc ) ) };
+        for( Element root : roots ) {
+            Element e = root.children().get( 0 ).asElement();
+            assertEquals( 3, e.attributeCount() );
+            assertEquals( "1", e.attribute( "id" ) );
+            assertEquals( "2", e.attribute( NS_ID ) );
+            assertEquals( "3", e.attribute( "b" ) );
+            assertTrue( root.deepEquals( roots[ 0 ] ) );
+        }
+    }
+
+    private static final Attribute ID = new Attribute( "id" );
+    private static final Attribute NS_ID =
+        new Attribute( "id", new Namespace( "n", "urn:n" ) );
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.gravitext.xml.producer.Indentor;
+import com.gravitext.xml.producer.Tag;
+
+import static org.junit.Assert.*;
+
+public class CharArenaTest
+{
+    @Test
+    public void test_copy()
+    {
+        CharArena arena = new CharArena( 8 );
+        char[] in = "abcdefghij".toCharArray();
+        List<CharSequence> texts = new ArrayList<CharSequence>();
+        for( int i = 0; i < 10; i += 2 ) {
+            texts.add( arena.copy( in, i, 2 ) ); // last in next block
+        }
+        texts.add( arena.copy( in, 0, 10 ) );  // own block
+        texts.add( arena.copy( in, 0, 0 ) );
+
+        // Input changes after copy are not visible
+        Arrays.fill( in, 'X' );
+        assertEquals( "[ab, cd, ef, gh, ij, abcdefghij, ]",
+                      texts.toString() );
+        assertEquals( "", arena.take().toString() );
+    }
+
+    @Test
+    public void test_append_run()
+    {
+        CharArena arena = new CharArena( 8 );
+        arena.append( "xyz" );
+        CharSequence x = arena.take();
+        assertFalse( arena.hasText() );
+        arena.append( "abc".toCharArray(), 0, 3 );
+        arena.append( CharBuffer.wrap( "defg" ) );
+        assertTrue( arena.hasText() );
+        // Run moved to a new block
+        assertEquals( "abcdefg", arena.take().toString() );
+        assertEquals( "xyz", x.toString() );
+
+        for( int i = 0; i < 10; ++i ) arena.append( "0123456789" );
+        CharSequence big = arena.take();
+        assertEquals( 100, big.length() );
+        assertEquals( "8901", big.subSequence( 98, 100 ).toString() +
+                              big.subSequence( 0, 2 ) );
+    }
+
+    @Test
+    public void test_tree_mutation() throws Exception
+    {
+        CharArena arena = new CharArena( 64 );
+        Element first = parseTokenizer( DOC, arena );
+        String expected = TreeUtils.produceString( first,
+                                                   Indentor.COMPRESSED );
+        assertEquals( TokenizerUtils.roundTripTokenizer( DOC ), expected );
+
+        Element second = parseTokenizer( DOC, arena );
+        Element title = second.firstElement( TITLE );
+        title.children().get( 0 ).setCharacters( "changed" );
+        second.firstElement( BODY ).detachAllChildren();
+        first.addChild( second.firstElement( NOTE ) );
+
+        // Later parses and mutation of other trees do not affect
+        // text of first.
+        parseTokenizer( DOC, arena );
+        assertEquals( "First title", first.firstElement( TITLE )
+                      .characters().toString() );
+        assertEquals( "changed", title.characters().toString() );
+        assertEquals( expected.replace( "</doc>",
+                                        "<note>Note text</note></doc>" ),
+                      TreeUtils.produceString( first,
+                                               Indentor.COMPRESSED ) );
+    }
+
+    @Test
+    public void test_consumers() throws Exception
+    {
+        String expected = TokenizerUtils.roundTripTokenizer( DOC );
+
+        StAXConsumer sc = new StAXConsumer();
+        sc.setCharArena( new CharArena() );
+        assertEquals( expected, TreeUtils.produceString(
+            sc.readDocument( StAXUtils.staxReader(
+                                 StAXUtils.staxInput( DOC ) ) ),
+            Indentor.COMPRESSED ) );
+
+        SAXHandler handler = new SAXHandler();
+        handler.setCharArena( new CharArena() );
+        XMLReader reader = XMLReaderFactory.createXMLReader();
+        reader.setContentHandler( handler );
+        reader.parse( SAXUtils.saxInput( DOC ) );
+        assertEquals( expected, TreeUtils.produceString(
+            handler.root(), Indentor.COMPRESSED ) );
+    }
+
+    private static Element parseTokenizer( String xml, CharArena arena )
+        throws IOException
+    {
+        TokenizerConsumer consumer = new TokenizerConsumer();
+        consumer.setCharArena( arena );
+        return consumer.readDocument( TokenizerUtils.tokenizer( xml ) );
+    }
+
+    private static final Tag TITLE = new Tag( "title", null );
+    private static final Tag BODY = new Tag( "body", null );
+    private static final Tag NOTE = new Tag( "note", null );
+
+    private static final String DOC =
+        "<doc><title>First title</title>" +
+        "<body>Some <b>bold</b> &amp; text, with more than a block " +
+        "of characters in this one text node, to exercise own blocks." +
+        "</body><note>Note text</note></doc>";
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.gravitext.xml.producer.CharSlice;
+
+import static org.junit.Assert.*;
+
+public class CharRopeTest
+{
+    @Test
+    public void test_rope()
+    {
+        CharSequence[] parts = { "ab", "", new CharSlice( ABC, 0, 3 ),
+                                 "", "d", "" };
+        CharRope rope = new CharRope( parts, parts.length );
+        final String expected = "ababcd";
+        assertEquals( expected.length(), rope.length() );
+        assertEquals( expected, rope.toString() );
+
+        // Forward, backward and random access
+        for( int i = 0; i < expected.length(); ++i ) {
+            assertEquals( expected.charAt( i ), rope.charAt( i ) );
+        }
+        for( int i = expected.length() - 1; i >= 0; --i ) {
+            assertEquals( expected.charAt( i ), rope.charAt( i ) );
+        }
+        assertEquals( 'd', rope.charAt( 5 ) );
+        assertEquals( 'a', rope.charAt( 0 ) );
+        assertEquals( 'c', rope.charAt( 4 ) );
+
+        for( int s = 0; s <= expected.length(); ++s ) {
+            for( int e = s; e <= expected.length(); ++e ) {
+                assertEquals( expected.substring( s, e ),
+                              rope.subSequence( s, e ).toString() );
+            }
+        }
+
+        try {
+            rope.charAt( expected.length() );
+            fail();
+        }
+        catch( IndexOutOfBoundsException x ) {
+            // expected
+        }
+        assertEquals( 0, new CharRope( parts, 0 ).length() );
+    }
+
+    @Test
+    public void test_element_characters() throws IOException
+    {
+        Element root = new Element( "r" );
+        assertNull( root.characters() );
+        assertEquals( 0, root.textLength() );
+
+        Element a = new Element( "a" );
+        root.addChild( a );
+        assertNull( root.characters() );
+
+        Characters one = new Characters( "one" );
+        a.addChild( one );
+        assertSame( "one", root.characters() );
+        assertEquals( 3, root.textLength() );
+
+        root.addChild( new Characters( " two" ) );
+        a.addChild( new Characters( "+" ) );
+        assertTrue( root.characters() instanceof CharRope );
+        assertEquals( "one+ two", root.characters().toString() );
+        assertEquals( 8, root.textLength() );
+        assertEquals( 4, a.textLength() );
+
+        StringBuilder out = new StringBuilder();
+        root.writeCharacters( out );
+        assertEquals( "one+ two", out.toString() );
+
+        // Cached lengths invalidated by changes below
+        one.setCharacters( "1" );
+        assertEquals( 6, root.textLength() );
+        assertEquals( 2, a.textLength() );
+
+        one.detach();
+        assertEquals( 5, root.textLength() );
+        a.detach();
+        assertEquals( 4, root.textLength() );
+        assertEquals( 1, a.textLength() );
+        assertEquals( " two", root.characters().toString() );
+    }
+
+    @Test
+    public void test_invalidate_with_hash()
+    {
+        Element root = new Element( "r" );
+        Element a = new Element( "a" );
+        root.addChild( a );
+        Characters text = new Characters( "abc" );
+        a.addChild( text );
+
+        // Hash cached without text length, then both
+        final int h = root.structuralHash();
+        assertEquals( 3, root.textLength() );
+        text.setCharacters( "abcd" );
+        assertEquals( 4, root.textLength() );
+        assertTrue( h != root.structuralHash() );
+    }
+
+    private static final char[] ABC = "abc".toCharArray();
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.gravitext.xml.producer.Namespace;
+import com.gravitext.xml.producer.Tag;
+
+import static org.junit.Assert.*;
+
+public class ChildIndexTest
+{
+    @Test
+    public void test_narrow()
+    {
+        Element root = wide( 4 );
+        assertSame( root.children().get( 1 ), root.firstElement( B ) );
+        assertEquals( 2, root.elements( A ).size() );
+        assertEquals( 0, root.elements( new Tag( "x" ) ).size() );
+    }
+
+    @Test
+    public void test_lookups()
+    {
+        Element root = wide( 100 );
+        // Repeat, as the index is built after some scans
+        for( int r = 0; r < 3; ++r ) {
+            assertSame( root.children().get( 1 ), root.firstElement( B ) );
+            assertSame( root.children().get( 2 ), root.firstElement( C ) );
+            assertNull( root.firstElement( new Tag( "x" ) ) );
+
+            List<Element> as = root.elements( A );
+            assertEquals( 34, as.size() );
+            assertSame( root.children().get( 99 ), as.get( 33 ) );
+            assertEquals( 0, root.elements( new Tag( "x" ) ).size() );
+
+            // Namespaced lookups
+            Tag wild = new Tag( "a", Tag.WILDCARD_NS );
+            assertEquals( 34, root.elements( wild ).size() );
+            assertEquals( 0, root.elements( new Tag( "a", NS ) ).size() );
+        }
+    }
+
+    @Test
+    public void test_mutation()
+    {
+        Element root = wide( 100 );
+        // Scan enough to build the index
+        for( int r = 0; r < 3; ++r ) root.elements( A );
+
+        Element nb = new Element( B );
+        root.addChild( nb );
+        assertEquals( 34, root.elements( B ).size() );
+        assertSame( nb, root.elements( B ).get( 33 ) );
+
+        Element first = new Element( B );
+        root.insertChild( 0, first );
+        assertSame( first, root.firstElement( B ) );
+        assertEquals( 35, root.elements( B ).size() );
+
+        first.detach();
+        assertSame( root.children().get( 1 ), root.firstElement( B ) );
+
+        // Child tag change, with index rebuilt
+        for( int r = 0; r < 3; ++r ) root.elements( A );
+        root.children().get( 0 ).asElement().setTag( C );
+        assertSame( root.children().get( 0 ), root.firstElement( C ) );
+        assertEquals( 33, root.elements( A ).size() );
+
+        // Text children are not indexed
+        root.insertChild( 0, new Characters( "text" ) );
+        assertSame( root.children().get( 1 ), root.firstElement( C ) );
+
+        root.detachAllChildren();
+        assertNull( root.firstElement( A ) );
+        assertEquals( 0, root.elements( A ).size() );
+    }
+
+    private static Element wide( int count )
+    {
+        Element root = new Element( "root" );
+        Tag[] tags = { A, B, C };
+        for( int i = 0; i < count; ++i ) {
+            root.addChild( new Element( tags[ i % tags.length ] ) );
+        }
+        return root;
+    }
+
+    private static final Namespace NS = new Namespace( "n", "urn:n" );
+    private static final Tag A = new Tag( "a" );
+    private static final Tag B = new Tag( "b" );
+    private static final Tag C = new Tag( "c" );
+}
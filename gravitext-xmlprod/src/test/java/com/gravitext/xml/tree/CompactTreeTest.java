@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import com.gravitext.xml.producer.Attribute;
+import com.gravitext.xml.producer.CharSlice;
+import com.gravitext.xml.producer.Indentor;
+import com.gravitext.xml.producer.Namespace;
+import com.gravitext.xml.producer.Tag;
+
+import static org.junit.Assert.*;
+import static com.gravitext.xml.tree.StAXUtils.*;
+import static javax.xml.stream.XMLStreamConstants.*;
+
+public class CompactTreeTest
+{
+    @Test
+    public void test_roundtrip() throws IOException, XMLStreamException
+    {
+        CompactTree tree = staxParseCompact( staxInput( DOC ) );
+        assertEquals( DOC, produceString( tree, Indentor.COMPRESSED ) );
+        assertEquals( DOC, produceString( tree.toElement(),
+                                          Indentor.COMPRESSED ) );
+    }
+
+    @Test
+    public void test_read_api() throws XMLStreamException
+    {
+        CompactElement root = staxParseCompact( staxInput( DOC ) ).root();
+
+        assertNull( root.parent() );
+        assertEquals( "doc", root.name() );
+        assertEquals( NS, root.namespace() );
+        assertTrue( root.namespaceDeclarations().isEmpty() );
+
+        List<CompactNode> children = root.children();
+        assertEquals( 4, children.size() );
+        assertTrue( children.get( 0 ).isCharacters() );
+        assertEquals( "t1", children.get( 0 ).characters().toString() );
+        // Array backed, for the encoder's fast path
+        assertTrue( children.get( 0 ).characters() instanceof CharSlice );
+
+        CompactElement a = root.firstElement( new Tag( "a", NS ) );
+        assertEquals( a, children.get( 1 ) );
+        assertEquals( root, a.parent() );
+        assertEquals( "v1", a.attribute( "x" ).toString() );
+        assertTrue( a.attribute( "x" ) instanceof CharSlice );
+        assertEquals( "v2", a.attribute( new Attribute( "y", O ) )
+                      .toString() );
+        assertNull( a.attribute( "y" ) );
+        assertEquals( 2, a.attributes().size() );
+        assertEquals( "y", a.attributes().get( 1 ).attribute().name() );
+        assertEquals( O, a.namespaceDeclarations().get( 0 ) );
+
+        assertEquals( "b&c", root.firstElement( new Tag( "a", NS ),
+                                                new Tag( "b", NS ) )
+                      .characters().toString() );
+        assertNull( root.firstElement( new Tag( "b", NS ) ) );
+
+        assertEquals( "t1b&ct2", root.characters().toString() );
+        assertNull( root.firstElement( new Tag( "e", NS ) ).characters() );
+    }
+
+    @Test
+    public void test_partial() throws XMLStreamException, IOException
+    {
+        XMLStreamReader sr = staxReader( staxInput( DOC ) );
+        while( ( sr.next() != START_ELEMENT ) ||
+               ! sr.getLocalName().equals( "a" ) );
+
+        CompactTree tree = new CompactTreeBuilder().readCurrentElement( sr );
+        assertEquals( 3, tree.nodeCount() );
+        assertEquals( "<a xmlns=\"urn:d\" xmlns:o=\"urn:o\"" +
+                      " x=\"v1\" o:y=\"v2\">" +
+                      "<b>b&amp;c</b></a>",
+                      produceString( tree, Indentor.COMPRESSED ) );
+    }
+
+    @Test
+    public void test_builder_coalesce() throws IOException
+    {
+        CompactTreeBuilder b = new CompactTreeBuilder();
+        b.startElement( new Tag( "r" ) );
+        b.characters( "ab" );
+        b.characters( "xcdx".toCharArray(), 1, 2 );
+        b.startElement( new Tag( "s" ) );
+        b.endElement();
+        b.characters( "e" );
+        b.endElement();
+
+        CompactTree tree = b.build();
+        assertEquals( 4, tree.nodeCount() );
+        assertEquals( "abcd",
+                      tree.root().children().get( 0 ).characters()
+                      .toString() );
+        assertEquals( "<r>abcd<s/>e</r>",
+                      produceString( tree, Indentor.COMPRESSED ) );
+
+        // Reused after build
+        b.startElement( new Tag( "q" ) );
+        b.endElement();
+        assertEquals( 1, b.build().nodeCount() );
+    }
+
+    @Test
+    public void test_builder_state()
+    {
+        CompactTreeBuilder b = new CompactTreeBuilder();
+        try {
+            b.characters( "a" );
+            fail( "no current element" );
+        }
+        catch( IllegalStateException e ) {}
+
+        b.startElement( new Tag( "r" ) );
+        b.characters( "a" );
+        try {
+            b.addAttribute( new Attribute( "x" ), "late" );
+            fail( "attribute after children" );
+        }
+        catch( IllegalStateException e ) {}
+
+        try {
+            b.build();
+            fail( "unclosed" );
+        }
+        catch( IllegalStateException e ) {}
+
+        b.endElement();
+        try {
+            b.startElement( new Tag( "second" ) );
+            fail( "second root" );
+        }
+        catch( IllegalStateException e ) {}
+    }
+
+    @Test
+    public void test_compare()
+        throws IOException, XMLStreamException, SAXException
+    {
+        File f = new File( "test/xml/huffingtonpost.full.atom.xml" );
+        byte[] xml = new byte[ (int) f.length() ];
+        DataInputStream in = new DataInputStream( new FileInputStream( f ) );
+        try {
+            in.readFully( xml );
+        }
+        finally {
+            in.close();
+        }
+
+        String expected = produceString( staxParse( staxInput( xml ) ),
+                                         Indentor.PRETTY );
+
+        CompactTree stax = staxParseCompact( staxInput( xml ) );
+        assertEquals( expected, produceString( stax, Indentor.PRETTY ) );
+        assertEquals( expected, produceString( stax.toElement(),
+                                               Indentor.PRETTY ) );
+
+        CompactTree sax =
+            SAXUtils.saxParseCompact( SAXUtils.saxInput( xml ) );
+        assertEquals( produceString( SAXUtils.saxParse(
+                                         SAXUtils.saxInput( xml ) ),
+                                     Indentor.PRETTY ),
+                      produceString( sax, Indentor.PRETTY ) );
+    }
+
+    private static final Namespace NS = new Namespace( "urn:d" );
+    private static final Namespace O = new Namespace( "o", "urn:o" );
+
+    private static final String DOC =
+        "<doc xmlns=\"urn:d\">t1" +
+        "<a xmlns:o=\"urn:o\" x=\"v1\" o:y=\"v2\"><b>b&amp;c</b></a>" +
+        "<e/>t2</doc>";
+}
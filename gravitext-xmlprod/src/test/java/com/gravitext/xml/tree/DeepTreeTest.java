@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.IOException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.gravitext.xml.producer.Indentor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writing and walking trees nested far beyond what a recursive
+ * implementation could handle on a default thread stack.
+ */
+public class DeepTreeTest
+{
+    @Test
+    public void test_write_element() throws IOException
+    {
+        Element root = new Element( "d" );
+        Element e = root;
+        for( int i = 1; i < DEPTH; ++i ) {
+            Element c = new Element( "d" );
+            e.addChild( c );
+            e = c;
+        }
+        e.addChild( new Characters( "x" ) );
+
+        assertEquals( expected(),
+                      TreeUtils.produceString( root, Indentor.COMPRESSED ) );
+    }
+
+    @Test
+    public void test_write_compact() throws Exception
+    {
+        CompactTree tree =
+            StAXUtils.staxParseCompact( StAXUtils.staxInput( expected() ) );
+        assertEquals( expected(),
+                      TreeUtils.produceString( tree, Indentor.COMPRESSED ) );
+    }
+
+    @Test
+    public void test_visit() throws Exception
+    {
+        Element root =
+            StAXUtils.staxParse( StAXUtils.staxInput( expected() ) );
+
+        final int[] counts = new int[ 3 ];
+        TreeUtils.visit( root, new NodeVisitor() {
+            public boolean enter( Element element )
+            {
+                ++counts[ 0 ];
+                return true;
+            }
+            public void exit( Element element )
+            {
+                ++counts[ 1 ];
+            }
+            public void characters( Node node )
+            {
+                assertEquals( "x", node.characters().toString() );
+                ++counts[ 2 ];
+            }
+        } );
+        assertEquals( DEPTH, counts[ 0 ] );
+        assertEquals( DEPTH, counts[ 1 ] );
+        assertEquals( 1, counts[ 2 ] );
+
+        assertEquals( "x", root.characters().toString() );
+        assertEquals( 1, root.textLength() );
+    }
+
+    @Test
+    public void test_visit_skip() throws IOException
+    {
+        Element root = new Element( "r" );
+        Element a = new Element( "a" );
+        root.addChild( a );
+        a.addChild( new Element( "b" ) );
+        root.addChild( new Characters( "t" ) );
+
+        final StringBuilder out = new StringBuilder();
+        TreeUtils.visit( root, new NodeVisitor() {
+            public boolean enter( Element element )
+            {
+                out.append( '<' ).append( element.name() );
+                return ( element.name() != "a" );
+            }
+            public void exit( Element element )
+            {
+                out.append( '/' ).append( element.name() );
+            }
+            public void characters( Node node )
+            {
+                out.append( node.characters() );
+            }
+        } );
+        assertEquals( "<r<a/at/r", out.toString() );
+    }
+
+    @Test
+    public void test_path_query() throws Exception
+    {
+        Element root =
+            StAXUtils.staxParse( StAXUtils.staxInput( expected() ) );
+        Element leaf = root;
+        Element child;
+        while( ( child = leaf.children().get( 0 ).asElement() ) != null ) {
+            leaf = child;
+        }
+
+        assertEquals( DEPTH, PathQuery.compile( "//d" ).select( leaf )
+                      .size() );
+        assertEquals( DEPTH - 2, PathQuery.compile( "d//d" )
+                      .select( root ).size() );
+        assertSame( leaf, PathQuery.compile( "//d/d" )
+                    .select( root ).get( DEPTH - 2 ) );
+        assertEquals( "x", PathQuery.compile( "//d/text()" )
+                      .value( leaf ).toString() );
+        assertNull( PathQuery.compile( "//e" ).first( root ) );
+    }
+
+    @Test
+    public void test_write_dom() throws Exception
+    {
+        Document doc = DocumentBuilderFactory.newInstance().
+            newDocumentBuilder().newDocument();
+        // Built bottom up, as appendChild() checks ancestors
+        org.w3c.dom.Node e = doc.createTextNode( "x" );
+        for( int i = 0; i < DEPTH; ++i ) {
+            org.w3c.dom.Node p = doc.createElement( "d" );
+            p.appendChild( e );
+            e = p;
+        }
+        doc.appendChild( e );
+
+        assertEquals( expected(),
+                      DOMUtils.produceString( doc, Indentor.COMPRESSED ) );
+    }
+
+    private static String expected()
+    {
+        StringBuilder b = new StringBuilder( DEPTH * 7 + 1 );
+        for( int i = 0; i < DEPTH; ++i ) b.append( "<d>" );
+        b.append( 'x' );
+        for( int i = 0; i < DEPTH; ++i ) b.append( "</d>" );
+        return b.toString();
+    }
+
+    private static final int DEPTH = 100000;
+}
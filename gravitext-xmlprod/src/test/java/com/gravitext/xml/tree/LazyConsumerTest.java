@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+import com.gravitext.xml.XMLSyntaxException;
+import com.gravitext.xml.producer.Indentor;
+import com.gravitext.xml.producer.Namespace;
+import com.gravitext.xml.producer.Tag;
+
+import static org.junit.Assert.*;
+import static com.gravitext.xml.tree.TokenizerUtils.*;
+
+public class LazyConsumerTest
+{
+    @Test
+    public void test_roundtrip() throws IOException, XMLStreamException
+    {
+        Element root = readLazyDocument( bytes( DOC ) );
+        assertEquals( StAXUtils.roundTripStAX( DOC ),
+                      produceString( root, Indentor.COMPRESSED ) );
+    }
+
+    @Test
+    public void test_on_demand() throws IOException
+    {
+        Element root = readLazyDocument( bytes( DOC ) );
+        assertTrue( root.isLazy() );
+        assertEquals( "doc", root.name() );
+        assertEquals( "1", root.attribute( "id" ).toString() );
+
+        List<Node> children = root.children();
+        assertFalse( root.isLazy() );
+        assertEquals( 4, children.size() );
+        assertEquals( "t1", children.get( 0 ).characters().toString() );
+
+        Element a = children.get( 1 ).asElement();
+        assertTrue( a.isLazy() );
+        assertEquals( P, a.namespace() );
+        assertEquals( "v", a.attribute( "x" ).toString() );
+
+        Element e = children.get( 2 ).asElement();
+        assertFalse( "empty", e.isLazy() );
+        assertTrue( e.children().isEmpty() );
+
+        // Nested fragment resolves prefixes declared by ancestors
+        Element c = a.firstElement( new Tag( "b", P ),
+                                    new Tag( "c", null ) );
+        assertFalse( a.isLazy() );
+        assertEquals( "deep", c.characters().toString() );
+        assertSame( root, c.parent().parent().parent() );
+    }
+
+    @Test
+    public void test_mutation() throws IOException
+    {
+        Element root = readLazyDocument( bytes( DOC ) );
+        root.addChild( new Characters( "t3" ) );
+        assertEquals( 5, root.children().size() );
+
+        root = readLazyDocument( bytes( DOC ) );
+        root.detachAllChildren();
+        assertEquals( "<doc xmlns:p=\"urn:p\" id=\"1\"/>",
+                      produceString( root, Indentor.COMPRESSED ) );
+    }
+
+    @Test(expected=XMLSyntaxException.class)
+    public void test_malformed() throws IOException
+    {
+        readLazyDocument( bytes( "<doc><a></doc>" ) );
+    }
+
+    @Test
+    public void test_compare_stax() throws IOException, XMLStreamException
+    {
+        File f = new File( "test/xml/huffingtonpost.full.atom.xml" );
+        byte[] xml = new byte[ (int) f.length() ];
+        DataInputStream in = new DataInputStream( new FileInputStream( f ) );
+        try {
+            in.readFully( xml );
+        }
+        finally {
+            in.close();
+        }
+
+        Element expected = StAXUtils.staxParse( StAXUtils.staxInput( xml ) );
+        Element root = readLazyDocument( xml );
+
+        assertEquals( produceString( expected, Indentor.PRETTY ),
+                      produceString( root, Indentor.PRETTY ) );
+    }
+
+    private static byte[] bytes( String input )
+    {
+        try {
+            return input.getBytes( "UTF-8" );
+        }
+        catch( java.io.UnsupportedEncodingException e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
+    private static final Namespace P = new Namespace( "p", "urn:p" );
+
+    private static final String DOC =
+        "<doc xmlns:p=\"urn:p\" id=\"1\">t1" +
+        "<p:a x=\"v\"><p:b xmlns=\"urn:d\"><c xmlns=\"\">deep</c></p:b>" +
+        "</p:a><e/>t2</doc>";
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.gravitext.xml.producer.Indentor;
+
+import static org.junit.Assert.*;
+
+public class MappedFileInputStreamTest
+{
+    @Before
+    public void setUp() throws IOException
+    {
+        _xml = RecordPerfTest.generate( 50 );
+        _file = File.createTempFile( "mapped", ".xml" );
+        FileOutputStream out = new FileOutputStream( _file );
+        try {
+            out.write( _xml );
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        _file.delete();
+    }
+
+    @Test
+    public void test_chunked_read() throws IOException
+    {
+        for( int chunk : new int[] { 1, 7, 4096, _xml.length,
+                                     MappedFileInputStream.CHUNK_SIZE } ) {
+            MappedFileInputStream in =
+                new MappedFileInputStream( _file, chunk );
+            try {
+                assertEquals( _xml.length, in.length() );
+                assertArrayEquals( _xml, readAll( in, 100 ) );
+                assertEquals( -1, in.read() );
+                assertEquals( _xml.length, in.position() );
+            }
+            finally {
+                in.close();
+            }
+        }
+    }
+
+    @Test
+    public void test_skip() throws IOException
+    {
+        MappedFileInputStream in = new MappedFileInputStream( _file, 7 );
+        try {
+            assertEquals( _xml[0] & 0xFF, in.read() );
+            assertEquals( 20, in.skip( 20 ) );
+            assertEquals( _xml[21] & 0xFF, in.read() );
+            assertEquals( 2, in.skip( 2 ) );
+            assertEquals( _xml[24] & 0xFF, in.read() );
+            assertEquals( _xml.length - 25, in.available() );
+            assertEquals( _xml.length - 25, in.skip( Long.MAX_VALUE ) );
+            assertEquals( -1, in.read() );
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void test_parse() throws Exception
+    {
+        String expected = TreeUtils.produceString(
+            TokenizerUtils.readDocument( TokenizerUtils.tokenizer( _xml ) ),
+            Indentor.COMPRESSED );
+
+        assertEquals( expected, TreeUtils.produceString(
+            StAXUtils.staxParse( _file ), Indentor.COMPRESSED ) );
+        assertEquals( expected, TreeUtils.produceString(
+            SAXUtils.saxParse( _file ), Indentor.COMPRESSED ) );
+        assertEquals( expected, TreeUtils.produceString(
+            TokenizerUtils.readDocument( _file ), Indentor.COMPRESSED ) );
+    }
+
+    private static byte[] readAll( InputStream in, int bsize )
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[ bsize ];
+        int n;
+        while( ( n = in.read( buf ) ) >= 0 ) {
+            out.write( buf, 0, n );
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] _xml;
+    private File _file;
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+import com.gravitext.xml.ConcurrentNamespaceCache;
+import com.gravitext.xml.XMLSyntaxException;
+
+import static org.junit.Assert.*;
+
+public class ParsePipelineTest
+{
+    @Test
+    public void test_ordered() throws Exception
+    {
+        for( ParsePipeline.Parser p : ParsePipeline.Parser.values() ) {
+            ParsePipeline pipeline = new ParsePipeline( 3 );
+            try {
+                pipeline.setParser( p );
+                pipeline.setMaxPending( 5 );
+                final List<Long> seqs = new ArrayList<Long>();
+                long count = pipeline.run(
+                    ParsePipeline.documents( docs( 100 ) ),
+                    new ParsePipeline.Handler() {
+                        public void handle( long seq, Element root )
+                        {
+                            assertEquals( String.valueOf( seq ),
+                                          root.attribute( "id" ) );
+                            seqs.add( seq );
+                        }
+                    } );
+                assertEquals( 100, count );
+                for( int i = 0; i < 100; ++i ) {
+                    assertEquals( i, seqs.get( i ).longValue() );
+                }
+            }
+            finally {
+                pipeline.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void test_unordered() throws Exception
+    {
+        ParsePipeline pipeline = new ParsePipeline( 4 );
+        try {
+            pipeline.setParser( ParsePipeline.Parser.TOKENIZER );
+            pipeline.setOrdered( false );
+            final List<Long> seqs = new ArrayList<Long>();
+            long count = pipeline.run(
+                ParsePipeline.documents( docs( 100 ) ),
+                new ParsePipeline.Handler() {
+                    public void handle( long seq, Element root )
+                    {
+                        assertEquals( String.valueOf( seq ),
+                                      root.attribute( "id" ) );
+                        seqs.add( seq );
+                    }
+                } );
+            assertEquals( 100, count );
+            Collections.sort( seqs );
+            for( int i = 0; i < 100; ++i ) {
+                assertEquals( i, seqs.get( i ).longValue() );
+            }
+        }
+        finally {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    public void test_parse_failure() throws Exception
+    {
+        ParsePipeline pipeline = new ParsePipeline( 2 );
+        try {
+            pipeline.setParser( ParsePipeline.Parser.TOKENIZER );
+            List<byte[]> docs = docs( 10 );
+            docs.set( 5, "<doc><bad></doc>".getBytes( "UTF-8" ) );
+            final List<Long> seqs = new ArrayList<Long>();
+            try {
+                pipeline.run( ParsePipeline.documents( docs ),
+                              new ParsePipeline.Handler() {
+                    public void handle( long seq, Element root )
+                    {
+                        seqs.add( seq );
+                    }
+                } );
+                fail( "expected failure" );
+            }
+            catch( ExecutionException e ) {
+                assertTrue( e.getCause() instanceof XMLSyntaxException );
+            }
+            assertEquals( 5, seqs.size() );
+        }
+        finally {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    public void test_cache_after_run() throws Exception
+    {
+        ParsePipeline pipeline = new ParsePipeline( 2 );
+        try {
+            pipeline.setNamespaceCache( new ConcurrentNamespaceCache() );
+            pipeline.run( ParsePipeline.documents( docs( 2 ) ),
+                          new ParsePipeline.Handler() {
+                public void handle( long seq, Element root )
+                {
+                }
+            } );
+            try {
+                pipeline.setNamespaceCache(
+                    new ConcurrentNamespaceCache() );
+                fail( "expected IllegalStateException" );
+            }
+            catch( IllegalStateException x ) {
+                // expected
+            }
+        }
+        finally {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    public void test_queue() throws Exception
+    {
+        final BlockingQueue<ByteBuffer> queue =
+            new ArrayBlockingQueue<ByteBuffer>( 2 );
+        final ByteBuffer end = ByteBuffer.allocate( 0 );
+        final List<byte[]> docs = docs( 20 );
+
+        Thread producer = new Thread() {
+            public void run()
+            {
+                try {
+                    for( byte[] doc : docs ) {
+                        // Direct buffer, to exercise non-array input
+                        ByteBuffer b =
+                            ByteBuffer.allocateDirect( doc.length );
+                        b.put( doc ).flip();
+                        queue.put( b );
+                    }
+                    queue.put( end );
+                }
+                catch( InterruptedException x ) {
+                    throw new RuntimeException( x );
+                }
+            }
+        };
+        producer.start();
+
+        ParsePipeline pipeline = new ParsePipeline( 2 );
+        try {
+            pipeline.setParser( ParsePipeline.Parser.TOKENIZER );
+            final List<Long> seqs = new ArrayList<Long>();
+            long count = pipeline.run(
+                ParsePipeline.queue( queue, end ),
+                new ParsePipeline.Handler() {
+                    public void handle( long seq, Element root )
+                    {
+                        seqs.add( seq );
+                    }
+                } );
+            assertEquals( 20, count );
+            assertEquals( 19L, seqs.get( 19 ).longValue() );
+        }
+        finally {
+            pipeline.shutdown();
+        }
+        producer.join();
+    }
+
+    private static List<byte[]> docs( int count ) throws Exception
+    {
+        List<byte[]> docs = new ArrayList<byte[]>( count );
+        for( int i = 0; i < count; ++i ) {
+            docs.add( ( "<doc xmlns=\"urn:d\" id=\"" + i + "\">" +
+                        "<title>Document " + i + "</title></doc>" )
+                      .getBytes( "UTF-8" ) );
+        }
+        return docs;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.junit.Test;
+
+import com.gravitext.xml.NamespaceCache;
+import com.gravitext.xml.producer.Namespace;
+
+import static org.junit.Assert.*;
+
+public class PathQueryTest
+{
+    @Test
+    public void test_child_steps() throws Exception
+    {
+        Element root = parse();
+        assertEquals( "[One, Two, Three]",
+                      values( "/feed/entry/title/text()", root ) );
+        assertEquals( "[One, Two, Three]",
+                      values( "entry/title", root ) );
+        assertEquals( 3, PathQuery.compile( "entry" ).select( root ).size() );
+        assertEquals( "Two",
+                      PathQuery.compile( "entry[@id='2']/title/text()" )
+                      .value( root ).toString() );
+        assertNull( PathQuery.compile( "title" ).first( root ) );
+        assertEquals( "[]", values( "/entry", root ) );
+        assertEquals( "[1, 2, 3]", values( "/*/entry/@id", root ) );
+    }
+
+    @Test
+    public void test_descendant_steps() throws Exception
+    {
+        Element root = parse();
+        assertEquals( "[a, b, c, d]", values( "//link/@href", root ) );
+        assertEquals( "[a, c]",
+                      values( "//entry//link[@rel='alternate']/@href",
+                              root ) );
+        assertEquals( "[b]", values( "//link[@rel=\"self\"]/@href", root ) );
+        assertEquals( "[d]", values( "/feed//group/link/@href", root ) );
+        assertEquals( "[Nested]", values( "//group//title", root ) );
+
+        // Relative to an inner context
+        Element entry = PathQuery.compile( "entry[@id='3']" ).first( root );
+        assertEquals( "[c]", values( "link/@href", entry ) );
+        assertEquals( "[d]", values( "group/link/@href", entry ) );
+    }
+
+    @Test
+    public void test_predicates() throws Exception
+    {
+        Element root = parse();
+        assertEquals( "[2]", values( "entry[@draft]/@id", root ) );
+        assertEquals( "[2]", values( "entry[@id][@draft='yes']/@id", root ) );
+        assertEquals( "[]", values( "entry[@draft='no']/@id", root ) );
+
+        // Element value only for elements with the attribute
+        List<Element> found =
+            PathQuery.compile( "entry/@draft" ).select( root );
+        assertEquals( 1, found.size() );
+        assertEquals( "2", found.get( 0 ).attribute( "id" ).toString() );
+    }
+
+    @Test
+    public void test_namespaces() throws Exception
+    {
+        Namespace a = new Namespace( "a", "urn:a" );
+        Namespace dflt = new Namespace( "urn:feed" );
+        NamespaceCache cache = new NamespaceCache();
+        Element root = StAXUtils.staxParse( StAXUtils.staxInput( NS_DOC ),
+                                            cache );
+
+        assertEquals( "[x, y]", values( "//meta", root ) );
+        assertEquals( "[x]", values( "//a:meta", root, a ) );
+        assertEquals( "[y]", values( "//meta", root, dflt ) );
+        assertEquals( "[x]",
+                      PathQuery.compile( "/feed/a:meta", cache, a, dflt )
+                      .values( root ).toString() );
+        assertEquals( "[1]", values( "//*[@a:k]/@a:k", root, a ) );
+        assertEquals( "[2]", values( "//*[@k]/@k", root ) );
+    }
+
+    @Test
+    public void test_streaming() throws Exception
+    {
+        final String[] paths = {
+            "/feed/entry/title/text()",
+            "entry/title",
+            "//link/@href",
+            "//entry//link[@rel='alternate']/@href",
+            "/feed//group/link/@href",
+            "entry[@draft]/@id",
+            "/entry",
+            "//title" };
+
+        Element root = parse();
+        for( String path : paths ) {
+            PathQuery q = PathQuery.compile( path );
+            assertEquals( path, q.values( root ).toString(),
+                          q.values( reader() ).toString() );
+        }
+
+        List<Element> found =
+            PathQuery.compile( "//entry[@id='3']" ).select( reader() );
+        assertEquals( 1, found.size() );
+        assertTrue( found.get( 0 ).deepEquals(
+            PathQuery.compile( "entry[@id='3']" ).first( root ) ) );
+    }
+
+    @Test
+    public void test_streaming_positions() throws Exception
+    {
+        XMLStreamReader sr = reader();
+        final List<CharSequence> values = new ArrayList<CharSequence>();
+        long count = PathQuery.compile( "entry/@id" ).read(
+            sr, new PathQuery.Handler() {
+                public void handle( Element element, CharSequence value )
+                {
+                    assertNull( element );
+                    values.add( value );
+                }
+            } );
+        assertEquals( 3, count );
+        assertEquals( "[1, 2, 3]", values.toString() );
+        assertEquals( XMLStreamReader.END_ELEMENT, sr.getEventType() );
+        assertEquals( "feed", sr.getLocalName() );
+    }
+
+    @Test
+    public void test_syntax_errors()
+    {
+        final String[] bad = {
+            "", "/", "//", "feed/", "feed//text()", "/text()", "@id",
+            "feed[id]", "feed[@id='x]", "feed[@id", "x:feed",
+            "feed/text()/x", "feed/@id/x", "feed//@id", "feed entry" };
+        for( String path : bad ) {
+            try {
+                PathQuery.compile( path );
+                fail( "Expected failure: " + path );
+            }
+            catch( IllegalArgumentException x ) {
+                // expected
+            }
+        }
+    }
+
+    @Test( expected=IllegalStateException.class )
+    public void test_streaming_select_values() throws Exception
+    {
+        PathQuery.compile( "entry/@id" ).select( reader() );
+    }
+
+    private static String values( String path,
+                                  Element context,
+                                  Namespace... namespaces )
+    {
+        return PathQuery.compile( path, namespaces ).values( context )
+            .toString();
+    }
+
+    private static Element parse() throws XMLStreamException
+    {
+        return StAXUtils.staxParse( StAXUtils.staxInput( DOC ) );
+    }
+
+    private static XMLStreamReader reader() throws XMLStreamException
+    {
+        return StAXUtils.staxReader( StAXUtils.staxInput( DOC ) );
+    }
+
+    private static final String DOC =
+        "<feed>" +
+        "<entry id=\"1\"><title>One</title>" +
+        "<link rel=\"alternate\" href=\"a\"/><link rel=\"self\" href=\"b\"/>" +
+        "</entry>" +
+        "<entry id=\"2\" draft=\"yes\"><title>Two</title></entry>" +
+        "<entry id=\"3\"><title>Three</title>" +
+        "<link rel=\"alternate\" href=\"c\"/>" +
+        "<group><link href=\"d\"/><title>Nested</title></group>" +
+        "</entry>" +
+        "</feed>";
+
+    private static final String NS_DOC =
+        "<feed xmlns=\"urn:feed\" xmlns:a=\"urn:a\">" +
+        "<a:meta a:k=\"1\">x</a:meta>" +
+        "<meta k=\"2\">y</meta>" +
+        "</feed>";
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+import com.gravitext.xml.producer.Indentor;
+import com.gravitext.xml.producer.Namespace;
+import com.gravitext.xml.producer.Tag;
+
+import static org.junit.Assert.*;
+
+public class RecordReaderTest
+{
+    @Test
+    public void test_stax() throws IOException, XMLStreamException
+    {
+        assertRecords( RecordReader.create(
+            StAXUtils.staxReader( StAXUtils.staxInput( DOC ) ), ITEM ) );
+    }
+
+    @Test
+    public void test_tokenizer() throws IOException
+    {
+        assertRecords( RecordReader.create(
+            TokenizerUtils.tokenizer( DOC ), ITEM ) );
+    }
+
+    @Test
+    public void test_iterator() throws IOException
+    {
+        List<String> ids = new ArrayList<String>();
+        for( Element r : RecordReader.create(
+                 TokenizerUtils.tokenizer( DOC ),
+                 new Tag( "item", Tag.WILDCARD_NS ) ) ) {
+            ids.add( r.attribute( "id" ).toString() );
+        }
+        assertEquals( "[1, 2, 3]", ids.toString() );
+    }
+
+    @Test
+    public void test_process() throws Exception
+    {
+        byte[] xml = RecordPerfTest.generate( 1000 );
+        ExecutorService pool = Executors.newFixedThreadPool( 3 );
+        try {
+            final List<String> ids =
+                Collections.synchronizedList( new ArrayList<String>() );
+            RecordReader reader = RecordReader.create(
+                TokenizerUtils.tokenizer( xml ),
+                new Tag( "item", Tag.WILDCARD_NS ) );
+
+            long count = reader.process( pool, new RecordReader.Handler() {
+                public void handle( Element record )
+                {
+                    ids.add( record.attribute( "id" ).toString() );
+                }
+            }, 10 );
+            assertEquals( 1000, count );
+            assertEquals( 1000, ids.size() );
+
+            reader = RecordReader.create(
+                TokenizerUtils.tokenizer( xml ),
+                new Tag( "item", Tag.WILDCARD_NS ) );
+            try {
+                reader.process( pool, new RecordReader.Handler() {
+                    public void handle( Element record )
+                    {
+                        throw new IllegalArgumentException( "bad" );
+                    }
+                }, 10 );
+                fail( "expected failure" );
+            }
+            catch( ExecutionException e ) {
+                assertTrue( e.getCause() instanceof IllegalArgumentException );
+            }
+            assertTrue( reader.count() < 1000 );
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    private void assertRecords( RecordReader reader ) throws IOException
+    {
+        List<String> out = new ArrayList<String>();
+        Element r;
+        while( ( r = reader.read() ) != null ) {
+            out.add( TreeUtils.produceString( r, Indentor.COMPRESSED ) );
+        }
+        assertNull( reader.read() );
+        assertEquals( 2, reader.count() );
+        assertEquals( "<f:item xmlns:f=\"urn:f\" id=\"1\">" +
+                      "<f:title>a</f:title></f:item>", out.get( 0 ) );
+        assertEquals( "<f:item xmlns:f=\"urn:f\" id=\"3\">" +
+                      "<f:item id=\"4\"/></f:item>", out.get( 1 ) );
+    }
+
+    private static final Namespace F = new Namespace( "f", "urn:f" );
+    private static final Tag ITEM = new Tag( "item", F );
+
+    private static final String DOC =
+        "<f:feed xmlns:f=\"urn:f\"><f:head><f:title>x</f:title></f:head>" +
+        "<f:item id=\"1\"><f:title>a</f:title></f:item>" +
+        "<item id=\"2\"/>" +
+        "<f:group><f:item id=\"3\"><f:item id=\"4\"/></f:item></f:group>" +
+        "</f:feed>";
+}
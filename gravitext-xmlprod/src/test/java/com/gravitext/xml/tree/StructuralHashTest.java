@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import org.junit.Test;
+
+import com.gravitext.xml.producer.Attribute;
+import com.gravitext.xml.producer.Tag;
+
+import static org.junit.Assert.*;
+
+public class StructuralHashTest
+{
+    @Test
+    public void test_equal_parses() throws Exception
+    {
+        Element a = StAXUtils.staxParse( StAXUtils.staxInput( DOC ) );
+        Element b =
+            new LazyConsumer().readDocument( DOC.getBytes( "UTF-8" ) );
+        Element c = StAXUtils.staxParse( StAXUtils.staxInput(
+            DOC.replace( "id=\"1\" type=\"x\"", "type=\"x\" id=\"1\"" ) ) );
+
+        assertEquals( a.structuralHash(), b.structuralHash() );
+        assertTrue( a.deepEquals( b ) );
+        assertTrue( b.deepEquals( a ) );
+
+        // Attribute order is not significant
+        assertEquals( a.structuralHash(), c.structuralHash() );
+        assertTrue( a.deepEquals( c ) );
+
+        assertFalse( a.deepEquals( null ) );
+        assertFalse( a.deepEquals( new Characters( "text" ) ) );
+    }
+
+    @Test
+    public void test_mutation() throws Exception
+    {
+        Element a = StAXUtils.staxParse( StAXUtils.staxInput( DOC ) );
+        Element b = StAXUtils.staxParse( StAXUtils.staxInput( DOC ) );
+        final int hash = a.structuralHash();
+        assertTrue( a.deepEquals( b ) );
+
+        // Deep text change invalidates ancestors
+        Element item = a.firstElement( ITEM );
+        Node text = item.firstElement( TITLE ).children().get( 0 );
+        text.setCharacters( "Changed" );
+        assertTrue( hash != a.structuralHash() );
+        assertFalse( a.deepEquals( b ) );
+        text.setCharacters( "First" );
+        assertEquals( hash, a.structuralHash() );
+        assertTrue( a.deepEquals( b ) );
+
+        item.setAttribute( ID, "2" );
+        assertFalse( a.deepEquals( b ) );
+        item.setAttribute( ID, "1" );
+        assertTrue( a.deepEquals( b ) );
+
+        item.addChild( new Element( "extra" ) );
+        assertFalse( a.deepEquals( b ) );
+        item.children().get( item.children().size() - 1 ).detach();
+        assertEquals( hash, a.structuralHash() );
+
+        item.removeAttribute( "type" );
+        assertFalse( a.deepEquals( b ) );
+        item.addAttribute( "type", "x" );
+        assertTrue( a.deepEquals( b ) );
+
+        item.setTag( new Tag( "other", item.namespace() ) );
+        assertFalse( a.deepEquals( b ) );
+    }
+
+    @Test
+    public void test_structure()
+    {
+        // Same characters, different structure
+        Element a = new Element( "a" );
+        a.addChild( new Characters( "xy" ) );
+        Element b = new Element( "a" );
+        b.addChild( new Characters( "x" ) );
+        b.addChild( new Characters( "y" ) );
+        assertFalse( a.deepEquals( b ) );
+
+        Element c = new Element( "a" );
+        c.addChild( new Characters( new StringBuilder( "xy" ) ) );
+        assertEquals( a.structuralHash(), c.structuralHash() );
+        assertTrue( a.deepEquals( c ) );
+    }
+
+    private static final Tag ITEM = new Tag( "item", Tag.WILDCARD_NS );
+    private static final Tag TITLE = new Tag( "title", Tag.WILDCARD_NS );
+    private static final Attribute ID = new Attribute( "id" );
+
+    private static final String DOC =
+        "<feed xmlns=\"urn:feed\">" +
+        "<item id=\"1\" type=\"x\"><title>First</title>" +
+        "<body>Some <b>bold</b> text</body></item>" +
+        "<item id=\"2\"><title>Second</title></item>" +
+        "</feed>";
+}
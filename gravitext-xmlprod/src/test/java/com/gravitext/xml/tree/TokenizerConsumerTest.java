@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+import com.gravitext.xml.XMLTokenizer;
+import com.gravitext.xml.producer.Indentor;
+
+import static org.junit.Assert.*;
+import static com.gravitext.xml.tree.TokenizerUtils.*;
+import static com.gravitext.xml.XMLTokenizer.Event.*;
+
+public class TokenizerConsumerTest
+{
+    @Test
+    public void test_simple() throws IOException
+    {
+        assertEquals( SIMPLE_DOC, roundTripTokenizer( SIMPLE_DOC ) );
+    }
+
+    @Test
+    public void test_partial() throws IOException
+    {
+        XMLTokenizer tk = tokenizer( SIMPLE_DOC );
+        while( ( tk.next() != START_ELEMENT ) ||
+               ! tk.tag().name().equals( "a" ) );
+
+        Node node = TokenizerUtils.readCurrentElement( tk );
+        assertEquals( "<a>b</a>", produceString( node, Indentor.COMPRESSED ) );
+    }
+
+    @Test
+    public void test_compare_stax() throws IOException, XMLStreamException
+    {
+        File f = new File( "test/xml/huffingtonpost.full.atom.xml" );
+        byte[] xml = new byte[ (int) f.length() ];
+        DataInputStream in = new DataInputStream( new FileInputStream( f ) );
+        try {
+            in.readFully( xml );
+        }
+        finally {
+            in.close();
+        }
+
+        Element expected = StAXUtils.staxParse( StAXUtils.staxInput( xml ) );
+        Element root = readDocument( tokenizer( xml ) );
+
+        assertEquals( produceString( expected, Indentor.PRETTY ),
+                      produceString( root, Indentor.PRETTY ) );
+    }
+
+    private static final String SIMPLE_DOC =
+        "<doc>\n" +
+        " <a>b</a>\n" +
+        "</doc>";
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2008-2013 David Kellum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.gravitext.xml.tree;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static javax.xml.stream.XMLStreamConstants.*;
+
+public class XMLInputFactoryCacheTest
+{
+    @Test
+    public void testPerThread() throws InterruptedException
+    {
+        final XMLInputFactoryCache cache =
+            new XMLInputFactoryCache(
+                Collections.<String,Object>emptyMap(), false );
+        assertFalse( cache.isShared() );
+
+        final XMLInputFactory factory = cache.factory();
+        assertSame( factory, cache.factory() );
+
+        final AtomicReference<XMLInputFactory> other =
+            new AtomicReference<XMLInputFactory>();
+        Thread t = new Thread() {
+            public void run()
+            {
+                other.set( cache.factory() );
+            }
+        };
+        t.start();
+        t.join();
+
+        assertNotNull( other.get() );
+        assertNotSame( factory, other.get() );
+    }
+
+    @Test
+    public void testShared()
+    {
+        XMLInputFactoryCache cache =
+            new XMLInputFactoryCache(
+                Collections.<String,Object>emptyMap(), true );
+        assertTrue( cache.isShared() );
+        assertSame( cache.factory(), cache.factory() );
+    }
+
+    @Test
+    public void testDefaultProperties() throws XMLStreamException
+    {
+        XMLStreamReader sr = StAXUtils.staxReader(
+            StAXUtils.staxInput( "<a>x<![CDATA[y]]>z</a>" ) );
+        assertEquals( START_ELEMENT, sr.next() );
+        assertTrue( sr.next() == CHARACTERS );
+        assertEquals( "xyz", sr.getText() );
+    }
+}